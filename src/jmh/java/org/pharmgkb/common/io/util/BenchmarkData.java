@@ -0,0 +1,107 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+
+/**
+ * Generates fixture data for the benchmarks.  Data is generated from a fixed seed so that runs are comparable across
+ * versions.
+ *
+ * @author Mark Woon
+ */
+class BenchmarkData {
+  private static final String sf_alphabet = "ACGTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+
+  private BenchmarkData() {
+  }
+
+
+  static Path createTempDir() throws IOException {
+    return Files.createTempDirectory("pgkb-jmh");
+  }
+
+  static void deleteDir(Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+
+  /**
+   * Writes a TSV file with {@code numLines} rows.  Compressed based on the file extension.
+   */
+  static void writeTsv(Path file, int numLines) throws IOException {
+    try (BufferedWriter writer = StreamUtils.openWriter(file)) {
+      writeTsv(writer, numLines, new Random(numLines));
+    }
+  }
+
+  static void writeTsv(Writer writer, int numLines, Random random) throws IOException {
+    writer.write("id\tsymbol\tname\tchromosome\tposition\n");
+    for (int x = 0; x < numLines; x += 1) {
+      writer.write("PA" + x + "\t" + randomString(random, 6) + "\t" + randomString(random, 40) + "\tchr" +
+          (random.nextInt(22) + 1) + "\t" + random.nextInt(250_000_000) + "\n");
+    }
+  }
+
+
+  /**
+   * Writes a zip file with {@code numEntries} entries of {@code linesPerEntry} TSV rows each.  Entries are named
+   * {@code entry-<n>.tsv}.
+   */
+  static void writeZip(Path file, int numEntries, int linesPerEntry) throws IOException {
+    Random random = new Random(numEntries);
+    try (ZipOutputStream zipOut = new ZipOutputStream(Files.newOutputStream(file));
+         Writer writer = new OutputStreamWriter(zipOut, StandardCharsets.UTF_8)) {
+      for (int x = 0; x < numEntries; x += 1) {
+        zipOut.putNextEntry(new ZipEntry("entry-" + x + ".tsv"));
+        writeTsv(writer, linesPerEntry, random);
+        writer.flush();
+        zipOut.closeEntry();
+      }
+    }
+  }
+
+
+  /**
+   * Writes an XML file with {@code numGenes} {@code <gene>} elements, each with attributes, a name and some synonyms.
+   */
+  static void writeXml(Path file, int numGenes) throws IOException {
+    Random random = new Random(numGenes);
+    try (BufferedWriter writer = StreamUtils.openWriter(file)) {
+      writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<genes>\n");
+      for (int x = 0; x < numGenes; x += 1) {
+        writer.write("  <gene id=\"PA" + x + "\" symbol=\"" + randomString(random, 6) + "\" chromosome=\"chr" +
+            (random.nextInt(22) + 1) + "\">\n");
+        writer.write("    <name>  " + randomString(random, 40) + "  </name>\n");
+        writer.write("    <synonyms>\n");
+        for (int y = random.nextInt(4); y >= 0; y -= 1) {
+          writer.write("      <synonym>" + randomString(random, 10) + "</synonym>\n");
+        }
+        writer.write("    </synonyms>\n  </gene>\n");
+      }
+      writer.write("</genes>\n");
+    }
+  }
+
+
+  private static String randomString(Random random, int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int x = 0; x < length; x += 1) {
+      builder.append(sf_alphabet.charAt(random.nextInt(sf_alphabet.length())));
+    }
+    return builder.toString();
+  }
+}
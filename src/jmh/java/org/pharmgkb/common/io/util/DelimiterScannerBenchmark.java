@@ -0,0 +1,75 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks finding tabs and newlines with {@link DelimiterScanner} against a byte-by-byte loop.
+ * <p>
+ * Add {@code -Pjmh.args="-jvmArgsAppend --add-modules=jdk.incubator.vector"} to try the Vector API on Java 17+.
+ *
+ * @author Mark Woon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DelimiterScannerBenchmark {
+  @Param({"100000"})
+  public int lines;
+  private ByteBuffer m_buffer;
+
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (Writer writer = new OutputStreamWriter(baos, StandardCharsets.UTF_8)) {
+      BenchmarkData.writeTsv(writer, lines, new Random(lines));
+    }
+    m_buffer = ByteBuffer.wrap(baos.toByteArray());
+  }
+
+
+  @Benchmark
+  public long scalar() {
+    long count = 0;
+    for (int x = m_buffer.position(); x < m_buffer.limit(); x += 1) {
+      byte b = m_buffer.get(x);
+      if (b == '\t' || b == '\n' || b == '"') {
+        count += x;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public long scanner() {
+    DelimiterScanner scanner = DelimiterScanner.forFields().reset(m_buffer);
+    long count = 0;
+    for (int idx = scanner.next(); idx != -1; idx = scanner.next()) {
+      count += idx;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,73 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Benchmarks a typical {@link StaxReader} parsing loop using {@link StaxReader#startElement(String, String)},
+ * {@link StaxReader#getAttributeValue(String)} and {@link StaxReader#getTextTrimmedToNull()}.
+ *
+ * @author Mark Woon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StaxReaderBenchmark {
+  @Param({"xml", "xml.gz"})
+  public String extension;
+  @Param({"20000"})
+  public int genes;
+  private Path m_dir;
+  private Path m_file;
+
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    m_dir = BenchmarkData.createTempDir();
+    m_file = m_dir.resolve("genes." + extension);
+    BenchmarkData.writeXml(m_file, genes);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkData.deleteDir(m_dir);
+  }
+
+
+  @Benchmark
+  public void parse(Blackhole blackhole) throws IOException, XMLStreamException {
+    try (StaxReader reader = new StaxReader(m_file)) {
+      while (reader.startElement("gene") != null) {
+        blackhole.consume(reader.getAttributeValue("id"));
+        blackhole.consume(reader.getAttributeValue("symbol"));
+        blackhole.consume(reader.getAttributeValue("chromosome"));
+        if (reader.startElement("name", "gene") != null) {
+          blackhole.consume(reader.getTextTrimmedToNull());
+        }
+        while (reader.startElement("synonym", "synonyms") != null) {
+          blackhole.consume(reader.getTextTrimmedToNull());
+        }
+      }
+    }
+  }
+}
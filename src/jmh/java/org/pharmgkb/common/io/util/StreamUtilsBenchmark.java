@@ -0,0 +1,80 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Benchmarks reading whole files with {@link StreamUtils#openInputStream(Path)} and
+ * {@link StreamUtils#openReader(Path)}.
+ *
+ * @author Mark Woon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamUtilsBenchmark {
+  @Param({"tsv", "tsv.gz", "tsv.zip"})
+  public String extension;
+  @Param({"100000"})
+  public int lines;
+  private Path m_dir;
+  private Path m_file;
+
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    m_dir = BenchmarkData.createTempDir();
+    m_file = m_dir.resolve("data." + extension);
+    BenchmarkData.writeTsv(m_file, lines);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkData.deleteDir(m_dir);
+  }
+
+
+  @Benchmark
+  public long openInputStream() throws IOException {
+    byte[] buffer = new byte[8192];
+    long total = 0;
+    try (InputStream in = StreamUtils.openInputStream(m_file)) {
+      int len;
+      while ((len = in.read(buffer)) != -1) {
+        total += len;
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public void openReader(Blackhole blackhole) throws IOException {
+    try (BufferedReader reader = StreamUtils.openReader(m_file)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        blackhole.consume(line);
+      }
+    }
+  }
+}
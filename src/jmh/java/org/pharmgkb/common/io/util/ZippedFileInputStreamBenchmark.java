@@ -0,0 +1,72 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks reading an entry from a multi-entry zip with {@link ZippedFileInputStream}, where the entry is either the
+ * first or the last one in the zip.
+ *
+ * @author Mark Woon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZippedFileInputStreamBenchmark {
+  @Param({"first", "last"})
+  public String position;
+  @Param({"20"})
+  public int entries;
+  @Param({"10000"})
+  public int linesPerEntry;
+  private Path m_dir;
+  private Path m_file;
+  private String m_entryName;
+
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    m_dir = BenchmarkData.createTempDir();
+    m_file = m_dir.resolve("data.zip");
+    BenchmarkData.writeZip(m_file, entries, linesPerEntry);
+    m_entryName = "entry-" + (position.equals("first") ? 0 : entries - 1) + ".tsv";
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkData.deleteDir(m_dir);
+  }
+
+
+  @Benchmark
+  public long readEntry() throws IOException {
+    byte[] buffer = new byte[8192];
+    long total = 0;
+    try (InputStream in = new ZippedFileInputStream(m_file, m_entryName)) {
+      int len;
+      while ((len = in.read(buffer)) != -1) {
+        total += len;
+      }
+    }
+    return total;
+  }
+}
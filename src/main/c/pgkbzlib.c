@@ -0,0 +1,134 @@
+/*
+ * JNI bindings for org.pharmgkb.common.io.compress.NativeZlib.
+ *
+ * Written against the zlib API so that it can be linked with zlib-ng (built with ZLIB_COMPAT=ON) for speed, or with
+ * stock zlib.
+ *
+ * @author Mark Woon
+ */
+#include <jni.h>
+#include <stdint.h>
+#include <stdlib.h>
+#include <zlib.h>
+
+/* raw deflate (for gzip and zip entries) when nowrap, zlib format otherwise */
+#define WINDOW_BITS(nowrap) ((nowrap) ? -MAX_WBITS : MAX_WBITS)
+
+static z_stream *newStream(void) {
+  return (z_stream *)calloc(1, sizeof(z_stream));
+}
+
+
+JNIEXPORT jlong JNICALL
+Java_org_pharmgkb_common_io_compress_NativeZlib_inflateInit(JNIEnv *env, jclass cls, jboolean nowrap) {
+  z_stream *strm = newStream();
+  if (strm == NULL) {
+    return 0;
+  }
+  if (inflateInit2(strm, WINDOW_BITS(nowrap)) != Z_OK) {
+    free(strm);
+    return 0;
+  }
+  return (jlong)(intptr_t)strm;
+}
+
+JNIEXPORT jint JNICALL
+Java_org_pharmgkb_common_io_compress_NativeZlib_inflate(JNIEnv *env, jclass cls, jlong handle,
+    jbyteArray in, jint inOff, jint inLen, jbyteArray out, jint outOff, jint outLen, jintArray result) {
+  z_stream *strm = (z_stream *)(intptr_t)handle;
+  jint counts[2];
+  int rez;
+  jbyte *input = (*env)->GetPrimitiveArrayCritical(env, in, NULL);
+  jbyte *output;
+  if (input == NULL) {
+    return Z_MEM_ERROR;
+  }
+  output = (*env)->GetPrimitiveArrayCritical(env, out, NULL);
+  if (output == NULL) {
+    (*env)->ReleasePrimitiveArrayCritical(env, in, input, JNI_ABORT);
+    return Z_MEM_ERROR;
+  }
+  strm->next_in = (Bytef *)(input + inOff);
+  strm->avail_in = (uInt)inLen;
+  strm->next_out = (Bytef *)(output + outOff);
+  strm->avail_out = (uInt)outLen;
+  rez = inflate(strm, Z_SYNC_FLUSH);
+  counts[0] = inLen - (jint)strm->avail_in;
+  counts[1] = outLen - (jint)strm->avail_out;
+  strm->next_in = NULL;
+  strm->next_out = NULL;
+  (*env)->ReleasePrimitiveArrayCritical(env, out, output, 0);
+  (*env)->ReleasePrimitiveArrayCritical(env, in, input, JNI_ABORT);
+  (*env)->SetIntArrayRegion(env, result, 0, 2, counts);
+  return rez;
+}
+
+JNIEXPORT jint JNICALL
+Java_org_pharmgkb_common_io_compress_NativeZlib_inflateReset(JNIEnv *env, jclass cls, jlong handle) {
+  return inflateReset((z_stream *)(intptr_t)handle);
+}
+
+JNIEXPORT void JNICALL
+Java_org_pharmgkb_common_io_compress_NativeZlib_inflateEnd(JNIEnv *env, jclass cls, jlong handle) {
+  z_stream *strm = (z_stream *)(intptr_t)handle;
+  inflateEnd(strm);
+  free(strm);
+}
+
+
+JNIEXPORT jlong JNICALL
+Java_org_pharmgkb_common_io_compress_NativeZlib_deflateInit(JNIEnv *env, jclass cls, jint level, jboolean nowrap) {
+  z_stream *strm = newStream();
+  if (strm == NULL) {
+    return 0;
+  }
+  if (deflateInit2(strm, level, Z_DEFLATED, WINDOW_BITS(nowrap), 8, Z_DEFAULT_STRATEGY) != Z_OK) {
+    free(strm);
+    return 0;
+  }
+  return (jlong)(intptr_t)strm;
+}
+
+JNIEXPORT jint JNICALL
+Java_org_pharmgkb_common_io_compress_NativeZlib_deflate(JNIEnv *env, jclass cls, jlong handle,
+    jbyteArray in, jint inOff, jint inLen, jbyteArray out, jint outOff, jint outLen, jboolean finish,
+    jintArray result) {
+  z_stream *strm = (z_stream *)(intptr_t)handle;
+  jint counts[2];
+  int rez;
+  jbyte *input = (*env)->GetPrimitiveArrayCritical(env, in, NULL);
+  jbyte *output;
+  if (input == NULL) {
+    return Z_MEM_ERROR;
+  }
+  output = (*env)->GetPrimitiveArrayCritical(env, out, NULL);
+  if (output == NULL) {
+    (*env)->ReleasePrimitiveArrayCritical(env, in, input, JNI_ABORT);
+    return Z_MEM_ERROR;
+  }
+  strm->next_in = (Bytef *)(input + inOff);
+  strm->avail_in = (uInt)inLen;
+  strm->next_out = (Bytef *)(output + outOff);
+  strm->avail_out = (uInt)outLen;
+  rez = deflate(strm, finish ? Z_FINISH : Z_NO_FLUSH);
+  counts[0] = inLen - (jint)strm->avail_in;
+  counts[1] = outLen - (jint)strm->avail_out;
+  strm->next_in = NULL;
+  strm->next_out = NULL;
+  (*env)->ReleasePrimitiveArrayCritical(env, out, output, 0);
+  (*env)->ReleasePrimitiveArrayCritical(env, in, input, JNI_ABORT);
+  (*env)->SetIntArrayRegion(env, result, 0, 2, counts);
+  return rez;
+}
+
+JNIEXPORT jint JNICALL
+Java_org_pharmgkb_common_io_compress_NativeZlib_deflateReset(JNIEnv *env, jclass cls, jlong handle) {
+  return deflateReset((z_stream *)(intptr_t)handle);
+}
+
+JNIEXPORT void JNICALL
+Java_org_pharmgkb_common_io_compress_NativeZlib_deflateEnd(JNIEnv *env, jclass cls, jlong handle) {
+  z_stream *strm = (z_stream *)(intptr_t)handle;
+  deflateEnd(strm);
+  free(strm);
+}
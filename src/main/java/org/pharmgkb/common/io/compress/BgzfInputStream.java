@@ -0,0 +1,266 @@
+package org.pharmgkb.common.io.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.ZipException;
+
+
+/**
+ * Reads a BGZF file (blocked gzip, as written by {@code bgzip}), with support for seeking to a virtual offset.
+ * <p>
+ * A virtual offset is the offset of a block in the file shifted left 16 bits, plus the offset of a byte in the
+ * block's uncompressed data.  A single read never returns data from more than one block, so the virtual offset of byte
+ * {@code i} of a read of {@code n} bytes is {@link #getLastReadOffset()} (taken after the read) minus {@code n - i}.
+ * Note that {@link #getVirtualOffset()} taken before the read doesn't work for this, since the read may skip empty
+ * blocks, such as the EOF block in the middle of concatenated BGZF files.
+ *
+ * @author Mark Woon
+ */
+public class BgzfInputStream extends InputStream {
+  private static final int HEADER_SIZE = 18;
+  private static final int MAX_BLOCK_SIZE = 65536;
+  private final SeekableByteChannel m_channel;
+  private final Decompressor m_decompressor;
+  private final ByteBuffer m_header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  private final byte[] m_compressed = new byte[MAX_BLOCK_SIZE];
+  private final byte[] m_block = new byte[MAX_BLOCK_SIZE];
+  private final CRC32 m_crc = new CRC32();
+  /** Offset of the current block in the file. */
+  private long m_blockAddress;
+  /** Offset of the next block in the file. */
+  private long m_nextBlockAddress;
+  private int m_blockLength;
+  private int m_pos;
+  private boolean m_isClosed;
+
+
+  public BgzfInputStream(Path file) throws IOException {
+    this(FileChannel.open(file, StandardOpenOption.READ));
+  }
+
+  public BgzfInputStream(SeekableByteChannel channel) {
+    m_channel = channel;
+    m_decompressor = Compression.getProvider().newDecompressor(true);
+  }
+
+
+  /**
+   * Checks if a file is BGZF (i.e. starts with a gzip header that has a BGZF extra field).
+   */
+  public static boolean isBgzf(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining() && channel.read(header) != -1) {
+        // keep reading
+      }
+      return !header.hasRemaining() && isBgzfHeader(header);
+    }
+  }
+
+  private static boolean isBgzfHeader(ByteBuffer header) {
+    return (header.get(0) & 0xff) == 0x1f && (header.get(1) & 0xff) == 0x8b && header.get(2) == 8 &&
+        (header.get(3) & 4) != 0 && header.getShort(10) == 6 &&
+        header.get(12) == 'B' && header.get(13) == 'C' && header.getShort(14) == 2;
+  }
+
+
+  /**
+   * Gets the virtual offset of the next byte to be read.
+   */
+  public long getVirtualOffset() {
+    if (m_pos == m_blockLength) {
+      return m_nextBlockAddress << 16;
+    }
+    return (m_blockAddress << 16) | m_pos;
+  }
+
+  /**
+   * Gets the virtual offset just past the last byte read.  This is the same as {@link #getVirtualOffset()}, except at
+   * the end of a block, where this points to the end of that block rather than the start of the next one.
+   */
+  public long getLastReadOffset() {
+    return (m_blockAddress << 16) | m_pos;
+  }
+
+  /**
+   * Moves to the specified virtual offset.
+   */
+  public void seek(long virtualOffset) throws IOException {
+
+    ensureOpen();
+    long blockAddress = virtualOffset >>> 16;
+    int pos = (int)(virtualOffset & 0xffff);
+    if (blockAddress != m_blockAddress || m_blockLength == 0) {
+      m_nextBlockAddress = blockAddress;
+      m_blockLength = 0;
+      m_pos = 0;
+      if (!readBlock() && pos > 0) {
+        throw new EOFException("Virtual offset is past end of file");
+      }
+    }
+    if (pos > m_blockLength) {
+      throw new IOException("Invalid virtual offset " + virtualOffset + " (block only has " + m_blockLength +
+          " bytes)");
+    }
+    m_pos = pos;
+  }
+
+
+  @Override
+  public int read() throws IOException {
+    ensureOpen();
+    if (m_pos == m_blockLength && !nextBlock()) {
+      return -1;
+    }
+    return m_block[m_pos++] & 0xff;
+  }
+
+  /**
+   * Reads up to {@code len} bytes from the current block.
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    ensureOpen();
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return 0;
+    }
+    if (m_pos == m_blockLength && !nextBlock()) {
+      return -1;
+    }
+    int n = Math.min(len, m_blockLength - m_pos);
+    System.arraycopy(m_block, m_pos, b, off, n);
+    m_pos += n;
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    ensureOpen();
+    return m_blockLength - m_pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!m_isClosed) {
+      m_isClosed = true;
+      m_decompressor.close();
+      m_channel.close();
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (m_isClosed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+
+  /**
+   * Reads blocks until one with data is found (the last block of a BGZF file is empty).
+   *
+   * @return false if there are no more blocks
+   */
+  private boolean nextBlock() throws IOException {
+    while (readBlock()) {
+      if (m_blockLength > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads the block at {@code m_nextBlockAddress}.
+   *
+   * @return false if there are no more blocks
+   */
+  private boolean readBlock() throws IOException {
+
+    m_channel.position(m_nextBlockAddress);
+    m_header.clear();
+    if (!readFully(m_header)) {
+      if (m_header.position() == 0) {
+        m_blockAddress = m_nextBlockAddress;
+        m_blockLength = 0;
+        m_pos = 0;
+        return false;
+      }
+      throw new EOFException("Unexpected end of BGZF block header");
+    }
+    if (!isBgzfHeader(m_header)) {
+      throw new ZipException("Not in BGZF format");
+    }
+    int blockSize = (m_header.getShort(16) & 0xffff) + 1;
+    // compressed data, then CRC32 and ISIZE
+    int remaining = blockSize - HEADER_SIZE;
+    if (remaining < 8) {
+      throw new ZipException("Invalid BGZF block size " + blockSize);
+    }
+    ByteBuffer rest = ByteBuffer.wrap(m_compressed, 0, remaining);
+    if (!readFully(rest)) {
+      throw new EOFException("Unexpected end of BGZF block");
+    }
+    ByteBuffer trailer = ByteBuffer.wrap(m_compressed, remaining - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+    long expectedCrc = trailer.getInt() & 0xffffffffL;
+    int expectedSize = trailer.getInt();
+    if (expectedSize < 0 || expectedSize > MAX_BLOCK_SIZE) {
+      throw new ZipException("Invalid BGZF block length " + expectedSize);
+    }
+
+    int size = 0;
+    m_decompressor.reset();
+    m_decompressor.setInput(m_compressed, 0, remaining - 8);
+    try {
+      while (!m_decompressor.finished() && size < expectedSize) {
+        int n = m_decompressor.inflate(m_block, size, expectedSize - size);
+        if (n == 0 && m_decompressor.needsInput()) {
+          break;
+        }
+        size += n;
+      }
+    } catch (DataFormatException ex) {
+      throw new ZipException(ex.getMessage() != null ? ex.getMessage() : "Invalid BGZF block");
+    }
+    if (size != expectedSize) {
+      throw new ZipException("Invalid BGZF block length (expected " + expectedSize + " but got " + size + " bytes)");
+    }
+    m_crc.reset();
+    m_crc.update(m_block, 0, size);
+    if (m_crc.getValue() != expectedCrc) {
+      throw new ZipException("Corrupt BGZF block at " + m_nextBlockAddress);
+    }
+
+    m_blockAddress = m_nextBlockAddress;
+    m_nextBlockAddress += blockSize;
+    m_blockLength = size;
+    m_pos = 0;
+    return true;
+  }
+
+  /**
+   * Reads until {@code buffer} is full.
+   *
+   * @return false if the end of the channel was reached first
+   */
+  private boolean readFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (m_channel.read(buffer) == -1) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
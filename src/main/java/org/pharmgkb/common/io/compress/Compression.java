@@ -0,0 +1,135 @@
+package org.pharmgkb.common.io.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Entry point for creating gzip and zip streams using the best available {@link CompressionProvider}.
+ * <p>
+ * By default, the available provider with the highest priority is used.  Set the {@value #PROVIDER_PROPERTY} system
+ * property to the name of a provider (e.g. {@code jdk}) to pick one explicitly.
+ *
+ * @author Mark Woon
+ */
+public final class Compression {
+  private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  public static final String PROVIDER_PROPERTY = "pgkb.compression.provider";
+  private static volatile @Nullable CompressionProvider s_provider;
+
+
+  private Compression() {
+  }
+
+
+  /**
+   * Gets the provider in use.
+   */
+  public static CompressionProvider getProvider() {
+
+    CompressionProvider provider = s_provider;
+    if (provider == null) {
+      provider = detectProvider();
+      s_provider = provider;
+    }
+    return provider;
+  }
+
+  /**
+   * Sets the provider to use.
+   *
+   * @param provider the provider to use, or null to go back to picking one automatically
+   */
+  public static void setProvider(@Nullable CompressionProvider provider) {
+    if (provider != null && !provider.isAvailable()) {
+      throw new IllegalArgumentException("Compression provider '" + provider.getName() + "' is not available");
+    }
+    s_provider = provider;
+  }
+
+  /**
+   * Returns true if the JDK's built-in {@link java.util.zip} classes are in use.
+   */
+  public static boolean isJdk() {
+    return getProvider() instanceof JdkCompressionProvider;
+  }
+
+
+  private static CompressionProvider detectProvider() {
+
+    List<CompressionProvider> providers = new ArrayList<>();
+    Iterator<CompressionProvider> it = ServiceLoader.load(CompressionProvider.class,
+        Compression.class.getClassLoader()).iterator();
+    while (true) {
+      try {
+        if (!it.hasNext()) {
+          break;
+        }
+        CompressionProvider provider = it.next();
+        if (provider.isAvailable()) {
+          providers.add(provider);
+        }
+      } catch (ServiceConfigurationError ex) {
+        sf_logger.debug("Error loading compression provider", ex);
+      }
+    }
+
+    String name = System.getProperty(PROVIDER_PROPERTY);
+    if (name != null) {
+      for (CompressionProvider provider : providers) {
+        if (provider.getName().equals(name)) {
+          return provider;
+        }
+      }
+      sf_logger.warn("Compression provider '{}' is not available, using default", name);
+    }
+    return providers.stream()
+        .max(Comparator.comparingInt(CompressionProvider::getPriority))
+        .orElseGet(JdkCompressionProvider::new);
+  }
+
+
+  /**
+   * Creates a stream that reads gzipped data from {@code in}.  Concatenated gzip members are supported.
+   */
+  public static InputStream newGzipInputStream(InputStream in) throws IOException {
+    CompressionProvider provider = getProvider();
+    if (provider instanceof JdkCompressionProvider) {
+      return new GZIPInputStream(in, 65536);
+    }
+    return new GzipDecompressorInputStream(in, provider.newDecompressor(true));
+  }
+
+  /**
+   * Creates a stream that gzips data written to it into {@code out}.
+   */
+  public static OutputStream newGzipOutputStream(OutputStream out) throws IOException {
+    CompressionProvider provider = getProvider();
+    if (provider instanceof JdkCompressionProvider) {
+      return new GZIPOutputStream(out, 65536);
+    }
+    return new GzipCompressorOutputStream(out, provider.newCompressor(-1, true));
+  }
+
+  /**
+   * Creates a stream that reads the specified entry from zip data.
+   *
+   * @throws java.io.FileNotFoundException if there's no such entry
+   */
+  public static InputStream openZipEntry(InputStream in, String entryName) throws IOException {
+    return new ZipEntryInputStream(in, entryName, getProvider().newDecompressor(true));
+  }
+}
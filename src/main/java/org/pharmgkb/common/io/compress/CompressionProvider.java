@@ -0,0 +1,43 @@
+package org.pharmgkb.common.io.compress;
+
+import java.util.ServiceLoader;
+
+
+/**
+ * Service provider for deflate implementations.  Providers are found with {@link ServiceLoader}, and
+ * {@link Compression} uses the available provider with the highest priority.
+ *
+ * @author Mark Woon
+ */
+public interface CompressionProvider {
+
+  /**
+   * Gets the name used to select this provider with the {@value Compression#PROVIDER_PROPERTY} system property.
+   */
+  String getName();
+
+  /**
+   * Gets the priority of this provider.  The JDK provider has priority 0.
+   */
+  int getPriority();
+
+  /**
+   * Returns true if this provider can be used (e.g. its native library loaded).
+   */
+  boolean isAvailable();
+
+  /**
+   * Creates a new decompressor.
+   *
+   * @param nowrap if true, expect raw deflate data (as in gzip and zip files) instead of the zlib format
+   */
+  Decompressor newDecompressor(boolean nowrap);
+
+  /**
+   * Creates a new compressor.
+   *
+   * @param level compression level (0-9), or -1 for the default
+   * @param nowrap if true, write raw deflate data (as in gzip and zip files) instead of the zlib format
+   */
+  Compressor newCompressor(int level, boolean nowrap);
+}
@@ -0,0 +1,52 @@
+package org.pharmgkb.common.io.compress;
+
+import java.util.zip.Deflater;
+
+
+/**
+ * Streaming deflater, modeled on {@link Deflater}.
+ * <p>
+ * Implementations are not thread-safe.
+ *
+ * @author Mark Woon
+ */
+public interface Compressor extends AutoCloseable {
+
+  /**
+   * Sets input data.  The array must not be modified until {@link #needsInput()} returns true.
+   */
+  void setInput(byte[] b, int off, int len);
+
+  /**
+   * Indicates that compression should end with the current input.
+   */
+  void finish();
+
+  /**
+   * Deflates into the specified buffer.
+   *
+   * @return the number of bytes of compressed data written, which may be 0 if more input is needed
+   */
+  int deflate(byte[] b, int off, int len);
+
+  /**
+   * Returns true if the end of the compressed output has been reached.
+   */
+  boolean finished();
+
+  /**
+   * Returns true if all input has been consumed.
+   */
+  boolean needsInput();
+
+  /**
+   * Resets so that a new set of input can be processed.
+   */
+  void reset();
+
+  /**
+   * Releases resources.  The compressor can't be used afterwards.
+   */
+  @Override
+  void close();
+}
@@ -0,0 +1,58 @@
+package org.pharmgkb.common.io.compress;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * Streaming inflater, modeled on {@link Inflater}.
+ * <p>
+ * Implementations are not thread-safe.
+ *
+ * @author Mark Woon
+ */
+public interface Decompressor extends AutoCloseable {
+
+  /**
+   * Sets input data.  The array must not be modified until {@link #needsInput()} returns true.
+   */
+  void setInput(byte[] b, int off, int len);
+
+  /**
+   * Inflates into the specified buffer.
+   *
+   * @return the number of bytes inflated, which may be 0 if more input is needed or the end of the stream was reached
+   */
+  int inflate(byte[] b, int off, int len) throws DataFormatException;
+
+  /**
+   * Returns true if the end of the compressed data has been reached.
+   */
+  boolean finished();
+
+  /**
+   * Returns true if all input has been consumed.
+   */
+  boolean needsInput();
+
+  /**
+   * Returns true if a preset dictionary is needed, which isn't supported.
+   */
+  boolean needsDictionary();
+
+  /**
+   * Gets the number of bytes of input that haven't been consumed (e.g. data following the end of the compressed data).
+   */
+  int getRemaining();
+
+  /**
+   * Resets so that a new set of input can be processed.
+   */
+  void reset();
+
+  /**
+   * Releases resources.  The decompressor can't be used afterwards.
+   */
+  @Override
+  void close();
+}
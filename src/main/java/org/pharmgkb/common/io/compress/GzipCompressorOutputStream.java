@@ -0,0 +1,99 @@
+package org.pharmgkb.common.io.compress;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Writes gzipped data using a {@link Compressor}, like {@link GZIPOutputStream}.
+ *
+ * @author Mark Woon
+ */
+class GzipCompressorOutputStream extends FilterOutputStream {
+  /** Same header as {@link GZIPOutputStream}: magic, deflate, no flags, no mtime, no extra flags, OS 0. */
+  private static final byte[] sf_header = new byte[] { 0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, 0 };
+  private final Compressor m_compressor;
+  private final byte[] m_buffer = new byte[65536];
+  private final CRC32 m_crc = new CRC32();
+  private long m_size;
+  private boolean m_isFinished;
+  private boolean m_isClosed;
+
+
+  GzipCompressorOutputStream(OutputStream out, Compressor compressor) throws IOException {
+    super(out);
+    m_compressor = compressor;
+    out.write(sf_header);
+  }
+
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] { (byte)b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+
+    if (m_isFinished) {
+      throw new IOException("write beyond end of stream");
+    }
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return;
+    }
+    m_crc.update(b, off, len);
+    m_size += len;
+    m_compressor.setInput(b, off, len);
+    while (!m_compressor.needsInput()) {
+      int n = m_compressor.deflate(m_buffer, 0, m_buffer.length);
+      if (n > 0) {
+        out.write(m_buffer, 0, n);
+      }
+    }
+  }
+
+  /**
+   * Finishes writing compressed data without closing the underlying stream.
+   */
+  public void finish() throws IOException {
+
+    if (m_isFinished) {
+      return;
+    }
+    m_isFinished = true;
+    m_compressor.finish();
+    while (!m_compressor.finished()) {
+      int n = m_compressor.deflate(m_buffer, 0, m_buffer.length);
+      if (n > 0) {
+        out.write(m_buffer, 0, n);
+      }
+    }
+    long crc = m_crc.getValue();
+    long size = m_size & 0xffffffffL;
+    out.write(new byte[] {
+        (byte)crc, (byte)(crc >> 8), (byte)(crc >> 16), (byte)(crc >> 24),
+        (byte)size, (byte)(size >> 8), (byte)(size >> 16), (byte)(size >> 24)
+    });
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (m_isClosed) {
+      return;
+    }
+    m_isClosed = true;
+    try {
+      finish();
+    } finally {
+      m_compressor.close();
+      out.close();
+    }
+  }
+}
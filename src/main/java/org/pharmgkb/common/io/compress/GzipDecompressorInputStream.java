@@ -0,0 +1,183 @@
+package org.pharmgkb.common.io.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+
+/**
+ * Reads gzipped data using a {@link Decompressor}, like {@link GZIPInputStream}.  Concatenated gzip members are
+ * supported.
+ *
+ * @author Mark Woon
+ */
+class GzipDecompressorInputStream extends InputStream {
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+  private final InputBuffer m_buffer;
+  private final Decompressor m_decompressor;
+  private final CRC32 m_crc = new CRC32();
+  private long m_memberSize;
+  private boolean m_needHeader;
+  private boolean m_eof;
+  private boolean m_isClosed;
+
+
+  GzipDecompressorInputStream(InputStream in, Decompressor decompressor) throws IOException {
+    m_buffer = new InputBuffer(in);
+    m_decompressor = decompressor;
+    try {
+      if (!readHeader(true)) {
+        throw new EOFException();
+      }
+    } catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    ensureOpen();
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return 0;
+    }
+    while (!m_eof) {
+      if (m_needHeader) {
+        if (!readHeader(false)) {
+          m_eof = true;
+          break;
+        }
+      }
+      if (m_decompressor.finished()) {
+        readTrailer();
+        continue;
+      }
+      int n = m_buffer.inflate(m_decompressor, b, off, len);
+      if (n > 0) {
+        m_crc.update(b, off, n);
+        m_memberSize += n;
+        return n;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int available() throws IOException {
+    ensureOpen();
+    return m_eof ? 0 : 1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!m_isClosed) {
+      m_isClosed = true;
+      m_decompressor.close();
+      m_buffer.close();
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (m_isClosed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+
+  /**
+   * Reads the header of the next gzip member.
+   *
+   * @return false if there are no more members
+   */
+  private boolean readHeader(boolean isFirst) throws IOException {
+
+    if (!m_buffer.fill()) {
+      return false;
+    }
+    CRC32 crc = new CRC32();
+    try {
+      if (readUShort(crc) != 0x8b1f || readUByte(crc) != 8) {
+        if (isFirst) {
+          throw new ZipException("Not in GZIP format");
+        }
+        // trailing garbage, same as GZIPInputStream
+        return false;
+      }
+    } catch (EOFException ex) {
+      if (isFirst) {
+        throw ex;
+      }
+      return false;
+    }
+    int flags = readUByte(crc);
+    // skip MTIME, XFL and OS
+    for (int x = 0; x < 6; x += 1) {
+      readUByte(crc);
+    }
+    if ((flags & FEXTRA) == FEXTRA) {
+      for (int x = readUShort(crc); x > 0; x -= 1) {
+        readUByte(crc);
+      }
+    }
+    if ((flags & FNAME) == FNAME) {
+      while (readUByte(crc) != 0) {
+        // skip file name
+      }
+    }
+    if ((flags & FCOMMENT) == FCOMMENT) {
+      while (readUByte(crc) != 0) {
+        // skip comment
+      }
+    }
+    if ((flags & FHCRC) == FHCRC) {
+      int expected = (int)crc.getValue() & 0xffff;
+      if (m_buffer.readUShort() != expected) {
+        throw new ZipException("Corrupt GZIP header");
+      }
+    }
+    m_needHeader = false;
+    m_decompressor.reset();
+    m_crc.reset();
+    m_memberSize = 0;
+    m_buffer.startInflating(m_decompressor);
+    return true;
+  }
+
+  private int readUByte(CRC32 crc) throws IOException {
+    int b = m_buffer.readUByte();
+    crc.update(b);
+    return b;
+  }
+
+  private int readUShort(CRC32 crc) throws IOException {
+    return readUByte(crc) | (readUByte(crc) << 8);
+  }
+
+  /**
+   * Reads and checks the trailer of the current gzip member.
+   */
+  private void readTrailer() throws IOException {
+
+    if (m_buffer.readUInt() != m_crc.getValue() || m_buffer.readUInt() != (m_memberSize & 0xffffffffL)) {
+      throw new ZipException("Corrupt GZIP trailer");
+    }
+    m_needHeader = true;
+  }
+}
@@ -0,0 +1,155 @@
+package org.pharmgkb.common.io.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.ZipException;
+
+
+/**
+ * Buffers compressed input for a {@link Decompressor}, and reads the headers and trailers around the compressed data.
+ *
+ * @author Mark Woon
+ */
+class InputBuffer {
+  private final InputStream m_in;
+  private final byte[] m_buffer = new byte[65536];
+  private int m_pos;
+  private int m_limit;
+
+
+  InputBuffer(InputStream in) {
+    m_in = in;
+  }
+
+
+  void close() throws IOException {
+    m_in.close();
+  }
+
+
+  /**
+   * Refills the buffer if it's empty.
+   *
+   * @return false if there's no more data
+   */
+  boolean fill() throws IOException {
+
+    if (m_pos < m_limit) {
+      return true;
+    }
+    int n;
+    do {
+      n = m_in.read(m_buffer, 0, m_buffer.length);
+    } while (n == 0);
+    m_pos = 0;
+    m_limit = Math.max(n, 0);
+    return n > 0;
+  }
+
+  int readUByte() throws IOException {
+    if (!fill()) {
+      throw new EOFException();
+    }
+    return m_buffer[m_pos++] & 0xff;
+  }
+
+  int readUShort() throws IOException {
+    return readUByte() | (readUByte() << 8);
+  }
+
+  long readUInt() throws IOException {
+    return (long)readUShort() | ((long)readUShort() << 16);
+  }
+
+  long readULong() throws IOException {
+    return readUInt() | (readUInt() << 32);
+  }
+
+  byte[] readBytes(int len) throws IOException {
+    byte[] bytes = new byte[len];
+    int off = 0;
+    while (off < len) {
+      if (!fill()) {
+        throw new EOFException();
+      }
+      int n = Math.min(len - off, m_limit - m_pos);
+      System.arraycopy(m_buffer, m_pos, bytes, off, n);
+      m_pos += n;
+      off += n;
+    }
+    return bytes;
+  }
+
+  void skip(long len) throws IOException {
+    while (len > 0) {
+      if (!fill()) {
+        throw new EOFException();
+      }
+      int n = (int)Math.min(len, m_limit - m_pos);
+      m_pos += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Copies up to {@code len} buffered bytes into {@code b}.
+   *
+   * @return the number of bytes copied, or -1 if there's no more data
+   */
+  int read(byte[] b, int off, int len) throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    int n = Math.min(len, m_limit - m_pos);
+    System.arraycopy(m_buffer, m_pos, b, off, n);
+    m_pos += n;
+    return n;
+  }
+
+
+  /**
+   * Inflates into {@code b}, feeding the decompressor from this buffer.  Once the decompressor finishes, any input it
+   * didn't use is left in this buffer to read the trailer from.
+   *
+   * @return the number of bytes inflated, or 0 if the decompressor finished
+   */
+  int inflate(Decompressor decompressor, byte[] b, int off, int len) throws IOException {
+
+    while (true) {
+      int n;
+      try {
+        n = decompressor.inflate(b, off, len);
+      } catch (DataFormatException ex) {
+        throw new ZipException(ex.getMessage() != null ? ex.getMessage() : "Invalid ZLIB data format");
+      }
+      if (decompressor.finished()) {
+        m_pos = m_limit - decompressor.getRemaining();
+        return n;
+      }
+      if (n > 0) {
+        return n;
+      }
+      if (decompressor.needsDictionary()) {
+        throw new ZipException("Unexpected preset dictionary");
+      }
+      if (decompressor.needsInput()) {
+        m_pos = m_limit;
+        if (!fill()) {
+          throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        decompressor.setInput(m_buffer, m_pos, m_limit - m_pos);
+      }
+    }
+  }
+
+  /**
+   * Starts feeding a (reset) decompressor from the current position.
+   */
+  void startInflating(Decompressor decompressor) {
+    if (m_pos < m_limit) {
+      decompressor.setInput(m_buffer, m_pos, m_limit - m_pos);
+    }
+  }
+}
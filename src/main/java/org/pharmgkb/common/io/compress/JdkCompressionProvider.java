@@ -0,0 +1,134 @@
+package org.pharmgkb.common.io.compress;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Provider backed by {@link Inflater} and {@link Deflater}, which is always available.
+ *
+ * @author Mark Woon
+ */
+public class JdkCompressionProvider implements CompressionProvider {
+  public static final String NAME = "jdk";
+
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public int getPriority() {
+    return 0;
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  public Decompressor newDecompressor(boolean nowrap) {
+    return new JdkDecompressor(new Inflater(nowrap));
+  }
+
+  @Override
+  public Compressor newCompressor(int level, boolean nowrap) {
+    return new JdkCompressor(new Deflater(level, nowrap));
+  }
+
+
+  private static class JdkDecompressor implements Decompressor {
+    private final Inflater m_inflater;
+
+    JdkDecompressor(Inflater inflater) {
+      m_inflater = inflater;
+    }
+
+    @Override
+    public void setInput(byte[] b, int off, int len) {
+      m_inflater.setInput(b, off, len);
+    }
+
+    @Override
+    public int inflate(byte[] b, int off, int len) throws DataFormatException {
+      return m_inflater.inflate(b, off, len);
+    }
+
+    @Override
+    public boolean finished() {
+      return m_inflater.finished();
+    }
+
+    @Override
+    public boolean needsInput() {
+      return m_inflater.needsInput();
+    }
+
+    @Override
+    public boolean needsDictionary() {
+      return m_inflater.needsDictionary();
+    }
+
+    @Override
+    public int getRemaining() {
+      return m_inflater.getRemaining();
+    }
+
+    @Override
+    public void reset() {
+      m_inflater.reset();
+    }
+
+    @Override
+    public void close() {
+      m_inflater.end();
+    }
+  }
+
+
+  private static class JdkCompressor implements Compressor {
+    private final Deflater m_deflater;
+
+    JdkCompressor(Deflater deflater) {
+      m_deflater = deflater;
+    }
+
+    @Override
+    public void setInput(byte[] b, int off, int len) {
+      m_deflater.setInput(b, off, len);
+    }
+
+    @Override
+    public void finish() {
+      m_deflater.finish();
+    }
+
+    @Override
+    public int deflate(byte[] b, int off, int len) {
+      return m_deflater.deflate(b, off, len);
+    }
+
+    @Override
+    public boolean finished() {
+      return m_deflater.finished();
+    }
+
+    @Override
+    public boolean needsInput() {
+      return m_deflater.needsInput();
+    }
+
+    @Override
+    public void reset() {
+      m_deflater.reset();
+    }
+
+    @Override
+    public void close() {
+      m_deflater.end();
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package org.pharmgkb.common.io.compress;
+
+import java.util.zip.DataFormatException;
+
+
+/**
+ * Provider backed by a native zlib-compatible library (ideally zlib-ng), which is only available if the
+ * {@code pgkbzlib} JNI library could be loaded.
+ *
+ * @author Mark Woon
+ */
+public class NativeCompressionProvider implements CompressionProvider {
+  public static final String NAME = "native";
+  private static final byte[] sf_empty = new byte[0];
+
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public int getPriority() {
+    return 10;
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return NativeZlib.isLoaded();
+  }
+
+  @Override
+  public Decompressor newDecompressor(boolean nowrap) {
+    return new NativeDecompressor(nowrap);
+  }
+
+  @Override
+  public Compressor newCompressor(int level, boolean nowrap) {
+    return new NativeCompressor(level, nowrap);
+  }
+
+
+  private static long checkHandle(long handle) {
+    if (handle == 0) {
+      throw new OutOfMemoryError("Cannot allocate z_stream");
+    }
+    return handle;
+  }
+
+
+  /**
+   * Owns a native {@code z_stream}, and frees it when run.  This must not reference the (de)compressor using it, so
+   * that it can be run by {@link PlatformCleaner} if the (de)compressor is never closed.
+   * <p>
+   * The (de)compressor updates its own fields after every native call, which keeps it reachable (and the
+   * {@code z_stream} alive) for the duration of the call.
+   */
+  private static final class ZStream implements Runnable {
+    private final boolean m_isDeflate;
+    private long m_handle;
+
+    ZStream(long handle, boolean isDeflate) {
+      m_handle = checkHandle(handle);
+      m_isDeflate = isDeflate;
+    }
+
+    @Override
+    public void run() {
+      if (m_handle != 0) {
+        if (m_isDeflate) {
+          NativeZlib.deflateEnd(m_handle);
+        } else {
+          NativeZlib.inflateEnd(m_handle);
+        }
+        m_handle = 0;
+      }
+    }
+  }
+
+
+  private static class NativeDecompressor implements Decompressor {
+    private final int[] m_result = new int[2];
+    private final ZStream m_stream;
+    private final Runnable m_cleanable;
+    private byte[] m_input = sf_empty;
+    private int m_inputOffset;
+    private int m_inputLength;
+    private boolean m_isFinished;
+    private boolean m_needsDictionary;
+
+    NativeDecompressor(boolean nowrap) {
+      m_stream = new ZStream(NativeZlib.inflateInit(nowrap), false);
+      m_cleanable = PlatformCleaner.register(this, m_stream);
+    }
+
+    @Override
+    public void setInput(byte[] b, int off, int len) {
+      if (off < 0 || len < 0 || len > b.length - off) {
+        throw new ArrayIndexOutOfBoundsException();
+      }
+      m_input = b;
+      m_inputOffset = off;
+      m_inputLength = len;
+    }
+
+    @Override
+    public int inflate(byte[] b, int off, int len) throws DataFormatException {
+
+      ensureOpen();
+      if (off < 0 || len < 0 || len > b.length - off) {
+        throw new ArrayIndexOutOfBoundsException();
+      }
+      if (m_isFinished || m_needsDictionary || len == 0) {
+        return 0;
+      }
+      int rez = NativeZlib.inflate(m_stream.m_handle, m_input, m_inputOffset, m_inputLength, b, off, len, m_result);
+      m_inputOffset += m_result[0];
+      m_inputLength -= m_result[0];
+      switch (rez) {
+        case NativeZlib.Z_OK:
+        case NativeZlib.Z_BUF_ERROR:
+          break;
+        case NativeZlib.Z_STREAM_END:
+          m_isFinished = true;
+          break;
+        case NativeZlib.Z_NEED_DICT:
+          m_needsDictionary = true;
+          break;
+        default:
+          throw new DataFormatException("Invalid ZLIB data format (" + rez + ")");
+      }
+      return m_result[1];
+    }
+
+    @Override
+    public boolean finished() {
+      return m_isFinished;
+    }
+
+    @Override
+    public boolean needsInput() {
+      return m_inputLength <= 0;
+    }
+
+    @Override
+    public boolean needsDictionary() {
+      return m_needsDictionary;
+    }
+
+    @Override
+    public int getRemaining() {
+      return m_inputLength;
+    }
+
+    @Override
+    public void reset() {
+      ensureOpen();
+      NativeZlib.inflateReset(m_stream.m_handle);
+      m_input = sf_empty;
+      m_inputOffset = 0;
+      m_inputLength = 0;
+      m_isFinished = false;
+      m_needsDictionary = false;
+    }
+
+    @Override
+    public void close() {
+      m_cleanable.run();
+      m_input = sf_empty;
+    }
+
+    private void ensureOpen() {
+      if (m_stream.m_handle == 0) {
+        throw new NullPointerException("Decompressor has been closed");
+      }
+    }
+  }
+
+
+  private static class NativeCompressor implements Compressor {
+    private final int[] m_result = new int[2];
+    private final ZStream m_stream;
+    private final Runnable m_cleanable;
+    private byte[] m_input = sf_empty;
+    private int m_inputOffset;
+    private int m_inputLength;
+    private boolean m_isFinishing;
+    private boolean m_isFinished;
+
+    NativeCompressor(int level, boolean nowrap) {
+      if ((level < 0 || level > 9) && level != -1) {
+        throw new IllegalArgumentException("Invalid compression level: " + level);
+      }
+      m_stream = new ZStream(NativeZlib.deflateInit(level, nowrap), true);
+      m_cleanable = PlatformCleaner.register(this, m_stream);
+    }
+
+    @Override
+    public void setInput(byte[] b, int off, int len) {
+      if (off < 0 || len < 0 || len > b.length - off) {
+        throw new ArrayIndexOutOfBoundsException();
+      }
+      m_input = b;
+      m_inputOffset = off;
+      m_inputLength = len;
+    }
+
+    @Override
+    public void finish() {
+      m_isFinishing = true;
+    }
+
+    @Override
+    public int deflate(byte[] b, int off, int len) {
+
+      ensureOpen();
+      if (off < 0 || len < 0 || len > b.length - off) {
+        throw new ArrayIndexOutOfBoundsException();
+      }
+      if (m_isFinished || len == 0) {
+        return 0;
+      }
+      int rez = NativeZlib.deflate(m_stream.m_handle, m_input, m_inputOffset, m_inputLength, b, off, len, m_isFinishing,
+          m_result);
+      m_inputOffset += m_result[0];
+      m_inputLength -= m_result[0];
+      if (rez == NativeZlib.Z_STREAM_END) {
+        m_isFinished = true;
+      } else if (rez != NativeZlib.Z_OK && rez != NativeZlib.Z_BUF_ERROR) {
+        throw new IllegalStateException("deflate failed (" + rez + ")");
+      }
+      return m_result[1];
+    }
+
+    @Override
+    public boolean finished() {
+      return m_isFinished;
+    }
+
+    @Override
+    public boolean needsInput() {
+      return m_inputLength <= 0;
+    }
+
+    @Override
+    public void reset() {
+      ensureOpen();
+      NativeZlib.deflateReset(m_stream.m_handle);
+      m_input = sf_empty;
+      m_inputOffset = 0;
+      m_inputLength = 0;
+      m_isFinishing = false;
+      m_isFinished = false;
+    }
+
+    @Override
+    public void close() {
+      m_cleanable.run();
+      m_input = sf_empty;
+    }
+
+    private void ensureOpen() {
+      if (m_stream.m_handle == 0) {
+        throw new NullPointerException("Compressor has been closed");
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package org.pharmgkb.common.io.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * JNI bindings to a zlib-compatible library (see {@code src/main/c/pgkbzlib.c}), meant to be built against zlib-ng in
+ * zlib-compat mode.
+ * <p>
+ * The library is loaded from {@code native/<os>-<arch>/} next to this class if it was bundled in the jar, otherwise
+ * from {@code java.library.path}.
+ *
+ * @author Mark Woon
+ */
+final class NativeZlib {
+  private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  static final String LIBRARY_NAME = "pgkbzlib";
+  /** Return codes from zlib. */
+  static final int Z_OK = 0;
+  static final int Z_STREAM_END = 1;
+  static final int Z_NEED_DICT = 2;
+  static final int Z_BUF_ERROR = -5;
+  private static final @Nullable Throwable sf_loadError = load();
+
+
+  private NativeZlib() {
+  }
+
+
+  static boolean isLoaded() {
+    return sf_loadError == null;
+  }
+
+  /**
+   * Gets why the library couldn't be loaded, or null if it was.
+   */
+  static @Nullable Throwable getLoadError() {
+    return sf_loadError;
+  }
+
+
+  /**
+   * Gets the directory name for the current platform, e.g. {@code linux-x86_64}.
+   */
+  static String getPlatform() {
+
+    String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+    if (os.startsWith("mac") || os.startsWith("darwin")) {
+      os = "osx";
+    } else if (os.startsWith("windows")) {
+      os = "windows";
+    } else if (os.startsWith("linux")) {
+      os = "linux";
+    }
+    String arch = System.getProperty("os.arch", "").toLowerCase(Locale.ROOT);
+    if (arch.equals("amd64") || arch.equals("x86_64")) {
+      arch = "x86_64";
+    } else if (arch.equals("arm64") || arch.equals("aarch64")) {
+      arch = "aarch64";
+    }
+    return os + "-" + arch;
+  }
+
+  private static @Nullable Throwable load() {
+
+    String filename = System.mapLibraryName(LIBRARY_NAME);
+    try (InputStream in = NativeZlib.class.getResourceAsStream("native/" + getPlatform() + "/" + filename)) {
+      if (in != null) {
+        Path file = Files.createTempFile(LIBRARY_NAME, "-" + filename);
+        file.toFile().deleteOnExit();
+        Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        System.load(file.toAbsolutePath().toString());
+      } else {
+        System.loadLibrary(LIBRARY_NAME);
+      }
+      return null;
+    } catch (IOException | UnsatisfiedLinkError | SecurityException ex) {
+      sf_logger.debug("Native zlib is not available, using JDK", ex);
+      return ex;
+    }
+  }
+
+
+  /**
+   * Creates a z_stream for inflating.
+   *
+   * @return pointer to the stream
+   */
+  static native long inflateInit(boolean nowrap);
+
+  /**
+   * Inflates from {@code in} to {@code out}.
+   *
+   * @param result receives the number of bytes consumed from {@code in} and written to {@code out}
+   * @return zlib return code
+   */
+  static native int inflate(long stream, byte[] in, int inOff, int inLen, byte[] out, int outOff, int outLen,
+      int[] result);
+
+  static native int inflateReset(long stream);
+
+  static native void inflateEnd(long stream);
+
+
+  /**
+   * Creates a z_stream for deflating.
+   *
+   * @return pointer to the stream
+   */
+  static native long deflateInit(int level, boolean nowrap);
+
+  /**
+   * Deflates from {@code in} to {@code out}.
+   *
+   * @param finish true if this is the last of the input
+   * @param result receives the number of bytes consumed from {@code in} and written to {@code out}
+   * @return zlib return code
+   */
+  static native int deflate(long stream, byte[] in, int inOff, int inLen, byte[] out, int outOff, int outLen,
+      boolean finish, int[] result);
+
+  static native int deflateReset(long stream);
+
+  static native void deflateEnd(long stream);
+}
@@ -0,0 +1,52 @@
+package org.pharmgkb.common.io.compress;
+
+/**
+ * Frees native resources that were never explicitly released once their owner becomes unreachable.
+ * <p>
+ * This is the Java 8 implementation, which relies on finalization.  The multi-release jar replaces it with the one in
+ * {@code src/main/java17} when running on Java 17+.
+ *
+ * @author Mark Woon
+ */
+final class PlatformCleaner {
+
+  private PlatformCleaner() {
+  }
+
+
+  /**
+   * Registers {@code action} to be run once {@code owner} becomes unreachable.
+   * <p>
+   * {@code action} must not reference {@code owner}, or {@code owner} will never become unreachable.  {@code owner}
+   * must hold on to the returned {@link Runnable} and run it to release the resource early (e.g. in {@code close()}).
+   *
+   * @return a {@link Runnable} that runs {@code action} at most once
+   */
+  static Runnable register(Object owner, Runnable action) {
+    return new Guardian(action);
+  }
+
+
+  private static final class Guardian implements Runnable {
+    private Runnable m_action;
+
+    Guardian(Runnable action) {
+      m_action = action;
+    }
+
+    @Override
+    public synchronized void run() {
+      if (m_action != null) {
+        Runnable action = m_action;
+        m_action = null;
+        action.run();
+      }
+    }
+
+    @Override
+    @SuppressWarnings({"deprecation", "removal"})
+    protected void finalize() {
+      run();
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package org.pharmgkb.common.io.compress;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+
+/**
+ * Reads a single entry out of a zip stream using a {@link Decompressor}, like {@link ZipInputStream}.
+ * <p>
+ * Entries before the requested one are skipped without being inflated if their local header has their size, which is
+ * the case unless the zip was written to a stream (i.e. the entry has a data descriptor).
+ *
+ * @author Mark Woon
+ */
+class ZipEntryInputStream extends InputStream {
+  private static final long LOCAL_HEADER_SIG = 0x04034b50L;
+  private static final long DATA_DESCRIPTOR_SIG = 0x08074b50L;
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+  private static final int FLAG_ENCRYPTED = 1;
+  private static final int FLAG_DATA_DESCRIPTOR = 8;
+  private static final int ZIP64_EXTRA_ID = 1;
+  private static final long ZIP64_MAGIC = 0xffffffffL;
+  private final InputBuffer m_buffer;
+  private final Decompressor m_decompressor;
+  private final CRC32 m_crc = new CRC32();
+  private Entry m_entry;
+  private long m_size;
+  private boolean m_eof;
+  private boolean m_isClosed;
+
+
+  /**
+   * Constructor.
+   *
+   * @param in the zip data
+   * @param entryName the name of the entry to read
+   * @throws FileNotFoundException if there's no such entry
+   */
+  ZipEntryInputStream(InputStream in, String entryName, Decompressor decompressor) throws IOException {
+
+    m_buffer = new InputBuffer(in);
+    m_decompressor = decompressor;
+    try {
+      Entry entry;
+      while ((entry = readLocalHeader()) != null) {
+        if (entry.name.equals(entryName)) {
+          m_entry = entry;
+          if (entry.method == DEFLATED) {
+            m_decompressor.reset();
+            m_buffer.startInflating(m_decompressor);
+          }
+          return;
+        }
+        skip(entry);
+      }
+      throw new FileNotFoundException("Cannot find " + entryName + " in zipped file");
+    } catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    ensureOpen();
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return 0;
+    }
+    if (m_eof) {
+      return -1;
+    }
+    int n;
+    if (m_entry.method == STORED) {
+      long remaining = m_entry.compressedSize - m_size;
+      n = remaining == 0 ? -1 : m_buffer.read(b, off, (int)Math.min(len, remaining));
+      if (n == -1 && remaining > 0) {
+        throw new EOFException("Unexpected end of zip entry");
+      }
+    } else {
+      n = m_decompressor.finished() ? -1 : m_buffer.inflate(m_decompressor, b, off, len);
+      if (n == 0) {
+        n = -1;
+      }
+    }
+    if (n == -1) {
+      m_eof = true;
+      finishEntry();
+      return -1;
+    }
+    m_crc.update(b, off, n);
+    m_size += n;
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    ensureOpen();
+    return m_eof ? 0 : 1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!m_isClosed) {
+      m_isClosed = true;
+      m_decompressor.close();
+      m_buffer.close();
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (m_isClosed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+
+  /**
+   * Reads the next local file header.
+   *
+   * @return null if there are no more entries
+   */
+  private Entry readLocalHeader() throws IOException {
+
+    if (!m_buffer.fill() || m_buffer.readUInt() != LOCAL_HEADER_SIG) {
+      // end of stream or start of central directory
+      return null;
+    }
+    Entry entry = new Entry();
+    m_buffer.readUShort(); // version needed
+    entry.flags = m_buffer.readUShort();
+    entry.method = m_buffer.readUShort();
+    m_buffer.readUInt(); // time and date
+    entry.crc = m_buffer.readUInt();
+    entry.compressedSize = m_buffer.readUInt();
+    entry.size = m_buffer.readUInt();
+    int nameLength = m_buffer.readUShort();
+    int extraLength = m_buffer.readUShort();
+    entry.name = new String(m_buffer.readBytes(nameLength), StandardCharsets.UTF_8);
+    byte[] extra = m_buffer.readBytes(extraLength);
+
+    // zip64 sizes
+    for (int x = 0; x + 4 <= extra.length; ) {
+      int id = (extra[x] & 0xff) | (extra[x + 1] & 0xff) << 8;
+      int size = (extra[x + 2] & 0xff) | (extra[x + 3] & 0xff) << 8;
+      if (id == ZIP64_EXTRA_ID) {
+        entry.isZip64 = true;
+        int pos = x + 4;
+        if (entry.size == ZIP64_MAGIC && pos + 8 <= extra.length) {
+          entry.size = getLong(extra, pos);
+          pos += 8;
+        }
+        if (entry.compressedSize == ZIP64_MAGIC && pos + 8 <= extra.length) {
+          entry.compressedSize = getLong(extra, pos);
+        }
+      }
+      x += 4 + size;
+    }
+
+    if ((entry.flags & FLAG_ENCRYPTED) != 0) {
+      throw new ZipException("Encrypted zip entries are not supported: " + entry.name);
+    }
+    if (entry.method != STORED && entry.method != DEFLATED) {
+      throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+    }
+    if (entry.method == STORED && entry.hasDataDescriptor()) {
+      throw new ZipException("Stored entry with data descriptor is not supported: " + entry.name);
+    }
+    return entry;
+  }
+
+  private static long getLong(byte[] bytes, int pos) {
+    long value = 0;
+    for (int x = 7; x >= 0; x -= 1) {
+      value = (value << 8) | (bytes[pos + x] & 0xff);
+    }
+    return value;
+  }
+
+
+  /**
+   * Skips over an entry that isn't the one we want.
+   */
+  private void skip(Entry entry) throws IOException {
+
+    if (!entry.hasDataDescriptor()) {
+      m_buffer.skip(entry.compressedSize);
+      return;
+    }
+    // size is unknown until we've inflated the whole thing
+    m_decompressor.reset();
+    m_buffer.startInflating(m_decompressor);
+    byte[] discard = new byte[65536];
+    long size = 0;
+    while (!m_decompressor.finished()) {
+      size += m_buffer.inflate(m_decompressor, discard, 0, discard.length);
+    }
+    readDataDescriptor(entry, size);
+  }
+
+  /**
+   * Reads the data descriptor following an entry's data.
+   *
+   * @param size the number of bytes in the entry, which tells us if sizes are zip64 if there was no zip64 extra field
+   */
+  private void readDataDescriptor(Entry entry, long size) throws IOException {
+
+    long crc = m_buffer.readUInt();
+    if (crc == DATA_DESCRIPTOR_SIG) {
+      // signature is optional
+      crc = m_buffer.readUInt();
+    }
+    entry.crc = crc;
+    if (entry.isZip64 || size >= ZIP64_MAGIC) {
+      entry.compressedSize = m_buffer.readULong();
+      entry.size = m_buffer.readULong();
+    } else {
+      entry.compressedSize = m_buffer.readUInt();
+      entry.size = m_buffer.readUInt();
+    }
+  }
+
+  /**
+   * Checks the data we read.
+   */
+  private void finishEntry() throws IOException {
+
+    if (m_entry.hasDataDescriptor()) {
+      readDataDescriptor(m_entry, m_size);
+    }
+    if (m_entry.size != m_size) {
+      throw new ZipException("Invalid entry size (expected " + m_entry.size + " but got " + m_size + " bytes)");
+    }
+    if (m_entry.crc != m_crc.getValue()) {
+      throw new ZipException("Invalid entry CRC (expected 0x" + Long.toHexString(m_entry.crc) + " but got 0x" +
+          Long.toHexString(m_crc.getValue()) + ")");
+    }
+  }
+
+
+  private static class Entry {
+    private String name;
+    private int flags;
+    private int method;
+    private long crc;
+    private long compressedSize;
+    private long size;
+    private boolean isZip64;
+
+    boolean hasDataDescriptor() {
+      return (flags & FLAG_DATA_DESCRIPTOR) != 0;
+    }
+  }
+}
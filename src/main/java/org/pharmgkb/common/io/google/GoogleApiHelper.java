@@ -2,21 +2,38 @@
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.net.ssl.SSLContext;
+import com.google.api.client.auth.oauth2.TokenResponse;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.GoogleUtils;
+import com.google.api.client.http.HttpRequestInitializer;
 import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.ssl.SSLContexts;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
@@ -28,48 +45,115 @@
  * @author Mark Woon
  */
 public class GoogleApiHelper implements AutoCloseable {
+  private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private static final Pattern sf_privateKeyPattern =
       Pattern.compile("-----BEGIN .*?PRIVATE KEY-----(.*)-----END .*?PRIVATE KEY-----");
+  /** Refresh tokens this long before they expire. */
+  private static final long sf_refreshMarginMillis = TimeUnit.MINUTES.toMillis(5);
+  /** How long to wait before retrying a failed background refresh. */
+  private static final long sf_refreshRetryMillis = TimeUnit.SECONDS.toMillis(30);
+  /** Close pooled connections that have been idle this long, before servers drop them. */
+  private static final long sf_idleConnectionMillis = TimeUnit.SECONDS.toMillis(60);
+  /** Default size of the connection pool used by {@link #newPooledTransport(int)}. */
+  public static final int DEFAULT_MAX_CONNECTIONS = 20;
   private HttpTransport m_httpTransport;
+  private final boolean m_isPersonalTransport;
   private JsonFactory m_jsonFactory;
-  private GoogleCredential m_credential;
+  private CachingCredential m_credential;
+  private final String m_apiUser;
+  private final @Nullable String m_accountUser;
+  private final List<String> m_scopes;
+  private @Nullable ScheduledExecutorService m_refreshExecutor;
+  private volatile RequestScheduler m_requestScheduler = new RequestScheduler(Collections.emptyList());
+  private volatile int m_connectTimeout = 20_000;
+  private volatile int m_readTimeout = 60_000;
+  private volatile boolean m_compressResponses = true;
 
 
   /**
-   * Initializes resources required to access Google API services.
+   * Initializes resources required to access Google API services, using a pooled transport with up to
+   * {@link #DEFAULT_MAX_CONNECTIONS} connections.
    */
   public GoogleApiHelper(String apiUser, String apiKey, @Nullable String accountUser, String... scopes)
       throws IOException, GeneralSecurityException {
+    this(newPooledTransport(DEFAULT_MAX_CONNECTIONS), true, apiUser, apiKey, accountUser, scopes);
+  }
+
+  /**
+   * Initializes resources required to access Google API services, using the specified transport.  The transport can be
+   * shared between helpers and is not shut down by {@link #close()}.
+   */
+  public GoogleApiHelper(HttpTransport httpTransport, String apiUser, String apiKey, @Nullable String accountUser,
+      String... scopes) throws GeneralSecurityException {
+    this(httpTransport, false, apiUser, apiKey, accountUser, scopes);
+  }
 
+  private GoogleApiHelper(HttpTransport httpTransport, boolean isPersonalTransport, String apiUser, String apiKey,
+      @Nullable String accountUser, String... scopes) throws GeneralSecurityException {
+
+    Preconditions.checkNotNull(httpTransport);
     Preconditions.checkNotNull(apiUser);
     Preconditions.checkNotNull(apiKey);
     Preconditions.checkNotNull(scopes) ;
     Preconditions.checkArgument(scopes.length > 0);
 
+    m_apiUser = apiUser;
+    m_accountUser = accountUser;
+    m_scopes = Lists.newArrayList(scopes);
     m_jsonFactory = GsonFactory.getDefaultInstance();
-    m_httpTransport = GoogleNetHttpTransport.newTrustedTransport();
+    m_httpTransport = httpTransport;
+    m_isPersonalTransport = isPersonalTransport;
     GoogleCredential.Builder credBuilder = new GoogleCredential.Builder()
         .setTransport(m_httpTransport)
         .setJsonFactory(m_jsonFactory)
         .setServiceAccountId(apiUser)
         .setServiceAccountPrivateKey(getPrivateKey(apiKey))
-        .setServiceAccountScopes(Lists.newArrayList(scopes));
+        .setServiceAccountScopes(m_scopes);
     if (accountUser != null) {
       credBuilder.setServiceAccountUser(accountUser);
     }
-    m_credential = credBuilder.build();
+    m_credential = new CachingCredential(credBuilder);
   }
 
   @Override
   public void close() {
-    try {
-      m_httpTransport.shutdown();
-    } catch (IOException ex) {
-      LoggerFactory.getLogger(MethodHandles.lookup().lookupClass()).error("Problem shutting down", ex);
+    synchronized (this) {
+      if (m_refreshExecutor != null) {
+        m_refreshExecutor.shutdownNow();
+        m_refreshExecutor = null;
+      }
+    }
+    if (m_isPersonalTransport) {
+      try {
+        m_httpTransport.shutdown();
+      } catch (IOException ex) {
+        sf_logger.error("Problem shutting down", ex);
+      }
     }
   }
 
 
+  /**
+   * Creates a transport backed by Apache HttpClient that keeps up to {@code maxConnections} connections alive, so that
+   * concurrent requests reuse connections (and TLS sessions) instead of opening new ones.  Only Google's certificates
+   * are trusted.
+   */
+  public static HttpTransport newPooledTransport(int maxConnections) throws GeneralSecurityException, IOException {
+
+    Preconditions.checkArgument(maxConnections > 0);
+    SSLContext sslContext = SSLContexts.custom()
+        .loadTrustMaterial(GoogleUtils.getCertificateTrustStore(), null)
+        .build();
+    HttpClient httpClient = ApacheHttpTransport.newDefaultHttpClientBuilder()
+        .setSSLSocketFactory(new SSLConnectionSocketFactory(sslContext))
+        .setMaxConnTotal(maxConnections)
+        .setMaxConnPerRoute(maxConnections)
+        .evictIdleConnections(sf_idleConnectionMillis, TimeUnit.MILLISECONDS)
+        .build();
+    return new ApacheHttpTransport(httpClient);
+  }
+
+
   public JsonFactory getJsonFactory() {
     return m_jsonFactory;
   }
@@ -85,6 +169,165 @@ public GoogleCredential getCredential() {
   }
 
 
+  /**
+   * Gets the initializer that clients built on this helper should create their requests with.  It authorizes requests
+   * with {@link #getCredential()} and runs them through {@link #getRequestScheduler()}.
+   */
+  public HttpRequestInitializer getRequestInitializer() {
+    return request -> {
+      m_requestScheduler.initialize(request, m_credential);
+      request.setConnectTimeout(m_connectTimeout);
+      request.setReadTimeout(m_readTimeout);
+      request.getHeaders().setAcceptEncoding(m_compressResponses ? "gzip" : null);
+    };
+  }
+
+  /**
+   * Sets timeouts for requests made through this helper.  Defaults to 20 seconds to connect and 60 seconds to read.
+   *
+   * @param connectTimeout milliseconds to wait for a connection, or 0 to wait forever
+   * @param readTimeout milliseconds to wait for data, or 0 to wait forever
+   */
+  public void setTimeouts(int connectTimeout, int readTimeout) {
+    Preconditions.checkArgument(connectTimeout >= 0 && readTimeout >= 0);
+    m_connectTimeout = connectTimeout;
+    m_readTimeout = readTimeout;
+  }
+
+  public int getConnectTimeout() {
+    return m_connectTimeout;
+  }
+
+  public int getReadTimeout() {
+    return m_readTimeout;
+  }
+
+  /**
+   * Sets whether to ask for gzipped responses.  Defaults to true.
+   */
+  public void setCompressResponses(boolean compressResponses) {
+    m_compressResponses = compressResponses;
+  }
+
+  public boolean isCompressResponses() {
+    return m_compressResponses;
+  }
+
+  /**
+   * Gets the scheduler used for requests made through this helper.  By default, requests are retried but not rate
+   * limited.
+   */
+  public RequestScheduler getRequestScheduler() {
+    return m_requestScheduler;
+  }
+
+  public void setRequestScheduler(RequestScheduler requestScheduler) {
+    m_requestScheduler = requestScheduler;
+  }
+
+  /**
+   * Rate limits requests to stay within API quotas.  Limits are shared by all helpers in this JVM with the same user or
+   * project.
+   *
+   * @param userRequestsPerMinute quota per user (the impersonated user, or the service account), or 0 for no limit
+   * @param projectRequestsPerMinute quota for the service account's project, or 0 for no limit
+   */
+  public void setRateLimits(double userRequestsPerMinute, double projectRequestsPerMinute) {
+
+    List<RateLimiter> limiters = new ArrayList<>();
+    if (userRequestsPerMinute > 0) {
+      String user = m_accountUser != null ? m_accountUser : m_apiUser;
+      limiters.add(RequestScheduler.getSharedLimiter("user:" + user, userRequestsPerMinute));
+    }
+    if (projectRequestsPerMinute > 0) {
+      // service accounts are named <name>@<project>.iam.gserviceaccount.com
+      String project = StringUtils.substringBefore(StringUtils.substringAfter(m_apiUser, "@"), ".");
+      limiters.add(RequestScheduler.getSharedLimiter("project:" + project, projectRequestsPerMinute));
+    }
+    RequestScheduler scheduler = new RequestScheduler(limiters);
+    scheduler.setMaxRetries(m_requestScheduler.getMaxRetries());
+    m_requestScheduler = scheduler;
+  }
+
+
+  /**
+   * Shares access tokens through files in {@code dir}, so that processes on the same host using the same service
+   * account and scopes reuse a token instead of each signing and exchanging their own.  Cached tokens are only readable
+   * by the current user.
+   *
+   * @param dir directory to cache tokens in, or null to stop using the cache
+   */
+  public void setTokenCacheDir(@Nullable Path dir) {
+    m_credential.setTokenCache(dir == null ? null :
+        new GoogleTokenCache(dir, m_jsonFactory, m_apiUser, m_accountUser, m_scopes));
+  }
+
+  /**
+   * Starts refreshing the access token in the background shortly before it expires, so that requests never block on a
+   * token round trip.  The first token is fetched right away.  Stopped by {@link #close()}.
+   */
+  public synchronized void startBackgroundRefresh() {
+
+    if (m_refreshExecutor != null) {
+      return;
+    }
+    m_refreshExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "GoogleApiHelper-token-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+    m_refreshExecutor.execute(this::refreshInBackground);
+  }
+
+  private void refreshInBackground() {
+
+    long delay;
+    try {
+      Long expiresIn = m_credential.getExpiresInSeconds();
+      if (m_credential.getAccessToken() == null || expiresIn == null ||
+          expiresIn * 1000 <= sf_refreshMarginMillis) {
+        m_credential.refreshToken();
+        expiresIn = m_credential.getExpiresInSeconds();
+      }
+      delay = expiresIn == null ? sf_refreshRetryMillis :
+          Math.max(expiresIn * 1000 - sf_refreshMarginMillis, sf_refreshRetryMillis);
+    } catch (IOException ex) {
+      sf_logger.warn("Background token refresh failed, will retry", ex);
+      delay = sf_refreshRetryMillis;
+    }
+    synchronized (this) {
+      if (m_refreshExecutor != null) {
+        m_refreshExecutor.schedule(this::refreshInBackground, delay, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+
+  /**
+   * Credential that can get its tokens from a {@link GoogleTokenCache}.
+   */
+  static class CachingCredential extends GoogleCredential {
+    private volatile @Nullable GoogleTokenCache m_tokenCache;
+
+    CachingCredential(GoogleCredential.Builder builder) {
+      super(builder);
+    }
+
+    void setTokenCache(@Nullable GoogleTokenCache tokenCache) {
+      m_tokenCache = tokenCache;
+    }
+
+    @Override
+    protected TokenResponse executeRefreshToken() throws IOException {
+      GoogleTokenCache tokenCache = m_tokenCache;
+      if (tokenCache == null) {
+        return super.executeRefreshToken();
+      }
+      // require more than the refresh margin, otherwise background refreshes would keep getting the same token
+      return tokenCache.get(sf_refreshMarginMillis * 2, () -> super.executeRefreshToken());
+    }
+  }
+
 
   /**
    * This class converts a private key in PEM/PKCS#8 formatted String into a {@link PrivateKey}.
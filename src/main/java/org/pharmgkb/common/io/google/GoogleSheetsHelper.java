@@ -1,40 +1,93 @@
 package org.pharmgkb.common.io.google;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InterruptedIOException;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gdata.client.spreadsheet.CellQuery;
 import com.google.gdata.client.spreadsheet.SpreadsheetService;
+import com.google.gdata.data.Link;
+import com.google.gdata.data.spreadsheet.Cell;
 import com.google.gdata.data.spreadsheet.CellEntry;
 import com.google.gdata.data.spreadsheet.CellFeed;
 import com.google.gdata.data.spreadsheet.SpreadsheetEntry;
 import com.google.gdata.data.spreadsheet.SpreadsheetFeed;
 import com.google.gdata.data.spreadsheet.WorksheetEntry;
+import com.google.gdata.util.NotModifiedException;
 import com.google.gdata.util.ServiceException;
-import com.google.gdata.util.common.base.Joiner;
+import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.pharmgkb.common.io.google.SheetsV4Client.SheetInfo;
 
 
 /**
  * This is a helper class for working with the Google Sheets API.
  * <p>
- * This relies on the old GData API.
+ * By default, this relies on the old GData API.
  * Docs at https://developers.google.com/google-apps/spreadsheets/.
+ * <p>
+ * Exports can be switched to the Sheets API v4 with {@link #setBackend(Backend)}, which needs far fewer round trips
+ * (see {@link SheetsV4Client}).
  *
  * @author Mark Woon
  */
 public class GoogleSheetsHelper implements AutoCloseable {
+  /**
+   * The API used for exports.
+   */
+  public enum Backend {
+    /** The legacy GData cell feed. */
+    GDATA,
+    /** Sheets API v4 {@code values:batchGet}. */
+    SHEETS_V4
+  }
+
   public static final String SHEETS_SCOPE = "https://spreadsheets.google.com/feeds";
-  /** Pattern to parse R1C1 notation for row/column numbers. */
-  private static final Pattern sf_rcPattern = Pattern.compile(".*/R(\\d+)C(\\d+)$");
+  /** Default maximum number of cells to fetch per request when exporting. */
+  private static final int sf_defaultCellsPerPage = 20000;
+  /** Default number of concurrent requests for bulk exports. */
+  private static final int sf_defaultExportThreads = 4;
+  private static final Pattern sf_unsafeFilenameChars = Pattern.compile("[^\\w.\\- ]");
   private final URL m_spreadsheetUrl = new URL("https://spreadsheets.google.com/feeds/spreadsheets/private/full");
   private boolean m_isPersonalApiHelper;
   private GoogleApiHelper m_googleApiHelper;
   private SpreadsheetService m_sheetsService;
+  private int m_cellsPerPage = sf_defaultCellsPerPage;
+  private int m_exportThreads = sf_defaultExportThreads;
+  private boolean m_skipUnchanged;
+  private volatile Cache<String, SpreadsheetMetadata> m_metadataCache = buildCache(5, TimeUnit.MINUTES, 100);
+  private volatile Cache<String, List<SpreadsheetEntry>> m_sheetsCache = buildCache(5, TimeUnit.MINUTES, 1);
+  private Backend m_backend = Backend.GDATA;
+  private @Nullable SheetsV4Client m_sheetsV4Client;
 
 
   public GoogleSheetsHelper(String userId, String privateKey, String service)
@@ -42,8 +95,7 @@ public GoogleSheetsHelper(String userId, String privateKey, String service)
 
     m_googleApiHelper = new GoogleApiHelper(userId, privateKey, null, SHEETS_SCOPE);
     m_isPersonalApiHelper = true;
-    m_sheetsService = new SpreadsheetService(service);
-    m_sheetsService.setOAuth2Credentials(m_googleApiHelper.getCredential());
+    m_sheetsService = newService(service);
   }
 
 
@@ -51,8 +103,22 @@ public GoogleSheetsHelper(GoogleApiHelper apiHelper, String service)
       throws IOException {
 
     m_googleApiHelper = apiHelper;
-    m_sheetsService = new SpreadsheetService(service);
-    m_sheetsService.setOAuth2Credentials(m_googleApiHelper.getCredential());
+    m_sheetsService = newService(service);
+  }
+
+  /**
+   * GData doesn't use the API helper's transport, so copy over its settings.
+   */
+  private SpreadsheetService newService(String service) {
+
+    SpreadsheetService sheetsService = new SpreadsheetService(service);
+    sheetsService.setOAuth2Credentials(m_googleApiHelper.getCredential());
+    sheetsService.setConnectTimeout(m_googleApiHelper.getConnectTimeout());
+    sheetsService.setReadTimeout(m_googleApiHelper.getReadTimeout());
+    if (m_googleApiHelper.isCompressResponses()) {
+      sheetsService.setHeader("Accept-Encoding", "gzip");
+    }
+    return sheetsService;
   }
 
 
@@ -69,11 +135,260 @@ public SpreadsheetService getService() {
   }
 
 
+  /**
+   * Sets the API used for exports.  Defaults to {@link Backend#GDATA}.
+   */
+  public void setBackend(Backend backend) {
+    m_backend = backend;
+  }
+
+  public Backend getBackend() {
+    return m_backend;
+  }
+
+  /**
+   * Sets the client to use for the {@link Backend#SHEETS_V4} backend.  Only needed to change the API's base URL;
+   * otherwise one is created from this helper's {@link GoogleApiHelper}.
+   */
+  public synchronized void setSheetsV4Client(SheetsV4Client client) {
+    m_sheetsV4Client = client;
+  }
+
+  public synchronized SheetsV4Client getSheetsV4Client() {
+    if (m_sheetsV4Client == null) {
+      m_sheetsV4Client = new SheetsV4Client(m_googleApiHelper);
+    }
+    return m_sheetsV4Client;
+  }
+
+
+  /**
+   * Sets the maximum number of cells to fetch per request when exporting.  Larger pages mean fewer requests but more
+   * memory.
+   */
+  public void setCellsPerPage(int cellsPerPage) {
+    if (cellsPerPage < 1) {
+      throw new IllegalArgumentException("Cells per page must be positive");
+    }
+    m_cellsPerPage = cellsPerPage;
+  }
+
+
+  /**
+   * Sets the maximum number of concurrent requests used by the {@code exportAllToTsv} methods.
+   */
+  public void setExportThreads(int exportThreads) {
+    if (exportThreads < 1) {
+      throw new IllegalArgumentException("Export threads must be positive");
+    }
+    m_exportThreads = exportThreads;
+  }
+
+
+  /**
+   * Sets whether to skip exporting sheets that haven't changed since they were last exported to the same file.
+   * <p>
+   * When on, the version of each exported sheet (its updated timestamp and etag with GData, the Drive file version
+   * with v4) is stored in a {@code .version} file next to the TSV, and the sheet's cells are only fetched if the
+   * version differs.  The v4 backend needs a Drive scope to look up versions.
+   */
+  public void setSkipUnchanged(boolean skipUnchanged) {
+    m_skipUnchanged = skipUnchanged;
+  }
+
+
   /**
    * Gets a list of all sheets for user.
    */
   public List<SpreadsheetEntry> getSheets() throws IOException, ServiceException {
-    return m_sheetsService.getFeed(m_spreadsheetUrl, SpreadsheetFeed.class).getEntries();
+    return load(m_sheetsCache, "",
+        () -> Collections.unmodifiableList(schedule(() -> m_sheetsService.getFeed(m_spreadsheetUrl, SpreadsheetFeed.class))
+            .getEntries()));
+  }
+
+  /**
+   * Gets the worksheets in the spreadsheet with the specified ID.
+   *
+   * @param fileId a file Id from Google Drive
+   */
+  public List<WorksheetEntry> getWorksheets(String fileId) throws IOException, ServiceException {
+    return getMetadata(fileId).getWorksheets();
+  }
+
+  /**
+   * Gets a worksheet by name from the spreadsheet with the specified ID.
+   *
+   * @param fileId a file Id from Google Drive
+   * @return the worksheet, or null if there is no worksheet with that name
+   */
+  public @Nullable WorksheetEntry getWorksheet(String fileId, String sheetName) throws IOException, ServiceException {
+    return getMetadata(fileId).getWorksheetsByTitle().get(sheetName);
+  }
+
+
+  /**
+   * Configures the metadata cache, which holds spreadsheet entries, worksheet lists and sheet names so that repeated
+   * lookups and exports from the same spreadsheet don't refetch them.  This discards anything currently cached.
+   * <p>
+   * Metadata is cached for 5 minutes, for up to 100 spreadsheets, by default.  GData exports still revalidate the
+   * worksheet being exported with its etag, so they always use its current size and version.  v4 exports fetch whole
+   * sheets and get versions from Drive, so only the column count that rows are padded to comes from the cache.  Sheets
+   * that are added within the TTL are found by refetching the metadata when a lookup by name or number misses.
+   *
+   * @param ttl how long to cache metadata for (0 to disable caching)
+   * @param maxSpreadsheets maximum number of spreadsheets to cache metadata for
+   */
+  public synchronized void setMetadataCache(long ttl, TimeUnit unit, long maxSpreadsheets) {
+    m_metadataCache = buildCache(ttl, unit, maxSpreadsheets);
+    m_sheetsCache = buildCache(ttl, unit, 1);
+  }
+
+  /**
+   * Discards cached metadata for the spreadsheet with the specified ID.
+   *
+   * @param fileId a file Id from Google Drive
+   */
+  public void invalidateMetadata(String fileId) {
+    m_metadataCache.invalidate(fileId);
+    m_sheetsCache.invalidateAll();
+  }
+
+  /**
+   * Discards all cached metadata.
+   */
+  public void invalidateMetadata() {
+    m_metadataCache.invalidateAll();
+    m_sheetsCache.invalidateAll();
+  }
+
+
+  private static <K, V> Cache<K, V> buildCache(long ttl, TimeUnit unit, long maxSize) {
+    return CacheBuilder.newBuilder()
+        .expireAfterWrite(ttl, unit)
+        .maximumSize(ttl > 0 ? maxSize : 0)
+        .build();
+  }
+
+  /**
+   * Runs a GData call through the API helper's {@link RequestScheduler}.
+   */
+  private <T> T schedule(RequestScheduler.ServiceCall<T> call) throws IOException, ServiceException {
+    return m_googleApiHelper.getRequestScheduler().execute(call);
+  }
+
+  private SpreadsheetMetadata getMetadata(URL url) throws IOException, ServiceException {
+    String fileId = getFileId(url);
+    return load(m_metadataCache, fileId, () -> new SpreadsheetMetadata(fileId, url));
+  }
+
+  private SpreadsheetMetadata getMetadata(String fileId) throws IOException, ServiceException {
+    return getMetadata(new URL("https://spreadsheets.google.com/feeds/spreadsheets/" + fileId));
+  }
+
+  /**
+   * Discards cached metadata and fetches it again, for when a sheet can't be found in the cached metadata.
+   */
+  private SpreadsheetMetadata refetchMetadata(URL url) throws IOException, ServiceException {
+    m_metadataCache.invalidate(getFileId(url));
+    return getMetadata(url);
+  }
+
+  /**
+   * Gets a value from a cache, loading it if necessary and unwrapping any exception thrown by the loader.
+   */
+  private static <V> V load(Cache<String, V> cache, String key, Callable<V> loader)
+      throws IOException, ServiceException {
+    try {
+      return cache.get(key, loader);
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      if (cause instanceof ServiceException) {
+        throw (ServiceException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      throw new IOException("Error loading metadata for " + key, cause);
+    }
+  }
+
+
+  /**
+   * Metadata for a spreadsheet.  Each piece is fetched the first time it's needed, then kept for as long as this is
+   * cached.
+   */
+  private class SpreadsheetMetadata {
+    private final String m_fileId;
+    private final URL m_url;
+    private @Nullable SpreadsheetEntry m_spreadsheet;
+    private @Nullable WorksheetEntry m_defaultWorksheet;
+    private @Nullable List<WorksheetEntry> m_worksheets;
+    private @Nullable Map<String, WorksheetEntry> m_worksheetsByTitle;
+    private @Nullable List<SheetInfo> m_sheetInfos;
+
+    SpreadsheetMetadata(String fileId, URL url) {
+      m_fileId = fileId;
+      m_url = url;
+    }
+
+    synchronized SpreadsheetEntry getSpreadsheet() throws IOException, ServiceException {
+      if (m_spreadsheet == null) {
+        m_spreadsheet = schedule(() -> m_sheetsService.getEntry(m_url, SpreadsheetEntry.class));
+      }
+      return m_spreadsheet;
+    }
+
+    synchronized WorksheetEntry getDefaultWorksheet() throws IOException, ServiceException {
+      if (m_defaultWorksheet == null) {
+        SpreadsheetEntry spreadsheet = getSpreadsheet();
+        m_defaultWorksheet = schedule(spreadsheet::getDefaultWorksheet);
+      }
+      return m_defaultWorksheet;
+    }
+
+    synchronized List<WorksheetEntry> getWorksheets() throws IOException, ServiceException {
+      if (m_worksheets == null) {
+        SpreadsheetEntry spreadsheet = getSpreadsheet();
+        m_worksheets = Collections.unmodifiableList(schedule(spreadsheet::getWorksheets));
+      }
+      return m_worksheets;
+    }
+
+    synchronized Map<String, WorksheetEntry> getWorksheetsByTitle() throws IOException, ServiceException {
+      if (m_worksheetsByTitle == null) {
+        Map<String, WorksheetEntry> map = new HashMap<>();
+        for (WorksheetEntry sheet : getWorksheets()) {
+          // first one wins, same as a linear scan
+          map.putIfAbsent(sheet.getTitle().getPlainText(), sheet);
+        }
+        m_worksheetsByTitle = Collections.unmodifiableMap(map);
+      }
+      return m_worksheetsByTitle;
+    }
+
+    synchronized List<SheetInfo> getSheetInfos() throws IOException {
+      if (m_sheetInfos == null) {
+        m_sheetInfos = getSheetsV4Client().getSheets(m_fileId);
+      }
+      return m_sheetInfos;
+    }
+
+    /**
+     * Checks if all the named sheets are in this metadata, using whichever API exports use.
+     */
+    boolean hasSheets(Collection<String> sheetNames) throws IOException, ServiceException {
+      if (m_backend == Backend.SHEETS_V4) {
+        Set<String> titles = new HashSet<>();
+        for (SheetInfo sheet : getSheetInfos()) {
+          titles.add(sheet.getTitle());
+        }
+        return titles.containsAll(sheetNames);
+      }
+      return getWorksheetsByTitle().keySet().containsAll(sheetNames);
+    }
   }
 
 
@@ -93,11 +408,19 @@ public void exportToTsv(String fileId, Path tsvFile) throws IOException, Service
    */
   public void exportToTsv(URL url, Path tsvFile) throws IOException, ServiceException {
 
-    // fetch sheet
-    SpreadsheetEntry spreadsheet = m_sheetsService.getEntry(url, SpreadsheetEntry.class);
+    if (m_backend == Backend.SHEETS_V4) {
+      List<SheetInfo> sheets = getMetadata(url).getSheetInfos();
+      if (sheets.isEmpty()) {
+        sheets = refetchMetadata(url).getSheetInfos();
+      }
+      if (sheets.isEmpty()) {
+        throw new IOException("No sheets in " + url);
+      }
+      exportToTsvV4(getFileId(url), Collections.singletonMap(sheets.get(0), tsvFile));
+      return;
+    }
     // use default worksheet
-    exportToTsv(spreadsheet.getDefaultWorksheet(), tsvFile);
-
+    exportToTsv(getFileId(url), getMetadata(url).getDefaultWorksheet(), tsvFile);
   }
 
   /**
@@ -118,13 +441,25 @@ public void exportToTsv(String fileId, Path tsvFile, int sheetNumber) throws IOE
    */
   public void exportToTsv(URL url, Path tsvFile, int sheetNumber) throws IOException, ServiceException {
 
-    // fetch sheet
-    SpreadsheetEntry spreadsheet = m_sheetsService.getEntry(url, SpreadsheetEntry.class);
-    List<WorksheetEntry> sheets = spreadsheet.getWorksheets();
+    if (m_backend == Backend.SHEETS_V4) {
+      List<SheetInfo> sheets = getMetadata(url).getSheetInfos();
+      if (sheetNumber >= sheets.size()) {
+        sheets = refetchMetadata(url).getSheetInfos();
+      }
+      if (sheetNumber >= sheets.size()) {
+        throw new IOException("No sheet " + sheetNumber + ", only has " + sheets.size() + " sheets");
+      }
+      exportToTsvV4(getFileId(url), Collections.singletonMap(sheets.get(sheetNumber), tsvFile));
+      return;
+    }
+    List<WorksheetEntry> sheets = getMetadata(url).getWorksheets();
+    if (sheetNumber >= sheets.size()) {
+      sheets = refetchMetadata(url).getWorksheets();
+    }
     if (sheetNumber >= sheets.size()) {
       throw new IOException("No sheet " + sheetNumber + ", only has " + sheets.size() + " sheets");
     }
-    exportToTsv(sheets.get(sheetNumber), tsvFile);
+    exportToTsv(getFileId(url), sheets.get(sheetNumber), tsvFile);
   }
 
   /**
@@ -145,53 +480,381 @@ public void exportToTsv(String fileId, Path tsvFile, String sheetName) throws IO
    */
   public void exportToTsv(URL url, Path tsvFile, String sheetName) throws IOException, ServiceException {
 
-    // fetch sheet
-    SpreadsheetEntry spreadsheet = m_sheetsService.getEntry(url, SpreadsheetEntry.class);
-    List<WorksheetEntry> sheets = spreadsheet.getWorksheets();
-    for (WorksheetEntry sheet : sheets) {
-      if (sheet.getTitle().getPlainText().equals(sheetName)) {
-        exportToTsv(sheet, tsvFile);
-        break;
+    if (m_backend == Backend.SHEETS_V4) {
+      exportToTsv(url, Collections.singletonMap(sheetName, tsvFile));
+      return;
+    }
+    WorksheetEntry sheet = getMetadata(url).getWorksheetsByTitle().get(sheetName);
+    if (sheet == null) {
+      sheet = refetchMetadata(url).getWorksheetsByTitle().get(sheetName);
+    }
+    if (sheet != null) {
+      exportToTsv(getFileId(url), sheet, tsvFile);
+    }
+  }
+
+  /**
+   * Exports multiple sheets with the specified ID to TSV.  With the {@link Backend#SHEETS_V4} backend, all sheets are
+   * fetched in a single call.
+   *
+   * @param fileId a file Id from Google Drive
+   * @param sheetFiles map of sheet name to the file to export it to
+   */
+  public void exportToTsv(String fileId, Map<String, Path> sheetFiles) throws IOException, ServiceException {
+    exportToTsv(new URL("https://spreadsheets.google.com/feeds/spreadsheets/" + fileId), sheetFiles);
+  }
+
+  /**
+   * Exports multiple sheets with the specified ID to TSV.  With the {@link Backend#SHEETS_V4} backend, all sheets are
+   * fetched in a single call.
+   * <p>
+   * Sheet names that don't exist are ignored.
+   *
+   * @param url URL from {@link SpreadsheetEntry#getId()} ()}
+   * @param sheetFiles map of sheet name to the file to export it to
+   */
+  public void exportToTsv(URL url, Map<String, Path> sheetFiles) throws IOException, ServiceException {
+
+    SpreadsheetMetadata metadata = getMetadata(url);
+    if (!metadata.hasSheets(sheetFiles.keySet())) {
+      metadata = refetchMetadata(url);
+    }
+    if (m_backend == Backend.SHEETS_V4) {
+      Map<SheetInfo, Path> exports = new LinkedHashMap<>();
+      for (SheetInfo sheet : metadata.getSheetInfos()) {
+        Path file = sheetFiles.get(sheet.getTitle());
+        if (file != null) {
+          exports.put(sheet, file);
+        }
+      }
+      exportToTsvV4(getFileId(url), exports);
+      return;
+    }
+
+    for (WorksheetEntry sheet : metadata.getWorksheets()) {
+      Path file = sheetFiles.get(sheet.getTitle().getPlainText());
+      if (file != null) {
+        exportToTsv(getFileId(url), sheet, file);
       }
     }
   }
 
-  private void exportToTsv(WorksheetEntry worksheet, Path tsvFile) throws IOException,
-      ServiceException {
 
-    int colCount = worksheet.getColCount();
-    Joiner tsvJoiner = Joiner.on("\t").useForNull("");
+  /**
+   * Exports every sheet of the spreadsheet with the specified ID to TSV files in {@code dir}, concurrently.
+   * Files are named after the sheet.
+   *
+   * @param fileId a file Id from Google Drive
+   * @return map of sheet name to the file it was exported to, in sheet order
+   */
+  public Map<String, Path> exportAllToTsv(String fileId, Path dir) throws IOException, ServiceException {
+    return exportAllToTsv(Collections.singletonList(fileId), dir, false).get(fileId);
+  }
 
-    // fetch the cell feed of the worksheet
-    URL cellFeedUrl = worksheet.getCellFeedUrl();
-    CellFeed cellFeed = m_sheetsService.getFeed(cellFeedUrl, CellFeed.class);
-
-    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tsvFile))) {
-      int curRow = 1;
-      int curCol = 1;
-      String[] currentLine = new String[colCount];
-      for (CellEntry cell : cellFeed.getEntries()) {
-        Matcher m = sf_rcPattern.matcher(cell.getId());
-        if (!m.matches()) {
-          throw new IOException("Unexpected cell id (" + cell.getId() + ").  Cannot determine row/column.");
+  /**
+   * Exports every sheet of each of the specified spreadsheets to TSV files, concurrently.  Each spreadsheet is
+   * exported to a subdirectory of {@code dir} named after its file ID, and files are named after the sheet.
+   * <p>
+   * All requests go through this helper's {@link GoogleApiHelper}, so they share its transport and credential.
+   * Concurrency is limited by {@link #setExportThreads(int)}.
+   *
+   * @param fileIds file Ids from Google Drive
+   * @return map of file ID to map of sheet name to the file it was exported to
+   */
+  public Map<String, Map<String, Path>> exportAllToTsv(Collection<String> fileIds, Path dir)
+      throws IOException, ServiceException {
+    return exportAllToTsv(new ArrayList<>(new LinkedHashSet<>(fileIds)), dir, true);
+  }
+
+
+  private Map<String, Map<String, Path>> exportAllToTsv(List<String> fileIds, Path dir, boolean useSubdirs)
+      throws IOException, ServiceException {
+
+    Map<String, Map<String, Path>> results = new LinkedHashMap<>();
+    if (fileIds.isEmpty()) {
+      return results;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(m_exportThreads);
+    try {
+      if (m_backend == Backend.SHEETS_V4) {
+        // one metadata and one batchGet call per spreadsheet, so parallelize across spreadsheets
+        Map<String, Future<Map<String, Path>>> futures = new LinkedHashMap<>();
+        for (String fileId : fileIds) {
+          Path fileDir = useSubdirs ? dir.resolve(fileId) : dir;
+          futures.put(fileId, executor.submit(() -> {
+            Files.createDirectories(fileDir);
+            Map<SheetInfo, Path> exports = new LinkedHashMap<>();
+            Map<String, Path> files = new LinkedHashMap<>();
+            for (SheetInfo sheet : getMetadata(fileId).getSheetInfos()) {
+              Path file = toTsvFile(fileDir, sheet.getTitle(), files);
+              exports.put(sheet, file);
+              files.put(sheet.getTitle(), file);
+            }
+            exportToTsvV4(fileId, exports);
+            return files;
+          }));
         }
-        int row = Integer.parseInt(m.group(1));
-        int col = Integer.parseInt(m.group(2));
-
-        while (curRow < row) {
-          writer.write(tsvJoiner.join(currentLine));
-          writer.println();
-          currentLine = new String[colCount];
-          curRow += 1;
-          curCol = 1;
+        for (Map.Entry<String, Future<Map<String, Path>>> entry : futures.entrySet()) {
+          results.put(entry.getKey(), await(entry.getValue()));
+        }
+        return results;
+      }
+
+      // GData: fetch all worksheet lists, then export each worksheet as its own task
+      Map<String, Future<List<WorksheetEntry>>> worksheetFutures = new LinkedHashMap<>();
+      for (String fileId : fileIds) {
+        SpreadsheetMetadata metadata = getMetadata(fileId);
+        worksheetFutures.put(fileId, executor.submit(metadata::getWorksheets));
+      }
+      List<Future<?>> exportFutures = new ArrayList<>();
+      for (String fileId : fileIds) {
+        Path fileDir = useSubdirs ? dir.resolve(fileId) : dir;
+        Files.createDirectories(fileDir);
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (WorksheetEntry sheet : await(worksheetFutures.get(fileId))) {
+          String title = sheet.getTitle().getPlainText();
+          Path file = toTsvFile(fileDir, title, files);
+          files.put(title, file);
+          exportFutures.add(executor.submit(() -> {
+            exportToTsv(fileId, sheet, file);
+            return null;
+          }));
+        }
+        results.put(fileId, files);
+      }
+      for (Future<?> future : exportFutures) {
+        await(future);
+      }
+      return results;
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Gets a safe, unique TSV filename for a sheet.
+   *
+   * @param existing files that have already been assigned
+   */
+  private static Path toTsvFile(Path dir, String title, Map<String, Path> existing) {
+
+    String baseName = sf_unsafeFilenameChars.matcher(title).replaceAll("_");
+    Path file = dir.resolve(baseName + ".tsv");
+    for (int x = 2; existing.containsValue(file); x += 1) {
+      file = dir.resolve(baseName + "_" + x + ".tsv");
+    }
+    return file;
+  }
+
+  /**
+   * Waits for an export task, rethrowing its exception.
+   */
+  private static <T> T await(Future<T> future) throws IOException, ServiceException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while exporting");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      if (cause instanceof ServiceException) {
+        throw (ServiceException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      throw new IOException("Error exporting", cause);
+    }
+  }
+
+
+  /**
+   * Exports worksheets using the v4 API, skipping unchanged ones if {@link #setSkipUnchanged(boolean)} is on.
+   */
+  private void exportToTsvV4(String fileId, Map<SheetInfo, Path> exports) throws IOException {
+
+    SheetsV4Client client = getSheetsV4Client();
+    String version = null;
+    Map<SheetInfo, Path> toExport = exports;
+    if (m_skipUnchanged) {
+      version = client.getVersion(fileId);
+      toExport = new LinkedHashMap<>();
+      for (Map.Entry<SheetInfo, Path> entry : exports.entrySet()) {
+        if (!isUnchanged(entry.getValue(), fileId, entry.getKey().getTitle(), version)) {
+          toExport.put(entry.getKey(), entry.getValue());
+        }
+      }
+      if (toExport.isEmpty()) {
+        return;
+      }
+    }
+
+    Map<SheetInfo, Path> tempFiles = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<SheetInfo, Path> entry : toExport.entrySet()) {
+        tempFiles.put(entry.getKey(), createTempFile(entry.getValue()));
+      }
+      client.exportToTsv(fileId, tempFiles);
+      for (Map.Entry<SheetInfo, Path> entry : toExport.entrySet()) {
+        moveIntoPlace(tempFiles.get(entry.getKey()), entry.getValue());
+        if (version != null) {
+          writeVersion(entry.getValue(), fileId, entry.getKey().getTitle(), version);
         }
-        while (curCol < col) {
-          curCol += 1;
+      }
+    } finally {
+      for (Path tempFile : tempFiles.values()) {
+        Files.deleteIfExists(tempFile);
+      }
+    }
+  }
+
+  /**
+   * Gets the spreadsheet key from a GData spreadsheet URL (the last path segment).
+   */
+  static String getFileId(URL url) {
+    String path = StringUtils.removeEnd(url.getPath(), "/");
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+
+  /**
+   * Exports a worksheet to TSV, skipping it if it's unchanged and {@link #setSkipUnchanged(boolean)} is on.
+   * The file is replaced atomically, so readers never see a partial export.
+   *
+   * @param worksheet the worksheet, possibly from cached metadata
+   */
+  private void exportToTsv(String fileId, WorksheetEntry worksheet, Path tsvFile) throws IOException,
+      ServiceException {
+
+    worksheet = revalidate(worksheet);
+    String title = worksheet.getTitle().getPlainText();
+    String version = null;
+    if (m_skipUnchanged) {
+      version = worksheet.getUpdated() + " " + worksheet.getEtag();
+      if (isUnchanged(tsvFile, fileId, title, version)) {
+        return;
+      }
+    }
+    Path tempFile = createTempFile(tsvFile);
+    try {
+      writeTsv(worksheet, tempFile);
+      moveIntoPlace(tempFile, tsvFile);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+    if (version != null) {
+      writeVersion(tsvFile, fileId, title, version);
+    }
+  }
+
+
+  /**
+   * Gets the current version of a worksheet entry from cached metadata.  Its size, updated timestamp and etag change
+   * whenever it's edited, so it's revalidated with its etag, which only costs a full response if it has changed.
+   */
+  private WorksheetEntry revalidate(WorksheetEntry worksheet) throws IOException, ServiceException {
+
+    Link selfLink = worksheet.getSelfLink();
+    if (selfLink == null) {
+      return worksheet;
+    }
+    URL url = new URL(selfLink.getHref());
+    try {
+      return schedule(() -> m_sheetsService.getEntry(url, WorksheetEntry.class, worksheet.getEtag()));
+    } catch (NotModifiedException ex) {
+      return worksheet;
+    }
+  }
+
+
+  /**
+   * Gets the file that records which version of a sheet was exported to {@code tsvFile}.
+   */
+  static Path getVersionFile(Path tsvFile) {
+    return tsvFile.resolveSibling(tsvFile.getFileName() + ".version");
+  }
+
+  /**
+   * Checks if {@code tsvFile} already holds the given version of a sheet.
+   */
+  private static boolean isUnchanged(Path tsvFile, String fileId, String sheetTitle, String version)
+      throws IOException {
+
+    Path versionFile = getVersionFile(tsvFile);
+    if (!Files.isRegularFile(tsvFile) || !Files.isRegularFile(versionFile)) {
+      return false;
+    }
+    List<String> lines = Files.readAllLines(versionFile, StandardCharsets.UTF_8);
+    return lines.equals(Arrays.asList(fileId, sheetTitle, version));
+  }
+
+  private static void writeVersion(Path tsvFile, String fileId, String sheetTitle, String version)
+      throws IOException {
+
+    Path versionFile = getVersionFile(tsvFile);
+    Path tempFile = createTempFile(versionFile);
+    try {
+      Files.write(tempFile, Arrays.asList(fileId, sheetTitle, version), StandardCharsets.UTF_8);
+      moveIntoPlace(tempFile, versionFile);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Creates a temp file next to {@code file}, so it can be moved into place atomically.  Unlike
+   * {@link Files#createTempFile}, which makes owner-only files, this has the default permissions.
+   */
+  private static Path createTempFile(Path file) throws IOException {
+    Path dir = file.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    while (true) {
+      try {
+        return Files.createFile(dir.resolve("." + file.getFileName() + "." +
+            Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp"));
+      } catch (FileAlreadyExistsException ex) {
+        // try another name
+      }
+    }
+  }
+
+  private static void moveIntoPlace(Path tempFile, Path file) throws IOException {
+    try {
+      Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException ex) {
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+
+  /**
+   * Writes a worksheet to TSV.  The cell feed is fetched in pages of rows, and each page is written out before the
+   * next is fetched, so memory use is bounded by the page size rather than by the size of the sheet.
+   */
+  private void writeTsv(WorksheetEntry worksheet, Path tsvFile) throws IOException,
+      ServiceException {
+
+    int colCount = worksheet.getColCount();
+    int rowCount = worksheet.getRowCount();
+    int rowsPerPage = Math.max(1, m_cellsPerPage / Math.max(colCount, 1));
+    URL cellFeedUrl = worksheet.getCellFeedUrl();
+
+    try (Writer writer = Files.newBufferedWriter(tsvFile);
+         TsvSheetWriter tsvWriter = new TsvSheetWriter(writer, colCount)) {
+      for (int minRow = 1; minRow <= rowCount; minRow += rowsPerPage) {
+        CellQuery query = new CellQuery(cellFeedUrl);
+        query.setMinimumRow(minRow);
+        query.setMaximumRow(Math.min(minRow + rowsPerPage - 1, rowCount));
+        CellFeed cellFeed = schedule(() -> m_sheetsService.query(query, CellFeed.class));
+        for (CellEntry entry : cellFeed.getEntries()) {
+          Cell cell = entry.getCell();
+          tsvWriter.setCell(cell.getRow(), cell.getCol(), cell.getValue());
         }
-        currentLine[col-1] = cell.getCell().getValue();
       }
-      writer.write(tsvJoiner.join(currentLine));
-      writer.println();
     }
   }
 }
@@ -0,0 +1,156 @@
+package org.pharmgkb.common.io.google;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import com.google.api.client.auth.oauth2.TokenResponse;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.common.hash.Hashing;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * On-disk cache of OAuth access tokens, shared by every JVM on the host that uses the same cache directory.
+ * <p>
+ * Tokens are keyed by service account, impersonated user and scopes.  Access to each token is serialized across
+ * processes with a file lock (and across threads in this JVM with a regular lock), so only one process fetches a new
+ * token when the cached one is about to expire.
+ *
+ * @author Mark Woon
+ */
+class GoogleTokenCache {
+  /** Locks for this JVM, since file locks are held per process. */
+  private static final ConcurrentMap<Path, Object> sf_jvmLocks = new ConcurrentHashMap<>();
+  private final Path m_tokenFile;
+  private final Path m_lockFile;
+  private final JsonFactory m_jsonFactory;
+
+
+  /**
+   * Constructor.
+   *
+   * @param dir directory to store tokens in
+   */
+  GoogleTokenCache(Path dir, JsonFactory jsonFactory, String serviceAccount, @Nullable String accountUser,
+      Collection<String> scopes) {
+
+    List<String> sortedScopes = new ArrayList<>(scopes);
+    Collections.sort(sortedScopes);
+    String key = Hashing.sha256()
+        .hashString(serviceAccount + "\n" + accountUser + "\n" + String.join(" ", sortedScopes),
+            StandardCharsets.UTF_8)
+        .toString();
+    m_tokenFile = dir.resolve(key + ".json").toAbsolutePath();
+    m_lockFile = dir.resolve(key + ".lock").toAbsolutePath();
+    m_jsonFactory = jsonFactory;
+  }
+
+
+  Path getTokenFile() {
+    return m_tokenFile;
+  }
+
+
+  /**
+   * Something that fetches a new token.
+   */
+  @FunctionalInterface
+  interface TokenFetcher {
+    TokenResponse fetch() throws IOException;
+  }
+
+
+  /**
+   * Gets a token from the cache if it's valid for at least {@code minValidityMillis}, otherwise fetches and caches a new
+   * one.  Holds the lock throughout so that concurrent processes don't all fetch tokens at once.
+   */
+  TokenResponse get(long minValidityMillis, TokenFetcher fetcher) throws IOException {
+
+    Files.createDirectories(m_tokenFile.getParent());
+    synchronized (sf_jvmLocks.computeIfAbsent(m_lockFile, k -> new Object())) {
+      try (FileChannel channel = FileChannel.open(m_lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        FileLock lock = channel.lock();
+        try {
+          long now = System.currentTimeMillis();
+          TokenResponse cached = read(now + minValidityMillis);
+          if (cached != null) {
+            return cached;
+          }
+          TokenResponse response = fetcher.fetch();
+          if (response.getAccessToken() != null && response.getExpiresInSeconds() != null) {
+            write(response.getAccessToken(), now + response.getExpiresInSeconds() * 1000);
+          }
+          return response;
+        } finally {
+          lock.release();
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Reads the cached token if it's valid until at least {@code validUntil}.
+   */
+  private @Nullable TokenResponse read(long validUntil) {
+
+    if (!Files.isRegularFile(m_tokenFile)) {
+      return null;
+    }
+    try {
+      GenericJson json = m_jsonFactory.fromString(
+          new String(Files.readAllBytes(m_tokenFile), StandardCharsets.UTF_8), GenericJson.class);
+      Object token = json.get("access_token");
+      Object expiresAt = json.get("expires_at");
+      if (token == null || !(expiresAt instanceof Number)) {
+        return null;
+      }
+      long expiration = ((Number)expiresAt).longValue();
+      if (expiration < validUntil) {
+        return null;
+      }
+      return new TokenResponse()
+          .setAccessToken(token.toString())
+          .setTokenType("Bearer")
+          .setExpiresInSeconds((expiration - System.currentTimeMillis()) / 1000);
+    } catch (IOException | IllegalArgumentException ex) {
+      // corrupt cache file, just fetch a new token
+      return null;
+    }
+  }
+
+  private void write(String token, long expiresAt) throws IOException {
+
+    GenericJson json = new GenericJson();
+    json.setFactory(m_jsonFactory);
+    json.set("access_token", token);
+    json.set("expires_at", expiresAt);
+    Path tempFile = m_tokenFile.resolveSibling(m_tokenFile.getFileName() + ".tmp");
+    Files.deleteIfExists(tempFile);
+    try {
+      Files.createFile(tempFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } catch (UnsupportedOperationException ex) {
+      Files.createFile(tempFile);
+    }
+    Files.write(tempFile, json.toString().getBytes(StandardCharsets.UTF_8));
+    try {
+      Files.move(tempFile, m_tokenFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException ex) {
+      Files.move(tempFile, m_tokenFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
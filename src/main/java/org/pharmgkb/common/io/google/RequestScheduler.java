@@ -0,0 +1,269 @@
+package org.pharmgkb.common.io.google;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpIOExceptionHandler;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.util.Sleeper;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.gdata.util.RateLimitExceededException;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.ServiceUnavailableException;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * Schedules requests to Google APIs so that they stay within quota and survive transient failures.
+ * <p>
+ * Every request (including retries) first waits for a permit from each of its rate limiters, which are token buckets
+ * configured in requests per minute.  Limiters are shared by key across the JVM, so all helpers for the same user or
+ * project draw from the same bucket.
+ * <p>
+ * Requests that fail with 429 or 5xx responses, or with I/O errors, are retried with exponential backoff and
+ * jitter, up to {@link #setMaxRetries(int)} times.  A {@code Retry-After} header, if present, is honored instead, but
+ * never waits longer than the maximum backoff (64 seconds).
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Mark Woon
+ */
+public class RequestScheduler {
+  private static final ConcurrentMap<String, RateLimiter> sf_sharedLimiters = new ConcurrentHashMap<>();
+  private static final long sf_initialBackoffMillis = 1000;
+  private static final long sf_maxBackoffMillis = 64_000;
+  private final List<RateLimiter> m_limiters;
+  private volatile int m_maxRetries = 6;
+  private volatile Sleeper m_sleeper = Sleeper.DEFAULT;
+
+
+  /**
+   * Constructor.
+   *
+   * @param limiters rate limiters that each request must get a permit from (may be empty to only retry)
+   */
+  public RequestScheduler(List<RateLimiter> limiters) {
+    m_limiters = new ArrayList<>(limiters);
+  }
+
+
+  /**
+   * Gets the rate limiter shared by everything in this JVM using the same key, creating it if necessary.
+   *
+   * @param key identifies the quota, e.g. {@code user:someone@example.com} or {@code project:my-project}
+   * @param requestsPerMinute the quota; updates the rate if the limiter already exists
+   */
+  public static RateLimiter getSharedLimiter(String key, double requestsPerMinute) {
+
+    if (requestsPerMinute <= 0) {
+      throw new IllegalArgumentException("Requests per minute must be positive");
+    }
+    double perSecond = requestsPerMinute / 60;
+    RateLimiter limiter = sf_sharedLimiters.computeIfAbsent(key, k -> RateLimiter.create(perSecond));
+    if (limiter.getRate() != perSecond) {
+      limiter.setRate(perSecond);
+    }
+    return limiter;
+  }
+
+
+  /**
+   * Sets how many times a failed request is retried.  Defaults to 6.
+   */
+  public void setMaxRetries(int maxRetries) {
+    m_maxRetries = maxRetries;
+  }
+
+  public int getMaxRetries() {
+    return m_maxRetries;
+  }
+
+  /**
+   * Sets how to wait between retries.  For testing.
+   */
+  void setSleeper(Sleeper sleeper) {
+    m_sleeper = sleeper;
+  }
+
+
+  /**
+   * Waits for a permit from every rate limiter.
+   */
+  public void acquire() {
+    for (RateLimiter limiter : m_limiters) {
+      limiter.acquire();
+    }
+  }
+
+
+  /**
+   * Wraps a request initializer (usually a credential) so that requests are rate limited and retried.
+   */
+  public HttpRequestInitializer wrap(@Nullable HttpRequestInitializer delegate) {
+    return request -> initialize(request, delegate);
+  }
+
+  /**
+   * Initializes a request with {@code delegate}, then adds rate limiting and retries.
+   */
+  void initialize(HttpRequest request, @Nullable HttpRequestInitializer delegate) throws IOException {
+
+    if (delegate != null) {
+      delegate.initialize(request);
+    }
+    HttpExecuteInterceptor interceptor = request.getInterceptor();
+    request.setInterceptor(req -> {
+      acquire();
+      if (interceptor != null) {
+        interceptor.intercept(req);
+      }
+    });
+
+    Backoff backoff = new Backoff();
+    HttpUnsuccessfulResponseHandler responseHandler = request.getUnsuccessfulResponseHandler();
+    request.setUnsuccessfulResponseHandler((req, response, supportsRetry) -> {
+      // let the credential handle 401s first
+      if (responseHandler != null && responseHandler.handleResponse(req, response, supportsRetry)) {
+        return true;
+      }
+      if (!supportsRetry || !isRetryable(response.getStatusCode())) {
+        return false;
+      }
+      return backoff.pause(parseRetryAfter(response.getHeaders().getRetryAfter()));
+    });
+    HttpIOExceptionHandler ioHandler = request.getIOExceptionHandler();
+    request.setIOExceptionHandler((req, supportsRetry) -> {
+      if (ioHandler != null && ioHandler.handleIOException(req, supportsRetry)) {
+        return true;
+      }
+      return supportsRetry && backoff.pause(-1);
+    });
+    request.setNumberOfRetries(Math.max(request.getNumberOfRetries(), m_maxRetries));
+  }
+
+
+  /**
+   * A call to a GData service.
+   */
+  @FunctionalInterface
+  public interface ServiceCall<T> {
+    T call() throws IOException, ServiceException;
+  }
+
+  /**
+   * Runs a GData call (which doesn't go through google-http-client) with rate limiting and retries.
+   * <p>
+   * Besides retryable service errors, I/O errors (e.g. connection resets and socket timeouts) are retried with the same
+   * backoff.
+   */
+  public <T> T execute(ServiceCall<T> call) throws IOException, ServiceException {
+
+    Backoff backoff = new Backoff();
+    while (true) {
+      acquire();
+      try {
+        return call.call();
+      } catch (ServiceException ex) {
+        if (!isRetryable(ex)) {
+          throw ex;
+        }
+        List<String> retryAfter = ex.getHttpHeader("Retry-After");
+        if (!backoff.pause(retryAfter == null || retryAfter.isEmpty() ? -1 : parseRetryAfter(retryAfter.get(0)))) {
+          throw ex;
+        }
+      } catch (IOException ex) {
+        if (!isRetryable(ex) || !backoff.pause(-1)) {
+          throw ex;
+        }
+      }
+    }
+  }
+
+
+  static boolean isRetryable(int statusCode) {
+    return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+  }
+
+  private static boolean isRetryable(ServiceException ex) {
+    return ex instanceof RateLimitExceededException || ex instanceof ServiceUnavailableException ||
+        isRetryable(ex.getHttpErrorCodeOverride());
+  }
+
+  /**
+   * I/O errors from GData are network failures, which are usually transient, but interruptions are not.
+   */
+  private static boolean isRetryable(IOException ex) {
+    return ex instanceof SocketTimeoutException || !(ex instanceof InterruptedIOException);
+  }
+
+  /**
+   * Parses a {@code Retry-After} header, which is either a number of seconds or an HTTP date.
+   *
+   * @return delay in milliseconds, or -1 if not available
+   */
+  static long parseRetryAfter(@Nullable String value) {
+
+    if (value == null || value.trim().isEmpty()) {
+      return -1;
+    }
+    value = value.trim();
+    try {
+      return Math.max(0, Long.parseLong(value) * 1000);
+    } catch (NumberFormatException ex) {
+      // not a number
+    }
+    try {
+      SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+      return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+    } catch (ParseException ex) {
+      return -1;
+    }
+  }
+
+
+  /**
+   * Tracks retries for a single request.
+   */
+  private class Backoff {
+    private int m_attempt;
+
+    /**
+     * Waits before the next retry.
+     *
+     * @param retryAfterMillis delay requested by the server (capped at the maximum backoff), or -1 to use exponential
+     * backoff
+     * @return false if there are no retries left
+     */
+    boolean pause(long retryAfterMillis) throws IOException {
+
+      if (m_attempt >= m_maxRetries) {
+        return false;
+      }
+      long delay = Math.min(retryAfterMillis, sf_maxBackoffMillis);
+      if (delay < 0) {
+        long cap = Math.min(sf_maxBackoffMillis, sf_initialBackoffMillis << Math.min(m_attempt, 20));
+        delay = ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+      }
+      m_attempt += 1;
+      try {
+        m_sleeper.sleep(delay);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting to retry");
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,287 @@
+package org.pharmgkb.common.io.google;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.JsonParser;
+import com.google.api.client.json.JsonToken;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * Minimal client for the Google Sheets API v4, used by {@link GoogleSheetsHelper} to export sheets.
+ * <p>
+ * Exports use {@code spreadsheets.values.batchGet}, so any number of worksheets can be fetched with one metadata call
+ * and one values call.  The values response is parsed as a stream and written out as it is read.
+ * <p>
+ * Docs at https://developers.google.com/sheets/api/reference/rest.
+ *
+ * @author Mark Woon
+ */
+public class SheetsV4Client {
+  public static final String DEFAULT_BASE_URL = "https://sheets.googleapis.com/v4/spreadsheets/";
+  public static final String DEFAULT_DRIVE_BASE_URL = "https://www.googleapis.com/drive/v3/files/";
+  private final HttpRequestFactory m_requestFactory;
+  private final JsonFactory m_jsonFactory;
+  private final String m_baseUrl;
+  private String m_driveBaseUrl = DEFAULT_DRIVE_BASE_URL;
+
+
+  /**
+   * Creates a client using the transport, credential and request scheduler from {@code apiHelper}.  The credential
+   * must have been created with a Sheets scope (e.g. {@link GoogleSheetsHelper#SHEETS_SCOPE}).
+   */
+  public SheetsV4Client(GoogleApiHelper apiHelper) {
+    this(apiHelper.getHttpTransport(), apiHelper.getJsonFactory(), apiHelper.getRequestInitializer(),
+        DEFAULT_BASE_URL);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param initializer initializer for every request, usually the credential
+   * @param baseUrl base URL for the API, ending in {@code /spreadsheets/}
+   */
+  public SheetsV4Client(HttpTransport transport, JsonFactory jsonFactory, @Nullable HttpRequestInitializer initializer,
+      String baseUrl) {
+    m_requestFactory = transport.createRequestFactory(initializer);
+    m_jsonFactory = jsonFactory;
+    m_baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+  }
+
+
+  /**
+   * Sets the base URL for the Drive API, used by {@link #getVersion(String)}.
+   */
+  public void setDriveBaseUrl(String driveBaseUrl) {
+    m_driveBaseUrl = driveBaseUrl.endsWith("/") ? driveBaseUrl : driveBaseUrl + "/";
+  }
+
+
+  /**
+   * Gets the version of a spreadsheet from the Drive API.  The version changes whenever the spreadsheet changes.
+   * <p>
+   * The Sheets API doesn't expose any change information, so this needs a Drive scope (e.g.
+   * {@code https://www.googleapis.com/auth/drive.metadata.readonly}).
+   */
+  public String getVersion(String spreadsheetId) throws IOException {
+
+    GenericUrl url = new GenericUrl(m_driveBaseUrl + spreadsheetId);
+    url.put("fields", "version");
+    url.put("supportsAllDrives", true);
+    HttpRequest request = m_requestFactory.buildGetRequest(url)
+        .setParser(new JsonObjectParser(m_jsonFactory));
+    Object version = request.execute().parseAs(GenericJson.class).get("version");
+    if (version == null) {
+      throw new IOException("No version for " + spreadsheetId);
+    }
+    return version.toString();
+  }
+
+
+  /**
+   * Gets the worksheets in a spreadsheet, in order.
+   */
+  public List<SheetInfo> getSheets(String spreadsheetId) throws IOException {
+
+    GenericUrl url = new GenericUrl(m_baseUrl + spreadsheetId);
+    url.put("fields", "sheets.properties(title,index,gridProperties(rowCount,columnCount))");
+    HttpRequest request = m_requestFactory.buildGetRequest(url)
+        .setParser(new JsonObjectParser(m_jsonFactory));
+    GenericJson spreadsheet = request.execute().parseAs(GenericJson.class);
+
+    List<SheetInfo> sheets = new ArrayList<>();
+    Object sheetList = spreadsheet.get("sheets");
+    if (sheetList instanceof List) {
+      for (Object sheet : (List<?>)sheetList) {
+        Map<?, ?> properties = getMap(sheet, "properties");
+        Map<?, ?> gridProperties = getMap(properties, "gridProperties");
+        sheets.add(new SheetInfo(String.valueOf(properties.get("title")), getInt(properties, "index"),
+            getInt(gridProperties, "rowCount"), getInt(gridProperties, "columnCount")));
+      }
+    }
+    return Collections.unmodifiableList(sheets);
+  }
+
+
+  /**
+   * Exports the specified worksheets to TSV with a single {@code values:batchGet} call.
+   * <p>
+   * Output matches {@link GoogleSheetsHelper}'s GData export: every row has the sheet's full column count, empty rows
+   * are kept except trailing ones.
+   *
+   * @param exports map of worksheet to the file to export it to
+   */
+  public void exportToTsv(String spreadsheetId, Map<SheetInfo, Path> exports) throws IOException {
+
+    if (exports.isEmpty()) {
+      return;
+    }
+    List<SheetInfo> sheets = new ArrayList<>(exports.keySet());
+    List<String> ranges = new ArrayList<>();
+    for (SheetInfo sheet : sheets) {
+      ranges.add(sheet.getRange());
+    }
+    GenericUrl url = new GenericUrl(m_baseUrl + spreadsheetId + "/values:batchGet");
+    url.put("ranges", ranges);
+    url.put("majorDimension", "ROWS");
+    url.put("valueRenderOption", "FORMATTED_VALUE");
+    url.put("fields", "valueRanges.values");
+
+    HttpResponse response = m_requestFactory.buildGetRequest(url).execute();
+    try (InputStream in = response.getContent();
+         JsonParser parser = m_jsonFactory.createJsonParser(in, response.getContentCharset())) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Unexpected response from " + url);
+      }
+      int rangeIdx = 0;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if (!"valueRanges".equals(field)) {
+          parser.skipChildren();
+          continue;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          if (rangeIdx >= sheets.size()) {
+            throw new IOException("Got more value ranges than requested from " + url);
+          }
+          SheetInfo sheet = sheets.get(rangeIdx);
+          writeValueRange(parser, sheet.getColumnCount(), exports.get(sheet));
+          rangeIdx += 1;
+        }
+      }
+      // empty sheets may be omitted from the response entirely
+      for (; rangeIdx < sheets.size(); rangeIdx += 1) {
+        SheetInfo sheet = sheets.get(rangeIdx);
+        try (Writer writer = Files.newBufferedWriter(exports.get(sheet))) {
+          // nothing to write
+          new TsvSheetWriter(writer, sheet.getColumnCount()).close();
+        }
+      }
+    } finally {
+      response.disconnect();
+    }
+  }
+
+  /**
+   * Writes a single {@code ValueRange} object, with the parser positioned at its start.
+   */
+  private static void writeValueRange(JsonParser parser, int colCount, Path file) throws IOException {
+
+    try (Writer writer = Files.newBufferedWriter(file);
+         TsvSheetWriter tsvWriter = new TsvSheetWriter(writer, colCount)) {
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if (!"values".equals(field)) {
+          parser.skipChildren();
+          continue;
+        }
+        int row = 0;
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+          row += 1;
+          int col = 0;
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            col += 1;
+            String value = parser.getCurrentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+            if (value != null && !value.isEmpty()) {
+              tsvWriter.setCell(row, col, value);
+            }
+          }
+        }
+      }
+    }
+  }
+
+
+  private static Map<?, ?> getMap(Object obj, String key) {
+    if (obj instanceof Map) {
+      Object value = ((Map<?, ?>)obj).get(key);
+      if (value instanceof Map) {
+        return (Map<?, ?>)value;
+      }
+    }
+    return Collections.emptyMap();
+  }
+
+  private static int getInt(Map<?, ?> map, String key) {
+    Object value = map.get(key);
+    return value instanceof Number ? ((Number)value).intValue() : 0;
+  }
+
+
+  /**
+   * Quotes a worksheet title for use in A1 notation.
+   */
+  static String quoteTitle(String title) {
+    return "'" + title.replace("'", "''") + "'";
+  }
+
+
+  /**
+   * Information about a worksheet.
+   */
+  public static class SheetInfo {
+    private final String m_title;
+    private final int m_index;
+    private final int m_rowCount;
+    private final int m_columnCount;
+
+
+    SheetInfo(String title, int index, int rowCount, int columnCount) {
+      m_title = title;
+      m_index = index;
+      m_rowCount = rowCount;
+      m_columnCount = columnCount;
+    }
+
+
+    public String getTitle() {
+      return m_title;
+    }
+
+    /**
+     * Gets the position of this worksheet (starting at 0).
+     */
+    public int getIndex() {
+      return m_index;
+    }
+
+    public int getRowCount() {
+      return m_rowCount;
+    }
+
+    public int getColumnCount() {
+      return m_columnCount;
+    }
+
+    /**
+     * Gets the A1 notation for the whole worksheet.
+     */
+    public String getRange() {
+      return quoteTitle(m_title);
+    }
+
+
+    @Override
+    public String toString() {
+      return m_title;
+    }
+  }
+}
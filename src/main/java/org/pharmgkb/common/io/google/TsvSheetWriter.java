@@ -0,0 +1,85 @@
+package org.pharmgkb.common.io.google;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * Writes spreadsheet cells to TSV as they arrive, so that only the current row is kept in memory.
+ * <p>
+ * Cells must be added in row-major order.  Rows without any cells are written as empty lines, except for trailing
+ * ones.
+ *
+ * @author Mark Woon
+ */
+class TsvSheetWriter implements AutoCloseable {
+  private final Writer m_writer;
+  private String[] m_currentLine;
+  private int m_currentRow;
+
+
+  /**
+   * Constructor.
+   *
+   * @param colCount number of columns in the sheet
+   */
+  TsvSheetWriter(Writer writer, int colCount) {
+    m_writer = writer;
+    m_currentLine = new String[Math.max(colCount, 1)];
+  }
+
+
+  /**
+   * Sets the value of a cell.
+   *
+   * @param row row number (starting at 1)
+   * @param col column number (starting at 1)
+   */
+  void setCell(int row, int col, @Nullable String value) throws IOException {
+
+    if (row < m_currentRow) {
+      throw new IOException("Cells out of order: got row " + row + " after row " + m_currentRow);
+    }
+    if (row > m_currentRow) {
+      if (m_currentRow > 0) {
+        writeCurrentLine();
+      }
+      // rows without any cells
+      for (int x = m_currentRow + 1; x < row; x += 1) {
+        writeCurrentLine();
+      }
+      m_currentRow = row;
+    }
+    if (col > m_currentLine.length) {
+      m_currentLine = Arrays.copyOf(m_currentLine, col);
+    }
+    m_currentLine[col - 1] = value;
+  }
+
+
+  private void writeCurrentLine() throws IOException {
+
+    for (int x = 0; x < m_currentLine.length; x += 1) {
+      if (x > 0) {
+        m_writer.write('\t');
+      }
+      if (m_currentLine[x] != null) {
+        m_writer.write(m_currentLine[x]);
+        m_currentLine[x] = null;
+      }
+    }
+    m_writer.write(System.lineSeparator());
+  }
+
+
+  /**
+   * Writes the last row.  Does not close the underlying writer.
+   */
+  @Override
+  public void close() throws IOException {
+    writeCurrentLine();
+    m_writer.flush();
+  }
+}
@@ -0,0 +1,276 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousByteChannel;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import com.fasterxml.aalto.AsyncByteBufferFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Non-blocking counterpart to {@link StaxReader}, backed by Aalto's {@link AsyncXMLStreamReader}.
+ * <p>
+ * Instead of pulling from an {@link java.io.InputStream}, input is pushed in as {@link ByteBuffer} chunks as they
+ * become available.  {@link #next()} returns {@link #INCOMPLETE} when it needs more input, so no thread is held while
+ * waiting on the network or disk.
+ * <p>
+ * Use {@link #parse(AsynchronousFileChannel, EventHandler)} or {@link #parse(AsynchronousByteChannel, EventHandler)}
+ * to have a channel drive the parser.  Events are then delivered on the channel's completion threads, so many
+ * documents can be parsed concurrently by a small thread pool.
+ * <p>
+ * Note that text content may be delivered across several {@code CHARACTERS} events if it spans chunk boundaries.
+ *
+ * @author Mark Woon
+ */
+public class AsyncStaxReader implements Closeable, AutoCloseable {
+  /** Event code returned by {@link #next()} when more input is required. */
+  public static final int INCOMPLETE = AsyncXMLStreamReader.EVENT_INCOMPLETE;
+  private static final Logger sf_logger = LoggerFactory.getLogger(AsyncStaxReader.class);
+  private static final AsyncXMLInputFactory sf_inputFactory = new InputFactoryImpl();
+  private static final int sf_bufferSize = 65536;
+  private final AsyncXMLStreamReader<AsyncByteBufferFeeder> m_xmlReader;
+
+
+  /**
+   * Callback for events produced while parsing from a channel.
+   */
+  @FunctionalInterface
+  public interface EventHandler {
+    /**
+     * Handles an event.
+     *
+     * @param reader the reader, positioned on the event
+     * @param event the event code (see {@link javax.xml.stream.XMLStreamConstants})
+     */
+    void handle(AsyncStaxReader reader, int event) throws XMLStreamException;
+  }
+
+
+  public AsyncStaxReader() {
+    m_xmlReader = sf_inputFactory.createAsyncForByteBuffer();
+  }
+
+
+  @Override
+  public void close() {
+    try {
+      m_xmlReader.close();
+    } catch (Exception ex) {
+      sf_logger.warn("Error closing XML reader", ex);
+    }
+  }
+
+
+  /**
+   * Checks whether all previously fed input has been consumed.
+   * {@link #feed(ByteBuffer)} may only be called when this is true.
+   */
+  public boolean needsMoreInput() {
+    return m_xmlReader.getInputFeeder().needMoreInput();
+  }
+
+  /**
+   * Feeds the next chunk of input.
+   * <p>
+   * The buffer must not be modified until {@link #next()} has returned {@link #INCOMPLETE}.
+   */
+  public void feed(ByteBuffer buffer) throws XMLStreamException {
+    m_xmlReader.getInputFeeder().feedInput(buffer);
+  }
+
+  /**
+   * Signals that there is no more input.
+   */
+  public void endOfInput() {
+    m_xmlReader.getInputFeeder().endOfInput();
+  }
+
+
+  /**
+   * See {@link XMLStreamReader#hasNext()}.
+   */
+  public boolean hasNext() throws XMLStreamException {
+    return m_xmlReader.hasNext();
+  }
+
+  /**
+   * See {@link XMLStreamReader#next()}.
+   *
+   * @return the next event code, or {@link #INCOMPLETE} if more input must be fed first
+   */
+  public int next() throws XMLStreamException {
+    return m_xmlReader.next();
+  }
+
+  /**
+   * See {@link XMLStreamReader#getEventType()}.
+   */
+  public int getEventType() {
+    return m_xmlReader.getEventType();
+  }
+
+
+  /**
+   * Gets the value for the named attribute.
+   *
+   * @param attName attribute name (case-insensitive)
+   * @return the attribute value if it's available, null otherwise
+   */
+  public @Nullable String getAttributeValue(String attName) {
+
+    for (int x = 0; x < m_xmlReader.getAttributeCount(); x++) {
+      if (m_xmlReader.getAttributeLocalName(x).equalsIgnoreCase(attName)) {
+        return StringUtils.stripToNull(m_xmlReader.getAttributeValue(x));
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * See {@link XMLStreamReader#getLocalName()}.
+   */
+  public String getLocalName() {
+    return m_xmlReader.getLocalName();
+  }
+
+
+  /**
+   * See {@link XMLStreamReader#getText()}.
+   */
+  public String getText() {
+    return m_xmlReader.getText();
+  }
+
+
+  /**
+   * Passes all events that can be produced from the input fed so far to the {@code handler}.
+   */
+  private void drain(EventHandler handler) throws XMLStreamException {
+
+    while (m_xmlReader.hasNext()) {
+      int event = m_xmlReader.next();
+      if (event == INCOMPLETE) {
+        return;
+      }
+      handler.handle(this, event);
+    }
+  }
+
+
+  /**
+   * Asynchronously parses the specified file.
+   * Unlike {@link StaxReader}, compressed files are not unwrapped.
+   *
+   * @return a future that completes once the whole file has been parsed
+   */
+  public static CompletableFuture<Void> parse(Path file, EventHandler handler) throws IOException {
+
+    AsynchronousFileChannel channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
+    return parse(channel, handler)
+        .whenComplete((ignored, ex) -> {
+          try {
+            channel.close();
+          } catch (IOException ioe) {
+            sf_logger.warn("Error closing " + file, ioe);
+          }
+        });
+  }
+
+  /**
+   * Asynchronously parses the contents of the {@code channel}, starting from position 0.
+   * The channel is not closed.
+   *
+   * @return a future that completes once the whole channel has been parsed
+   */
+  public static CompletableFuture<Void> parse(AsynchronousFileChannel channel, EventHandler handler) {
+
+    long[] position = new long[1];
+    return pump((buffer, completionHandler) -> channel.read(buffer, position[0], null,
+        new CompletionHandler<Integer, Void>() {
+          @Override
+          public void completed(Integer count, Void attachment) {
+            if (count > 0) {
+              position[0] += count;
+            }
+            completionHandler.completed(count, attachment);
+          }
+
+          @Override
+          public void failed(Throwable ex, Void attachment) {
+            completionHandler.failed(ex, attachment);
+          }
+        }), handler);
+  }
+
+  /**
+   * Asynchronously parses the contents of the {@code channel} (e.g. an
+   * {@link java.nio.channels.AsynchronousSocketChannel}) until it reaches end-of-stream.
+   * The channel is not closed.
+   *
+   * @return a future that completes once the whole channel has been parsed
+   */
+  public static CompletableFuture<Void> parse(AsynchronousByteChannel channel, EventHandler handler) {
+    return pump((buffer, completionHandler) -> channel.read(buffer, null, completionHandler), handler);
+  }
+
+
+  @FunctionalInterface
+  private interface ChunkSource {
+    void read(ByteBuffer buffer, CompletionHandler<Integer, Void> handler);
+  }
+
+  /**
+   * Reads chunks from {@code source}, feeding each one to a new reader, until end of input.
+   */
+  private static CompletableFuture<Void> pump(ChunkSource source, EventHandler handler) {
+
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    AsyncStaxReader reader = new AsyncStaxReader();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(sf_bufferSize);
+    source.read(buffer, new CompletionHandler<Integer, Void>() {
+      @Override
+      public void completed(Integer count, Void attachment) {
+        try {
+          if (count < 0) {
+            reader.endOfInput();
+            reader.drain(handler);
+            reader.close();
+            future.complete(null);
+            return;
+          }
+          if (count > 0) {
+            buffer.flip();
+            reader.feed(buffer);
+            reader.drain(handler);
+            buffer.clear();
+          }
+          source.read(buffer, this);
+        } catch (Exception ex) {
+          failed(ex, attachment);
+        }
+      }
+
+      @Override
+      public void failed(Throwable ex, Void attachment) {
+        reader.close();
+        future.completeExceptionally(ex);
+      }
+    });
+    return future;
+  }
+}
@@ -0,0 +1,144 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Properties;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * Where a reader was in a file after the last record that was fully processed, so that a failed job can pick up from
+ * there instead of starting over.
+ * <p>
+ * Checkpoints are written by {@link StaxReader} and {@link ResumableLineReader} as a small properties file next to
+ * wherever the caller wants it.  A checkpoint is only used if the file it was taken from hasn't changed since (based on
+ * size and modification time).
+ *
+ * @author Mark Woon
+ */
+public final class Checkpoint {
+  private final long m_size;
+  private final long m_modified;
+  private final long m_position;
+  private final long m_recordCount;
+  private final @Nullable String m_state;
+  /** Bytes to feed the parser before resuming (e.g. the XML prolog and start tags of open elements). */
+  private final byte[] m_prefix;
+  /** Number of open elements in the prefix. */
+  private final int m_depth;
+
+
+  Checkpoint(long size, long modified, long position, long recordCount, @Nullable String state, byte[] prefix,
+      int depth) {
+    m_size = size;
+    m_modified = modified;
+    m_position = position;
+    m_recordCount = recordCount;
+    m_state = state;
+    m_prefix = prefix;
+    m_depth = depth;
+  }
+
+
+  /**
+   * Reads a checkpoint file.
+   *
+   * @return the checkpoint, or null if the file does not exist
+   */
+  public static @Nullable Checkpoint read(Path checkpointFile) throws IOException {
+
+    Properties props = new Properties();
+    try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+      props.load(reader);
+    } catch (NoSuchFileException ex) {
+      return null;
+    }
+    try {
+      return new Checkpoint(
+          Long.parseLong(props.getProperty("size")),
+          Long.parseLong(props.getProperty("modified")),
+          Long.parseLong(props.getProperty("position")),
+          Long.parseLong(props.getProperty("records")),
+          props.getProperty("state"),
+          Base64.getDecoder().decode(props.getProperty("prefix", "")),
+          Integer.parseInt(props.getProperty("depth", "0")));
+    } catch (RuntimeException ex) {
+      throw new IOException("Invalid checkpoint file " + checkpointFile, ex);
+    }
+  }
+
+  /**
+   * Writes this checkpoint to a temp file and moves it into place so that a crash never leaves a partial checkpoint.
+   */
+  void write(Path checkpointFile, Path file) throws IOException {
+
+    Properties props = new Properties();
+    props.setProperty("file", file.toAbsolutePath().toString());
+    props.setProperty("size", Long.toString(m_size));
+    props.setProperty("modified", Long.toString(m_modified));
+    props.setProperty("position", Long.toString(m_position));
+    props.setProperty("records", Long.toString(m_recordCount));
+    if (m_state != null) {
+      props.setProperty("state", m_state);
+    }
+    if (m_prefix.length > 0) {
+      props.setProperty("prefix", Base64.getEncoder().encodeToString(m_prefix));
+      props.setProperty("depth", Integer.toString(m_depth));
+    }
+
+    Path tmpFile = Files.createTempFile(checkpointFile.toAbsolutePath().getParent(),
+        checkpointFile.getFileName().toString(), ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+        props.store(writer, null);
+      }
+      Files.move(tmpFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmpFile);
+    }
+  }
+
+
+  /**
+   * Checks if this checkpoint was taken from the current version of {@code file}.
+   */
+  boolean isFor(Path file) throws IOException {
+    return Files.size(file) == m_size && Files.getLastModifiedTime(file).toMillis() == m_modified;
+  }
+
+  /**
+   * Gets the {@link PositionInputStream} position to resume reading from.
+   */
+  public long getPosition() {
+    return m_position;
+  }
+
+  /**
+   * Gets the number of records that had been processed.
+   */
+  public long getRecordCount() {
+    return m_recordCount;
+  }
+
+  /**
+   * Gets the state the caller saved along with the checkpoint.
+   */
+  public @Nullable String getState() {
+    return m_state;
+  }
+
+  byte[] getPrefix() {
+    return m_prefix;
+  }
+
+  int getDepth() {
+    return m_depth;
+  }
+}
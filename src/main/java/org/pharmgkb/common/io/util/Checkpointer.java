@@ -0,0 +1,91 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps track of processed records for a resumable reader, and decides when to write a {@link Checkpoint}.
+ *
+ * @author Mark Woon
+ */
+class Checkpointer {
+  private static final Logger sf_logger = LoggerFactory.getLogger(Checkpointer.class);
+  private static final byte[] sf_noPrefix = new byte[0];
+  private final Path m_file;
+  private final Path m_checkpointFile;
+  private final long m_size;
+  private final long m_modified;
+  private final @Nullable Checkpoint m_resumedFrom;
+  private long m_intervalNanos = TimeUnit.MINUTES.toNanos(1);
+  private long m_lastWrite = System.nanoTime();
+  private long m_recordCount;
+
+
+  /**
+   * Constructor.  Picks up the existing checkpoint, if there is one for the current version of {@code file}.
+   */
+  Checkpointer(Path file, Path checkpointFile) throws IOException {
+
+    m_file = file;
+    m_checkpointFile = checkpointFile;
+    m_size = Files.size(file);
+    m_modified = Files.getLastModifiedTime(file).toMillis();
+    Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+    if (checkpoint != null && !checkpoint.isFor(file)) {
+      sf_logger.warn("Ignoring checkpoint {} because {} has changed since it was written", checkpointFile, file);
+      checkpoint = null;
+    }
+    m_resumedFrom = checkpoint;
+    if (checkpoint != null) {
+      m_recordCount = checkpoint.getRecordCount();
+    }
+  }
+
+
+  @Nullable Checkpoint getResumedFrom() {
+    return m_resumedFrom;
+  }
+
+  long getRecordCount() {
+    return m_recordCount;
+  }
+
+  void setInterval(long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("Interval must not be negative");
+    }
+    m_intervalNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  /**
+   * Counts a processed record.
+   *
+   * @return true if it's time to write a checkpoint
+   */
+  boolean onRecord() {
+    m_recordCount += 1;
+    return System.nanoTime() - m_lastWrite >= m_intervalNanos;
+  }
+
+  void write(long position, @Nullable Supplier<@Nullable String> state) throws IOException {
+    write(position, state, sf_noPrefix, 0);
+  }
+
+  void write(long position, @Nullable Supplier<@Nullable String> state, byte[] prefix, int depth)
+      throws IOException {
+    new Checkpoint(m_size, m_modified, position, m_recordCount, state == null ? null : state.get(), prefix, depth)
+        .write(m_checkpointFile, m_file);
+    m_lastWrite = System.nanoTime();
+  }
+
+  void delete() throws IOException {
+    Files.deleteIfExists(m_checkpointFile);
+  }
+}
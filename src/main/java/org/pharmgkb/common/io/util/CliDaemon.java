@@ -0,0 +1,470 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * Server side of {@link CliHelper}'s daemon mode (see {@link CliHelper#addDaemonOption()}).
+ * <p>
+ * The daemon listens on a loopback port and runs the tool's function for each invocation sent by
+ * {@link CliDaemonClient}, so tool classes are loaded and JIT-compiled once instead of on every run.  Each invocation
+ * gets its own arguments, working directory, standard streams and {@link StreamUtils} metrics, and runs on its own
+ * thread.  Threads an invocation starts share its streams and metrics until it ends.  A limited number of invocations
+ * run at once; other clients wait to be accepted.
+ * <p>
+ * Tools run as daemons must return their exit code from their function instead of calling {@link System#exit(int)},
+ * which ends the daemon (every connected client is told so).
+ * <p>
+ * Clients must present a random token that the daemon writes to a file only readable by the current user (see
+ * {@link #getTokenFile(int)}).
+ * <p>
+ * Wire format (all integers are big-endian, strings are {@link DataOutputStream#writeUTF(String)}):
+ * <ul>
+ *   <li>client: magic, token, arg count, args, working directory, then stdin as frames of {@code length, bytes}
+ *   ending with a frame of length 0</li>
+ *   <li>daemon: frames of {@code channel, length, bytes} for stdout/stderr, then {@code 0, exit code}</li>
+ * </ul>
+ *
+ * @author Mark Woon
+ */
+class CliDaemon {
+  static final int MAGIC = 0x50474b42;
+  static final byte CHANNEL_EXIT = 0;
+  static final byte CHANNEL_STDOUT = 1;
+  static final byte CHANNEL_STDERR = 2;
+  /** How long to wait for a client to send its arguments. */
+  private static final int sf_handshakeTimeoutMillis = 10_000;
+  /** Maximum number of invocations to run at once. */
+  private static final int sf_maxInvocations = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+  /**
+   * The invocation the current thread is working for.  Threads started by an invocation inherit it, but stop using it
+   * once the invocation ends, so pools first created during one invocation don't keep writing to its client.
+   */
+  private static final InheritableThreadLocal<Invocation> sf_invocation = new InheritableThreadLocal<>();
+
+
+  /**
+   * Static class.
+   */
+  private CliDaemon() {
+  }
+
+
+  /**
+   * Gets the file the daemon on the given port stores its token in.
+   */
+  static Path getTokenFile(int port) {
+    return Paths.get(System.getProperty("user.home"), ".pgkb-cli", "daemon-" + port + ".token");
+  }
+
+
+  /**
+   * Runs the daemon until the process is killed.
+   */
+  static void serve(CliHelper template, int port, Function<CliHelper, Integer> function) throws IOException {
+
+    byte[] tokenBytes = new byte[32];
+    new SecureRandom().nextBytes(tokenBytes);
+    String token = Base64.getUrlEncoder().encodeToString(tokenBytes);
+    Path tokenFile = getTokenFile(port);
+    Files.createDirectories(tokenFile.getParent());
+    Files.deleteIfExists(tokenFile);
+    try {
+      Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } catch (UnsupportedOperationException ex) {
+      Files.createFile(tokenFile);
+    }
+    Files.write(tokenFile, token.getBytes(StandardCharsets.UTF_8));
+
+    try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      System.err.println(template.getName() + " daemon listening on port " + serverSocket.getLocalPort());
+      serve(template, serverSocket, token, function);
+    } finally {
+      Files.deleteIfExists(tokenFile);
+    }
+  }
+
+  /**
+   * Accepts invocations until {@code serverSocket} is closed.
+   */
+  static void serve(CliHelper template, ServerSocket serverSocket, String token,
+      Function<CliHelper, Integer> function) throws IOException {
+    serve(template, serverSocket, token, function, sf_handshakeTimeoutMillis);
+  }
+
+  /**
+   * Accepts invocations until {@code serverSocket} is closed.
+   *
+   * @param handshakeTimeoutMillis how long to wait for a client to send its arguments
+   */
+  static void serve(CliHelper template, ServerSocket serverSocket, String token, Function<CliHelper, Integer> function,
+      int handshakeTimeoutMillis) throws IOException {
+
+    PrintStream origOut = System.out;
+    PrintStream origErr = System.err;
+    InputStream origIn = System.in;
+    System.setOut(new PrintStream(new RoutingOutputStream(origOut, CHANNEL_STDOUT), true));
+    System.setErr(new PrintStream(new RoutingOutputStream(origErr, CHANNEL_STDERR), true));
+    System.setIn(new RoutingInputStream(origIn));
+
+    // System.exit() can't be stopped, so at least tell clients why they've been cut off
+    Set<Invocation> invocations = ConcurrentHashMap.newKeySet();
+    Thread shutdownHook = new Thread(() -> {
+      for (Invocation invocation : invocations) {
+        invocation.abort(template.getName() + " daemon exited; tools run with --daemon must return their exit code " +
+            "instead of calling System.exit()");
+      }
+    });
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+    Semaphore slots = new Semaphore(sf_maxInvocations);
+    ExecutorService executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, template.getName() + "-invocation");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      //noinspection InfiniteLoopStatement
+      while (true) {
+        // leave excess clients in the listen backlog rather than starting a thread for each
+        try {
+          slots.acquire();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting for an invocation to finish");
+        }
+        Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (SocketException ex) {
+          slots.release();
+          if (serverSocket.isClosed()) {
+            return;
+          }
+          throw ex;
+        }
+        executor.execute(() -> {
+          try {
+            handle(socket, template, token, function, invocations, handshakeTimeoutMillis);
+          } finally {
+            slots.release();
+          }
+        });
+      }
+    } finally {
+      executor.shutdownNow();
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException ex) {
+        // already shutting down
+      }
+      System.setOut(origOut);
+      System.setErr(origErr);
+      System.setIn(origIn);
+    }
+  }
+
+
+  private static void handle(Socket socket, CliHelper template, String token, Function<CliHelper, Integer> function,
+      Set<Invocation> invocations, int handshakeTimeoutMillis) {
+
+    try (Socket s = socket) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+      s.setSoTimeout(handshakeTimeoutMillis);
+      if (in.readInt() != MAGIC || !token.equals(in.readUTF())) {
+        return;
+      }
+      String[] args = new String[in.readInt()];
+      for (int x = 0; x < args.length; x += 1) {
+        args[x] = in.readUTF();
+      }
+      Path workingDir = Paths.get(in.readUTF());
+      // the tool may wait on stdin for as long as it likes
+      s.setSoTimeout(0);
+
+      Invocation invocation = new Invocation(in, out);
+      invocations.add(invocation);
+      sf_invocation.set(invocation);
+      StreamUtils.startMetricsScope();
+      int exitCode;
+      try {
+        exitCode = template.forInvocation(workingDir).run(args, function);
+      } catch (Throwable ex) {
+        ex.printStackTrace();
+        exitCode = 1;
+      } finally {
+        StreamUtils.endMetricsScope();
+        System.out.flush();
+        System.err.flush();
+        invocation.end();
+        sf_invocation.remove();
+        invocations.remove(invocation);
+      }
+      invocation.finish(exitCode);
+      // wait for client to hang up so unread stdin doesn't cause a reset before it gets the exit code
+      s.shutdownOutput();
+      s.setSoTimeout(5000);
+      while (in.read() != -1) {
+        in.skip(Long.MAX_VALUE);
+      }
+    } catch (IOException ex) {
+      // client went away (or never said anything), nothing to report to
+    }
+  }
+
+
+  /**
+   * A single invocation, and the standard streams it has been given.
+   */
+  private static class Invocation {
+    private final DataOutputStream m_out;
+    private final OutputStream m_stdout;
+    private final OutputStream m_stderr;
+    private final InputStream m_stdin;
+    private volatile boolean m_isActive = true;
+    private boolean m_isFinished;
+
+    Invocation(DataInputStream in, DataOutputStream out) {
+      m_out = out;
+      m_stdout = new FrameOutputStream(out, CHANNEL_STDOUT);
+      m_stderr = new FrameOutputStream(out, CHANNEL_STDERR);
+      m_stdin = new FrameInputStream(in);
+    }
+
+    /**
+     * Checks if the invocation is still running.  Threads it started (including pool threads that outlive it) only
+     * use its streams until then.
+     */
+    boolean isActive() {
+      return m_isActive;
+    }
+
+    void end() {
+      m_isActive = false;
+    }
+
+    /**
+     * Sends the exit code to the client, unless the invocation has already been finished.
+     */
+    void finish(int exitCode) throws IOException {
+      synchronized (m_out) {
+        if (m_isFinished) {
+          return;
+        }
+        m_isFinished = true;
+        m_out.writeByte(CHANNEL_EXIT);
+        m_out.writeInt(exitCode);
+        m_out.flush();
+      }
+    }
+
+    /**
+     * Sends an error message and a failing exit code to the client.
+     */
+    void abort(String message) {
+      try {
+        synchronized (m_out) {
+          if (m_isFinished) {
+            return;
+          }
+          m_stderr.write((message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+          finish(1);
+        }
+      } catch (IOException ex) {
+        // client went away, nothing to report to
+      }
+    }
+  }
+
+
+  /**
+   * Gets the invocation the current thread is working for, if it's still running.
+   */
+  private static @Nullable Invocation currentInvocation() {
+    Invocation invocation = sf_invocation.get();
+    return invocation != null && invocation.isActive() ? invocation : null;
+  }
+
+
+  /**
+   * Sends everything written to it to the current invocation's stream, or to the original stream if this thread isn't
+   * working for a running invocation.
+   */
+  private static class RoutingOutputStream extends OutputStream {
+    private final OutputStream m_default;
+    private final byte m_channel;
+
+    RoutingOutputStream(OutputStream defaultStream, byte channel) {
+      m_default = defaultStream;
+      m_channel = channel;
+    }
+
+    private OutputStream target() {
+      Invocation invocation = currentInvocation();
+      if (invocation == null) {
+        return m_default;
+      }
+      return m_channel == CHANNEL_STDOUT ? invocation.m_stdout : invocation.m_stderr;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      target().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      target().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      target().flush();
+    }
+  }
+
+
+  /**
+   * Reads from the current invocation's stream, or from the original stream if this thread isn't working for a running
+   * invocation.
+   */
+  private static class RoutingInputStream extends InputStream {
+    private final InputStream m_default;
+
+    RoutingInputStream(InputStream defaultStream) {
+      m_default = defaultStream;
+    }
+
+    private InputStream source() {
+      Invocation invocation = currentInvocation();
+      return invocation == null ? m_default : invocation.m_stdin;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return source().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return source().read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return source().available();
+    }
+  }
+
+
+  /**
+   * Writes each chunk of output as a frame on the given channel.
+   */
+  static class FrameOutputStream extends OutputStream {
+    private final DataOutputStream m_out;
+    private final byte m_channel;
+
+    FrameOutputStream(DataOutputStream out, byte channel) {
+      m_out = out;
+      m_channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte)b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return;
+      }
+      synchronized (m_out) {
+        m_out.writeByte(m_channel);
+        m_out.writeInt(len);
+        m_out.write(b, off, len);
+        m_out.flush();
+      }
+    }
+  }
+
+
+  /**
+   * Reads input sent as frames of {@code length, bytes}, ending with a frame of length 0.
+   */
+  static class FrameInputStream extends InputStream {
+    private final DataInputStream m_in;
+    private int m_remaining;
+    private boolean m_isEof;
+
+    FrameInputStream(DataInputStream in) {
+      m_in = in;
+    }
+
+    private boolean fill() throws IOException {
+      while (m_remaining == 0 && !m_isEof) {
+        try {
+          m_remaining = m_in.readInt();
+        } catch (EOFException ex) {
+          m_remaining = 0;
+        }
+        if (m_remaining <= 0) {
+          m_remaining = 0;
+          m_isEof = true;
+        }
+      }
+      return !m_isEof;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      m_remaining -= 1;
+      return m_in.read();
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int count = m_in.read(b, off, Math.min(len, m_remaining));
+      if (count > 0) {
+        m_remaining -= count;
+      }
+      return count;
+    }
+  }
+}
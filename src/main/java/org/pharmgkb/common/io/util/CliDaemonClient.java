@@ -0,0 +1,135 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+
+/**
+ * Client for {@link CliHelper}'s daemon mode.
+ * <p>
+ * Usage: {@code java -cp ... org.pharmgkb.common.io.util.CliDaemonClient <port> [args...]}
+ * <p>
+ * Sends the arguments, working directory and standard input to the daemon listening on {@code port}, copies its
+ * output to standard out/err, and exits with its exit code.  Since this class only needs the JDK, the client JVM can
+ * be started with a minimal classpath (and flags like {@code -Xshare:auto -XX:TieredStopAtLevel=1}) to keep startup
+ * fast.
+ *
+ * @author Mark Woon
+ */
+public class CliDaemonClient {
+
+
+  /**
+   * Static class.
+   */
+  private CliDaemonClient() {
+  }
+
+
+  public static void main(String[] args) {
+
+    if (args.length == 0) {
+      System.err.println("Usage: CliDaemonClient <port> [args...]");
+      System.exit(1);
+    }
+    try {
+      int port = Integer.parseInt(args[0]);
+      String token = new String(Files.readAllBytes(CliDaemon.getTokenFile(port)), StandardCharsets.UTF_8).trim();
+      System.exit(invoke(port, token, Arrays.copyOfRange(args, 1, args.length),
+          Paths.get(System.getProperty("user.dir")), System.in, System.out, System.err));
+    } catch (NumberFormatException ex) {
+      System.err.println("Invalid port: " + args[0]);
+    } catch (IOException ex) {
+      System.err.println("Error talking to daemon: " + ex.getMessage());
+    }
+    System.exit(1);
+  }
+
+
+  /**
+   * Runs a single invocation on the daemon.
+   *
+   * @param port the port the daemon is listening on
+   * @param token the daemon's token
+   * @param args the arguments to run with
+   * @param workingDir the directory relative paths in {@code args} should be resolved against
+   * @return the exit code
+   */
+  public static int invoke(int port, String token, String[] args, Path workingDir, InputStream stdin,
+      OutputStream stdout, OutputStream stderr) throws IOException {
+
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      socket.setTcpNoDelay(true);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+      out.writeInt(CliDaemon.MAGIC);
+      out.writeUTF(token);
+      out.writeInt(args.length);
+      for (String arg : args) {
+        out.writeUTF(arg);
+      }
+      out.writeUTF(workingDir.toAbsolutePath().toString());
+      out.flush();
+
+      Thread stdinPump = new Thread(() -> {
+        byte[] buffer = new byte[8192];
+        try {
+          int count;
+          while ((count = stdin.read(buffer)) != -1) {
+            if (count > 0) {
+              out.writeInt(count);
+              out.write(buffer, 0, count);
+              out.flush();
+            }
+          }
+          out.writeInt(0);
+          out.flush();
+        } catch (IOException ex) {
+          // daemon is done with us
+        }
+      }, "CliDaemonClient-stdin");
+      stdinPump.setDaemon(true);
+      stdinPump.start();
+
+      byte[] buffer = new byte[8192];
+      while (true) {
+        byte channel;
+        try {
+          channel = in.readByte();
+        } catch (EOFException ex) {
+          throw new IOException("Daemon closed connection without returning an exit code");
+        }
+        if (channel == CliDaemon.CHANNEL_EXIT) {
+          stdout.flush();
+          stderr.flush();
+          return in.readInt();
+        }
+        OutputStream target = channel == CliDaemon.CHANNEL_STDERR ? stderr : stdout;
+        int remaining = in.readInt();
+        while (remaining > 0) {
+          int count = in.read(buffer, 0, Math.min(buffer.length, remaining));
+          if (count == -1) {
+            throw new IOException("Daemon closed connection unexpectedly");
+          }
+          target.write(buffer, 0, count);
+          remaining -= count;
+        }
+        target.flush();
+      }
+    }
+  }
+}
@@ -2,12 +2,30 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
+import java.util.stream.Stream;
 import com.google.common.collect.Lists;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -27,6 +45,12 @@
 public class CliHelper {
   private static final String sf_verboseFlag = "verbose";
   private static final String sf_helpFlag = "help";
+  private static final String sf_threadsFlag = "threads";
+  private static final String sf_profileFlag = "profile";
+  private static final String sf_profileOutFlag = "profile-out";
+  private static final String sf_profileJfrFlag = "profile-jfr";
+  private static final String sf_daemonFlag = "daemon";
+  private static final String sf_incrementalFlag = "incremental";
   private String m_name;
   /**
    * Shadow collection of options with nothing required so that we can check if help was requested
@@ -34,8 +58,21 @@ public class CliHelper {
    */
   private Options m_helpOptions = new Options();
   private Options m_options = new Options();
+  /**
+   * Long names of the standard options that have been added, which can't be redefined.  None of them affect what a run
+   * produces.
+   */
+  private Set<String> m_standardOptions = new HashSet<>();
   private CommandLine m_commandLine;
   private String m_error;
+  /** Working directory to resolve relative paths against, if not the JVM's working directory. */
+  private @Nullable Path m_workingDir;
+  private @Nullable ProgressReporter m_progress;
+  /** Options whose values are inputs, for incremental runs. */
+  private List<String> m_inputOptions = new ArrayList<>();
+  /** Options whose values are outputs, for incremental runs. */
+  private List<String> m_outputOptions = new ArrayList<>();
+  private @Nullable IncrementalRun m_incrementalRun;
 
 
   /**
@@ -47,21 +84,60 @@ public CliHelper(Class cls) {
 
     m_name = cls.getSimpleName();
 
-    Option opt = new Option("h", sf_helpFlag, false, "print this message");
-    m_helpOptions.addOption(opt);
-    m_options.addOption(opt);
+    addStandardOption(new Option("h", sf_helpFlag, false, "print this message"));
+    addStandardOption(new Option("v", sf_verboseFlag, false, "enable verbose output"));
+
+    addStandardOption(Option.builder()
+        .longOpt(sf_profileFlag)
+        .desc("write a JSON report of time, GC, memory and I/O usage to stderr (or to --" + sf_profileOutFlag + ")")
+        .build());
+    addStandardOption(Option.builder()
+        .longOpt(sf_profileOutFlag)
+        .desc("write the --" + sf_profileFlag + " report to file")
+        .argName("file")
+        .hasArg()
+        .build());
+    addStandardOption(Option.builder()
+        .longOpt(sf_profileJfrFlag)
+        .desc("save a Java Flight Recorder recording to file")
+        .argName("file")
+        .hasArg()
+        .build());
+  }
 
-    opt = new Option("v", sf_verboseFlag, false, "enable verbose output");
-    m_helpOptions.addOption(opt);
-    m_options.addOption(opt);
+  /**
+   * Creates a copy of {@code template} for a single daemon invocation, which shares options but not parse results.
+   */
+  private CliHelper(CliHelper template, Path workingDir) {
+    m_name = template.m_name;
+    m_helpOptions = template.m_helpOptions;
+    m_options = template.m_options;
+    m_standardOptions = template.m_standardOptions;
+    m_inputOptions = template.m_inputOptions;
+    m_outputOptions = template.m_outputOptions;
+    m_workingDir = workingDir;
+  }
+
+  /**
+   * Creates a copy of this helper for a single daemon invocation.
+   *
+   * @param workingDir the directory to resolve relative paths against
+   */
+  CliHelper forInvocation(Path workingDir) {
+    return new CliHelper(this, workingDir);
+  }
+
+  /**
+   * Gets the name of the command line utility.
+   */
+  String getName() {
+    return m_name;
   }
 
 
   public CliHelper addOption(Option option) {
 
-    if (option.getArgName().equals("h") || option.getArgName().equals("v")) {
-      throw new IllegalArgumentException("-h and -v are reserved arguments");
-    }
+    checkReserved(option.getOpt(), option.getLongOpt());
     if (option.isRequired()) {
       m_helpOptions.addOption(new Option(option.getOpt(), option.getLongOpt(), option.hasArg(), option.getDescription()));
     } else {
@@ -71,14 +147,89 @@ public CliHelper addOption(Option option) {
     return this;
   }
 
+  /**
+   * Adds the standard {@code --threads} option, used to size the thread pool for
+   * {@link #processInputs(String, InputProcessor, boolean)}.
+   */
+  public CliHelper addThreadsOption() {
+
+    addStandardOption(Option.builder()
+        .longOpt(sf_threadsFlag)
+        .desc("number of threads to use (defaults to number of processors)")
+        .argName("num")
+        .hasArg()
+        .build());
+    return this;
+  }
+
+  /**
+   * Adds the standard {@code --incremental} option, which takes the path to a manifest file.  When specified, the
+   * options, inputs and outputs of each successful run are recorded in the manifest, and
+   * {@link #execute(String[], Function)} skips running the function if none of them have changed since.
+   * <p>
+   * Inputs and outputs must be declared with {@link #declareInputs(String...)} and {@link #declareOutputs(String...)}.
+   * If only some inputs have changed, the function can use {@link #getChangedInputs(String)} to only process those.
+   */
+  public CliHelper addIncrementalOption() {
+
+    addStandardOption(Option.builder()
+        .longOpt(sf_incrementalFlag)
+        .desc("skip the run if options, inputs and outputs are unchanged since the run recorded in manifest")
+        .argName("manifest")
+        .hasArg()
+        .build());
+    return this;
+  }
+
+  /**
+   * Adds the standard {@code --daemon} option, which takes a port.  When it's the only argument,
+   * {@link #execute(String[], Function)} runs as a daemon instead (see {@link CliDaemon}).
+   */
+  public CliHelper addDaemonOption() {
+
+    addStandardOption(Option.builder()
+        .longOpt(sf_daemonFlag)
+        .desc("run as a daemon accepting invocations from CliDaemonClient on port (must be the only argument)")
+        .argName("port")
+        .hasArg()
+        .build());
+    return this;
+  }
+
+  private void addStandardOption(Option opt) {
+
+    if (m_options.hasLongOption(opt.getLongOpt())) {
+      throw new IllegalArgumentException("--" + opt.getLongOpt() + " has already been defined");
+    }
+    m_helpOptions.addOption(opt);
+    m_options.addOption(opt);
+    m_standardOptions.add(opt.getLongOpt());
+  }
+
+  /**
+   * Declares options whose values are inputs (as in {@link #getInputs(String)}), for
+   * {@link #addIncrementalOption() incremental runs}.
+   */
+  public CliHelper declareInputs(String... opts) {
+    m_inputOptions.addAll(Arrays.asList(opts));
+    return this;
+  }
+
+  /**
+   * Declares options whose values are output files or directories, for {@link #addIncrementalOption() incremental
+   * runs}.
+   */
+  public CliHelper declareOutputs(String... opts) {
+    m_outputOptions.addAll(Arrays.asList(opts));
+    return this;
+  }
+
   /**
    * Add a boolean option (aka a flag).
    */
   public CliHelper addOption(String shortName, String longName, String description) {
 
-    if (shortName.equals("h") || shortName.equals("v")) {
-      throw new IllegalArgumentException("-h and -v are reserved arguments");
-    }
+    checkReserved(shortName, longName);
     Option opt = Option.builder(shortName)
         .longOpt(longName)
         .desc(description)
@@ -105,9 +256,7 @@ public CliHelper addOption(String shortName, String longName, String description
   public CliHelper addOption(String shortName, String longName, String description,
       boolean isOptionRequired, String argName, int numArgs, boolean argsAreRequired) {
 
-    if (shortName.equals("h") || shortName.equals("v")) {
-      throw new IllegalArgumentException("-h and -v are reserved arguments");
-    }
+    checkReserved(shortName, longName);
 
     m_helpOptions.addOption(buildOption(shortName, longName, description, false, argName, numArgs, argsAreRequired));
     m_options.addOption(buildOption(shortName, longName, description, isOptionRequired, argName, numArgs, argsAreRequired));
@@ -115,6 +264,19 @@ public CliHelper addOption(String shortName, String longName, String description
   }
 
 
+  /**
+   * Makes sure an option doesn't collide with the standard options that have been added.
+   */
+  private void checkReserved(@Nullable String shortName, @Nullable String longName) {
+
+    if ("h".equals(shortName) || "v".equals(shortName)) {
+      throw new IllegalArgumentException("-h and -v are reserved arguments");
+    }
+    if (longName != null && m_standardOptions.contains(longName)) {
+      throw new IllegalArgumentException("--" + longName + " is a reserved argument");
+    }
+  }
+
   private Option buildOption(String shortName, String longName, String description,
       boolean isOptionRequired, String argName, int numArgs, boolean argsAreRequired) {
 
@@ -169,16 +331,205 @@ public boolean parse(String[] args) {
   /**
    * Parse arguments and execute the function.
    * This helps enforce proper exit codes.
+   * <p>
+   * If {@code --profile}, {@code --profile-out <file>} or {@code --profile-jfr <file>} is specified, the run will be
+   * profiled.
+   * <p>
+   * If {@link #addDaemonOption()} was called and {@code --daemon <port>} is specified, this will instead start a
+   * long-lived server that executes the function for each invocation received from {@link CliDaemonClient}, saving JVM
+   * startup and warm-up costs.  In that case, the function must return its exit code rather than calling
+   * {@link System#exit(int)}, which would end the daemon (see {@link CliDaemon}).
    */
   public void execute(String[] args, Function<CliHelper, Integer> function) {
 
-    if (!parse(args)) {
-      if (isHelpRequested()) {
+    if (args != null && args.length == 2 && args[0].equals("--" + sf_daemonFlag) &&
+        m_standardOptions.contains(sf_daemonFlag)) {
+      try {
+        CliDaemon.serve(this, Integer.parseInt(args[1]), function);
         System.exit(0);
+      } catch (NumberFormatException ex) {
+        System.err.println("Invalid port: " + args[1]);
+      } catch (IOException ex) {
+        System.err.println("Error running daemon: " + ex.getMessage());
       }
       System.exit(1);
     }
-    System.exit(function.apply(this));
+    System.exit(run(args, function));
+  }
+
+  /**
+   * Parse arguments and execute the function.
+   *
+   * @return the exit code
+   */
+  int run(String[] args, Function<CliHelper, Integer> function) {
+
+    if (!parse(args)) {
+      if (isHelpRequested()) {
+        return 0;
+      }
+      return 1;
+    }
+    if (m_standardOptions.contains(sf_daemonFlag) && m_commandLine.hasOption(sf_daemonFlag)) {
+      System.err.println("--" + sf_daemonFlag + " must be the only argument");
+      return 1;
+    }
+
+    if (m_standardOptions.contains(sf_incrementalFlag) && m_commandLine.hasOption(sf_incrementalFlag)) {
+      try {
+        if (startIncrementalRun()) {
+          if (isVerbose()) {
+            System.err.println(m_name + " is up to date");
+          }
+          return 0;
+        }
+      } catch (IOException | UncheckedIOException | IllegalArgumentException ex) {
+        System.err.println("Error checking for changes: " + ex.getMessage());
+        return 1;
+      }
+    }
+
+    CliProfiler profiler = null;
+    boolean writeReport = m_commandLine.hasOption(sf_profileFlag) || m_commandLine.hasOption(sf_profileOutFlag);
+    if (writeReport || m_commandLine.hasOption(sf_profileJfrFlag)) {
+      String jfrFile = getValue(sf_profileJfrFlag);
+      profiler = new CliProfiler(m_name, jfrFile == null ? null : resolvePath(jfrFile));
+      profiler.start();
+    }
+    if (isVerbose()) {
+      getProgress().start();
+    }
+    int exitCode = 1;
+    try {
+      exitCode = function.apply(this);
+    } finally {
+      if (m_progress != null) {
+        m_progress.stop();
+      }
+      if (exitCode == 0 && m_incrementalRun != null) {
+        try {
+          m_incrementalRun.writeManifest(getOutputs());
+        } catch (IOException ex) {
+          System.err.println("Error writing manifest: " + ex.getMessage());
+          exitCode = 1;
+        }
+      }
+      if (profiler != null) {
+        Map<String, Object> report = profiler.stop(exitCode);
+        if (writeReport) {
+          String reportFile = getValue(sf_profileOutFlag);
+          try {
+            CliProfiler.writeReport(report, reportFile == null ? null : resolvePath(reportFile));
+          } catch (IOException ex) {
+            System.err.println("Error writing profile report: " + ex.getMessage());
+          }
+        }
+      }
+    }
+    return exitCode;
+  }
+
+
+  /**
+   * Compares this run with the one recorded in the manifest.
+   *
+   * @return true if nothing has changed, so there is no need to run
+   */
+  private boolean startIncrementalRun() throws IOException {
+
+    Map<String, String> options = new TreeMap<>();
+    for (Option opt : m_options.getOptions()) {
+      // standard options are registered by long name, inputs may be declared by either
+      String key = opt.getLongOpt() != null ? opt.getLongOpt() : opt.getOpt();
+      if (m_commandLine.hasOption(key) && !m_standardOptions.contains(key) && !m_inputOptions.contains(key) &&
+          !m_inputOptions.contains(opt.getOpt())) {
+        String[] values = m_commandLine.getOptionValues(key);
+        options.put(key, values == null ? "" : String.join("\n", values));
+      }
+    }
+    if (!m_commandLine.getArgList().isEmpty()) {
+      options.put("", String.join("\n", m_commandLine.getArgList()));
+    }
+    List<Path> inputs = new ArrayList<>();
+    for (String opt : m_inputOptions) {
+      if (m_commandLine.hasOption(opt)) {
+        for (CliInput input : (Iterable<CliInput>)getInputs(opt)::iterator) {
+          if (input.getPath() == null) {
+            // can't tell if standard input has changed
+            return false;
+          }
+          inputs.add(input.getPath());
+        }
+      }
+    }
+
+    List<Path> outputs = getOutputs();
+    IncrementalRun run = new IncrementalRun(getPath(sf_incrementalFlag), options, inputs, outputs);
+    if (run.isUpToDate()) {
+      run.refreshManifest(outputs);
+      return true;
+    }
+    m_incrementalRun = run;
+    return false;
+  }
+
+  private List<Path> getOutputs() {
+    List<Path> outputs = new ArrayList<>();
+    for (String opt : m_outputOptions) {
+      for (String value : getValues(opt)) {
+        outputs.add(resolvePath(value.trim()));
+      }
+    }
+    return outputs;
+  }
+
+  /**
+   * Checks if only some inputs need to be processed, because this is an {@link #addIncrementalOption() incremental
+   * run} and the previous run had the same options and its outputs haven't been touched since.  If so,
+   * {@link #getChangedInputs(String)} only returns inputs that are new or have changed, and the function is expected to
+   * update the existing outputs.
+   */
+  public boolean isIncremental() {
+    return m_incrementalRun != null && m_incrementalRun.isIncremental();
+  }
+
+  /**
+   * Gets the inputs for the given option (see {@link #getInputs(String)}) that are new or have changed since the
+   * previous run.  This is all of them unless {@link #isIncremental()}.
+   */
+  public Stream<CliInput> getChangedInputs(String opt) {
+
+    IncrementalRun run = m_incrementalRun;
+    if (run == null || !run.isIncremental()) {
+      return getInputs(opt);
+    }
+    return getInputs(opt)
+        .filter(input -> input.getPath() == null || run.isChanged(input.getPath()));
+  }
+
+  /**
+   * Gets the files that were inputs to the previous run but no longer are, if {@link #isIncremental()}.
+   */
+  public List<Path> getRemovedInputs() {
+    if (m_incrementalRun == null || !m_incrementalRun.isIncremental()) {
+      return Collections.emptyList();
+    }
+    return m_incrementalRun.getRemovedInputs();
+  }
+
+
+  /**
+   * Gets the progress reporter for this run.  Use it to report the number of records processed; bytes read from
+   * streams opened through {@link StreamUtils} are tracked automatically.
+   * <p>
+   * Progress is only printed (to stderr) when {@code --verbose} is specified and the function is run via
+   * {@link #execute(String[], Function)}, but it is always safe (and cheap) to report to.
+   */
+  public synchronized ProgressReporter getProgress() {
+    if (m_progress == null) {
+      m_progress = new ProgressReporter(m_name);
+    }
+    return m_progress;
   }
 
 
@@ -232,7 +583,7 @@ public Path getValidDirectory(String opt, boolean createIfNotExist) throws IOExc
     if (val == null) {
       throw new IllegalArgumentException("Missing option '" + opt + "'");
     }
-    Path dir = Paths.get(val);
+    Path dir = resolvePath(val);
     if (Files.exists(dir)) {
       if (Files.isDirectory(dir)) {
         return dir;
@@ -257,7 +608,17 @@ public Path getPath(String opt) {
     if (val == null) {
       throw new IllegalArgumentException("Missing option '" + opt + "'");
     }
-    return Paths.get(val);
+    return resolvePath(val);
+  }
+
+  /**
+   * Resolves a path from the command line against the working directory of the invocation.
+   */
+  private Path resolvePath(String val) {
+    if (m_workingDir == null) {
+      return Paths.get(val);
+    }
+    return m_workingDir.resolve(val);
   }
 
   /**
@@ -280,6 +641,195 @@ public Path getValidFile(String opt, boolean mustExist) {
   }
 
 
+  /**
+   * Gets the inputs for the given option, which may have multiple values.  Each value may be:
+   * <ul>
+   *   <li>{@code -} for standard input</li>
+   *   <li>a directory, which is searched recursively for files</li>
+   *   <li>a glob (e.g. {@code data/*.tsv.gz} or {@code data/**}{@code /*.xml})</li>
+   *   <li>a file, which must exist</li>
+   * </ul>
+   * Expansions are sorted by path.  Inputs are not opened until requested, so the stream can be consumed lazily.
+   *
+   * @throws IllegalArgumentException if option was not specified or a file doesn't exist
+   */
+  public Stream<CliInput> getInputs(String opt) {
+
+    List<String> values = getValues(opt);
+    if (values.isEmpty()) {
+      throw new IllegalArgumentException("Missing option '" + opt + "'");
+    }
+    return values.stream()
+        .map(StringUtils::strip)
+        .flatMap(this::expandInput);
+  }
+
+  private Stream<CliInput> expandInput(String value) {
+
+    if (value.equals(CliInput.STDIN)) {
+      return Stream.of(new CliInput(null, m_incrementalRun));
+    }
+    if (StringUtils.containsAny(value, "*?[{")) {
+      return expandGlob(value);
+    }
+    Path p = resolvePath(value);
+    if (Files.isDirectory(p)) {
+      return walk(p, Integer.MAX_VALUE)
+          .filter(Files::isRegularFile)
+          .sorted()
+          .map(f -> new CliInput(f, m_incrementalRun));
+    }
+    if (!Files.isRegularFile(p)) {
+      throw new IllegalArgumentException("File '" + p + "' does not exist");
+    }
+    return Stream.of(new CliInput(p, m_incrementalRun));
+  }
+
+  /**
+   * Expands a glob.  Directory levels before the first wildcard are used as the starting point of the search.
+   */
+  private Stream<CliInput> expandGlob(String glob) {
+
+    String[] parts = glob.split("[/\\\\]", -1);
+    int firstWild = 0;
+    while (!StringUtils.containsAny(parts[firstWild], "*?[{")) {
+      firstWild += 1;
+    }
+    String rootName;
+    if (firstWild == 0) {
+      rootName = ".";
+    } else if (firstWild == 1 && parts[0].isEmpty()) {
+      rootName = glob.substring(0, 1);
+    } else {
+      rootName = String.join("/", Arrays.asList(parts).subList(0, firstWild));
+    }
+    Path root = resolvePath(rootName);
+    if (!Files.isDirectory(root)) {
+      return Stream.empty();
+    }
+    int depth = glob.contains("**") ? Integer.MAX_VALUE : parts.length - firstWild;
+    PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + glob);
+    // match against paths as they were written in the glob
+    Path globRoot = firstWild == 0 ? null : Paths.get(rootName);
+    return walk(root, depth)
+        .filter(Files::isRegularFile)
+        .map(p -> {
+          Path relPath = root.relativize(p);
+          Path globPath = globRoot == null ? relPath : globRoot.resolve(relPath);
+          return matcher.matches(globPath) ? (m_workingDir == null ? globPath : p) : null;
+        })
+        .filter(Objects::nonNull)
+        .sorted()
+        .map(p -> new CliInput(p, m_incrementalRun));
+  }
+
+  private static Stream<Path> walk(Path dir, int depth) {
+    try {
+      return Files.walk(dir, depth);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+
+  /**
+   * Processes inputs for the given option (see {@link #getInputs(String)}) concurrently, using the number of threads
+   * specified by {@code --threads} (see {@link #addThreadsOption()}).
+   * <p>
+   * Only a limited number of inputs are queued at a time, so inputs are expanded and opened lazily.
+   *
+   * @param ordered if true, results are in the same order as the inputs; otherwise, results are in order of completion
+   * @return the results
+   * @throws IOException if processing any input fails, in which case outstanding work is cancelled
+   */
+  public <T> List<T> processInputs(String opt, InputProcessor<T> processor, boolean ordered) throws IOException {
+
+    int numThreads = getThreads();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<T>> futures = new ArrayList<>();
+    List<T> results = new ArrayList<>();
+    int pending = 0;
+    try {
+      Iterator<CliInput> it = getInputs(opt).iterator();
+      while (it.hasNext()) {
+        CliInput input = it.next();
+        futures.add(completionService.submit(() -> {
+          try {
+            return processor.process(input);
+          } catch (IOException ex) {
+            throw ex;
+          } catch (Exception ex) {
+            throw new IOException("Error processing " + input.getName(), ex);
+          }
+        }));
+        pending += 1;
+        // keep a bounded number of inputs in flight
+        if (pending >= numThreads * 2) {
+          T result = completionService.take().get();
+          if (!ordered) {
+            results.add(result);
+          }
+          pending -= 1;
+        }
+      }
+      while (pending > 0) {
+        T result = completionService.take().get();
+        if (!ordered) {
+          results.add(result);
+        }
+        pending -= 1;
+      }
+      if (ordered) {
+        for (Future<T> future : futures) {
+          results.add(future.get());
+        }
+      }
+      return results;
+
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while processing inputs");
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException)ex.getCause();
+      }
+      throw new IOException(ex.getCause());
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
+  /**
+   * Processes a single input for {@link #processInputs(String, InputProcessor, boolean)}.
+   */
+  @FunctionalInterface
+  public interface InputProcessor<T> {
+    T process(CliInput input) throws Exception;
+  }
+
+
+  /**
+   * Gets the number of threads to use, from the {@code --threads} option (see {@link #addThreadsOption()}).
+   *
+   * @return the number of threads requested, or the number of available processors if not specified
+   */
+  public int getThreads() {
+
+    if (m_standardOptions.contains(sf_threadsFlag) && m_commandLine.hasOption(sf_threadsFlag)) {
+      int numThreads = getIntValue(sf_threadsFlag);
+      if (numThreads < 1) {
+        throw new IllegalArgumentException("--" + sf_threadsFlag + " must be at least 1");
+      }
+      return numThreads;
+    }
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+
   /**
    * Gets remaining parameters.
    */
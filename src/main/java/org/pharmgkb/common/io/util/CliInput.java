@@ -0,0 +1,111 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * An input to a command line utility: either a file or standard input.
+ * <p>
+ * See {@link CliHelper#getInputs(String)}.
+ *
+ * @author Mark Woon
+ */
+public class CliInput {
+  /** The name used on the command line for standard input. */
+  public static final String STDIN = "-";
+  private final @Nullable Path m_path;
+  private final @Nullable IncrementalRun m_incrementalRun;
+
+
+  /**
+   * Creates an input for the specified file, or for standard input if {@code path} is null.
+   */
+  CliInput(@Nullable Path path) {
+    this(path, null);
+  }
+
+  /**
+   * Creates an input for the specified file, or for standard input if {@code path} is null.
+   *
+   * @param incrementalRun the incremental run to hash the file for as it is read, if any
+   */
+  CliInput(@Nullable Path path, @Nullable IncrementalRun incrementalRun) {
+    m_path = path;
+    m_incrementalRun = incrementalRun;
+  }
+
+
+  /**
+   * Gets the file for this input.
+   *
+   * @return the file, or null if this input is standard input
+   */
+  public @Nullable Path getPath() {
+    return m_path;
+  }
+
+  /**
+   * Gets whether this input is standard input.
+   */
+  public boolean isStdin() {
+    return m_path == null;
+  }
+
+  /**
+   * Gets the name of this input, suitable for messages.
+   */
+  public String getName() {
+    return m_path == null ? STDIN : m_path.toString();
+  }
+
+
+  /**
+   * Opens this input, unwrapping compressed files like {@link StreamUtils#openInputStream(Path)}.
+   * <p>
+   * Since standard input has no filename, it is unwrapped if it starts with the gzip magic number.  Closing the
+   * returned stream will not close standard input.
+   */
+  public InputStream openInputStream() throws IOException {
+
+    if (m_path != null) {
+      InputStream in = StreamUtils.openInputStream(m_path);
+      return m_incrementalRun == null ? in : m_incrementalRun.hashWhileReading(m_path, in);
+    }
+    BufferedInputStream in = new BufferedInputStream(new CloseShieldInputStream(System.in), 65536);
+    in.mark(2);
+    int b1 = in.read();
+    int b2 = in.read();
+    in.reset();
+    if (b1 == 0x1f && b2 == 0x8b) {
+      return new GZIPInputStream(in, 65536);
+    }
+    return in;
+  }
+
+  /**
+   * Opens this input for reading text.  Files are handled like {@link StreamUtils#openReader(Path)}, standard input is
+   * read as UTF-8.
+   */
+  public BufferedReader openReader() throws IOException {
+
+    if (m_path != null) {
+      return StreamUtils.newReader(m_path, openInputStream());
+    }
+    return new BufferedReader(new InputStreamReader(openInputStream(), StandardCharsets.UTF_8));
+  }
+
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
@@ -0,0 +1,223 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+import com.google.api.client.json.gson.GsonFactory;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Collects the cost of a command line run for {@link CliHelper}'s {@code --profile} option: wall and CPU time, GC
+ * counts and pause time, peak heap usage, and bytes read/written through {@link StreamUtils}.
+ * <p>
+ * Can optionally make a Java Flight Recorder recording of the run as well.
+ *
+ * @author Mark Woon
+ */
+class CliProfiler {
+  private static final Logger sf_logger = LoggerFactory.getLogger(CliProfiler.class);
+  private static final String sf_jfrRecordingName = "pgkb-cli-profile";
+  private final String m_name;
+  private final @Nullable Path m_jfrFile;
+  private final LongAdder m_filesRead = new LongAdder();
+  private final LongAdder m_rawBytesRead = new LongAdder();
+  private final LongAdder m_bytesRead = new LongAdder();
+  private final LongAdder m_readNanos = new LongAdder();
+  private final LongAdder m_filesWritten = new LongAdder();
+  private final LongAdder m_bytesWritten = new LongAdder();
+  private final LongAdder m_writeNanos = new LongAdder();
+  private final Map<String, long[]> m_startGcStats = new HashMap<>();
+  private final IoMetricsListener m_listener = new IoMetricsListener() {
+    @Override
+    public void onOpen(Path path, long size) {
+      if (size >= 0) {
+        m_filesRead.increment();
+      } else {
+        m_filesWritten.increment();
+      }
+    }
+
+    @Override
+    public void onRead(Path path, long rawBytes, long bytes, long nanos) {
+      m_rawBytesRead.add(rawBytes);
+      m_bytesRead.add(bytes);
+      m_readNanos.add(nanos);
+    }
+
+    @Override
+    public void onWrite(Path path, long bytes, long nanos) {
+      m_bytesWritten.add(bytes);
+      m_writeNanos.add(nanos);
+    }
+  };
+  private @Nullable List<IoMetricsListener> m_listeners;
+  private long m_startWallNanos;
+  private long m_startCpuNanos;
+
+
+  /**
+   * Constructor.
+   *
+   * @param name name of the command line utility
+   * @param jfrFile file to save a Java Flight Recorder recording to, or null if not recording
+   */
+  CliProfiler(String name, @Nullable Path jfrFile) {
+    m_name = name;
+    m_jfrFile = jfrFile;
+  }
+
+
+  /**
+   * Starts profiling.
+   */
+  void start() {
+
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      m_startGcStats.put(gc.getName(), new long[] { gc.getCollectionCount(), gc.getCollectionTime() });
+    }
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+    m_listeners = StreamUtils.addScopedMetricsListener(m_listener);
+
+    if (m_jfrFile != null) {
+      runJfrCommand("jfrStart", "name=" + sf_jfrRecordingName, "settings=profile",
+          "filename=" + m_jfrFile.toAbsolutePath());
+    }
+    m_startCpuNanos = getProcessCpuNanos();
+    m_startWallNanos = System.nanoTime();
+  }
+
+
+  /**
+   * Stops profiling and builds the report.
+   */
+  Map<String, Object> stop(int exitCode) {
+
+    long wallNanos = System.nanoTime() - m_startWallNanos;
+    long cpuNanos = getProcessCpuNanos();
+    if (cpuNanos >= 0) {
+      cpuNanos -= m_startCpuNanos;
+    }
+    if (m_listeners != null) {
+      m_listeners.remove(m_listener);
+      m_listeners = null;
+    }
+    if (m_jfrFile != null) {
+      runJfrCommand("jfrStop", "name=" + sf_jfrRecordingName, "filename=" + m_jfrFile.toAbsolutePath());
+    }
+
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("name", m_name);
+    report.put("exitCode", exitCode);
+    report.put("wallTimeMs", wallNanos / 1_000_000);
+    report.put("cpuTimeMs", cpuNanos < 0 ? -1 : cpuNanos / 1_000_000);
+
+    long gcCount = 0;
+    long gcTime = 0;
+    Map<String, Object> collectors = new LinkedHashMap<>();
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      long[] start = m_startGcStats.getOrDefault(gc.getName(), new long[2]);
+      long count = gc.getCollectionCount() - start[0];
+      long time = gc.getCollectionTime() - start[1];
+      Map<String, Object> stats = new LinkedHashMap<>();
+      stats.put("count", count);
+      stats.put("timeMs", time);
+      collectors.put(gc.getName(), stats);
+      gcCount += count;
+      gcTime += time;
+    }
+    report.put("gcCount", gcCount);
+    report.put("gcTimeMs", gcTime);
+    report.put("gc", collectors);
+
+    // pools can peak at different times, so this is an upper bound
+    long peakHeap = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peakHeap += pool.getPeakUsage().getUsed();
+      }
+    }
+    report.put("peakHeapBytes", peakHeap);
+
+    Map<String, Object> io = new LinkedHashMap<>();
+    io.put("filesRead", m_filesRead.sum());
+    io.put("rawBytesRead", m_rawBytesRead.sum());
+    io.put("bytesRead", m_bytesRead.sum());
+    io.put("readTimeMs", m_readNanos.sum() / 1_000_000);
+    io.put("filesWritten", m_filesWritten.sum());
+    io.put("bytesWritten", m_bytesWritten.sum());
+    io.put("writeTimeMs", m_writeNanos.sum() / 1_000_000);
+    report.put("io", io);
+    return report;
+  }
+
+
+  /**
+   * Writes the report as JSON.
+   *
+   * @param file file to write to, or null to write to stderr
+   */
+  static void writeReport(Map<String, Object> report, @Nullable Path file) throws IOException {
+
+    String json = GsonFactory.getDefaultInstance().toPrettyString(report);
+    if (file == null) {
+      System.err.println(json);
+    } else {
+      try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        writer.write(json);
+        writer.write('\n');
+      }
+    }
+  }
+
+
+  /**
+   * Gets CPU time used by the process, in nanoseconds.
+   *
+   * @return CPU time, or -1 if it's not available on this JVM
+   */
+  private static long getProcessCpuNanos() {
+
+    OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean)osBean).getProcessCpuTime();
+    }
+    return -1;
+  }
+
+
+  /**
+   * Runs a JFR diagnostic command.  This goes through JMX so it works on any JVM that supports JFR, without needing
+   * the {@code jdk.jfr} API at compile time.
+   */
+  private static void runJfrCommand(String command, String... args) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().invoke(
+          new ObjectName("com.sun.management:type=DiagnosticCommand"),
+          command,
+          new Object[] { args },
+          new String[] { String[].class.getName() });
+    } catch (Exception ex) {
+      sf_logger.warn("Unable to run " + command + ", JFR may not be supported by this JVM", ex);
+    }
+  }
+}
@@ -0,0 +1,514 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Cache of decompressed copies of .gz and .zip files, for jobs that read the same compressed files over and over.
+ * <p>
+ * Entries are keyed on the source file's path, size and modification time, so a changed file is never served stale.
+ * On a miss, the file is decompressed into the cache as it is read; the entry is only kept if the whole file was read.
+ * On a hit, the decompressed copy is read instead (and {@link #getFile(Path)} returns it as a plain file, e.g. to
+ * memory-map).  Least recently used entries are evicted once the cache grows past its byte budget.
+ * <p>
+ * The cache directory can be shared by concurrent processes: a lock file per entry makes sure only one process
+ * decompresses a file at a time.
+ * <p>
+ * To use it with {@link StreamUtils}, register it with {@link StreamUtils#setDecompressedFileCache}.
+ *
+ * @author Mark Woon
+ */
+public class DecompressedFileCache {
+  private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String DATA_EXTENSION = ".data";
+  private static final String LOCK_EXTENSION = ".lock";
+  private static final String TEMP_EXTENSION = ".tmp";
+  /** Temp files older than this were left behind by a process that died. */
+  private static final long STALE_TEMP_MILLIS = TimeUnit.DAYS.toMillis(1);
+  /** File locks are per JVM, so threads in this JVM also need to take turns. */
+  private static final ConcurrentHashMap<Path, Semaphore> sf_keyLocks = new ConcurrentHashMap<>();
+  private final Path m_dir;
+  private final long m_maxBytes;
+
+
+  /**
+   * Constructor.
+   *
+   * @param dir directory to store decompressed files in
+   * @param maxBytes how big the cache can get before old entries are evicted
+   */
+  public DecompressedFileCache(Path dir, long maxBytes) throws IOException {
+    if (maxBytes < 1) {
+      throw new IllegalArgumentException("Max bytes must be positive");
+    }
+    m_dir = Files.createDirectories(dir).toAbsolutePath();
+    m_maxBytes = maxBytes;
+  }
+
+
+  public Path getDir() {
+    return m_dir;
+  }
+
+  public long getMaxBytes() {
+    return m_maxBytes;
+  }
+
+  /**
+   * Returns true if {@code path} is a file this cache handles (i.e. .gz or .zip).
+   */
+  public static boolean isCacheable(Path path) {
+    String filename = path.getFileName().toString().toLowerCase();
+    return filename.endsWith(".gz") || filename.endsWith(".zip");
+  }
+
+
+  /**
+   * Opens a decompressed stream to {@code path}, from the cache if possible.
+   */
+  public InputStream openInputStream(Path path) throws IOException {
+    return openInputStream(path, StreamUtils.getMetricsListener());
+  }
+
+  InputStream openInputStream(Path path, IoMetricsListener listener) throws IOException {
+
+    if (!isCacheable(path)) {
+      return StreamUtils.openSource(path, listener);
+    }
+    String key = getKey(path);
+    Path dataFile = m_dir.resolve(key + DATA_EXTENSION);
+    InputStream in = openHit(path, dataFile, listener);
+    if (in != null) {
+      return in;
+    }
+
+    KeyLock lock = KeyLock.tryAcquire(m_dir.resolve(key + LOCK_EXTENSION));
+    if (lock == null) {
+      // someone else is filling this entry, don't wait for them
+      return StreamUtils.openSource(path, listener);
+    }
+    try {
+      in = openHit(path, dataFile, listener);
+      if (in != null) {
+        lock.close();
+        return in;
+      }
+      Path tempFile = Files.createTempFile(m_dir, key, TEMP_EXTENSION);
+      return new CachingInputStream(StreamUtils.openSource(path, listener), tempFile, dataFile, lock);
+    } catch (IOException | RuntimeException ex) {
+      lock.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Gets a decompressed copy of {@code path}, decompressing it into the cache first if necessary.  The file may be
+   * evicted once other files are added to the cache, so use it right away.
+   */
+  public Path getFile(Path path) throws IOException {
+
+    if (!isCacheable(path)) {
+      return path;
+    }
+    String key = getKey(path);
+    Path dataFile = m_dir.resolve(key + DATA_EXTENSION);
+    if (touch(dataFile)) {
+      return dataFile;
+    }
+    KeyLock lock = KeyLock.acquire(m_dir.resolve(key + LOCK_EXTENSION));
+    try {
+      if (touch(dataFile)) {
+        return dataFile;
+      }
+      Path tempFile = Files.createTempFile(m_dir, key, TEMP_EXTENSION);
+      try {
+        try (InputStream in = StreamUtils.openSource(path, IoMetricsListener.NOOP);
+             OutputStream out = Files.newOutputStream(tempFile)) {
+          PlatformIo.transfer(in, out);
+        }
+        commit(tempFile, dataFile);
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+    } finally {
+      lock.close();
+    }
+    evict(dataFile);
+    return dataFile;
+  }
+
+
+  /**
+   * Gets the cache key for a file, which changes if the file does.
+   */
+  private static String getKey(Path path) throws IOException {
+    String id = path.toAbsolutePath().normalize() + "|" + Files.size(path) + "|" +
+        Files.getLastModifiedTime(path).toMillis();
+    return Hashing.sha256().hashString(id, StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * Opens a cached file.
+   *
+   * @return null if the file isn't cached
+   */
+  private @Nullable InputStream openHit(Path path, Path dataFile, IoMetricsListener listener) throws IOException {
+
+    if (!touch(dataFile)) {
+      return null;
+    }
+    InputStream in;
+    try {
+      in = Files.newInputStream(dataFile);
+    } catch (NoSuchFileException ex) {
+      // evicted in the meantime
+      return null;
+    }
+    if (listener == IoMetricsListener.NOOP) {
+      return in;
+    }
+    listener.onOpen(path, Files.size(dataFile));
+    CountingInputStream rawStream = new CountingInputStream(in);
+    return new MeteredInputStream(path, rawStream, rawStream, listener);
+  }
+
+  /**
+   * Marks a cached file as recently used.
+   *
+   * @return false if the file isn't cached
+   */
+  private static boolean touch(Path dataFile) {
+    try {
+      Files.setLastModifiedTime(dataFile, FileTime.fromMillis(System.currentTimeMillis()));
+      return true;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  private static void commit(Path tempFile, Path dataFile) throws IOException {
+    try {
+      Files.move(tempFile, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException ex) {
+      Files.move(tempFile, dataFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Deletes least recently used entries until the cache fits in its budget.  Races with other processes doing the
+   * same are harmless.
+   *
+   * @param keep entry to evict last, even if it is over budget on its own
+   */
+  private void evict(@Nullable Path keep) {
+
+    List<Path> dataFiles = new ArrayList<>();
+    long total = 0;
+    long now = System.currentTimeMillis();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(m_dir)) {
+      for (Path file : stream) {
+        String filename = file.getFileName().toString();
+        try {
+          if (filename.endsWith(DATA_EXTENSION)) {
+            dataFiles.add(file);
+            total += Files.size(file);
+          } else if (filename.endsWith(TEMP_EXTENSION) &&
+              now - Files.getLastModifiedTime(file).toMillis() > STALE_TEMP_MILLIS) {
+            Files.deleteIfExists(file);
+          }
+        } catch (IOException ex) {
+          // deleted by someone else
+        }
+      }
+    } catch (IOException ex) {
+      sf_logger.warn("Cannot list cache directory {}", m_dir, ex);
+      return;
+    }
+    if (total <= m_maxBytes) {
+      return;
+    }
+
+    List<Entry> entries = new ArrayList<>();
+    for (Path file : dataFiles) {
+      try {
+        entries.add(new Entry(file, Files.getLastModifiedTime(file).toMillis(), Files.size(file)));
+      } catch (IOException ex) {
+        // deleted by someone else
+      }
+    }
+    entries.sort(Comparator.comparingLong(e -> e.m_lastUsed));
+    for (Entry entry : entries) {
+      if (total <= m_maxBytes) {
+        break;
+      }
+      if (entry.m_file.equals(keep)) {
+        continue;
+      }
+      try {
+        Files.deleteIfExists(entry.m_file);
+        String filename = entry.m_file.getFileName().toString();
+        Files.deleteIfExists(entry.m_file.resolveSibling(
+            filename.substring(0, filename.length() - DATA_EXTENSION.length()) + LOCK_EXTENSION));
+        total -= entry.m_size;
+      } catch (IOException ex) {
+        // in use (on Windows) or deleted by someone else
+        sf_logger.debug("Cannot evict {}", entry.m_file, ex);
+      }
+    }
+  }
+
+
+  private static class Entry {
+    private final Path m_file;
+    private final long m_lastUsed;
+    private final long m_size;
+
+    Entry(Path file, long lastUsed, long size) {
+      m_file = file;
+      m_lastUsed = lastUsed;
+      m_size = size;
+    }
+  }
+
+
+  /**
+   * Lock on a cache entry, held by this JVM (via a semaphore, since a stream may be closed from a different thread
+   * than it was opened on) and by this process (via a file lock).
+   */
+  private static class KeyLock implements AutoCloseable {
+    private final Semaphore m_semaphore;
+    private final FileChannel m_channel;
+    private final FileLock m_fileLock;
+    private boolean m_isClosed;
+
+    private KeyLock(Semaphore semaphore, FileChannel channel, FileLock fileLock) {
+      m_semaphore = semaphore;
+      m_channel = channel;
+      m_fileLock = fileLock;
+    }
+
+    /**
+     * Gets the lock, waiting for it if necessary.
+     */
+    static KeyLock acquire(Path lockFile) throws IOException {
+
+      Semaphore semaphore = sf_keyLocks.computeIfAbsent(lockFile, k -> new Semaphore(1));
+      try {
+        semaphore.acquire();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for " + lockFile);
+      }
+      FileChannel channel = null;
+      try {
+        channel = openLockFile(lockFile);
+        return new KeyLock(semaphore, channel, channel.lock());
+      } catch (IOException | RuntimeException ex) {
+        if (channel != null) {
+          channel.close();
+        }
+        semaphore.release();
+        throw ex;
+      }
+    }
+
+    /**
+     * Gets the lock if nobody else has it.
+     *
+     * @return null if someone else has the lock
+     */
+    static @Nullable KeyLock tryAcquire(Path lockFile) throws IOException {
+
+      Semaphore semaphore = sf_keyLocks.computeIfAbsent(lockFile, k -> new Semaphore(1));
+      if (!semaphore.tryAcquire()) {
+        return null;
+      }
+      FileChannel channel = null;
+      try {
+        channel = openLockFile(lockFile);
+        FileLock fileLock = channel.tryLock();
+        if (fileLock != null) {
+          return new KeyLock(semaphore, channel, fileLock);
+        }
+      } catch (OverlappingFileLockException ex) {
+        // held by another instance in this JVM
+      } catch (IOException | RuntimeException ex) {
+        if (channel != null) {
+          channel.close();
+        }
+        semaphore.release();
+        throw ex;
+      }
+      if (channel != null) {
+        channel.close();
+      }
+      semaphore.release();
+      return null;
+    }
+
+    private static FileChannel openLockFile(Path lockFile) throws IOException {
+      return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (m_isClosed) {
+        return;
+      }
+      m_isClosed = true;
+      try {
+        m_fileLock.release();
+        m_channel.close();
+      } finally {
+        m_semaphore.release();
+      }
+    }
+  }
+
+
+  /**
+   * Copies what's read into a temp file, which becomes the cache entry if the stream is read to the end.  Problems
+   * writing to the cache don't affect reading.
+   */
+  private class CachingInputStream extends FilterInputStream {
+    private final Path m_tempFile;
+    private final Path m_dataFile;
+    private final KeyLock m_lock;
+    private @Nullable OutputStream m_out;
+    private boolean m_isClosed;
+
+    CachingInputStream(InputStream in, Path tempFile, Path dataFile, KeyLock lock) throws IOException {
+      super(in);
+      m_tempFile = tempFile;
+      m_dataFile = dataFile;
+      m_lock = lock;
+      m_out = new BufferedOutputStream(Files.newOutputStream(tempFile), 65536);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+      int n = in.read(b, off, len);
+      if (m_out != null) {
+        try {
+          if (n > 0) {
+            m_out.write(b, off, n);
+          } else if (n == -1) {
+            m_out.close();
+            m_out = null;
+            commit(m_tempFile, m_dataFile);
+            release(true);
+          }
+        } catch (IOException ex) {
+          sf_logger.debug("Cannot write to cache {}", m_tempFile, ex);
+          abandon();
+        }
+      }
+      return n;
+    }
+
+    /**
+     * Skipped bytes would have to be written to the cache, so read them instead.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+      if (m_out == null) {
+        return in.skip(n);
+      }
+      byte[] buffer = new byte[(int)Math.min(n, 8192)];
+      long skipped = 0;
+      while (skipped < n) {
+        int len = read(buffer, 0, (int)Math.min(buffer.length, n - skipped));
+        if (len == -1) {
+          break;
+        }
+        skipped += len;
+      }
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (m_isClosed) {
+        return;
+      }
+      m_isClosed = true;
+      try {
+        in.close();
+      } finally {
+        if (m_out != null) {
+          // not read to the end
+          abandon();
+        }
+      }
+    }
+
+    private void abandon() {
+      try {
+        if (m_out != null) {
+          m_out.close();
+        }
+      } catch (IOException ex) {
+        // ignore
+      }
+      m_out = null;
+      try {
+        Files.deleteIfExists(m_tempFile);
+      } catch (IOException ex) {
+        sf_logger.debug("Cannot delete {}", m_tempFile, ex);
+      }
+      release(false);
+    }
+
+    private void release(boolean added) {
+      try {
+        m_lock.close();
+      } catch (IOException ex) {
+        sf_logger.debug("Cannot release cache lock", ex);
+      }
+      if (added) {
+        evict(m_dataFile);
+      }
+    }
+  }
+}
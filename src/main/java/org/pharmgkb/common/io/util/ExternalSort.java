@@ -0,0 +1,401 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.apache.commons.io.FileUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.pharmgkb.common.io.compress.Compression;
+
+
+/**
+ * Sorts text files that are too big to sort in memory.
+ * <p>
+ * Lines are read with {@link StreamUtils#openReader(Path)} in chunks that fit within the memory budget, and chunks
+ * are sorted in parallel and spilled to gzipped temp files (runs).  The runs are then merged into the output, which is
+ * written with {@link StreamUtils#openWriter(Path)} (and so compressed based on its extension).  If there are more
+ * than {@value #MERGE_WIDTH} runs, groups of runs are first merged in parallel into bigger runs.
+ * <p>
+ * The sort is stable: lines that compare equal stay in the order they were in.
+ *
+ * @author Mark Woon
+ */
+public class ExternalSort {
+  /** Maximum number of runs to merge at once. */
+  static final int MERGE_WIDTH = 64;
+  private final Function<String, String> m_keyExtractor;
+  private final Comparator<String> m_comparator;
+  private long m_memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+  private int m_threads = Runtime.getRuntime().availableProcessors();
+  private int m_headerLines;
+  private @Nullable Path m_tempDir;
+
+
+  /**
+   * Sorts whole lines.
+   */
+  public ExternalSort(Comparator<String> comparator) {
+    this(Function.identity(), comparator);
+  }
+
+  private ExternalSort(Function<String, String> keyExtractor, Comparator<String> comparator) {
+    m_keyExtractor = keyExtractor;
+    m_comparator = comparator;
+  }
+
+  /**
+   * Sorts by the value of a tab-delimited column.
+   *
+   * @param column 0-based column index; lines without this column sort as if it were empty
+   * @param comparator compares column values
+   */
+  public static ExternalSort byColumn(int column, Comparator<String> comparator) {
+    return byColumn(column, '\t', comparator);
+  }
+
+  /**
+   * Sorts by the value of a delimited column.
+   *
+   * @param column 0-based column index; lines without this column sort as if it were empty
+   * @param delimiter column delimiter
+   * @param comparator compares column values
+   */
+  public static ExternalSort byColumn(int column, char delimiter, Comparator<String> comparator) {
+    if (column < 0) {
+      throw new IllegalArgumentException("Column must not be negative");
+    }
+    return new ExternalSort(line -> getColumn(line, column, delimiter), comparator);
+  }
+
+  private static String getColumn(String line, int column, char delimiter) {
+    int start = 0;
+    for (int x = 0; x < column; x += 1) {
+      start = line.indexOf(delimiter, start) + 1;
+      if (start == 0) {
+        return "";
+      }
+    }
+    int end = line.indexOf(delimiter, start);
+    return end == -1 ? line.substring(start) : line.substring(start, end);
+  }
+
+
+  /**
+   * Sets roughly how much heap to use for lines being sorted.  Defaults to a quarter of the max heap size.
+   */
+  public void setMemoryBudget(long memoryBudget) {
+    if (memoryBudget < 1) {
+      throw new IllegalArgumentException("Memory budget must be positive");
+    }
+    m_memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Sets how many chunks to sort (or runs to merge) at a time.  Defaults to the number of processors.
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Threads must be positive");
+    }
+    m_threads = threads;
+  }
+
+  /**
+   * Sets the number of lines at the start of the file to copy to the output without sorting.
+   */
+  public void setHeaderLines(int headerLines) {
+    if (headerLines < 0) {
+      throw new IllegalArgumentException("Header lines must not be negative");
+    }
+    m_headerLines = headerLines;
+  }
+
+  /**
+   * Sets the directory to write runs to.  Defaults to the system temp directory.
+   */
+  public void setTempDir(@Nullable Path tempDir) {
+    m_tempDir = tempDir;
+  }
+
+
+  /**
+   * Sorts {@code input} into {@code output}.
+   */
+  public void sort(Path input, Path output) throws IOException {
+
+    Path dir = m_tempDir == null ? Files.createTempDirectory("pgkb-sort") :
+        Files.createTempDirectory(m_tempDir, "pgkb-sort");
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(m_threads, r -> {
+      Thread thread = new Thread(r, "ExternalSort-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<String> header = new ArrayList<>();
+      List<Future<Path>> futures = new ArrayList<>();
+      List<Row> chunk = new ArrayList<>();
+      // one chunk being read plus one being sorted by each thread
+      long chunkBudget = Math.max(1, m_memoryBudget / (m_threads + 1));
+      Semaphore permits = new Semaphore(m_threads);
+      try (BufferedReader reader = StreamUtils.openReader(input)) {
+        String line;
+        while (header.size() < m_headerLines && (line = reader.readLine()) != null) {
+          header.add(line);
+        }
+        long chunkSize = 0;
+        while ((line = reader.readLine()) != null) {
+          Row row = new Row(m_keyExtractor.apply(line), line);
+          chunk.add(row);
+          chunkSize += row.getSize();
+          if (chunkSize >= chunkBudget) {
+            checkFailures(futures);
+            acquire(permits);
+            futures.add(executor.submit(spill(chunk, dir.resolve("run-" + futures.size() + ".gz"), permits)));
+            chunk = new ArrayList<>();
+            chunkSize = 0;
+          }
+        }
+      }
+
+      if (futures.isEmpty()) {
+        // fits in memory
+        chunk.sort(null);
+        try (BufferedWriter writer = StreamUtils.openWriter(output)) {
+          writeLines(writer, header);
+          for (Row row : chunk) {
+            writer.write(row.m_line);
+            writer.write('\n');
+          }
+        }
+        return;
+      }
+      if (!chunk.isEmpty()) {
+        acquire(permits);
+        futures.add(executor.submit(spill(chunk, dir.resolve("run-" + futures.size() + ".gz"), permits)));
+      }
+      List<Path> runs = awaitAll(futures);
+
+      // merge groups of runs until there are few enough to merge into the output
+      for (int pass = 0; runs.size() > MERGE_WIDTH; pass += 1) {
+        futures = new ArrayList<>();
+        for (int x = 0; x < runs.size(); x += MERGE_WIDTH) {
+          List<Path> group = runs.subList(x, Math.min(x + MERGE_WIDTH, runs.size()));
+          Path run = dir.resolve("merge-" + pass + "-" + futures.size() + ".gz");
+          futures.add(executor.submit(() -> {
+            try (Writer writer = newRunWriter(run)) {
+              merge(group, writer);
+            }
+            for (Path file : group) {
+              Files.delete(file);
+            }
+            return run;
+          }));
+        }
+        runs = awaitAll(futures);
+      }
+      try (BufferedWriter writer = StreamUtils.openWriter(output)) {
+        writeLines(writer, header);
+        merge(runs, writer);
+      }
+    } finally {
+      executor.shutdownNow();
+      FileUtils.deleteQuietly(dir.toFile());
+    }
+  }
+
+
+  /**
+   * Creates a task that sorts a chunk and writes it to a run file.
+   */
+  private Callable<Path> spill(List<Row> chunk, Path run, Semaphore permits) {
+    return () -> {
+      try {
+        chunk.sort(null);
+        try (Writer writer = newRunWriter(run)) {
+          for (Row row : chunk) {
+            writer.write(row.m_line);
+            writer.write('\n');
+          }
+        }
+        return run;
+      } finally {
+        chunk.clear();
+        permits.release();
+      }
+    };
+  }
+
+  /**
+   * Merges sorted runs into {@code writer}.
+   */
+  private void merge(List<Path> runs, Writer writer) throws IOException {
+
+    PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size());
+    List<RunReader> readers = new ArrayList<>(runs.size());
+    try {
+      for (Path run : runs) {
+        RunReader reader = new RunReader(run, readers.size());
+        readers.add(reader);
+        if (reader.next()) {
+          queue.add(reader);
+        }
+      }
+      while (!queue.isEmpty()) {
+        RunReader reader = queue.poll();
+        writer.write(reader.m_line);
+        writer.write('\n');
+        if (reader.next()) {
+          queue.add(reader);
+        }
+      }
+    } finally {
+      for (RunReader reader : readers) {
+        reader.close();
+      }
+    }
+  }
+
+  private static Writer newRunWriter(Path run) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(Compression.newGzipOutputStream(Files.newOutputStream(run)),
+        StandardCharsets.UTF_8), 65536);
+  }
+
+  private static void writeLines(Writer writer, List<String> lines) throws IOException {
+    for (String line : lines) {
+      writer.write(line);
+      writer.write('\n');
+    }
+  }
+
+
+  private static void acquire(Semaphore permits) throws InterruptedIOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while sorting");
+    }
+  }
+
+  /**
+   * Fails fast if a finished task failed, so that we don't read the rest of the input for nothing.
+   */
+  private static void checkFailures(List<Future<Path>> futures) throws IOException {
+    for (Future<Path> future : futures) {
+      if (future.isDone()) {
+        await(future);
+      }
+    }
+  }
+
+  private static List<Path> awaitAll(List<Future<Path>> futures) throws IOException {
+    List<Path> paths = new ArrayList<>(futures.size());
+    for (Future<Path> future : futures) {
+      paths.add(await(future));
+    }
+    return paths;
+  }
+
+  private static Path await(Future<Path> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while sorting");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      throw new IOException("Error sorting", cause);
+    }
+  }
+
+
+  /**
+   * A line and its sort key.
+   */
+  private class Row implements Comparable<Row> {
+    private final String m_key;
+    private final String m_line;
+
+    Row(String key, String line) {
+      m_key = key;
+      m_line = line;
+    }
+
+    /**
+     * Estimates how much heap this takes up.
+     */
+    long getSize() {
+      // row, string headers and backing arrays, and list slot
+      long size = 16 + 40 + 2L * m_line.length() + 8;
+      if (m_key != m_line) {
+        size += 40 + 2L * m_key.length();
+      }
+      return size;
+    }
+
+    @Override
+    public int compareTo(Row o) {
+      return m_comparator.compare(m_key, o.m_key);
+    }
+  }
+
+  /**
+   * Reads lines back from a run, in the order of the merge.
+   */
+  private class RunReader implements Comparable<RunReader> {
+    private final BufferedReader m_reader;
+    /** Position of the run, to keep the merge stable. */
+    private final int m_index;
+    private @Nullable String m_line;
+    private @Nullable String m_key;
+
+    RunReader(Path run, int index) throws IOException {
+      // gzip stream is already buffered, so stick with a small buffer here to keep wide merges small
+      m_reader = new BufferedReader(new InputStreamReader(Compression.newGzipInputStream(Files.newInputStream(run)),
+          StandardCharsets.UTF_8));
+      m_index = index;
+    }
+
+    boolean next() throws IOException {
+      m_line = m_reader.readLine();
+      m_key = m_line == null ? null : m_keyExtractor.apply(m_line);
+      return m_line != null;
+    }
+
+    @Override
+    public int compareTo(RunReader o) {
+      int rez = m_comparator.compare(m_key, o.m_key);
+      return rez != 0 ? rez : Integer.compare(m_index, o.m_index);
+    }
+
+    void close() throws IOException {
+      m_reader.close();
+    }
+  }
+}
@@ -0,0 +1,408 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * Compares a command line utility's options, inputs and outputs with those recorded in a manifest by its previous
+ * successful run, to work out whether it needs to run again and which inputs have changed.
+ * <p>
+ * Inputs are compared by size and modification time, falling back to a hash of their (decompressed) content when only
+ * the modification time differs, so that inputs that were regenerated without changing don't trigger a rerun.  Inputs
+ * read to the end through {@link CliInput} are hashed as they are read; the rest are hashed when the manifest is
+ * written.
+ * <p>
+ * See {@link CliHelper#addIncrementalOption()}.
+ *
+ * @author Mark Woon
+ */
+class IncrementalRun {
+  private static final HashFunction sf_hashFunction = Hashing.murmur3_128();
+  private static final String sf_optionPrefix = "option.";
+  private static final String sf_inputPrefix = "input.";
+  private static final String sf_outputPrefix = "output.";
+  private final Path m_manifestFile;
+  private final Map<String, String> m_options;
+  /** Current state of inputs, with hashes if they are known. */
+  private final Map<Path, FileState> m_inputs = new LinkedHashMap<>();
+  private final Set<Path> m_changedInputs = new HashSet<>();
+  private final List<Path> m_removedInputs = new ArrayList<>();
+  private final boolean m_isIncremental;
+  /** Inputs hashed while they were being read during this run. */
+  private final Map<Path, FileState> m_streamedInputs = new ConcurrentHashMap<>();
+
+
+  /**
+   * Constructor.
+   *
+   * @param options values of options that affect the output, keyed by option name
+   * @param inputs the inputs (must not include standard input)
+   * @param outputs output files (directories are walked for files)
+   */
+  IncrementalRun(Path manifestFile, Map<String, String> options, List<Path> inputs, List<Path> outputs)
+      throws IOException {
+
+    m_manifestFile = manifestFile;
+    m_options = new TreeMap<>(options);
+    Manifest previous = Manifest.read(manifestFile);
+    m_isIncremental = previous != null && previous.m_options.equals(m_options) &&
+        previous.m_outputs.equals(getStates(outputs));
+
+    Map<Path, FileState> previousInputs = previous == null ? Collections.emptyMap() : previous.m_inputs;
+    for (Path input : inputs) {
+      Path key = normalize(input);
+      if (m_inputs.containsKey(key)) {
+        continue;
+      }
+      FileState current = FileState.of(key);
+      FileState old = previousInputs.get(key);
+      boolean isChanged;
+      if (old == null || old.m_size != current.m_size) {
+        isChanged = true;
+      } else if (old.m_modified == current.m_modified) {
+        isChanged = false;
+        current = old;
+      } else if (old.m_hash == null) {
+        isChanged = true;
+      } else {
+        // touched, but maybe not changed
+        current = current.withHash(hash(key));
+        isChanged = !old.m_hash.equals(current.m_hash);
+      }
+      if (isChanged) {
+        m_changedInputs.add(key);
+      }
+      m_inputs.put(key, current);
+    }
+    for (Path input : previousInputs.keySet()) {
+      if (!m_inputs.containsKey(input)) {
+        m_removedInputs.add(input);
+      }
+    }
+  }
+
+
+  /**
+   * Checks if the previous run had the same options and its outputs haven't been touched since, so that only changed
+   * inputs need to be processed.
+   */
+  boolean isIncremental() {
+    return m_isIncremental;
+  }
+
+  /**
+   * Checks if nothing has changed since the previous run.
+   */
+  boolean isUpToDate() {
+    return m_isIncremental && m_changedInputs.isEmpty() && m_removedInputs.isEmpty();
+  }
+
+  /**
+   * Checks if {@code input} is new or has changed since the previous run.  Everything has changed if this isn't an
+   * incremental run.
+   */
+  boolean isChanged(Path input) {
+    return !m_isIncremental || m_changedInputs.contains(normalize(input));
+  }
+
+  /**
+   * Gets inputs of the previous run that are no longer inputs.
+   */
+  List<Path> getRemovedInputs() {
+    return m_removedInputs;
+  }
+
+
+  /**
+   * Wraps a stream of {@code input}'s content so that it is hashed as it is read.  The hash is only kept if the stream
+   * is read to the end.
+   */
+  InputStream hashWhileReading(Path input, InputStream in) throws IOException {
+    return new HashingInputStream(normalize(input), FileState.of(input), in);
+  }
+
+
+  /**
+   * Records this run in the manifest.  Call this after a successful run.
+   *
+   * @param outputs output files (directories are walked for files)
+   */
+  void writeManifest(List<Path> outputs) throws IOException {
+
+    Map<Path, FileState> inputs = new LinkedHashMap<>();
+    for (Map.Entry<Path, FileState> entry : m_inputs.entrySet()) {
+      Path input = entry.getKey();
+      FileState state = FileState.of(input);
+      FileState streamed = m_streamedInputs.get(input);
+      FileState known = entry.getValue();
+      if (streamed != null && streamed.isSameFile(state)) {
+        state = streamed;
+      } else if (known.m_hash != null && known.isSameFile(state)) {
+        state = known;
+      } else {
+        state = state.withHash(hash(input));
+      }
+      inputs.put(input, state);
+    }
+    new Manifest(m_options, inputs, getStates(outputs)).write(m_manifestFile);
+  }
+
+  /**
+   * Updates the manifest with the modification times of inputs that were touched without changing, so that they
+   * don't need to be hashed again next time.
+   */
+  void refreshManifest(List<Path> outputs) throws IOException {
+    new Manifest(m_options, m_inputs, getStates(outputs)).write(m_manifestFile);
+  }
+
+
+  private static Path normalize(Path path) {
+    return path.toAbsolutePath().normalize();
+  }
+
+  private static Map<Path, FileState> getStates(List<Path> outputs) throws IOException {
+
+    Map<Path, FileState> states = new TreeMap<>();
+    for (Path output : outputs) {
+      Path path = normalize(output);
+      if (Files.isDirectory(path)) {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(path)) {
+          files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+          states.put(file, FileState.of(file));
+        }
+      } else if (Files.exists(path)) {
+        states.put(path, FileState.of(path));
+      }
+    }
+    return states;
+  }
+
+  private static String hash(Path input) throws IOException {
+
+    Hasher hasher = sf_hashFunction.newHasher();
+    byte[] buffer = new byte[65536];
+    try (InputStream in = StreamUtils.openInputStream(input)) {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        hasher.putBytes(buffer, 0, n);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+
+  /**
+   * Size, modification time and (optionally) content hash of a file.
+   */
+  private static final class FileState {
+    private final long m_size;
+    private final long m_modified;
+    private final @Nullable String m_hash;
+
+    FileState(long size, long modified, @Nullable String hash) {
+      m_size = size;
+      m_modified = modified;
+      m_hash = hash;
+    }
+
+    static FileState of(Path file) throws IOException {
+      return new FileState(Files.size(file), Files.getLastModifiedTime(file).toMillis(), null);
+    }
+
+    static FileState parse(String value) {
+      String[] parts = value.split("\t", -1);
+      return new FileState(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+          parts.length > 2 && !parts[2].isEmpty() ? parts[2] : null);
+    }
+
+    FileState withHash(String hash) {
+      return new FileState(m_size, m_modified, hash);
+    }
+
+    boolean isSameFile(FileState o) {
+      return m_size == o.m_size && m_modified == o.m_modified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof FileState)) {
+        return false;
+      }
+      FileState state = (FileState)o;
+      return isSameFile(state) && Objects.equals(m_hash, state.m_hash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(m_size, m_modified, m_hash);
+    }
+
+    @Override
+    public String toString() {
+      return m_size + "\t" + m_modified + (m_hash == null ? "" : "\t" + m_hash);
+    }
+  }
+
+
+  /**
+   * What a successful run saw: its options, inputs and outputs.
+   */
+  private static final class Manifest {
+    private final Map<String, String> m_options;
+    private final Map<Path, FileState> m_inputs;
+    private final Map<Path, FileState> m_outputs;
+
+    Manifest(Map<String, String> options, Map<Path, FileState> inputs, Map<Path, FileState> outputs) {
+      m_options = options;
+      m_inputs = inputs;
+      m_outputs = outputs;
+    }
+
+    static @Nullable Manifest read(Path file) throws IOException {
+
+      Properties props = new Properties();
+      try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        props.load(reader);
+      } catch (NoSuchFileException ex) {
+        return null;
+      }
+      Map<String, String> options = new TreeMap<>();
+      Map<Path, FileState> inputs = new LinkedHashMap<>();
+      Map<Path, FileState> outputs = new TreeMap<>();
+      try {
+        for (String key : props.stringPropertyNames()) {
+          String value = props.getProperty(key);
+          if (key.startsWith(sf_optionPrefix)) {
+            options.put(key.substring(sf_optionPrefix.length()), value);
+          } else if (key.startsWith(sf_inputPrefix)) {
+            inputs.put(file.getFileSystem().getPath(key.substring(sf_inputPrefix.length())), FileState.parse(value));
+          } else if (key.startsWith(sf_outputPrefix)) {
+            outputs.put(file.getFileSystem().getPath(key.substring(sf_outputPrefix.length())), FileState.parse(value));
+          }
+        }
+      } catch (RuntimeException ex) {
+        throw new IOException("Invalid manifest " + file, ex);
+      }
+      return new Manifest(options, inputs, outputs);
+    }
+
+    /**
+     * Writes this manifest to a temp file and moves it into place so that a crash never leaves a partial manifest.
+     */
+    void write(Path file) throws IOException {
+
+      Properties props = new Properties();
+      for (Map.Entry<String, String> entry : m_options.entrySet()) {
+        props.setProperty(sf_optionPrefix + entry.getKey(), entry.getValue());
+      }
+      for (Map.Entry<Path, FileState> entry : m_inputs.entrySet()) {
+        props.setProperty(sf_inputPrefix + entry.getKey(), entry.getValue().toString());
+      }
+      for (Map.Entry<Path, FileState> entry : m_outputs.entrySet()) {
+        props.setProperty(sf_outputPrefix + entry.getKey(), entry.getValue().toString());
+      }
+
+      Path absFile = normalize(file);
+      Path tmpFile = Files.createTempFile(absFile.getParent(), absFile.getFileName().toString(), ".tmp");
+      try {
+        try (Writer writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+          props.store(writer, null);
+        }
+        Files.move(tmpFile, absFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmpFile);
+      }
+    }
+  }
+
+
+  /**
+   * Hashes an input as it is read, and records the hash once the end is reached.
+   */
+  private class HashingInputStream extends FilterInputStream {
+    private final Path m_input;
+    private final FileState m_state;
+    private final Hasher m_hasher = sf_hashFunction.newHasher();
+    private boolean m_isDone;
+
+    HashingInputStream(Path input, FileState state, InputStream in) {
+      super(in);
+      m_input = input;
+      m_state = state;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b == -1) {
+        onEof();
+      } else if (!m_isDone) {
+        m_hasher.putByte((byte)b);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n == -1) {
+        onEof();
+      } else if (!m_isDone) {
+        m_hasher.putBytes(b, off, n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // read so that skipped bytes are hashed
+      byte[] buffer = new byte[(int)Math.min(n, 8192)];
+      int read = read(buffer, 0, buffer.length);
+      return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void onEof() {
+      if (!m_isDone) {
+        m_isDone = true;
+        m_streamedInputs.put(m_input, m_state.withHash(m_hasher.hash().toString()));
+      }
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+
+/**
+ * {@link ScatteringByteChannel} that reads from an {@link InputStream}.
+ * <p>
+ * Heap buffers are read into directly; direct buffers are read into through a heap buffer, since that's all an
+ * {@link InputStream} can do.
+ *
+ * @author Mark Woon
+ */
+final class InputStreamChannel implements ScatteringByteChannel {
+  private static final int BUFFER_SIZE = 65536;
+  private final InputStream m_in;
+  private byte[] m_buffer = new byte[0];
+  private boolean m_isOpen = true;
+
+
+  InputStreamChannel(InputStream in) {
+    m_in = in;
+  }
+
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+
+    if (!m_isOpen) {
+      throw new ClosedChannelException();
+    }
+    int len = dst.remaining();
+    if (len == 0) {
+      return 0;
+    }
+    if (dst.hasArray()) {
+      int n = m_in.read(dst.array(), dst.arrayOffset() + dst.position(), len);
+      if (n > 0) {
+        dst.position(dst.position() + n);
+      }
+      return n;
+    }
+    if (m_buffer.length == 0) {
+      m_buffer = new byte[BUFFER_SIZE];
+    }
+    int n = m_in.read(m_buffer, 0, Math.min(len, m_buffer.length));
+    if (n > 0) {
+      dst.put(m_buffer, 0, n);
+    }
+    return n;
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    return scatter(this, dsts, offset, length);
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts) throws IOException {
+    return read(dsts, 0, dsts.length);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return m_isOpen;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (m_isOpen) {
+      m_isOpen = false;
+      m_in.close();
+    }
+  }
+
+
+  /**
+   * Reads into a sequence of buffers from a channel that can only read into one at a time.  Stops at the first read
+   * that doesn't fill its buffer, so that this doesn't block any more than a single read would.
+   *
+   * @return the number of bytes read, or -1 if the end of the channel had already been reached
+   */
+  static long scatter(ReadableByteChannel channel, ByteBuffer[] dsts, int offset, int length) throws IOException {
+
+    if (offset < 0 || length < 0 || offset > dsts.length - length) {
+      throw new IndexOutOfBoundsException();
+    }
+    long total = 0;
+    for (int x = offset; x < offset + length; x += 1) {
+      ByteBuffer dst = dsts[x];
+      if (!dst.hasRemaining()) {
+        continue;
+      }
+      int n = channel.read(dst);
+      if (n == -1) {
+        return total == 0 ? -1 : total;
+      }
+      total += n;
+      if (dst.hasRemaining()) {
+        break;
+      }
+    }
+    return total;
+  }
+}
@@ -0,0 +1,109 @@
+package org.pharmgkb.common.io.util;
+
+import java.nio.file.Path;
+
+
+/**
+ * Listener for I/O metrics from streams opened by {@link StreamUtils} and from {@link StaxReader}.
+ * <p>
+ * Register one with {@link StreamUtils#setMetricsListener(IoMetricsListener)}.  When no listener is registered,
+ * streams are not instrumented at all.
+ * <p>
+ * Callbacks happen on the thread doing the I/O, so implementations must be thread-safe and should be cheap.
+ * All methods default to doing nothing.
+ *
+ * @author Mark Woon
+ */
+public interface IoMetricsListener {
+  /** Listener that ignores everything. */
+  IoMetricsListener NOOP = new IoMetricsListener() {};
+
+
+  /**
+   * Combines two listeners so that both receive all callbacks.
+   */
+  static IoMetricsListener combine(IoMetricsListener first, IoMetricsListener second) {
+
+    if (first == NOOP) {
+      return second;
+    }
+    if (second == NOOP) {
+      return first;
+    }
+    return new IoMetricsListener() {
+      @Override
+      public void onOpen(Path path, long size) {
+        first.onOpen(path, size);
+        second.onOpen(path, size);
+      }
+
+      @Override
+      public void onRead(Path path, long rawBytes, long bytes, long nanos) {
+        first.onRead(path, rawBytes, bytes, nanos);
+        second.onRead(path, rawBytes, bytes, nanos);
+      }
+
+      @Override
+      public void onWrite(Path path, long bytes, long nanos) {
+        first.onWrite(path, bytes, nanos);
+        second.onWrite(path, bytes, nanos);
+      }
+
+      @Override
+      public void onClose(Path path) {
+        first.onClose(path);
+        second.onClose(path);
+      }
+
+      @Override
+      public void onStaxProgress(Path path, long events, long elements, long bytePosition) {
+        first.onStaxProgress(path, events, elements, bytePosition);
+        second.onStaxProgress(path, events, elements, bytePosition);
+      }
+    };
+  }
+
+
+  /**
+   * Called when a stream is opened.
+   *
+   * @param size size of the file on disk, or -1 if writing
+   */
+  default void onOpen(Path path, long size) {
+  }
+
+  /**
+   * Called after every read.
+   *
+   * @param rawBytes number of bytes read from disk since the last call (i.e. compressed bytes)
+   * @param bytes number of (decompressed) bytes returned to the caller
+   * @param nanos time spent blocked in the read, including decompression
+   */
+  default void onRead(Path path, long rawBytes, long bytes, long nanos) {
+  }
+
+  /**
+   * Called after every write.
+   *
+   * @param bytes number of (uncompressed) bytes written by the caller
+   * @param nanos time spent blocked in the write, including compression
+   */
+  default void onWrite(Path path, long bytes, long nanos) {
+  }
+
+  /**
+   * Called when a stream is closed.
+   */
+  default void onClose(Path path) {
+  }
+
+  /**
+   * Called periodically while a {@link StaxReader} is parsing, and once more when it is closed.
+   *
+   * @param events total number of events read
+   * @param elements total number of start elements read
+   * @param bytePosition number of bytes read from disk so far
+   */
+  default void onStaxProgress(Path path, long events, long elements, long bytePosition) {
+  }
+}
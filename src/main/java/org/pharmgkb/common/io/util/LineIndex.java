@@ -0,0 +1,442 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.pharmgkb.common.io.compress.BgzfInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Index of where lines start in a large text file, for jumping to a line without reading everything before it.
+ * <p>
+ * The position of every {@code interval}th line is kept, delta and varint encoded, in a sidecar file named after the
+ * file plus {@value #EXTENSION}.  The sidecar is rebuilt if the file's size or modification time changes.
+ * <p>
+ * Works on uncompressed files and on BGZF-compressed (i.e. {@code bgzip}) files, where positions are BGZF virtual
+ * offsets.  Other compressed files can't be read from the middle and are rejected.
+ * <p>
+ * Line numbers start at 0.
+ *
+ * @author Mark Woon
+ */
+public class LineIndex {
+  private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  public static final String EXTENSION = ".lidx";
+  public static final int DEFAULT_INTERVAL = 8192;
+  private static final int MAGIC = 0x4c494458; // LIDX
+  private static final int VERSION = 1;
+  private final Path m_file;
+  private final boolean m_isBgzf;
+  private final long m_size;
+  private final long m_modified;
+  private final int m_interval;
+  private final long m_lineCount;
+  /** Position of line {@code i * m_interval}. */
+  private final long[] m_positions;
+
+
+  private LineIndex(Path file, boolean isBgzf, long size, long modified, int interval, long lineCount,
+      long[] positions) {
+    m_file = file;
+    m_isBgzf = isBgzf;
+    m_size = size;
+    m_modified = modified;
+    m_interval = interval;
+    m_lineCount = lineCount;
+    m_positions = positions;
+  }
+
+
+  /**
+   * Gets the index for a file using {@link #DEFAULT_INTERVAL}, loading it from its sidecar file if it is up to date
+   * or building (and saving) it if not.
+   */
+  public static LineIndex forFile(Path file) throws IOException {
+    return forFile(file, DEFAULT_INTERVAL);
+  }
+
+  /**
+   * Gets the index for a file, loading it from its sidecar file if it is up to date or building (and saving) it if
+   * not.  If the sidecar can't be written (e.g. the directory is read-only), the index is only kept in memory.
+   *
+   * @param interval keep the position of every {@code interval}th line
+   */
+  public static LineIndex forFile(Path file, int interval) throws IOException {
+
+    Path indexFile = getIndexFile(file);
+    if (Files.exists(indexFile)) {
+      try {
+        LineIndex index = read(file, indexFile);
+        if (index.isCurrent() && index.m_interval == interval) {
+          return index;
+        }
+      } catch (IOException ex) {
+        sf_logger.debug("Ignoring unreadable line index {}", indexFile, ex);
+      }
+    }
+    LineIndex index = build(file, interval);
+    try {
+      index.write(indexFile);
+    } catch (IOException ex) {
+      sf_logger.debug("Cannot save line index to {}", indexFile, ex);
+    }
+    return index;
+  }
+
+  /**
+   * Gets the sidecar file the index for {@code file} is saved to.
+   */
+  public static Path getIndexFile(Path file) {
+    return file.resolveSibling(file.getFileName().toString() + EXTENSION);
+  }
+
+
+  /**
+   * Builds the index for a file by reading it from start to end.
+   */
+  public static LineIndex build(Path file, int interval) throws IOException {
+
+    if (interval < 1) {
+      throw new IllegalArgumentException("Interval must be positive");
+    }
+    if (!Files.isRegularFile(file)) {
+      throw new NoSuchFileException(file.toString());
+    }
+    boolean isBgzf = isBgzf(file);
+    long size = Files.size(file);
+    long modified = Files.getLastModifiedTime(file).toMillis();
+
+    long[] positions = new long[16];
+    int numPositions = 1;
+    long lineCount = 0;
+    // whether we're in the middle of a line
+    boolean inLine = false;
+    byte[] bytes = new byte[65536];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    DelimiterScanner scanner = DelimiterScanner.forLines();
+    long offset = 0;
+    try (InputStream in = openAt(file, isBgzf, 0)) {
+      while (true) {
+        int len = in.read(bytes, 0, bytes.length);
+        if (len == -1) {
+          break;
+        }
+        offset += len;
+        buffer.clear().limit(len);
+        scanner.reset(buffer);
+        int lastNewline = -1;
+        for (int idx = scanner.next(); idx != -1; idx = scanner.next()) {
+          lastNewline = idx;
+          lineCount += 1;
+          if (lineCount % interval == 0) {
+            if (numPositions == positions.length) {
+              positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[numPositions++] = getPositionAfter(in, isBgzf, offset, idx, len);
+          }
+        }
+        inLine = lastNewline < len - 1;
+      }
+    }
+    if (inLine) {
+      // last line doesn't end with a newline
+      lineCount += 1;
+    }
+    return new LineIndex(file, isBgzf, size, modified, interval, lineCount, Arrays.copyOf(positions, numPositions));
+  }
+
+  private static boolean isBgzf(Path file) throws IOException {
+
+    String filename = file.getFileName().toString().toLowerCase();
+    if (filename.endsWith(".zip")) {
+      throw new IllegalArgumentException("Cannot index zip files");
+    }
+    if (BgzfInputStream.isBgzf(file)) {
+      return true;
+    }
+    if (filename.endsWith(".gz")) {
+      throw new IllegalArgumentException("Cannot index gzipped files unless they are BGZF (i.e. from bgzip)");
+    }
+    return false;
+  }
+
+
+  /**
+   * Returns true if the file has not changed since it was indexed.
+   */
+  public boolean isCurrent() throws IOException {
+    return Files.size(m_file) == m_size && Files.getLastModifiedTime(m_file).toMillis() == m_modified;
+  }
+
+  public long getLineCount() {
+    return m_lineCount;
+  }
+
+  public int getInterval() {
+    return m_interval;
+  }
+
+
+  /**
+   * Opens a reader that starts at the specified line.
+   */
+  public BufferedReader seekToLine(long line) throws IOException {
+    return new BufferedReader(new InputStreamReader(openAtLine(line), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Opens a stream that starts at the specified line.
+   */
+  public InputStream openAtLine(long line) throws IOException {
+
+    checkLine(line, m_lineCount);
+    checkCurrent();
+    return openAt(m_file, m_isBgzf, findLine(line));
+  }
+
+  /**
+   * Opens a stream with exactly the lines from {@code startLine} (inclusive) to {@code endLine} (exclusive), e.g. to
+   * split a file up between workers.
+   */
+  public InputStream openLineRange(long startLine, long endLine) throws IOException {
+
+    checkLine(startLine, m_lineCount);
+    if (endLine < startLine || endLine > m_lineCount) {
+      throw new IndexOutOfBoundsException("Invalid end line " + endLine);
+    }
+    checkCurrent();
+    long start = findLine(startLine);
+    long end = findLine(endLine);
+    return new RangeInputStream(openAt(m_file, m_isBgzf, start), start, end);
+  }
+
+  private static void checkLine(long line, long lineCount) {
+    if (line < 0 || line > lineCount) {
+      throw new IndexOutOfBoundsException("Invalid line " + line + " (file has " + lineCount + " lines)");
+    }
+  }
+
+  private void checkCurrent() throws IOException {
+    if (!isCurrent()) {
+      throw new IOException(m_file + " has changed since it was indexed");
+    }
+  }
+
+
+  /**
+   * Gets the position where the specified line starts.
+   */
+  private long findLine(long line) throws IOException {
+
+    int idx = (int)Math.min(line / m_interval, m_positions.length - 1);
+    long position = m_positions[idx];
+    long toSkip = line - (long)idx * m_interval;
+    if (toSkip == 0) {
+      return position;
+    }
+    byte[] bytes = new byte[65536];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    DelimiterScanner scanner = DelimiterScanner.forLines();
+    try (InputStream in = openAt(m_file, m_isBgzf, position)) {
+      long offset = position;
+      while (true) {
+        int len = in.read(bytes, 0, bytes.length);
+        if (len == -1) {
+          // only happens when asking for the line after the last one
+          return m_isBgzf ? ((BgzfInputStream)in).getVirtualOffset() : offset;
+        }
+        offset += len;
+        buffer.clear().limit(len);
+        scanner.reset(buffer);
+        for (int i = scanner.next(); i != -1; i = scanner.next()) {
+          toSkip -= 1;
+          if (toSkip == 0) {
+            return getPositionAfter(in, m_isBgzf, offset, i, len);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the position just past byte {@code idx} of the last read, which read {@code len} bytes and ended at
+   * {@code offset} (for non-BGZF files).
+   */
+  private static long getPositionAfter(InputStream in, boolean isBgzf, long offset, int idx, int len) {
+
+    if (isBgzf) {
+      BgzfInputStream bgzf = (BgzfInputStream)in;
+      // normalized to the start of the next block at the end of a block
+      return idx + 1 < len ? bgzf.getLastReadOffset() - (len - idx - 1) : bgzf.getVirtualOffset();
+    }
+    return offset - (len - idx - 1);
+  }
+
+  private static InputStream openAt(Path file, boolean isBgzf, long position) throws IOException {
+
+    if (isBgzf) {
+      BgzfInputStream in = new BgzfInputStream(file);
+      try {
+        in.seek(position);
+      } catch (IOException ex) {
+        in.close();
+        throw ex;
+      }
+      return in;
+    }
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    channel.position(position);
+    return Channels.newInputStream(channel);
+  }
+
+
+  private static LineIndex read(Path file, Path indexFile) throws IOException {
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+      if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+        throw new IOException("Not a line index: " + indexFile);
+      }
+      boolean isBgzf = in.readBoolean();
+      long size = in.readLong();
+      long modified = in.readLong();
+      int interval = in.readInt();
+      long lineCount = in.readLong();
+      int numPositions = in.readInt();
+      if (interval < 1 || numPositions < 1) {
+        throw new IOException("Corrupt line index: " + indexFile);
+      }
+      long[] positions = new long[numPositions];
+      long position = 0;
+      for (int x = 0; x < numPositions; x += 1) {
+        position += readVarLong(in);
+        positions[x] = position;
+      }
+      return new LineIndex(file, isBgzf, size, modified, interval, lineCount, positions);
+    }
+  }
+
+  /**
+   * Writes this index to a temp file and moves it into place so that readers never see a partial index.
+   */
+  private void write(Path indexFile) throws IOException {
+
+    Path tmpFile = Files.createTempFile(indexFile.toAbsolutePath().getParent(), indexFile.getFileName().toString(),
+        ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeBoolean(m_isBgzf);
+        out.writeLong(m_size);
+        out.writeLong(m_modified);
+        out.writeInt(m_interval);
+        out.writeLong(m_lineCount);
+        out.writeInt(m_positions.length);
+        long previous = 0;
+        for (long position : m_positions) {
+          writeVarLong(out, position - previous);
+          previous = position;
+        }
+      }
+      Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmpFile);
+    }
+  }
+
+  private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7fL) != 0) {
+      out.writeByte((int)((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int)value);
+  }
+
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long)(b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+
+  /**
+   * Reads from a start position up to an end position, which are virtual offsets for BGZF files.
+   */
+  private class RangeInputStream extends InputStream {
+    private final InputStream m_in;
+    private final long m_end;
+    private long m_position;
+
+    RangeInputStream(InputStream in, long start, long end) {
+      m_in = in;
+      m_position = start;
+      m_end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+      if (m_isBgzf) {
+        BgzfInputStream in = (BgzfInputStream)m_in;
+        if (in.getVirtualOffset() >= m_end) {
+          return -1;
+        }
+        int n = in.read(b, off, len);
+        if (n <= 0) {
+          return n;
+        }
+        // reads may skip empty blocks, so check where the data actually came from; it's all from one block, so only
+        // the block that the range ends in needs limiting
+        long start = in.getLastReadOffset() - n;
+        if (start >= m_end) {
+          return -1;
+        }
+        return (int)Math.min(n, m_end - start);
+      }
+
+      if (m_position >= m_end) {
+        return -1;
+      }
+      int n = m_in.read(b, off, (int)Math.min(len, m_end - m_position));
+      if (n > 0) {
+        m_position += n;
+      }
+      return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      m_in.close();
+    }
+  }
+}
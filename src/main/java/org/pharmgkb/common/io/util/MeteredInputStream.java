@@ -0,0 +1,118 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import com.google.common.io.CountingInputStream;
+
+
+/**
+ * {@link InputStream} that tracks how many bytes have been read, how many raw bytes were pulled from disk to produce
+ * them, and how long reads blocked, reporting each read to an {@link IoMetricsListener}.
+ * <p>
+ * Use {@link StreamUtils#openInputStream(Path)} with a registered listener to get one of these.
+ *
+ * @author Mark Woon
+ */
+public class MeteredInputStream extends FilterInputStream {
+  private final Path m_path;
+  private final IoMetricsListener m_listener;
+  private final CountingInputStream m_rawStream;
+  private long m_lastRawCount;
+  private long m_byteCount;
+  private long m_readNanos;
+  private boolean m_isClosed;
+
+
+  /**
+   * Constructor.
+   *
+   * @param in the (decompressed) stream to read from
+   * @param rawStream the stream {@code in} reads from disk through; same as {@code in} if there is no compression
+   */
+  MeteredInputStream(Path path, InputStream in, CountingInputStream rawStream, IoMetricsListener listener) {
+    super(in);
+    m_path = path;
+    m_rawStream = rawStream;
+    m_listener = listener;
+  }
+
+
+  /**
+   * Gets the file this stream is reading.
+   */
+  public Path getPath() {
+    return m_path;
+  }
+
+  /**
+   * Gets the number of bytes read from disk so far.
+   */
+  public long getRawByteCount() {
+    return m_rawStream.getCount();
+  }
+
+  /**
+   * Gets the number of (decompressed) bytes returned by this stream so far.
+   */
+  public long getByteCount() {
+    return m_byteCount;
+  }
+
+  /**
+   * Gets the total time spent blocked in reads, in nanoseconds.
+   */
+  public long getReadNanos() {
+    return m_readNanos;
+  }
+
+
+  @Override
+  public int read() throws IOException {
+
+    long start = System.nanoTime();
+    int b = super.read();
+    record(b == -1 ? 0 : 1, System.nanoTime() - start);
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    long start = System.nanoTime();
+    int count = super.read(b, off, len);
+    record(Math.max(count, 0), System.nanoTime() - start);
+    return count;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+
+    long start = System.nanoTime();
+    long count = super.skip(n);
+    record(count, System.nanoTime() - start);
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    super.close();
+    if (!m_isClosed) {
+      m_isClosed = true;
+      m_listener.onClose(m_path);
+    }
+  }
+
+
+  private void record(long bytes, long nanos) {
+
+    long rawCount = m_rawStream.getCount();
+    long rawBytes = rawCount - m_lastRawCount;
+    m_lastRawCount = rawCount;
+    m_byteCount += bytes;
+    m_readNanos += nanos;
+    m_listener.onRead(m_path, rawBytes, bytes, nanos);
+  }
+}
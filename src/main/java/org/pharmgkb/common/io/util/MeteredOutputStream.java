@@ -0,0 +1,79 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+
+/**
+ * {@link OutputStream} that tracks how many bytes have been written and how long writes blocked, reporting each write
+ * to an {@link IoMetricsListener}.
+ * <p>
+ * Use {@link StreamUtils#openOutputStream(Path)} with a registered listener to get one of these.
+ *
+ * @author Mark Woon
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+  private final Path m_path;
+  private final IoMetricsListener m_listener;
+  private long m_byteCount;
+  private long m_writeNanos;
+  private boolean m_isClosed;
+
+
+  MeteredOutputStream(Path path, OutputStream out, IoMetricsListener listener) {
+    super(out);
+    m_path = path;
+    m_listener = listener;
+  }
+
+
+  /**
+   * Gets the number of (uncompressed) bytes written so far.
+   */
+  public long getByteCount() {
+    return m_byteCount;
+  }
+
+  /**
+   * Gets the total time spent blocked in writes, in nanoseconds.
+   */
+  public long getWriteNanos() {
+    return m_writeNanos;
+  }
+
+
+  @Override
+  public void write(int b) throws IOException {
+
+    long start = System.nanoTime();
+    out.write(b);
+    record(1, System.nanoTime() - start);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+
+    long start = System.nanoTime();
+    out.write(b, off, len);
+    record(len, System.nanoTime() - start);
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    super.close();
+    if (!m_isClosed) {
+      m_isClosed = true;
+      m_listener.onClose(m_path);
+    }
+  }
+
+
+  private void record(long bytes, long nanos) {
+    m_byteCount += bytes;
+    m_writeNanos += nanos;
+    m_listener.onWrite(m_path, bytes, nanos);
+  }
+}
@@ -0,0 +1,31 @@
+package org.pharmgkb.common.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Byte scanning that has faster implementations on newer JDKs.
+ * <p>
+ * This is the Java 8 implementation, which uses {@link SwarBytes}.  The multi-release jar replaces it with the one in
+ * {@code src/main/java17} when running on Java 17+.
+ *
+ * @author Mark Woon
+ */
+final class PlatformBytes {
+
+  private PlatformBytes() {
+  }
+
+
+  /**
+   * Finds the bytes in {@code buffer} from {@code pos} to {@code pos + len} that match any of the delimiters.
+   *
+   * @param buffer buffer, which must be {@link ByteOrder#LITTLE_ENDIAN}
+   * @param len no more than 64
+   * @return a mask with bit {@code i} set if the byte at {@code pos + i} is a delimiter
+   */
+  static long scan(ByteBuffer buffer, int pos, int len, byte d0, byte d1, byte d2) {
+    return SwarBytes.scan(buffer, pos, len, d0, d1, d2);
+  }
+}
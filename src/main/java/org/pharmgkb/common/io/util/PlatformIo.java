@@ -0,0 +1,95 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+
+
+/**
+ * I/O operations that have faster implementations on newer JDKs.
+ * <p>
+ * This is the Java 8 implementation.  The multi-release jar replaces it with the one in {@code src/main/java17} when
+ * running on Java 17+.
+ *
+ * @author Mark Woon
+ */
+final class PlatformIo {
+
+  private PlatformIo() {
+  }
+
+
+  /**
+   * Opens a gzipped file for reading.
+   */
+  static InputStream openGzip(Path path) throws IOException {
+
+    InputStream in = Files.newInputStream(path);
+    try {
+      return new GZIPInputStream(in, 65536);
+    } catch (IOException ex) {
+      in.close();
+      throw ex;
+    }
+  }
+
+
+  /**
+   * Opens a gzipped file for reading through a channel.
+   */
+  static ScatteringByteChannel openGzipChannel(Path path) throws IOException {
+    return new InputStreamChannel(openGzip(path));
+  }
+
+
+  /**
+   * Copies everything from {@code in} to {@code out}.
+   *
+   * @return the number of bytes copied
+   */
+  static long transfer(InputStream in, OutputStream out) throws IOException {
+    return IOUtils.copyLarge(in, out);
+  }
+
+
+  /**
+   * Copies contents of a {@code url} to a {@code file}, following redirects.
+   */
+  static void download(String url, Path file) throws IOException {
+
+    if (url.startsWith("http://") || url.startsWith("https://")) {
+      try (CloseableHttpClient httpClient = HttpClientBuilder.create().setRedirectStrategy(new LaxRedirectStrategy()).build()) {
+        HttpGet httpget = new HttpGet(url);
+        try (CloseableHttpResponse response = httpClient.execute(httpget)) {
+          // save to file even if there's an error, so we can see what the error is
+          try (InputStream in = response.getEntity().getContent();
+               OutputStream out = Files.newOutputStream(file)) {
+            transfer(in, out);
+          }
+          if (response.getStatusLine().getStatusCode() != 200) {
+            throw new IOException("Error downloading " + url + ": " + response.getStatusLine());
+          }
+        }
+      }
+    } else {
+      URL ftpUrl = new URL(url);
+      URLConnection conn = ftpUrl.openConnection();
+      try (InputStream in = conn.getInputStream();
+           OutputStream out = Files.newOutputStream(file)) {
+        transfer(in, out);
+      }
+    }
+  }
+}
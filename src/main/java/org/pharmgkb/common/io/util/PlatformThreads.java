@@ -0,0 +1,37 @@
+package org.pharmgkb.common.io.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Threading that has better implementations on newer JDKs.
+ * <p>
+ * This is the Java 8 implementation.  The multi-release jar replaces it with the one in {@code src/main/java21} when
+ * running on Java 21+.
+ *
+ * @author Mark Woon
+ */
+final class PlatformThreads {
+
+  private PlatformThreads() {
+  }
+
+
+  /**
+   * Creates an executor for blocking I/O tasks.
+   *
+   * @param name prefix for thread names
+   * @param maxThreads how many tasks will run at a time
+   */
+  static ExecutorService newIoExecutor(String name, int maxThreads) {
+
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(maxThreads, r -> {
+      Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+}
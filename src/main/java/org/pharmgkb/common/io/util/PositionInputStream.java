@@ -0,0 +1,228 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.pharmgkb.common.io.compress.BgzfInputStream;
+
+
+/**
+ * {@link InputStream} that knows the position of the bytes it has read, so that a reader can later reopen the file
+ * at the same spot with {@link #open(Path, long)}.
+ * <p>
+ * A position is:
+ * <ul>
+ *   <li>the file offset for uncompressed files</li>
+ *   <li>the virtual offset for BGZF files (see {@link BgzfInputStream})</li>
+ *   <li>the offset in the decompressed data for other compressed files; these can't seek, so reopening them has to
+ *   decompress (but not parse) everything up to the position</li>
+ * </ul>
+ *
+ * @author Mark Woon
+ */
+public class PositionInputStream extends FilterInputStream {
+  /** Number of BGZF blocks to remember the position of. */
+  private static final int HISTORY_SIZE = 1024;
+  private final @Nullable BgzfInputStream m_bgzfStream;
+  private final long m_startPosition;
+  private final boolean m_isSeekable;
+  private long m_byteCount;
+  /** Ring of (byte count, virtual offset) pairs at the end of the last read from each recently read BGZF block. */
+  private final long[] m_historyCounts;
+  private final long[] m_historyOffsets;
+  private int m_historySize;
+  private int m_historyEnd;
+
+
+  private PositionInputStream(InputStream in, @Nullable BgzfInputStream bgzfStream, long startPosition,
+      boolean isSeekable) {
+    super(in);
+    m_bgzfStream = bgzfStream;
+    m_startPosition = startPosition;
+    m_isSeekable = isSeekable;
+    m_historyCounts = bgzfStream == null ? new long[0] : new long[HISTORY_SIZE];
+    m_historyOffsets = bgzfStream == null ? new long[0] : new long[HISTORY_SIZE];
+  }
+
+
+  /**
+   * Opens {@code file} at the beginning.
+   */
+  public static PositionInputStream open(Path file) throws IOException {
+    return open(file, 0);
+  }
+
+  /**
+   * Opens {@code file} at {@code position}, which should have come from {@link #getPosition()} on a stream for the
+   * same file.
+   */
+  public static PositionInputStream open(Path file, long position) throws IOException {
+
+    if (position < 0) {
+      throw new IllegalArgumentException("Position must not be negative");
+    }
+    String filename = file.getFileName().toString().toLowerCase();
+    if (filename.endsWith(".gz") && BgzfInputStream.isBgzf(file)) {
+      BgzfInputStream in = new BgzfInputStream(file);
+      try {
+        in.seek(position);
+      } catch (IOException ex) {
+        in.close();
+        throw ex;
+      }
+      return new PositionInputStream(in, in, position, true);
+    }
+
+    InputStream in = StreamUtils.openInputStream(file);
+    try {
+      // uncompressed files seek rather than read when skipping
+      long remaining = position;
+      while (remaining > 0) {
+        long skipped = in.skip(remaining);
+        if (skipped <= 0) {
+          if (in.read() == -1) {
+            throw new EOFException("Position " + position + " is past the end of " + file);
+          }
+          skipped = 1;
+        }
+        remaining -= skipped;
+      }
+    } catch (IOException ex) {
+      in.close();
+      throw ex;
+    }
+    return new PositionInputStream(in, null, position, !filename.endsWith(".gz") && !filename.endsWith(".zip"));
+  }
+
+
+  /**
+   * Checks if {@link #open(Path, long)} can seek to a position in this file instead of reading up to it.
+   */
+  public boolean isSeekable() {
+    return m_isSeekable;
+  }
+
+  /**
+   * Gets the number of bytes read from this stream so far.
+   */
+  public long getByteCount() {
+    return m_byteCount;
+  }
+
+  /**
+   * Gets the position of the next byte to be read.
+   */
+  public long getPosition() {
+    if (m_bgzfStream != null) {
+      return m_bgzfStream.getVirtualOffset();
+    }
+    return m_startPosition + m_byteCount;
+  }
+
+  /**
+   * Gets the position of a byte that has already been read (or the next one to be read).  This is for readers that
+   * buffer ahead, and need to know the position of the end of the last record they've handed out.
+   * <p>
+   * For BGZF files, only the positions of bytes in the last {@value #HISTORY_SIZE} blocks are remembered.
+   *
+   * @param byteCount the number of bytes read from this stream before the byte in question
+   * @throws IOException if the position is no longer known
+   */
+  public long getPosition(long byteCount) throws IOException {
+
+    if (byteCount < 0 || byteCount > m_byteCount) {
+      throw new IllegalArgumentException("Byte " + byteCount + " has not been read yet");
+    }
+    if (m_bgzfStream == null) {
+      return m_startPosition + byteCount;
+    }
+    if (byteCount == m_byteCount) {
+      return m_bgzfStream.getVirtualOffset();
+    }
+    // reads never cross blocks, so a position is the block's last read offset minus however far back it is
+    for (int x = 0; x < m_historySize; x += 1) {
+      int idx = Math.floorMod(m_historyEnd - 1 - x, HISTORY_SIZE);
+      long back = m_historyCounts[idx] - byteCount;
+      if (back < 0) {
+        break;
+      }
+      if (back <= (m_historyOffsets[idx] & 0xffff)) {
+        return m_historyOffsets[idx] - back;
+      }
+    }
+    throw new IOException("Position of byte " + byteCount + " is no longer known");
+  }
+
+
+  @Override
+  public int read() throws IOException {
+
+    int b = in.read();
+    if (b != -1) {
+      onRead(1);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    int n = in.read(b, off, len);
+    if (n > 0) {
+      onRead(n);
+    }
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    // read so that positions stay known
+    byte[] buffer = new byte[(int)Math.min(n, 8192)];
+    long skipped = 0;
+    while (skipped < n) {
+      int read = read(buffer, 0, (int)Math.min(buffer.length, n - skipped));
+      if (read == -1) {
+        break;
+      }
+      skipped += read;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+
+  private void onRead(int n) {
+
+    m_byteCount += n;
+    if (m_bgzfStream != null) {
+      long offset = m_bgzfStream.getLastReadOffset();
+      int last = Math.floorMod(m_historyEnd - 1, HISTORY_SIZE);
+      if (m_historySize > 0 && m_historyOffsets[last] >>> 16 == offset >>> 16) {
+        // still in the same block
+        m_historyCounts[last] = m_byteCount;
+        m_historyOffsets[last] = offset;
+      } else {
+        m_historyCounts[m_historyEnd] = m_byteCount;
+        m_historyOffsets[m_historyEnd] = offset;
+        m_historyEnd = (m_historyEnd + 1) % HISTORY_SIZE;
+        m_historySize = Math.min(m_historySize + 1, HISTORY_SIZE);
+      }
+    }
+  }
+}
@@ -0,0 +1,246 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * Reports progress, throughput and ETA for long-running command line utilities.
+ * <p>
+ * Byte counts come from streams opened through {@link StreamUtils} while the reporter is running, and are measured
+ * against file size on disk (i.e. compressed size for gz/zip files).  Callers can also report the number of records
+ * they've processed with {@link #addRecords(long)}.
+ * <p>
+ * Counting is done with {@link LongAdder}s so that it is cheap enough to call from hot read loops on many threads;
+ * status lines are printed from a background thread.  On a terminal, a single line is updated in place, otherwise a
+ * line is printed at each interval.
+ * <p>
+ * {@link CliHelper} starts one automatically when {@code --verbose} is specified; see
+ * {@link CliHelper#getProgress()}.
+ *
+ * @author Mark Woon
+ */
+public class ProgressReporter {
+  private final String m_name;
+  private final PrintStream m_out;
+  private final boolean m_isTty;
+  private final long m_intervalMillis;
+  private final LongAdder m_totalBytes = new LongAdder();
+  private final LongAdder m_bytesRead = new LongAdder();
+  private final LongAdder m_records = new LongAdder();
+  private final IoMetricsListener m_listener = new IoMetricsListener() {
+    @Override
+    public void onOpen(Path path, long size) {
+      if (size > 0) {
+        m_totalBytes.add(size);
+      }
+    }
+
+    @Override
+    public void onRead(Path path, long rawBytes, long bytes, long nanos) {
+      m_bytesRead.add(rawBytes);
+    }
+  };
+  private @Nullable List<IoMetricsListener> m_listeners;
+  private @Nullable ScheduledExecutorService m_executor;
+  private long m_startNanos;
+  private int m_lastLineLength;
+
+
+  /**
+   * Constructor.  Status goes to stderr every second on a terminal, and every 10 seconds otherwise.
+   *
+   * @param name name to prefix status lines with
+   */
+  public ProgressReporter(String name) {
+    this(name, System.err, System.console() != null, System.console() != null ? 1000 : 10000);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param name name to prefix status lines with
+   * @param out where to print status
+   * @param isTty true to update a single line in place
+   * @param intervalMillis how often to print status
+   */
+  public ProgressReporter(String name, PrintStream out, boolean isTty, long intervalMillis) {
+    m_name = name;
+    m_out = out;
+    m_isTty = isTty;
+    m_intervalMillis = intervalMillis;
+  }
+
+
+  /**
+   * Starts tracking {@link StreamUtils} streams and printing status.
+   */
+  public synchronized void start() {
+
+    if (m_executor != null) {
+      return;
+    }
+    m_startNanos = System.nanoTime();
+    m_listeners = StreamUtils.addScopedMetricsListener(m_listener);
+    m_executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, m_name + "-progress");
+      thread.setDaemon(true);
+      return thread;
+    });
+    m_executor.scheduleAtFixedRate(this::printStatus, m_intervalMillis, m_intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops tracking and prints final status.
+   */
+  public synchronized void stop() {
+
+    if (m_executor == null) {
+      return;
+    }
+    m_executor.shutdownNow();
+    m_executor = null;
+    if (m_listeners != null) {
+      m_listeners.remove(m_listener);
+      m_listeners = null;
+    }
+    printStatus();
+    if (m_isTty) {
+      m_out.println();
+    }
+  }
+
+
+  /**
+   * Adds to the number of records processed.
+   */
+  public void addRecords(long count) {
+    m_records.add(count);
+  }
+
+  /**
+   * Increments the number of records processed.
+   */
+  public void incrementRecords() {
+    m_records.increment();
+  }
+
+  /**
+   * Adds to the total number of bytes expected to be read, for input that isn't opened through {@link StreamUtils}.
+   * Use with {@link #addBytesRead(long)}.
+   */
+  public void addExpectedBytes(long count) {
+    m_totalBytes.add(count);
+  }
+
+  /**
+   * Adds to the number of bytes read, for input that isn't opened through {@link StreamUtils}.
+   */
+  public void addBytesRead(long count) {
+    m_bytesRead.add(count);
+  }
+
+
+  public long getRecordCount() {
+    return m_records.sum();
+  }
+
+  public long getBytesRead() {
+    return m_bytesRead.sum();
+  }
+
+  public long getTotalBytes() {
+    return m_totalBytes.sum();
+  }
+
+
+  private synchronized void printStatus() {
+
+    String status = getStatus(System.nanoTime() - m_startNanos);
+    if (m_isTty) {
+      // pad to clear any leftovers from the previous line
+      StringBuilder builder = new StringBuilder("\r").append(status);
+      for (int x = status.length(); x < m_lastLineLength; x += 1) {
+        builder.append(' ');
+      }
+      m_lastLineLength = status.length();
+      m_out.print(builder);
+      m_out.flush();
+    } else {
+      m_out.println(status);
+    }
+  }
+
+  /**
+   * Builds the status line.
+   *
+   * @param elapsedNanos time since start
+   */
+  String getStatus(long elapsedNanos) {
+
+    double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000.0;
+    long read = m_bytesRead.sum();
+    long total = m_totalBytes.sum();
+    long records = m_records.sum();
+
+    StringBuilder builder = new StringBuilder(m_name).append(": ");
+    if (read > 0 || total > 0) {
+      builder.append(formatBytes(read));
+      if (total > 0) {
+        builder.append(" / ")
+            .append(formatBytes(total))
+            .append(String.format(Locale.US, " (%.1f%%)", Math.min(read, total) * 100.0 / total));
+      }
+      builder.append(", ")
+          .append(formatBytes((long)(read / seconds)))
+          .append("/s");
+    }
+    if (records > 0) {
+      if (builder.length() > m_name.length() + 2) {
+        builder.append(", ");
+      }
+      builder.append(String.format(Locale.US, "%,d records (%,d/s)", records, (long)(records / seconds)));
+    }
+    builder.append(", elapsed ")
+        .append(formatDuration((long)seconds));
+    if (total > 0 && read > 0 && read < total) {
+      builder.append(", ETA ")
+          .append(formatDuration((long)((total - read) * seconds / read)));
+    }
+    return builder.toString();
+  }
+
+
+  static String formatBytes(long bytes) {
+
+    if (bytes < 1024) {
+      return bytes + " B";
+    }
+    String units = "KMGTPE";
+    int unit = -1;
+    double value = bytes;
+    while (value >= 1024 && unit < units.length() - 1) {
+      value /= 1024;
+      unit += 1;
+    }
+    return String.format(Locale.US, "%.1f %siB", value, units.charAt(unit));
+  }
+
+  static String formatDuration(long seconds) {
+
+    if (seconds < 60) {
+      return seconds + "s";
+    }
+    if (seconds < 3600) {
+      return (seconds / 60) + "m " + (seconds % 60) + "s";
+    }
+    return (seconds / 3600) + "h " + ((seconds % 3600) / 60) + "m";
+  }
+}
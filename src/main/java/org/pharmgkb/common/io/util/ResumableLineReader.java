@@ -0,0 +1,173 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * Reads UTF-8 lines from a (possibly compressed) file, writing a {@link Checkpoint} every so often so that a job that
+ * fails part way through can be rerun from the last checkpoint instead of from the start.
+ * <p>
+ * Call {@link #markProcessed()} once each line (or group of lines) has been completely dealt with.  If a checkpoint
+ * exists when the reader is opened, the first line returned is the one after the last line marked as processed.
+ * Call {@link #deleteCheckpoint()} once the job is done, or the next run will pick up at the end.
+ * <pre>
+ * try (ResumableLineReader reader = new ResumableLineReader(file, checkpointFile)) {
+ *   String line;
+ *   while ((line = reader.readLine()) != null) {
+ *     load(line);
+ *     reader.markProcessed();
+ *   }
+ *   reader.deleteCheckpoint();
+ * }
+ * </pre>
+ *
+ * @author Mark Woon
+ */
+public class ResumableLineReader implements Closeable {
+  private final Checkpointer m_checkpointer;
+  private final PositionInputStream m_in;
+  private final DelimiterScanner m_scanner = DelimiterScanner.forLines();
+  private byte[] m_buffer = new byte[65536];
+  /** Number of bytes read from {@code m_in} before {@code m_buffer[0]}. */
+  private long m_bufferOffset;
+  private int m_start;
+  private int m_limit;
+  /** Number of bytes read from {@code m_in} before the start of the next line. */
+  private long m_lineEnd;
+  private boolean m_isEof;
+
+
+  /**
+   * Opens {@code file}, resuming from {@code checkpointFile} if it exists.
+   */
+  public ResumableLineReader(Path file, Path checkpointFile) throws IOException {
+    m_checkpointer = new Checkpointer(file, checkpointFile);
+    Checkpoint checkpoint = m_checkpointer.getResumedFrom();
+    m_in = PositionInputStream.open(file, checkpoint == null ? 0 : checkpoint.getPosition());
+  }
+
+
+  /**
+   * Gets the checkpoint this reader resumed from, which has the state saved with it.
+   *
+   * @return the checkpoint, or null if this reader started from the beginning of the file
+   */
+  public @Nullable Checkpoint getResumedFrom() {
+    return m_checkpointer.getResumedFrom();
+  }
+
+  /**
+   * Gets the number of records marked as processed, including those from before the checkpoint this reader resumed
+   * from.
+   */
+  public long getRecordCount() {
+    return m_checkpointer.getRecordCount();
+  }
+
+  /**
+   * Sets how often to write a checkpoint.  Defaults to once a minute.
+   */
+  public void setCheckpointInterval(long millis) {
+    m_checkpointer.setInterval(millis);
+  }
+
+
+  /**
+   * Reads the next line, without the line terminator.
+   *
+   * @return the line, or null if the end of the file has been reached
+   */
+  public @Nullable String readLine() throws IOException {
+
+    int scanFrom = m_start;
+    while (true) {
+      int idx = m_scanner.reset(ByteBuffer.wrap(m_buffer, scanFrom, m_limit - scanFrom)).next();
+      if (idx != -1) {
+        return nextLine(idx, idx + 1);
+      }
+      if (m_isEof) {
+        if (m_start == m_limit) {
+          return null;
+        }
+        return nextLine(m_limit, m_limit);
+      }
+      scanFrom = m_limit - m_start;
+      fill();
+    }
+  }
+
+  private String nextLine(int end, int next) {
+
+    int lineEnd = end;
+    if (lineEnd > m_start && m_buffer[lineEnd - 1] == '\r') {
+      lineEnd -= 1;
+    }
+    String line = new String(m_buffer, m_start, lineEnd - m_start, StandardCharsets.UTF_8);
+    m_start = next;
+    m_lineEnd = m_bufferOffset + next;
+    return line;
+  }
+
+  /**
+   * Moves the current line to the start of the buffer (growing it if need be) and reads more after it.
+   */
+  private void fill() throws IOException {
+
+    int remaining = m_limit - m_start;
+    if (remaining == m_buffer.length) {
+      byte[] buffer = new byte[m_buffer.length * 2];
+      System.arraycopy(m_buffer, m_start, buffer, 0, remaining);
+      m_buffer = buffer;
+    } else if (m_start > 0) {
+      System.arraycopy(m_buffer, m_start, m_buffer, 0, remaining);
+    }
+    m_bufferOffset += m_start;
+    m_start = 0;
+    m_limit = remaining;
+    int n = m_in.read(m_buffer, m_limit, m_buffer.length - m_limit);
+    if (n == -1) {
+      m_isEof = true;
+    } else {
+      m_limit += n;
+    }
+  }
+
+
+  /**
+   * Marks everything up to the last line read as processed, and writes a checkpoint if one is due.
+   */
+  public void markProcessed() throws IOException {
+    markProcessed(null);
+  }
+
+  /**
+   * Marks everything up to the last line read as processed, and writes a checkpoint if one is due.
+   *
+   * @param state supplies the caller's state (e.g. running totals) to save with the checkpoint; only called when a
+   * checkpoint is written
+   */
+  public void markProcessed(@Nullable Supplier<@Nullable String> state) throws IOException {
+    if (m_checkpointer.onRecord()) {
+      m_checkpointer.write(m_in.getPosition(m_lineEnd), state);
+    }
+  }
+
+  /**
+   * Deletes the checkpoint file.  Call this once the job has finished successfully.
+   */
+  public void deleteCheckpoint() throws IOException {
+    m_checkpointer.delete();
+  }
+
+
+  @Override
+  public void close() throws IOException {
+    m_in.close();
+  }
+}
@@ -1,17 +1,30 @@
 package org.pharmgkb.common.io.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.XMLEvent;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
 import com.google.common.io.Closeables;
 import org.apache.commons.lang3.StringUtils;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.codehaus.stax2.LocationInfo;
+import org.codehaus.stax2.XMLStreamReader2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,22 +37,54 @@
  * <li><a href="http://docs.oracle.com/cd/E17802_01/webservices/webservices/docs/1.6/tutorial/doc/SJSXP3.html#wp101587">http://docs.oracle.com/cd/E17802_01/webservices/webservices/docs/1.6/tutorial/doc/SJSXP3.html#wp101587</a>
  * <li><a href="http://today.java.net/pub/a/today/2006/07/20/introduction-to-stax.html">http://today.java.net/pub/a/today/2006/07/20/introduction-to-stax.html</a></li>
  * </ul>
+ * <p>
+ * Readers opened with {@link #openResumable(Path, Path)} write a {@link Checkpoint} every so often, so that a long job
+ * that fails can be rerun from the last record it finished rather than from the start.
  *
  * @author Mark Woon
  */
 public class StaxReader implements Closeable, AutoCloseable {
   private static final Logger sf_logger = LoggerFactory.getLogger(StaxReader.class);
+  /** Report progress to the metrics listener every 8192 events. */
+  private static final long sf_progressMask = 8191;
+  private Path m_file;
   private InputStream m_inputStream;
   private XMLStreamReader m_xmlReader;
+  private IoMetricsListener m_metricsListener;
+  private long m_startTime = System.nanoTime();
+  private long m_eventCount;
+  private long m_elementCount;
+  private @Nullable Checkpointer m_checkpointer;
+  private @Nullable PositionInputStream m_positionStream;
+  private @Nullable RecordingInputStream m_recorder;
+  /** Number of bytes fed to the parser from the checkpoint before any from the file. */
+  private int m_prefixLength;
+  /** Everything before the root element. */
+  private byte @Nullable [] m_prolog;
+  /** Start tags of the elements that are currently open. */
+  private final List<byte[]> m_openTags = new ArrayList<>();
 
 
   public StaxReader(File file) throws IOException {
     this(file.toPath());
   }
 
+  /**
+   * Opens the specified file.  Metrics will be reported to the listener registered with
+   * {@link StreamUtils#setMetricsListener(IoMetricsListener)}, if any.
+   */
   public StaxReader(Path file) throws IOException {
+    this(file, StreamUtils.getMetricsListener());
+  }
+
+  /**
+   * Opens the specified file, reporting metrics to the specified listener.
+   */
+  public StaxReader(Path file, IoMetricsListener metricsListener) throws IOException {
+    m_file = file;
+    m_metricsListener = Objects.requireNonNull(metricsListener);
     try {
-      m_inputStream = StreamUtils.openInputStream(file);
+      m_inputStream = StreamUtils.openInputStream(file, metricsListener);
       m_xmlReader = XMLInputFactory.newInstance().createXMLStreamReader(m_inputStream);
     } catch (XMLStreamException ex) {
       throw new IOException("Error reading " + file, ex);
@@ -47,9 +92,64 @@ public StaxReader(Path file) throws IOException {
   }
 
 
+  /**
+   * Opens {@code file}, picking up from {@code checkpointFile} if it exists.
+   * <p>
+   * Call {@link #markProcessed()} after each record (right after its end element) has been dealt with.  When resuming,
+   * the reader is positioned right after the end element of the last record that was marked as processed, with the
+   * same elements open.  Call {@link #deleteCheckpoint()} once the job is done, or the next run will pick up at the
+   * end.
+   * <p>
+   * The file is read with Aalto, which knows the byte offset of each event.  It must be UTF-8, or declare its
+   * encoding.
+   */
+  public static StaxReader openResumable(Path file, Path checkpointFile) throws IOException {
+    return new StaxReader(file, new Checkpointer(file, checkpointFile));
+  }
+
+  private StaxReader(Path file, Checkpointer checkpointer) throws IOException {
+
+    m_file = file;
+    m_metricsListener = StreamUtils.getMetricsListener();
+    m_checkpointer = checkpointer;
+    Checkpoint checkpoint = checkpointer.getResumedFrom();
+    m_positionStream = PositionInputStream.open(file, checkpoint == null ? 0 : checkpoint.getPosition());
+    InputStream in = m_positionStream;
+    if (checkpoint != null) {
+      // start tags of the open elements have to come first so that the rest of the file parses
+      m_prefixLength = checkpoint.getPrefix().length;
+      in = new SequenceInputStream(new ByteArrayInputStream(checkpoint.getPrefix()), in);
+    }
+    m_recorder = new RecordingInputStream(in);
+    m_inputStream = m_recorder;
+    try {
+      m_xmlReader = new InputFactoryImpl().createXMLStreamReader(m_inputStream);
+      if (checkpoint != null) {
+        while (m_openTags.size() < checkpoint.getDepth()) {
+          if (!m_xmlReader.hasNext()) {
+            throw new EOFException("Checkpoint for " + file + " ends before its open elements do");
+          }
+          next();
+        }
+        m_eventCount = 0;
+        m_elementCount = 0;
+      }
+    } catch (XMLStreamException | IOException ex) {
+      Closeables.closeQuietly(m_inputStream);
+      if (ex instanceof IOException) {
+        throw (IOException)ex;
+      }
+      throw new IOException("Error reading " + file, ex);
+    }
+  }
+
+
   @Override
   public void close() {
 
+    if (m_metricsListener != IoMetricsListener.NOOP) {
+      m_metricsListener.onStaxProgress(m_file, m_eventCount, m_elementCount, getBytePosition());
+    }
     if (m_xmlReader != null) {
       try {
         m_xmlReader.close();
@@ -72,7 +172,163 @@ public boolean hasNext() throws XMLStreamException {
    * See {@link XMLStreamReader#next()}.
    */
   public int next() throws XMLStreamException {
-    return m_xmlReader.next();
+
+    int event = m_xmlReader.next();
+    m_eventCount += 1;
+    if (event == XMLEvent.START_ELEMENT) {
+      m_elementCount += 1;
+    }
+    if ((m_eventCount & sf_progressMask) == 0 && m_metricsListener != IoMetricsListener.NOOP) {
+      m_metricsListener.onStaxProgress(m_file, m_eventCount, m_elementCount, getBytePosition());
+    }
+    trackOpenElements(event);
+    return event;
+  }
+
+  /**
+   * Keeps the bytes of the prolog and of the start tags of open elements, to put in checkpoints.
+   */
+  private void trackOpenElements(int event) throws XMLStreamException {
+
+    if (m_recorder == null) {
+      return;
+    }
+    if (event == XMLEvent.START_ELEMENT) {
+      LocationInfo info = ((XMLStreamReader2)m_xmlReader).getLocationInfo();
+      long start = info.getStartingByteOffset();
+      try {
+        if (m_prolog == null) {
+          m_prolog = m_recorder.get(0, start);
+          m_recorder.setRetainAll(false);
+        }
+        m_openTags.add(m_recorder.get(start, info.getEndingByteOffset()));
+      } catch (IOException ex) {
+        throw new XMLStreamException("Cannot track start tag of " + m_xmlReader.getLocalName(), ex);
+      }
+    } else if (event == XMLEvent.END_ELEMENT) {
+      m_openTags.remove(m_openTags.size() - 1);
+    }
+  }
+
+
+  /**
+   * Gets the number of events read so far.
+   */
+  public long getEventCount() {
+    return m_eventCount;
+  }
+
+  /**
+   * Gets the number of start elements read so far.
+   */
+  public long getElementCount() {
+    return m_elementCount;
+  }
+
+  /**
+   * Gets the average number of start elements read per second since this reader was opened.
+   */
+  public double getElementsPerSecond() {
+
+    long elapsed = System.nanoTime() - m_startTime;
+    if (elapsed <= 0) {
+      return 0;
+    }
+    return m_elementCount * 1_000_000_000d / elapsed;
+  }
+
+  /**
+   * Gets the number of bytes read from disk so far.
+   * This is only tracked if there is a metrics listener.
+   *
+   * @return the number of bytes read, or -1 if not tracked
+   */
+  public long getBytePosition() {
+
+    if (m_inputStream instanceof MeteredInputStream) {
+      return ((MeteredInputStream)m_inputStream).getRawByteCount();
+    }
+    return -1;
+  }
+
+
+  /**
+   * Gets the checkpoint this reader resumed from, which has the state saved with it.
+   *
+   * @return the checkpoint, or null if this reader started from the beginning of the file (or isn't resumable)
+   */
+  public @Nullable Checkpoint getResumedFrom() {
+    return m_checkpointer == null ? null : m_checkpointer.getResumedFrom();
+  }
+
+  /**
+   * Gets the number of records marked as processed, including those from before the checkpoint this reader resumed
+   * from.
+   */
+  public long getRecordCount() {
+    return m_checkpointer == null ? 0 : m_checkpointer.getRecordCount();
+  }
+
+  /**
+   * Sets how often to write a checkpoint.  Defaults to once a minute.
+   */
+  public void setCheckpointInterval(long millis) {
+    getCheckpointer().setInterval(millis);
+  }
+
+  /**
+   * Marks everything up to the current event (which must be a start or end element) as processed, and writes a
+   * checkpoint if one is due.
+   */
+  public void markProcessed() throws IOException {
+    markProcessed(null);
+  }
+
+  /**
+   * Marks everything up to the current event (which must be a start or end element) as processed, and writes a
+   * checkpoint if one is due.
+   *
+   * @param state supplies the caller's state (e.g. running totals) to save with the checkpoint; only called when a
+   * checkpoint is written
+   */
+  public void markProcessed(@Nullable Supplier<@Nullable String> state) throws IOException {
+
+    Checkpointer checkpointer = getCheckpointer();
+    int event = m_xmlReader.getEventType();
+    if ((event != XMLEvent.START_ELEMENT && event != XMLEvent.END_ELEMENT) || m_openTags.isEmpty() ||
+        m_prolog == null || m_positionStream == null) {
+      throw new IllegalStateException("Can only mark processed at a start or end element inside the root element");
+    }
+    if (!checkpointer.onRecord()) {
+      return;
+    }
+    long end;
+    try {
+      end = ((XMLStreamReader2)m_xmlReader).getLocationInfo().getEndingByteOffset();
+    } catch (XMLStreamException ex) {
+      throw new IOException("Error reading " + m_file, ex);
+    }
+    ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+    prefix.write(m_prolog);
+    for (byte[] tag : m_openTags) {
+      prefix.write(tag);
+    }
+    checkpointer.write(m_positionStream.getPosition(end - m_prefixLength), state, prefix.toByteArray(),
+        m_openTags.size());
+  }
+
+  /**
+   * Deletes the checkpoint file.  Call this once the job has finished successfully.
+   */
+  public void deleteCheckpoint() throws IOException {
+    getCheckpointer().delete();
+  }
+
+  private Checkpointer getCheckpointer() {
+    if (m_checkpointer == null) {
+      throw new IllegalStateException("Not opened with openResumable()");
+    }
+    return m_checkpointer;
   }
 
 
@@ -107,7 +363,7 @@ public String getLocalName() {
   public @Nullable String getTextTrimmedToNull() throws XMLStreamException {
 
     while (m_xmlReader.hasNext()) {
-      switch (m_xmlReader.next()) {
+      switch (next()) {
         case XMLEvent.CHARACTERS:
           return StringUtils.trimToNull(m_xmlReader.getText());
         case XMLEvent.END_ELEMENT:
@@ -130,7 +386,7 @@ public String getLocalName() {
    */
   public @Nullable StaxReader startElement(String name, @Nullable String parentName) throws XMLStreamException {
     while (m_xmlReader.hasNext()) {
-      int code = m_xmlReader.next();
+      int code = next();
       switch (code) {
         case XMLEvent.START_ELEMENT:
           if (name.equals(m_xmlReader.getLocalName())) {
@@ -153,7 +409,7 @@ public String getLocalName() {
   public @Nullable StaxReader startElementUnless(String name, @Nullable String parentName,
       String... untilStartNames) throws XMLStreamException {
     while (m_xmlReader.hasNext()) {
-      int code = m_xmlReader.next();
+      int code = next();
       switch (code) {
         case XMLEvent.START_ELEMENT:
           String localName = m_xmlReader.getLocalName();
@@ -181,10 +437,88 @@ public String getLocalName() {
    */
   public @Nullable StaxReader endElement(String name) throws XMLStreamException {
     while (m_xmlReader.hasNext()) {
-      if (m_xmlReader.next() == XMLEvent.END_ELEMENT && name.equals(m_xmlReader.getLocalName())) {
+      if (next() == XMLEvent.END_ELEMENT && name.equals(m_xmlReader.getLocalName())) {
         return this;
       }
     }
     return null;
   }
+
+
+  /**
+   * Keeps the bytes it has read, from the start of the stream until told otherwise and then just the most recent ones,
+   * so that the bytes of an event can be pulled back out given the event's byte offsets.
+   */
+  private static class RecordingInputStream extends FilterInputStream {
+    private static final int WINDOW_SIZE = 256 * 1024;
+    private byte[] m_buffer = new byte[WINDOW_SIZE];
+    /** Number of bytes read before {@code m_buffer[0]}. */
+    private long m_bufferOffset;
+    private int m_length;
+    private boolean m_isRetainAll = true;
+
+    RecordingInputStream(InputStream in) {
+      super(in);
+    }
+
+    void setRetainAll(boolean retainAll) {
+      m_isRetainAll = retainAll;
+    }
+
+    byte[] get(long start, long end) throws IOException {
+      if (start < m_bufferOffset || end > m_bufferOffset + m_length || start > end) {
+        throw new IOException("Bytes " + start + " to " + end + " are no longer available");
+      }
+      return Arrays.copyOfRange(m_buffer, (int)(start - m_bufferOffset), (int)(end - m_bufferOffset));
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b != -1) {
+        ensureCapacity(1);
+        m_buffer[m_length++] = (byte)b;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n > 0) {
+        ensureCapacity(n);
+        System.arraycopy(b, off, m_buffer, m_length, n);
+        m_length += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // read so that nothing is missed
+      byte[] buffer = new byte[(int)Math.min(n, 8192)];
+      int read = read(buffer, 0, buffer.length);
+      return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void ensureCapacity(int n) {
+      if (m_length + n <= m_buffer.length) {
+        return;
+      }
+      if (!m_isRetainAll && m_length > WINDOW_SIZE) {
+        int drop = m_length - WINDOW_SIZE;
+        System.arraycopy(m_buffer, drop, m_buffer, 0, WINDOW_SIZE);
+        m_bufferOffset += drop;
+        m_length = WINDOW_SIZE;
+      }
+      if (m_length + n > m_buffer.length) {
+        m_buffer = Arrays.copyOf(m_buffer, Math.max(m_buffer.length * 2, m_length + n));
+      }
+    }
+  }
 }
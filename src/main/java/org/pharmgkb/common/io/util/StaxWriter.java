@@ -0,0 +1,313 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * Streaming XML writer to pair with {@link StaxReader}.
+ * <p>
+ * Output goes through a single reusable character buffer, and text and attribute values are escaped straight into
+ * that buffer so no intermediate strings are built.  Files are compressed based on their extension (see
+ * {@link StreamUtils#openOutputStream(Path)}).
+ * <p>
+ * Element and attribute names are written as-is and are not validated.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Mark Woon
+ */
+public class StaxWriter implements Closeable, AutoCloseable {
+  private static final int sf_bufferSize = 65536;
+  private final Writer m_writer;
+  private final char[] m_buffer = new char[sf_bufferSize];
+  private int m_bufferPos;
+  private final Deque<String> m_openElements = new ArrayDeque<>();
+  /** True if the current start tag has not been closed with a '&gt;' yet, so attributes can still be added. */
+  private boolean m_isStartTagOpen;
+
+
+  public StaxWriter(File file) throws IOException {
+    this(file.toPath());
+  }
+
+  public StaxWriter(Path file) throws IOException {
+    this(StreamUtils.openOutputStream(file));
+  }
+
+  /**
+   * Writes to the specified {@link OutputStream} as UTF-8.  The stream will be closed when this writer is closed.
+   */
+  public StaxWriter(OutputStream out) throws IOException {
+    m_writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+  }
+
+
+  /**
+   * Closes any open elements and the underlying stream.
+   */
+  @Override
+  public void close() throws IOException {
+
+    try {
+      while (!m_openElements.isEmpty()) {
+        endElement();
+      }
+      write('\n');
+      flushBuffer();
+    } finally {
+      m_writer.close();
+    }
+  }
+
+
+  /**
+   * Flushes buffered output to the underlying stream.
+   */
+  public void flush() throws IOException {
+    flushBuffer();
+    m_writer.flush();
+  }
+
+
+  /**
+   * Starts a new element.  Attributes can be added until content or another element is written.
+   */
+  public StaxWriter startElement(String name) throws IOException {
+
+    closeStartTag();
+    write('<');
+    write(name);
+    m_openElements.push(name);
+    m_isStartTagOpen = true;
+    return this;
+  }
+
+  /**
+   * Starts a new element with the given attributes.
+   *
+   * @param namesAndValues alternating attribute names and values; attributes with null values are skipped
+   */
+  public StaxWriter startElement(String name, @Nullable String... namesAndValues) throws IOException {
+
+    startElement(name);
+    return attributes(namesAndValues);
+  }
+
+  /**
+   * Ends the most recently started element.
+   */
+  public StaxWriter endElement() throws IOException {
+
+    if (m_openElements.isEmpty()) {
+      throw new IllegalStateException("No open element to end");
+    }
+    String name = m_openElements.pop();
+    if (m_isStartTagOpen) {
+      write("/>");
+      m_isStartTagOpen = false;
+    } else {
+      write("</");
+      write(name);
+      write('>');
+    }
+    return this;
+  }
+
+
+  /**
+   * Adds an attribute to the current start tag.  Does nothing if {@code value} is null.
+   *
+   * @throws IllegalStateException if there is no start tag to add the attribute to
+   */
+  public StaxWriter attribute(String name, @Nullable String value) throws IOException {
+
+    if (!m_isStartTagOpen) {
+      throw new IllegalStateException("Attributes must be written immediately after startElement");
+    }
+    if (value != null) {
+      write(' ');
+      write(name);
+      write("=\"");
+      writeEscaped(value, true);
+      write('"');
+    }
+    return this;
+  }
+
+  /**
+   * Adds attributes to the current start tag.
+   *
+   * @param namesAndValues alternating attribute names and values; attributes with null values are skipped
+   */
+  public StaxWriter attributes(@Nullable String... namesAndValues) throws IOException {
+
+    if (namesAndValues.length % 2 != 0) {
+      throw new IllegalArgumentException("Expecting alternating attribute names and values");
+    }
+    for (int x = 0; x < namesAndValues.length; x += 2) {
+      String name = namesAndValues[x];
+      if (name == null) {
+        throw new IllegalArgumentException("Attribute name cannot be null");
+      }
+      attribute(name, namesAndValues[x + 1]);
+    }
+    return this;
+  }
+
+
+  /**
+   * Writes escaped text content.  Does nothing if {@code text} is null.
+   */
+  public StaxWriter text(@Nullable String text) throws IOException {
+
+    if (text != null) {
+      closeStartTag();
+      writeEscaped(text, false);
+    }
+    return this;
+  }
+
+
+  /**
+   * Writes an element containing only text.  Does nothing if {@code text} is null.
+   */
+  public StaxWriter element(String name, @Nullable String text) throws IOException {
+
+    if (text != null) {
+      startElement(name);
+      text(text);
+      endElement();
+    }
+    return this;
+  }
+
+  /**
+   * Writes an element with no content.
+   *
+   * @param namesAndValues alternating attribute names and values; attributes with null values are skipped
+   */
+  public StaxWriter emptyElement(String name, @Nullable String... namesAndValues) throws IOException {
+
+    startElement(name);
+    attributes(namesAndValues);
+    return endElement();
+  }
+
+
+  /**
+   * Writes a line break, for readability.
+   */
+  public StaxWriter newLine() throws IOException {
+
+    closeStartTag();
+    write('\n');
+    return this;
+  }
+
+
+  private void closeStartTag() throws IOException {
+    if (m_isStartTagOpen) {
+      write('>');
+      m_isStartTagOpen = false;
+    }
+  }
+
+
+  /**
+   * Copies {@code value} into the buffer, replacing markup characters with entities.
+   * <p>
+   * All characters that need special handling sort at or before '&gt;', so anything above that is copied in bulk.
+   */
+  private void writeEscaped(String value, boolean isAttribute) throws IOException {
+
+    int len = value.length();
+    int start = 0;
+    for (int x = 0; x < len; x++) {
+      char c = value.charAt(x);
+      if (c > '>') {
+        continue;
+      }
+      String entity;
+      switch (c) {
+        case '&':
+          entity = "&amp;";
+          break;
+        case '<':
+          entity = "&lt;";
+          break;
+        case '>':
+          entity = "&gt;";
+          break;
+        case '"':
+          entity = isAttribute ? "&quot;" : null;
+          break;
+        case '\n':
+          entity = isAttribute ? "&#10;" : null;
+          break;
+        case '\t':
+          entity = isAttribute ? "&#9;" : null;
+          break;
+        case '\r':
+          entity = "&#13;";
+          break;
+        default:
+          if (c < ' ') {
+            throw new IllegalArgumentException("Invalid XML character (0x" + Integer.toHexString(c) + ")");
+          }
+          entity = null;
+      }
+      if (entity != null) {
+        write(value, start, x);
+        write(entity);
+        start = x + 1;
+      }
+    }
+    write(value, start, len);
+  }
+
+
+  private void write(char c) throws IOException {
+    if (m_bufferPos == m_buffer.length) {
+      flushBuffer();
+    }
+    m_buffer[m_bufferPos++] = c;
+  }
+
+  private void write(String value) throws IOException {
+    write(value, 0, value.length());
+  }
+
+  /**
+   * Copies characters {@code start} (inclusive) to {@code end} (exclusive) of {@code value} into the buffer.
+   */
+  private void write(String value, int start, int end) throws IOException {
+
+    while (start < end) {
+      if (m_bufferPos == m_buffer.length) {
+        flushBuffer();
+      }
+      int count = Math.min(end - start, m_buffer.length - m_bufferPos);
+      value.getChars(start, start + count, m_buffer, m_bufferPos);
+      m_bufferPos += count;
+      start += count;
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (m_bufferPos > 0) {
+      m_writer.write(m_buffer, 0, m_bufferPos);
+      m_bufferPos = 0;
+    }
+  }
+}
@@ -1,25 +1,37 @@
 package org.pharmgkb.common.io.util;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.zip.GZIPInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import com.google.common.io.CountingInputStream;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.pharmgkb.common.io.compress.Compression;
 
 
 /**
@@ -28,6 +40,13 @@
  * @author Mark Woon
  */
 public class StreamUtils {
+  private static volatile IoMetricsListener s_metricsListener = IoMetricsListener.NOOP;
+  /** Listeners added with {@link #addScopedMetricsListener(IoMetricsListener)} outside of a metrics scope. */
+  private static final List<IoMetricsListener> sf_globalListeners = new CopyOnWriteArrayList<>();
+  /** Listeners for the current metrics scope, which threads started within it inherit. */
+  private static final InheritableThreadLocal<List<IoMetricsListener>> sf_scopedListeners =
+      new InheritableThreadLocal<>();
+  private static volatile @Nullable DecompressedFileCache s_decompressedFileCache;
 
   /**
    * Static class.
@@ -36,11 +55,99 @@ private StreamUtils() {
   }
 
 
+  /**
+   * Registers a listener for metrics on all streams subsequently opened by this class.
+   * Streams are only instrumented if there is a listener, so there is no overhead when metrics are not needed.
+   *
+   * @param listener the listener to use, or null to disable metrics
+   */
+  public static void setMetricsListener(@Nullable IoMetricsListener listener) {
+    s_metricsListener = listener == null ? IoMetricsListener.NOOP : listener;
+  }
+
+  /**
+   * Gets the metrics listener for streams opened by the current thread, which is {@link IoMetricsListener#NOOP} if
+   * none has been registered.  This includes listeners added by {@link ProgressReporter} and {@code --profile}.
+   */
+  public static IoMetricsListener getMetricsListener() {
+
+    IoMetricsListener listener = s_metricsListener;
+    List<IoMetricsListener> scoped = sf_scopedListeners.get();
+    for (IoMetricsListener l : scoped == null ? sf_globalListeners : scoped) {
+      listener = IoMetricsListener.combine(listener, l);
+    }
+    return listener;
+  }
+
+  /**
+   * Adds a listener for streams opened in the current metrics scope (see {@link #startMetricsScope()}), or by any
+   * thread if there isn't one.
+   *
+   * @return the listeners it was added to, which it should be removed from when done
+   */
+  static List<IoMetricsListener> addScopedMetricsListener(IoMetricsListener listener) {
+
+    List<IoMetricsListener> scoped = sf_scopedListeners.get();
+    if (scoped == null) {
+      scoped = sf_globalListeners;
+    }
+    scoped.add(listener);
+    return scoped;
+  }
+
+  /**
+   * Starts a metrics scope for the current thread and any threads it starts, so that listeners added with
+   * {@link #addScopedMetricsListener(IoMetricsListener)} only get metrics from them.  Used to keep concurrent daemon
+   * invocations apart.
+   */
+  static void startMetricsScope() {
+    sf_scopedListeners.set(new CopyOnWriteArrayList<>());
+  }
+
+  /**
+   * Ends the current thread's metrics scope.  Threads that inherited it (e.g. pool threads that outlive it) stop
+   * reporting to its listeners.
+   */
+  static void endMetricsScope() {
+    List<IoMetricsListener> scoped = sf_scopedListeners.get();
+    if (scoped != null) {
+      scoped.clear();
+    }
+    sf_scopedListeners.remove();
+  }
+
+  /**
+   * Registers a cache of decompressed files to use when opening .gz and .zip files with
+   * {@link #openInputStream(Path)} and {@link #openReader(Path)}.
+   *
+   * @param cache the cache to use, or null to always decompress
+   */
+  public static void setDecompressedFileCache(@Nullable DecompressedFileCache cache) {
+    s_decompressedFileCache = cache;
+  }
+
+  /**
+   * Gets the registered decompressed file cache, if any.
+   */
+  public static @Nullable DecompressedFileCache getDecompressedFileCache() {
+    return s_decompressedFileCache;
+  }
+
+
   /**
    * Opens an {@link InputStream} to the specified file.
-   * Automatically unwraps .gz or .zip files.
+   * Automatically unwraps .gz or .zip files, through the {@link DecompressedFileCache} if one has been registered.
+   * <p>
+   * If a metrics listener has been registered, this will return a {@link MeteredInputStream}.
    */
   public static InputStream openInputStream(Path path) throws IOException {
+    return openInputStream(path, getMetricsListener());
+  }
+
+  /**
+   * Opens an {@link InputStream} to the specified file, reporting metrics to the specified {@code listener}.
+   */
+  static InputStream openInputStream(Path path, IoMetricsListener listener) throws IOException {
 
     if (!Files.exists(path)) {
       throw new NoSuchFileException("File does not exist");
@@ -48,14 +155,77 @@ public static InputStream openInputStream(Path path) throws IOException {
     if (!Files.isRegularFile(path)) {
       throw new NoSuchFileException("Path does not lead to a regular file");
     }
+    DecompressedFileCache cache = s_decompressedFileCache;
+    if (cache != null && DecompressedFileCache.isCacheable(path)) {
+      return cache.openInputStream(path, listener);
+    }
+    return openSource(path, listener);
+  }
+
+  /**
+   * Opens a channel to the specified file, for reading into (direct) {@link java.nio.ByteBuffer}s.
+   * Automatically unwraps .gz or .zip files, like {@link #openInputStream(Path)}.
+   * <p>
+   * Plain files, and files in the {@link DecompressedFileCache} if one has been registered, are read through a
+   * {@link FileChannel}.  On Java 17+, .gz files are inflated straight into the caller's buffers.  Anything else,
+   * including everything when a metrics listener has been registered, is read through an {@link InputStream}.
+   */
+  public static ScatteringByteChannel openChannel(Path path) throws IOException {
+
+    IoMetricsListener listener = getMetricsListener();
+    if (listener != IoMetricsListener.NOOP) {
+      return new InputStreamChannel(openInputStream(path, listener));
+    }
+    if (!Files.exists(path)) {
+      throw new NoSuchFileException("File does not exist");
+    }
+    if (!Files.isRegularFile(path)) {
+      throw new NoSuchFileException("Path does not lead to a regular file");
+    }
+    DecompressedFileCache cache = s_decompressedFileCache;
+    if (cache != null && DecompressedFileCache.isCacheable(path)) {
+      return FileChannel.open(cache.getFile(path));
+    }
+    String filename = path.getFileName().toString().toLowerCase();
+    if (filename.endsWith(".gz")) {
+      if (Compression.isJdk()) {
+        return PlatformIo.openGzipChannel(path);
+      }
+    } else if (!filename.endsWith(".zip")) {
+      return FileChannel.open(path);
+    }
+    return new InputStreamChannel(openSource(path, IoMetricsListener.NOOP));
+  }
+
+  /**
+   * Opens an {@link InputStream} to the specified file without going through the decompressed file cache.
+   */
+  static InputStream openSource(Path path, IoMetricsListener listener) throws IOException {
+
+    if (listener == IoMetricsListener.NOOP) {
+      if (path.getFileName().toString().toLowerCase().endsWith(".gz") && Compression.isJdk()) {
+        return PlatformIo.openGzip(path);
+      }
+      return decompress(path, Files.newInputStream(path));
+    }
+    listener.onOpen(path, Files.size(path));
+    CountingInputStream rawStream = new CountingInputStream(Files.newInputStream(path));
+    return new MeteredInputStream(path, decompress(path, rawStream), rawStream, listener);
+  }
+
+  /**
+   * Wraps {@code in} to unwrap .gz or .zip files.
+   */
+  private static InputStream decompress(Path path, InputStream in) throws IOException {
+
     String origFilename = path.getFileName().toString();
     String filename = origFilename.toLowerCase();
     if (filename.endsWith(".gz")) {
-      return new GZIPInputStream(Files.newInputStream(path), 65536);
+      return Compression.newGzipInputStream(in);
     } else if (filename.endsWith(".zip")) {
-      return new ZippedFileInputStream(Files.newInputStream(path), origFilename);
+      return new ZippedFileInputStream(in, origFilename.substring(0, origFilename.length() - 4));
     } else {
-      return Files.newInputStream(path);
+      return in;
     }
   }
 
@@ -64,24 +234,67 @@ public static InputStream openInputStream(Path path) throws IOException {
    * Automatically unwraps .gz or .zip files.
    */
   public static BufferedReader openReader(Path path) throws IOException {
+    return newReader(path, openInputStream(path));
+  }
 
-    if (!Files.exists(path)) {
-      throw new NoSuchFileException("File does not exist");
+  /**
+   * Wraps a stream opened with {@link #openInputStream(Path)} in a reader, like {@link #openReader(Path)}.
+   */
+  static BufferedReader newReader(Path path, InputStream in) {
+
+    String filename = path.getFileName().toString().toLowerCase();
+    if (filename.endsWith(".gz") || filename.endsWith(".zip")) {
+      return new BufferedReader(new InputStreamReader(in));
+    } else {
+      // same as Files.newBufferedReader()
+      return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()));
     }
-    if (!Files.isRegularFile(path)) {
-      throw new NoSuchFileException("Path does not lead to a regular file");
+  }
+
+
+  /**
+   * Opens an {@link OutputStream} to the specified file.  If {@code path} already exists, it will be overwritten.
+   * Automatically compresses to .gz or .zip files based on the file extension.  A .zip file will contain a single
+   * entry named after the file minus the .zip extension, which is what {@link ZippedFileInputStream} expects.
+   * <p>
+   * If a metrics listener has been registered, this will return a {@link MeteredOutputStream}.
+   */
+  public static OutputStream openOutputStream(Path path) throws IOException {
+
+    IoMetricsListener listener = getMetricsListener();
+    if (listener == IoMetricsListener.NOOP) {
+      return compress(path, Files.newOutputStream(path));
     }
+    listener.onOpen(path, -1);
+    return new MeteredOutputStream(path, compress(path, Files.newOutputStream(path)), listener);
+  }
+
+  /**
+   * Wraps {@code out} to compress to .gz or .zip files.
+   */
+  private static OutputStream compress(Path path, OutputStream out) throws IOException {
+
     String origFilename = path.getFileName().toString();
     String filename = origFilename.toLowerCase();
     if (filename.endsWith(".gz")) {
-      return new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(path), 65536)));
+      return Compression.newGzipOutputStream(out);
     } else if (filename.endsWith(".zip")) {
-      return new BufferedReader(new InputStreamReader(new ZippedFileInputStream(Files.newInputStream(path), origFilename)));
+      ZipOutputStream zipOut = new ZipOutputStream(out);
+      zipOut.putNextEntry(new ZipEntry(origFilename.substring(0, origFilename.length() - 4)));
+      return zipOut;
     } else {
-      return Files.newBufferedReader(path);
+      return out;
     }
   }
 
+  /**
+   * Opens a {@link Writer} to the specified file.  If {@code path} already exists, it will be overwritten.
+   * Automatically compresses to .gz or .zip files based on the file extension.
+   */
+  public static BufferedWriter openWriter(Path path) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(openOutputStream(path), StandardCharsets.UTF_8), 65536);
+  }
+
 
   /**
    * Copies contents of a {@code url} to a {@code file}.  If {@code file} already exists, it will be overwritten.
@@ -89,28 +302,60 @@ public static BufferedReader openReader(Path path) throws IOException {
    * Use this instead of {@link FileUtils#copyURLToFile(URL, File)} when you need to follow redirects.
    */
   public static void copyUrlToFile(String url, Path file) throws IOException {
+    PlatformIo.download(url, file);
+  }
+
+  /**
+   * Copies contents of each URL to its file, running up to {@code maxConcurrent} downloads at a time.  Files that
+   * already exist will be overwritten.  On Java 17+, HTTP downloads share HTTP/2 connections where possible, and on
+   * Java 21+ they run on virtual threads.
+   *
+   * @param downloads map of URLs to the files to save them to
+   * @throws IOException if any download fails, after all downloads have completed
+   */
+  public static void copyUrlsToFiles(Map<String, Path> downloads, int maxConcurrent) throws IOException {
 
-    if (url.startsWith("http://") || url.startsWith("https://")) {
-      try (CloseableHttpClient httpClient = HttpClientBuilder.create().setRedirectStrategy(new LaxRedirectStrategy()).build()) {
-        HttpGet httpget = new HttpGet(url);
-        try (CloseableHttpResponse response = httpClient.execute(httpget)) {
-          // save to file even if there's an error, so we can see what the error is
-          try (InputStream in = response.getEntity().getContent();
-               OutputStream out = Files.newOutputStream(file)) {
-            IOUtils.copy(in, out);
+    if (maxConcurrent < 1) {
+      throw new IllegalArgumentException("maxConcurrent must be at least 1");
+    }
+    ExecutorService executor = PlatformThreads.newIoExecutor("StreamUtils-download",
+        Math.min(maxConcurrent, Math.max(downloads.size(), 1)));
+    try {
+      Semaphore permits = new Semaphore(maxConcurrent);
+      List<Future<?>> futures = new ArrayList<>();
+      for (Map.Entry<String, Path> entry : downloads.entrySet()) {
+        futures.add(executor.submit(() -> {
+          permits.acquire();
+          try {
+            copyUrlToFile(entry.getKey(), entry.getValue());
+          } finally {
+            permits.release();
           }
-          if (response.getStatusLine().getStatusCode() != 200) {
-            throw new IOException("Error downloading " + url + ": " + response.getStatusLine());
+          return null;
+        }));
+      }
+      IOException error = null;
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting for downloads");
+        } catch (ExecutionException ex) {
+          IOException ioe = ex.getCause() instanceof IOException ? (IOException)ex.getCause() :
+              new IOException(ex.getCause());
+          if (error == null) {
+            error = ioe;
+          } else {
+            error.addSuppressed(ioe);
           }
         }
       }
-    } else {
-      URL ftpUrl = new URL(url);
-      URLConnection conn = ftpUrl.openConnection();
-      try (InputStream in = conn.getInputStream();
-           OutputStream out = Files.newOutputStream(file)) {
-        IOUtils.copy(in,out);
+      if (error != null) {
+        throw error;
       }
+    } finally {
+      executor.shutdownNow();
     }
   }
 }
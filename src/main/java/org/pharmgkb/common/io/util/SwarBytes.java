@@ -0,0 +1,57 @@
+package org.pharmgkb.common.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Finds bytes 8 at a time by treating each {@code long} as a vector of bytes ("SIMD within a register").
+ *
+ * @author Mark Woon
+ */
+final class SwarBytes {
+  private static final long sf_low7 = 0x7f7f7f7f7f7f7f7fL;
+  private static final long sf_ones = 0x0101010101010101L;
+
+  private SwarBytes() {
+  }
+
+
+  /**
+   * Finds the bytes in {@code buffer} from {@code pos} to {@code pos + len} that match any of the delimiters.
+   *
+   * @param buffer buffer, which must be {@link ByteOrder#LITTLE_ENDIAN}
+   * @param len no more than 64
+   * @return a mask with bit {@code i} set if the byte at {@code pos + i} is a delimiter
+   */
+  static long scan(ByteBuffer buffer, int pos, int len, byte d0, byte d1, byte d2) {
+
+    long p0 = (d0 & 0xffL) * sf_ones;
+    long p1 = (d1 & 0xffL) * sf_ones;
+    long p2 = (d2 & 0xffL) * sf_ones;
+    long mask = 0;
+    int x = 0;
+    for (; x + 8 <= len; x += 8) {
+      long word = buffer.getLong(pos + x);
+      long matches = zeroBytes(word ^ p0) | zeroBytes(word ^ p1) | zeroBytes(word ^ p2);
+      // gather the high bit of each byte into the low 8 bits
+      mask |= (((matches >>> 7) * 0x0102040810204080L) >>> 56) << x;
+    }
+    for (; x < len; x += 1) {
+      byte b = buffer.get(pos + x);
+      if (b == d0 || b == d1 || b == d2) {
+        mask |= 1L << x;
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Sets the high bit of each byte in {@code word} that is 0.  Unlike the usual {@code (v - 0x01..) & ~v & 0x80..}
+   * trick, this has no false positives, so every bit can be used and not just the first.
+   */
+  private static long zeroBytes(long word) {
+    long t = (word & sf_low7) + sf_low7;
+    return ~(t | word | sf_low7);
+  }
+}
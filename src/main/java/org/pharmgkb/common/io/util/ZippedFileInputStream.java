@@ -7,6 +7,7 @@
 import java.nio.file.Path;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import org.pharmgkb.common.io.compress.Compression;
 
 
 /**
@@ -15,7 +16,7 @@
  * @author Mark Woon
  */
 public class ZippedFileInputStream extends InputStream {
-  private ZipInputStream m_zipInputStream;
+  private InputStream m_zipInputStream;
 
 
   public ZippedFileInputStream(Path zipFile) throws IOException {
@@ -45,14 +46,20 @@ public ZippedFileInputStream(InputStream in, String filename) throws IOException
 
 
   private void findFile(InputStream in, String filename) throws IOException {
+    if (!(in instanceof ZipInputStream) && !Compression.isJdk()) {
+      m_zipInputStream = Compression.openZipEntry(in, filename);
+      return;
+    }
+    ZipInputStream zipInputStream;
     if (in instanceof ZipInputStream) {
-      m_zipInputStream = (ZipInputStream)in;
+      zipInputStream = (ZipInputStream)in;
     } else {
-      m_zipInputStream = new ZipInputStream(in);
+      zipInputStream = new ZipInputStream(in);
     }
+    m_zipInputStream = zipInputStream;
     boolean foundFile = false;
     ZipEntry entry;
-    while((entry = m_zipInputStream.getNextEntry()) != null) {
+    while((entry = zipInputStream.getNextEntry()) != null) {
       if (entry.getName().equals(filename)) {
         foundFile = true;
         break;
@@ -0,0 +1,31 @@
+package org.pharmgkb.common.io.compress;
+
+import java.lang.ref.Cleaner;
+
+
+/**
+ * Frees native resources that were never explicitly released once their owner becomes unreachable.
+ * <p>
+ * This is the Java 17 implementation, which uses a {@link Cleaner} instead of finalization.
+ *
+ * @author Mark Woon
+ */
+final class PlatformCleaner {
+  private static final Cleaner sf_cleaner = Cleaner.create();
+
+  private PlatformCleaner() {
+  }
+
+
+  /**
+   * Registers {@code action} to be run once {@code owner} becomes unreachable.
+   * <p>
+   * {@code action} must not reference {@code owner}, or {@code owner} will never become unreachable.  {@code owner}
+   * must hold on to the returned {@link Runnable} and run it to release the resource early (e.g. in {@code close()}).
+   *
+   * @return a {@link Runnable} that runs {@code action} at most once
+   */
+  static Runnable register(Object owner, Runnable action) {
+    return sf_cleaner.register(owner, action)::clean;
+  }
+}
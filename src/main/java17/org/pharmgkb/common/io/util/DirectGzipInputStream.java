@@ -0,0 +1,258 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+
+/**
+ * Reads gzipped data from a channel, like {@link java.util.zip.GZIPInputStream}.
+ * <p>
+ * Compressed data is read into a direct buffer and handed to zlib from there, instead of being copied through a heap
+ * array first, and is inflated straight into the caller's array.  Concatenated gzip members are supported.
+ * <p>
+ * This is also a {@link ScatteringByteChannel}, which inflates straight into the caller's buffers, direct or not.
+ *
+ * @author Mark Woon
+ */
+class DirectGzipInputStream extends InputStream implements ScatteringByteChannel {
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+  private final ReadableByteChannel m_channel;
+  private final ByteBuffer m_buffer = ByteBuffer.allocateDirect(65536);
+  private final Inflater m_inflater = new Inflater(true);
+  private final CRC32 m_crc = new CRC32();
+  private long m_memberSize;
+  private boolean m_needHeader;
+  private boolean m_eof;
+  private boolean m_isClosed;
+
+
+  DirectGzipInputStream(ReadableByteChannel channel) throws IOException {
+    m_channel = channel;
+    m_buffer.flip();
+    if (!readHeader()) {
+      throw new EOFException();
+    }
+  }
+
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      ensureOpen();
+      return 0;
+    }
+    return read(ByteBuffer.wrap(b, off, len));
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+
+    if (m_isClosed) {
+      throw new ClosedChannelException();
+    }
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    while (!m_eof) {
+      if (m_needHeader) {
+        if (!readHeader()) {
+          m_eof = true;
+          break;
+        }
+      }
+      int pos = dst.position();
+      int n;
+      try {
+        n = m_inflater.inflate(dst);
+      } catch (DataFormatException ex) {
+        throw new ZipException(ex.getMessage() != null ? ex.getMessage() : "Invalid ZLIB data format");
+      }
+      if (n > 0) {
+        m_crc.update(dst.duplicate().position(pos).limit(pos + n));
+        m_memberSize += n;
+        return n;
+      }
+      if (m_inflater.finished()) {
+        readTrailer();
+      } else if (m_inflater.needsDictionary()) {
+        throw new ZipException("Unexpected preset dictionary");
+      } else if (m_inflater.needsInput()) {
+        if (!fill()) {
+          throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        m_inflater.setInput(m_buffer);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    return InputStreamChannel.scatter(this, dsts, offset, length);
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts) throws IOException {
+    return read(dsts, 0, dsts.length);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return !m_isClosed;
+  }
+
+  @Override
+  public int available() throws IOException {
+    ensureOpen();
+    return m_eof ? 0 : 1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!m_isClosed) {
+      m_isClosed = true;
+      m_inflater.end();
+      m_channel.close();
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (m_isClosed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+
+  /**
+   * Refills the buffer if it's empty.
+   *
+   * @return false if there's no more data
+   */
+  private boolean fill() throws IOException {
+
+    if (m_buffer.hasRemaining()) {
+      return true;
+    }
+    m_buffer.clear();
+    int n;
+    do {
+      n = m_channel.read(m_buffer);
+    } while (n == 0);
+    m_buffer.flip();
+    return n > 0;
+  }
+
+  private int readUByte(CRC32 crc) throws IOException {
+    if (!fill()) {
+      throw new EOFException();
+    }
+    int b = m_buffer.get() & 0xff;
+    crc.update(b);
+    return b;
+  }
+
+  private int readUShort(CRC32 crc) throws IOException {
+    return readUByte(crc) | (readUByte(crc) << 8);
+  }
+
+  private long readUInt(CRC32 crc) throws IOException {
+    return (long)readUShort(crc) | ((long)readUShort(crc) << 16);
+  }
+
+
+  /**
+   * Reads the header of the next gzip member.
+   *
+   * @return false if there are no more members
+   */
+  private boolean readHeader() throws IOException {
+
+    boolean isFirst = !m_needHeader;
+    if (!fill()) {
+      return false;
+    }
+    CRC32 crc = new CRC32();
+    try {
+      if (readUShort(crc) != 0x8b1f || readUByte(crc) != 8) {
+        if (isFirst) {
+          throw new ZipException("Not in GZIP format");
+        }
+        // trailing garbage, same as GZIPInputStream
+        return false;
+      }
+    } catch (EOFException ex) {
+      if (isFirst) {
+        throw ex;
+      }
+      return false;
+    }
+    int flags = readUByte(crc);
+    // skip MTIME, XFL and OS
+    for (int x = 0; x < 6; x += 1) {
+      readUByte(crc);
+    }
+    if ((flags & FEXTRA) == FEXTRA) {
+      for (int x = readUShort(crc); x > 0; x -= 1) {
+        readUByte(crc);
+      }
+    }
+    if ((flags & FNAME) == FNAME) {
+      while (readUByte(crc) != 0) {
+        // skip file name
+      }
+    }
+    if ((flags & FCOMMENT) == FCOMMENT) {
+      while (readUByte(crc) != 0) {
+        // skip comment
+      }
+    }
+    if ((flags & FHCRC) == FHCRC) {
+      int expected = (int)crc.getValue() & 0xffff;
+      if (readUShort(new CRC32()) != expected) {
+        throw new ZipException("Corrupt GZIP header");
+      }
+    }
+    m_needHeader = false;
+    m_inflater.reset();
+    m_crc.reset();
+    m_memberSize = 0;
+    if (m_buffer.hasRemaining()) {
+      m_inflater.setInput(m_buffer);
+    }
+    return true;
+  }
+
+  /**
+   * Reads and checks the trailer of the current gzip member.
+   */
+  private void readTrailer() throws IOException {
+
+    CRC32 trailerCrc = new CRC32();
+    if (readUInt(trailerCrc) != m_crc.getValue() || readUInt(trailerCrc) != (m_memberSize & 0xffffffffL)) {
+      throw new ZipException("Corrupt GZIP trailer");
+    }
+    m_needHeader = true;
+  }
+}
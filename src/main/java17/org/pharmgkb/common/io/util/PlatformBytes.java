@@ -0,0 +1,36 @@
+package org.pharmgkb.common.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Byte scanning that has faster implementations on newer JDKs.
+ * <p>
+ * This is the Java 17 implementation, which scans heap buffers with {@link VectorBytes} if the
+ * {@code jdk.incubator.vector} module has been added (i.e. with {@code --add-modules jdk.incubator.vector}), and
+ * falls back to {@link SwarBytes} otherwise.
+ *
+ * @author Mark Woon
+ */
+final class PlatformBytes {
+  private static final boolean sf_hasVectors = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+  private PlatformBytes() {
+  }
+
+
+  /**
+   * Finds the bytes in {@code buffer} from {@code pos} to {@code pos + len} that match any of the delimiters.
+   *
+   * @param buffer buffer, which must be {@link ByteOrder#LITTLE_ENDIAN}
+   * @param len no more than 64
+   * @return a mask with bit {@code i} set if the byte at {@code pos + i} is a delimiter
+   */
+  static long scan(ByteBuffer buffer, int pos, int len, byte d0, byte d1, byte d2) {
+    if (sf_hasVectors && len == VectorBytes.BLOCK_SIZE && buffer.hasArray()) {
+      return VectorBytes.scan(buffer.array(), buffer.arrayOffset() + pos, d0, d1, d2);
+    }
+    return SwarBytes.scan(buffer, pos, len, d0, d1, d2);
+  }
+}
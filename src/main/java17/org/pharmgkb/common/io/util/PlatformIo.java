@@ -0,0 +1,109 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+
+/**
+ * I/O operations that have faster implementations on newer JDKs.
+ * <p>
+ * This is the Java 17 implementation, which:
+ * <ul>
+ *   <li>inflates gzipped files from direct buffers, skipping a copy through the heap, and into direct buffers when
+ *   read through a channel</li>
+ *   <li>copies with {@link InputStream#transferTo(OutputStream)}</li>
+ *   <li>downloads with the JDK {@link HttpClient}, which shares HTTP/2 connections between concurrent downloads</li>
+ * </ul>
+ *
+ * @author Mark Woon
+ */
+final class PlatformIo {
+  private static final HttpClient sf_httpClient = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .followRedirects(HttpClient.Redirect.ALWAYS)
+      .connectTimeout(Duration.ofSeconds(30))
+      .build();
+
+  private PlatformIo() {
+  }
+
+
+  /**
+   * Opens a gzipped file for reading.
+   */
+  static InputStream openGzip(Path path) throws IOException {
+    return openDirectGzip(path);
+  }
+
+  /**
+   * Opens a gzipped file for reading through a channel.
+   */
+  static ScatteringByteChannel openGzipChannel(Path path) throws IOException {
+    return openDirectGzip(path);
+  }
+
+  private static DirectGzipInputStream openDirectGzip(Path path) throws IOException {
+
+    FileChannel channel = FileChannel.open(path);
+    try {
+      return new DirectGzipInputStream(channel);
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+
+  /**
+   * Copies everything from {@code in} to {@code out}.
+   *
+   * @return the number of bytes copied
+   */
+  static long transfer(InputStream in, OutputStream out) throws IOException {
+    return in.transferTo(out);
+  }
+
+
+  /**
+   * Copies contents of a {@code url} to a {@code file}, following redirects.
+   */
+  static void download(String url, Path file) throws IOException {
+
+    if (url.startsWith("http://") || url.startsWith("https://")) {
+      HttpRequest request = HttpRequest.newBuilder(URI.create(url)).GET().build();
+      try {
+        // save to file even if there's an error, so we can see what the error is
+        HttpResponse<Path> response = sf_httpClient.send(request, HttpResponse.BodyHandlers.ofFile(file,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        if (response.statusCode() != 200) {
+          throw new IOException("Error downloading " + url + ": " + response.version() + " " +
+              response.statusCode());
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted downloading " + url);
+      }
+    } else {
+      URL ftpUrl = new URL(url);
+      URLConnection conn = ftpUrl.openConnection();
+      try (InputStream in = conn.getInputStream();
+           OutputStream out = Files.newOutputStream(file)) {
+        transfer(in, out);
+      }
+    }
+  }
+}
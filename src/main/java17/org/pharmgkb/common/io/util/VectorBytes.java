@@ -0,0 +1,40 @@
+package org.pharmgkb.common.io.util;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * Finds bytes with the (incubating) Vector API, 16 to 64 bytes per instruction depending on the CPU.
+ * <p>
+ * Only load this class if the {@code jdk.incubator.vector} module is present.
+ *
+ * @author Mark Woon
+ */
+final class VectorBytes {
+  static final int BLOCK_SIZE = 64;
+  /** Widest species that still fits in a block (SVE can be wider than 64 bytes). */
+  private static final VectorSpecies<Byte> sf_species = ByteVector.SPECIES_PREFERRED.length() <= BLOCK_SIZE ?
+      ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_512;
+
+  private VectorBytes() {
+  }
+
+
+  /**
+   * Finds the bytes in {@code array} from {@code offset} to {@code offset + 64} that match any of the delimiters.
+   *
+   * @return a mask with bit {@code i} set if the byte at {@code offset + i} is a delimiter
+   */
+  static long scan(byte[] array, int offset, byte d0, byte d1, byte d2) {
+
+    long mask = 0;
+    for (int x = 0; x < BLOCK_SIZE; x += sf_species.length()) {
+      ByteVector vector = ByteVector.fromArray(sf_species, array, offset + x);
+      VectorMask<Byte> matches = vector.eq(d0).or(vector.eq(d1)).or(vector.eq(d2));
+      mask |= matches.toLong() << x;
+    }
+    return mask;
+  }
+}
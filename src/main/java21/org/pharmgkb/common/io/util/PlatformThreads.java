@@ -0,0 +1,29 @@
+package org.pharmgkb.common.io.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Threading that has better implementations on newer JDKs.
+ * <p>
+ * This is the Java 21 implementation, which runs tasks on virtual threads.
+ *
+ * @author Mark Woon
+ */
+final class PlatformThreads {
+
+  private PlatformThreads() {
+  }
+
+
+  /**
+   * Creates an executor for blocking I/O tasks.
+   *
+   * @param name prefix for thread names
+   * @param maxThreads ignored, callers are expected to limit how many tasks run at a time
+   */
+  static ExecutorService newIoExecutor(String name, int maxThreads) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+  }
+}
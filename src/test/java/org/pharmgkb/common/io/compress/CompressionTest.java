@@ -0,0 +1,291 @@
+package org.pharmgkb.common.io.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+/**
+ * This is a JUnit test for {@link Compression}.
+ * <p>
+ * Most tests use a provider that wraps the JDK provider so that the {@link Decompressor}-based streams get exercised
+ * even when the native library isn't available.
+ *
+ * @author Mark Woon
+ */
+class CompressionTest {
+  private static final byte[] sf_data = makeData();
+
+
+  private static byte[] makeData() {
+    // compressible but not trivially so, and bigger than the 64KB buffers
+    StringBuilder builder = new StringBuilder();
+    Random random = new Random(42);
+    for (int x = 0; x < 20000; x += 1) {
+      builder.append("rs").append(random.nextInt(1000000)).append('\t').append(random.nextInt(4)).append('\n');
+    }
+    return builder.toString().getBytes();
+  }
+
+  @AfterEach
+  void resetProvider() {
+    Compression.setProvider(null);
+  }
+
+
+  @Test
+  void defaultProvider() {
+    CompressionProvider provider = Compression.getProvider();
+    assertTrue(provider.isAvailable());
+    if (!NativeZlib.isLoaded()) {
+      assertTrue(Compression.isJdk());
+    }
+  }
+
+  @Test
+  void setUnavailableProvider() {
+    assertThrows(IllegalArgumentException.class, () -> Compression.setProvider(new WrappedJdkProvider() {
+      @Override
+      public boolean isAvailable() {
+        return false;
+      }
+    }));
+  }
+
+
+  @Test
+  void gzipRoundTrip() throws IOException {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    assertFalse(Compression.isJdk());
+    byte[] gzipped = gzip(sf_data);
+    // readable by the JDK
+    assertArrayEquals(sf_data, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))));
+    assertArrayEquals(sf_data, gunzip(gzipped));
+  }
+
+  @Test
+  void gzipFromJdk() throws IOException {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(baos)) {
+      out.write(sf_data);
+    }
+    assertArrayEquals(sf_data, gunzip(baos.toByteArray()));
+  }
+
+  @Test
+  void gzipMultipleMembers() throws IOException {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    byte[] first = Arrays.copyOfRange(sf_data, 0, 1000);
+    byte[] second = Arrays.copyOfRange(sf_data, 1000, sf_data.length);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    baos.write(gzip(first));
+    baos.write(gzip(second));
+    assertArrayEquals(sf_data, gunzip(baos.toByteArray()));
+  }
+
+  @Test
+  void gzipTrailingGarbage() throws IOException {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    baos.write(gzip(sf_data));
+    baos.write(new byte[] { 0, 0, 0, 0 });
+    assertArrayEquals(sf_data, gunzip(baos.toByteArray()));
+  }
+
+  @Test
+  void gzipTruncated() throws IOException {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    byte[] gzipped = gzip(sf_data);
+    assertThrows(EOFException.class, () -> gunzip(Arrays.copyOf(gzipped, gzipped.length / 2)));
+  }
+
+  @Test
+  void gzipCorruptTrailer() throws IOException {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    byte[] gzipped = gzip(sf_data);
+    gzipped[gzipped.length - 1] ^= 1;
+    assertThrows(ZipException.class, () -> gunzip(gzipped));
+  }
+
+  @Test
+  void notGzip() {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    assertThrows(ZipException.class, () -> gunzip(sf_data));
+  }
+
+
+  @Test
+  void zipEntries() throws IOException {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    byte[] other = "other".getBytes();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(baos)) {
+      // written to a stream, so these have data descriptors
+      out.putNextEntry(new ZipEntry("first.txt"));
+      out.write(other);
+      out.putNextEntry(new ZipEntry("data.txt"));
+      out.write(sf_data);
+      out.putNextEntry(new ZipEntry("last.txt"));
+      out.write(other);
+    }
+    byte[] zip = baos.toByteArray();
+
+    assertArrayEquals(sf_data, readEntry(zip, "data.txt"));
+    assertArrayEquals(other, readEntry(zip, "first.txt"));
+    assertArrayEquals(other, readEntry(zip, "last.txt"));
+    assertThrows(FileNotFoundException.class, () -> readEntry(zip, "missing.txt"));
+  }
+
+  @Test
+  void zipStoredEntries() throws IOException {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    byte[] other = "other".getBytes();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(baos)) {
+      out.putNextEntry(storedEntry("first.txt", other));
+      out.write(other);
+      out.putNextEntry(storedEntry("data.txt", sf_data));
+      out.write(sf_data);
+    }
+    byte[] zip = baos.toByteArray();
+
+    assertArrayEquals(sf_data, readEntry(zip, "data.txt"));
+    assertArrayEquals(other, readEntry(zip, "first.txt"));
+  }
+
+  @Test
+  void zipCorruptEntry() throws IOException {
+
+    Compression.setProvider(new WrappedJdkProvider());
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(baos)) {
+      out.putNextEntry(storedEntry("data.txt", sf_data));
+      out.write(sf_data);
+    }
+    byte[] zip = baos.toByteArray();
+    // flip a bit in the data
+    zip[100] ^= 1;
+    assertThrows(ZipException.class, () -> readEntry(zip, "data.txt"));
+  }
+
+
+  @Test
+  void nativeProvider() throws IOException {
+
+    assumeTrue(NativeZlib.isLoaded(), "Native zlib is not available");
+    Compression.setProvider(new NativeCompressionProvider());
+    byte[] gzipped = gzip(sf_data);
+    assertArrayEquals(sf_data, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))));
+    assertArrayEquals(sf_data, gunzip(gzipped));
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(baos)) {
+      out.putNextEntry(new ZipEntry("first.txt"));
+      out.write(sf_data);
+      out.putNextEntry(new ZipEntry("data.txt"));
+      out.write(sf_data);
+    }
+    assertArrayEquals(sf_data, readEntry(baos.toByteArray(), "data.txt"));
+  }
+
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream out = Compression.newGzipOutputStream(baos)) {
+      // write in pieces to exercise buffering
+      for (int x = 0; x < data.length; x += 10000) {
+        out.write(data, x, Math.min(10000, data.length - x));
+      }
+    }
+    return baos.toByteArray();
+  }
+
+  private static byte[] gunzip(byte[] data) throws IOException {
+    try (InputStream in = Compression.newGzipInputStream(new ByteArrayInputStream(data))) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  private static byte[] readEntry(byte[] zip, String name) throws IOException {
+    try (InputStream in = Compression.openZipEntry(new ByteArrayInputStream(zip), name)) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  private static ZipEntry storedEntry(String name, byte[] data) {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(data.length);
+    entry.setCompressedSize(data.length);
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    entry.setCrc(crc.getValue());
+    return entry;
+  }
+
+
+  /**
+   * Delegates to {@link JdkCompressionProvider} without being one, so that {@link Compression} doesn't use the
+   * {@code java.util.zip} streams.
+   */
+  private static class WrappedJdkProvider implements CompressionProvider {
+    private final JdkCompressionProvider m_provider = new JdkCompressionProvider();
+
+    @Override
+    public String getName() {
+      return "wrapped-jdk";
+    }
+
+    @Override
+    public int getPriority() {
+      return -1;
+    }
+
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    public Decompressor newDecompressor(boolean nowrap) {
+      return m_provider.newDecompressor(nowrap);
+    }
+
+    @Override
+    public Compressor newCompressor(int level, boolean nowrap) {
+      return m_provider.newCompressor(level, nowrap);
+    }
+  }
+}
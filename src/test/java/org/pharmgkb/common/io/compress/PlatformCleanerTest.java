@@ -0,0 +1,47 @@
+package org.pharmgkb.common.io.compress;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * This is a JUnit test for {@link PlatformCleaner}.
+ *
+ * @author Mark Woon
+ */
+class PlatformCleanerTest {
+
+
+  @Test
+  void testRun() {
+
+    AtomicInteger count = new AtomicInteger();
+    Object owner = new Object();
+    Runnable cleanable = PlatformCleaner.register(owner, count::incrementAndGet);
+    cleanable.run();
+    cleanable.run();
+    assertEquals(1, count.get());
+  }
+
+
+  @Test
+  void testUnreachable() throws InterruptedException {
+
+    AtomicInteger count = new AtomicInteger();
+    register(count);
+    for (int x = 0; x < 100 && count.get() == 0; x += 1) {
+      System.gc();
+      System.runFinalization();
+      Thread.sleep(50);
+    }
+    assertEquals(1, count.get());
+  }
+
+  private static void register(AtomicInteger count) {
+    Object owner = new Object();
+    Runnable cleanable = PlatformCleaner.register(owner, count::incrementAndGet);
+    assertNotNull(cleanable);
+  }
+}
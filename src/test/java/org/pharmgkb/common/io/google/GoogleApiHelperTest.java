@@ -1,10 +1,27 @@
 package org.pharmgkb.common.io.google;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequestFactory;
+import com.sun.net.httpserver.HttpServer;
 import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
 import org.bouncycastle.openssl.jcajce.JcaPKCS8Generator;
 import org.bouncycastle.util.io.pem.PemObject;
@@ -12,6 +29,7 @@
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 /**
@@ -97,4 +115,54 @@ void testGetPrivateKey() throws Exception {
     PrivateKey privateKey = GoogleApiHelper.getPrivateKey(writer.toString());
     assertNotNull(privateKey);
   }
+
+
+  @Test
+  void testPooledTransport() throws Exception {
+
+    Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    Set<String> acceptEncodings = ConcurrentHashMap.newKeySet();
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    ExecutorService serverExecutor = Executors.newFixedThreadPool(4);
+    server.setExecutor(serverExecutor);
+    server.createContext("/", exchange -> {
+      clientPorts.add(exchange.getRemoteAddress().getPort());
+      acceptEncodings.add(String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+        gzip.write("ok".getBytes(StandardCharsets.UTF_8));
+      }
+      exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+      exchange.sendResponseHeaders(200, bytes.size());
+      try (OutputStream out = exchange.getResponseBody()) {
+        bytes.writeTo(out);
+      }
+    });
+    server.start();
+
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    String key = Base64.getEncoder().encodeToString(generator.generateKeyPair().getPrivate().getEncoded());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (GoogleApiHelper helper = new GoogleApiHelper(GoogleApiHelper.newPooledTransport(4), "test@example.com", key,
+        null, "test")) {
+      helper.getCredential().setAccessToken("token").setExpiresInSeconds(3600L);
+      HttpRequestFactory factory = helper.getHttpTransport().createRequestFactory(helper.getRequestInitializer());
+      GenericUrl url = new GenericUrl("http://localhost:" + server.getAddress().getPort() + "/");
+      List<Future<String>> results = new ArrayList<>();
+      for (int x = 0; x < 40; x += 1) {
+        results.add(executor.submit(() -> factory.buildGetRequest(url).execute().parseAsString()));
+      }
+      for (Future<String> result : results) {
+        assertEquals("ok", result.get());
+      }
+      // connections are reused
+      assertTrue(clientPorts.size() <= 4, "Opened " + clientPorts.size() + " connections");
+      assertTrue(acceptEncodings.stream().allMatch(e -> e.contains("gzip")), acceptEncodings.toString());
+    } finally {
+      executor.shutdownNow();
+      server.stop(0);
+      serverExecutor.shutdownNow();
+    }
+  }
 }
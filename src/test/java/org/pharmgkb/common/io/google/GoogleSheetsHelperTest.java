@@ -0,0 +1,304 @@
+package org.pharmgkb.common.io.google;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * This is a JUnit test for {@link GoogleSheetsHelper}.
+ *
+ * @author Mark Woon
+ */
+class GoogleSheetsHelperTest {
+  private static final String NL = System.lineSeparator();
+  private HttpServer m_server;
+  private final AtomicInteger m_metadataGets = new AtomicInteger();
+  private final AtomicInteger m_batchGets = new AtomicInteger();
+  private volatile String m_version = "1";
+  private volatile int m_columnCount = 1;
+  private final AtomicInteger m_feedGets = new AtomicInteger();
+  private final AtomicInteger m_worksheetGets = new AtomicInteger();
+  private final AtomicInteger m_notModified = new AtomicInteger();
+  private volatile String m_worksheetEtag = "\"1\"";
+  private volatile int m_rowCount = 1;
+
+
+  @BeforeEach
+  void startServer() throws IOException {
+
+    m_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    m_server.createContext("/v4/spreadsheets/", exchange -> {
+      String[] path = exchange.getRequestURI().getPath().substring("/v4/spreadsheets/".length()).split("/");
+      String id = path[0];
+      if (path.length == 1) {
+        m_metadataGets.incrementAndGet();
+        respond(exchange, "{\"sheets\": [" +
+            "{\"properties\": {\"title\": \"" + id + " one\", \"gridProperties\": {\"columnCount\": " +
+            m_columnCount + "}}}," +
+            "{\"properties\": {\"title\": \"a/b\", \"index\": 1, \"gridProperties\": {\"columnCount\": 1}}}," +
+            "{\"properties\": {\"title\": \"a:b\", \"index\": 2, \"gridProperties\": {\"columnCount\": 1}}}" +
+            "]}");
+      } else {
+        // value of each range is its sheet title
+        m_batchGets.incrementAndGet();
+        StringBuilder values = new StringBuilder();
+        for (String param : exchange.getRequestURI().getQuery().split("&")) {
+          if (param.startsWith("ranges='")) {
+            values.append(values.length() == 0 ? "" : ",")
+                .append("{\"values\": [[\"")
+                .append(param, "ranges='".length(), param.length() - 1)
+                .append("\"]]}");
+          }
+        }
+        respond(exchange, "{\"valueRanges\": [" + values + "]}");
+      }
+    });
+    // GData: spreadsheet x has worksheets "one" and "two", every cell's value is its A1 name
+    m_server.createContext("/feeds/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      String base = "http://localhost:" + m_server.getAddress().getPort() + "/feeds/";
+      if (path.startsWith("/feeds/spreadsheets/")) {
+        m_feedGets.incrementAndGet();
+        respondAtom(exchange, "<entry " + sf_atomNamespaces + ">" +
+            atomHeader(base + "spreadsheets/x", "spreadsheet", "x") +
+            "<content type='application/atom+xml;type=feed' src='" + base + "worksheets/x/private/full'/>" +
+            "</entry>");
+      } else if (path.equals("/feeds/worksheets/x/private/full")) {
+        m_feedGets.incrementAndGet();
+        respondAtom(exchange, "<feed " + sf_atomNamespaces + ">" +
+            atomHeader(base + "worksheets/x/private/full", "worksheet", "x") +
+            worksheetEntry(base, "one") + worksheetEntry(base, "two") +
+            "</feed>");
+      } else if (path.startsWith("/feeds/worksheets/x/private/full/")) {
+        m_worksheetGets.incrementAndGet();
+        String title = path.substring(path.lastIndexOf('/') + 1);
+        if (m_worksheetEtag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          m_notModified.incrementAndGet();
+          exchange.sendResponseHeaders(304, -1);
+          exchange.close();
+        } else {
+          respondAtom(exchange, worksheetEntry(base, title).replace("<entry", "<entry " + sf_atomNamespaces));
+        }
+      } else {
+        StringBuilder cells = new StringBuilder();
+        for (int row = 1; row <= m_rowCount; row += 1) {
+          cells.append("<entry>")
+              .append(atomHeader(base + "cells/x/R" + row + "C1", "cell", "A" + row))
+              .append("<gs:cell row='").append(row).append("' col='1' inputValue='A").append(row).append("'>A")
+              .append(row).append("</gs:cell>")
+              .append("</entry>");
+        }
+        respondAtom(exchange, "<feed " + sf_atomNamespaces + ">" +
+            atomHeader(base + path.substring("/feeds/".length()), "cell", "cells") + cells + "</feed>");
+      }
+    });
+    m_server.createContext("/drive/v3/files/", exchange -> respond(exchange, "{\"version\": \"" + m_version + "\"}"));
+    m_server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    m_server.stop(0);
+  }
+
+  private static void respond(HttpExchange exchange, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static final String sf_atomNamespaces = "xmlns='http://www.w3.org/2005/Atom' " +
+      "xmlns:gd='http://schemas.google.com/g/2005' xmlns:gs='http://schemas.google.com/spreadsheets/2006'";
+
+  private static String atomHeader(String id, String kind, String title) {
+    return "<id>" + id + "</id><updated>2020-01-01T00:00:00.000Z</updated>" +
+        "<category scheme='http://schemas.google.com/spreadsheets/2006' " +
+        "term='http://schemas.google.com/spreadsheets/2006#" + kind + "'/>" +
+        "<title type='text'>" + title + "</title>";
+  }
+
+  private String worksheetEntry(String base, String title) {
+    return "<entry gd:etag='" + m_worksheetEtag.replace("\"", "&quot;") + "'>" +
+        atomHeader(base + "worksheets/x/private/full/" + title, "worksheet", title) +
+        "<link rel='self' type='application/atom+xml' href='" + base + "worksheets/x/private/full/" + title + "'/>" +
+        "<link rel='http://schemas.google.com/spreadsheets/2006#cellsfeed' type='application/atom+xml' " +
+        "href='" + base + "cells/x/" + title + "/private/full'/>" +
+        "<gs:rowCount>" + m_rowCount + "</gs:rowCount><gs:colCount>1</gs:colCount>" +
+        "</entry>";
+  }
+
+  private static void respondAtom(HttpExchange exchange, String body) throws IOException {
+    byte[] bytes = ("<?xml version='1.0' encoding='UTF-8'?>" + body).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/atom+xml; charset=UTF-8");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private GoogleSheetsHelper newHelper() throws Exception {
+
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    String key = Base64.getEncoder().encodeToString(generator.generateKeyPair().getPrivate().getEncoded());
+    GoogleSheetsHelper helper = new GoogleSheetsHelper("test@example.com", key, "test");
+    helper.setBackend(GoogleSheetsHelper.Backend.SHEETS_V4);
+    SheetsV4Client client = new SheetsV4Client(new NetHttpTransport(), GsonFactory.getDefaultInstance(), null,
+        "http://localhost:" + m_server.getAddress().getPort() + "/v4/spreadsheets/");
+    client.setDriveBaseUrl("http://localhost:" + m_server.getAddress().getPort() + "/drive/v3/files");
+    helper.setSheetsV4Client(client);
+    return helper;
+  }
+
+
+  @Test
+  void testExportAll(@TempDir Path tempDir) throws Exception {
+
+    try (GoogleSheetsHelper helper = newHelper()) {
+      helper.setExportThreads(2);
+      Map<String, Map<String, Path>> results = helper.exportAllToTsv(Arrays.asList("x", "y", "z", "x"), tempDir);
+
+      assertEquals(Arrays.asList("x", "y", "z"), Arrays.asList(results.keySet().toArray()));
+      assertEquals(3, m_batchGets.get());
+      for (String id : results.keySet()) {
+        Map<String, Path> files = results.get(id);
+        assertEquals(Arrays.asList(id + " one", "a/b", "a:b"), Arrays.asList(files.keySet().toArray()));
+        assertEquals(tempDir.resolve(id).resolve(id + " one.tsv"), files.get(id + " one"));
+        assertEquals(tempDir.resolve(id).resolve("a_b.tsv"), files.get("a/b"));
+        assertEquals(tempDir.resolve(id).resolve("a_b_2.tsv"), files.get("a:b"));
+        assertEquals(id + " one" + NL, new String(Files.readAllBytes(files.get(id + " one")), StandardCharsets.UTF_8));
+        assertEquals("a:b" + NL, new String(Files.readAllBytes(files.get("a:b")), StandardCharsets.UTF_8));
+      }
+
+      // exports get the default permissions, not owner-only ones like temp files
+      if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+        Path reference = Files.createFile(tempDir.resolve("reference"));
+        assertEquals(Files.getPosixFilePermissions(reference),
+            Files.getPosixFilePermissions(results.get("x").get("a:b")));
+      }
+    }
+  }
+
+
+  @Test
+  void testSkipUnchanged(@TempDir Path tempDir) throws Exception {
+
+    try (GoogleSheetsHelper helper = newHelper()) {
+      helper.setSkipUnchanged(true);
+      Path file = tempDir.resolve("x.tsv");
+      helper.exportToTsv("x", file, 0);
+      assertEquals(1, m_batchGets.get());
+      assertEquals("x one" + NL, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+      assertEquals(Arrays.asList("x", "x one", "1"), Files.readAllLines(GoogleSheetsHelper.getVersionFile(file)));
+
+      // unchanged
+      helper.exportToTsv("x", file, 0);
+      assertEquals(1, m_batchGets.get());
+
+      // same file, different sheet
+      helper.exportToTsv("x", file, 2);
+      assertEquals(2, m_batchGets.get());
+      assertEquals("a:b" + NL, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+
+      // changed
+      helper.exportToTsv("x", file, 2);
+      assertEquals(2, m_batchGets.get());
+      m_version = "2";
+      helper.exportToTsv("x", file, 2);
+      assertEquals(3, m_batchGets.get());
+
+      // no temp files left behind
+      try (Stream<Path> files = Files.list(tempDir)) {
+        assertEquals(2, files.count());
+      }
+    }
+  }
+
+
+  @Test
+  void testExportsUseCachedMetadata(@TempDir Path tempDir) throws Exception {
+
+    try (GoogleSheetsHelper helper = newHelper()) {
+      helper.exportToTsv("x", tempDir.resolve("1.tsv"), 0);
+      helper.exportToTsv("x", tempDir.resolve("2.tsv"), "a/b");
+      assertEquals(1, m_metadataGets.get());
+      assertEquals(2, m_batchGets.get());
+
+      // sheets that aren't in the cached metadata trigger a refetch
+      assertThrows(IOException.class, () -> helper.exportToTsv("x", tempDir.resolve("3.tsv"), 3));
+      assertEquals(2, m_metadataGets.get());
+    }
+  }
+
+
+  @Test
+  void testGdataExportsUseCachedMetadata(@TempDir Path tempDir) throws Exception {
+
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    String key = Base64.getEncoder().encodeToString(generator.generateKeyPair().getPrivate().getEncoded());
+    GoogleApiHelper apiHelper = new GoogleApiHelper(new NetHttpTransport(), "test@example.com", key, null,
+        GoogleSheetsHelper.SHEETS_SCOPE);
+    apiHelper.getCredential().setAccessToken("token");
+    apiHelper.getCredential().setExpiresInSeconds(3600L);
+    URL url = new URL("http://localhost:" + m_server.getAddress().getPort() + "/feeds/spreadsheets/x");
+
+    try (GoogleSheetsHelper helper = new GoogleSheetsHelper(apiHelper, "test")) {
+      helper.setSkipUnchanged(true);
+      Path one = tempDir.resolve("one.tsv");
+      Path two = tempDir.resolve("two.tsv");
+      helper.exportToTsv(url, one, "one");
+      helper.exportToTsv(url, two, "two");
+      // spreadsheet entry and worksheet feed only once, worksheet entries revalidated each time
+      assertEquals(2, m_feedGets.get());
+      assertEquals(2, m_worksheetGets.get());
+      assertEquals(2, m_notModified.get());
+      assertEquals("A1" + NL, new String(Files.readAllBytes(one), StandardCharsets.UTF_8));
+
+      // worksheet grew: new size and version are picked up without refetching the feeds
+      m_rowCount = 2;
+      m_worksheetEtag = "\"2\"";
+      helper.exportToTsv(url, one, 0);
+      assertEquals(2, m_feedGets.get());
+      assertEquals(3, m_worksheetGets.get());
+      assertEquals(2, m_notModified.get());
+      assertEquals("A1" + NL + "A2" + NL, new String(Files.readAllBytes(one), StandardCharsets.UTF_8));
+    }
+  }
+
+
+  @Test
+  void testGetFileId() throws Exception {
+
+    assertEquals("abc", GoogleSheetsHelper.getFileId(new URL("https://spreadsheets.google.com/feeds/spreadsheets/abc")));
+    assertEquals("abc", GoogleSheetsHelper.getFileId(
+        new URL("https://spreadsheets.google.com/feeds/spreadsheets/private/full/abc/")));
+  }
+}
@@ -0,0 +1,142 @@
+package org.pharmgkb.common.io.google;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.api.client.auth.oauth2.TokenResponse;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * This is a JUnit test for {@link GoogleTokenCache}.
+ *
+ * @author Mark Woon
+ */
+class GoogleTokenCacheTest {
+  private final AtomicInteger m_fetchCount = new AtomicInteger();
+
+
+  private TokenResponse fetch(long expiresInSeconds) {
+    return new TokenResponse()
+        .setAccessToken("token" + m_fetchCount.incrementAndGet())
+        .setTokenType("Bearer")
+        .setExpiresInSeconds(expiresInSeconds);
+  }
+
+  private static GoogleTokenCache newCache(Path dir, String... scopes) {
+    return new GoogleTokenCache(dir, GsonFactory.getDefaultInstance(), "sa@example.com", null, Arrays.asList(scopes));
+  }
+
+
+  @Test
+  void testCache(@TempDir Path tempDir) throws Exception {
+
+    GoogleTokenCache cache = newCache(tempDir, "a", "b");
+    assertEquals("token1", cache.get(60_000, () -> fetch(3600)).getAccessToken());
+    // different instance, scopes in different order
+    TokenResponse response = newCache(tempDir, "b", "a").get(60_000, () -> fetch(3600));
+    assertEquals("token1", response.getAccessToken());
+    assertTrue(response.getExpiresInSeconds() > 3500);
+    assertEquals(1, m_fetchCount.get());
+
+    // different scopes
+    assertEquals("token2", newCache(tempDir, "a").get(60_000, () -> fetch(3600)).getAccessToken());
+
+    // not valid long enough
+    assertEquals("token3", cache.get(7200_000, () -> fetch(3600)).getAccessToken());
+    assertEquals("token3", cache.get(60_000, () -> fetch(3600)).getAccessToken());
+
+    if (Files.getFileStore(tempDir).supportsFileAttributeView("posix")) {
+      assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cache.getTokenFile())));
+    }
+
+    // corrupt file
+    Files.write(cache.getTokenFile(), "garbage".getBytes(StandardCharsets.UTF_8));
+    assertEquals("token4", cache.get(60_000, () -> fetch(3600)).getAccessToken());
+  }
+
+
+  @Test
+  void testConcurrent(@TempDir Path tempDir) throws Exception {
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> futures = new ArrayList<>();
+      for (int x = 0; x < 16; x += 1) {
+        futures.add(executor.submit(() -> newCache(tempDir, "a").get(60_000, () -> {
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException ex) {
+            throw new IOException(ex);
+          }
+          return fetch(3600);
+        }).getAccessToken()));
+      }
+      for (Future<String> future : futures) {
+        assertEquals("token1", future.get());
+      }
+      assertEquals(1, m_fetchCount.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
+  @Test
+  void testCredential(@TempDir Path tempDir) throws Exception {
+
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/token", exchange -> {
+      byte[] bytes = ("{\"access_token\": \"token" + m_fetchCount.incrementAndGet() +
+          "\", \"token_type\": \"Bearer\", \"expires_in\": 3600}").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.start();
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+      generator.initialize(2048);
+      GoogleCredential.Builder builder = new GoogleCredential.Builder()
+          .setTransport(new NetHttpTransport())
+          .setJsonFactory(GsonFactory.getDefaultInstance())
+          .setServiceAccountId("sa@example.com")
+          .setServiceAccountPrivateKey(generator.generateKeyPair().getPrivate())
+          .setServiceAccountScopes(Collections.singletonList("a"))
+          .setTokenServerEncodedUrl("http://localhost:" + server.getAddress().getPort() + "/token");
+
+      for (int x = 0; x < 3; x += 1) {
+        GoogleApiHelper.CachingCredential credential = new GoogleApiHelper.CachingCredential(builder);
+        credential.setTokenCache(newCache(tempDir, "a"));
+        assertTrue(credential.refreshToken());
+        assertEquals("token1", credential.getAccessToken());
+      }
+      assertEquals(1, m_fetchCount.get());
+    } finally {
+      server.stop(0);
+    }
+  }
+}
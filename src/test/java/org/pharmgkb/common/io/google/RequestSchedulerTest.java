@@ -0,0 +1,215 @@
+package org.pharmgkb.common.io.google;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.gdata.util.RateLimitExceededException;
+import com.google.gdata.util.ResourceNotFoundException;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * This is a JUnit test for {@link RequestScheduler}.
+ *
+ * @author Mark Woon
+ */
+class RequestSchedulerTest {
+  private HttpServer m_server;
+  private final AtomicInteger m_requests = new AtomicInteger();
+  private volatile int m_failures;
+  private volatile int m_failureCode = 429;
+  private volatile String m_retryAfter = "3";
+  private final List<Long> m_sleeps = Collections.synchronizedList(new ArrayList<>());
+
+
+  @BeforeEach
+  void startServer() throws IOException {
+
+    m_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    m_server.createContext("/", exchange -> {
+      if (m_requests.incrementAndGet() <= m_failures) {
+        if (m_failureCode == 429) {
+          exchange.getResponseHeaders().add("Retry-After", m_retryAfter);
+        }
+        exchange.sendResponseHeaders(m_failureCode, -1);
+        exchange.close();
+        return;
+      }
+      byte[] bytes = "ok".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    m_server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    m_server.stop(0);
+  }
+
+  private RequestScheduler newScheduler() {
+    RequestScheduler scheduler = new RequestScheduler(Collections.emptyList());
+    scheduler.setSleeper(m_sleeps::add);
+    return scheduler;
+  }
+
+  private HttpResponse get(RequestScheduler scheduler) throws IOException {
+    HttpRequestFactory factory = new NetHttpTransport().createRequestFactory(scheduler.wrap(null));
+    return factory.buildGetRequest(new GenericUrl("http://localhost:" + m_server.getAddress().getPort() + "/"))
+        .execute();
+  }
+
+
+  @Test
+  void testRetryAfter() throws IOException {
+
+    m_failures = 2;
+    HttpResponse response = get(newScheduler());
+    assertEquals("ok", response.parseAsString());
+    assertEquals(3, m_requests.get());
+    assertEquals(Arrays.asList(3000L, 3000L), m_sleeps);
+  }
+
+
+  @Test
+  void testRetryAfterCapped() throws IOException {
+
+    m_failures = 1;
+    m_retryAfter = "3600";
+    HttpResponse response = get(newScheduler());
+    assertEquals("ok", response.parseAsString());
+    assertEquals(Collections.singletonList(64_000L), m_sleeps);
+  }
+
+
+  @Test
+  void testBackoff() throws IOException {
+
+    m_failures = 3;
+    m_failureCode = 503;
+    HttpResponse response = get(newScheduler());
+    assertEquals("ok", response.parseAsString());
+    assertEquals(3, m_sleeps.size());
+    for (int x = 0; x < m_sleeps.size(); x += 1) {
+      long cap = 1000L << x;
+      assertTrue(m_sleeps.get(x) >= cap / 2 && m_sleeps.get(x) <= cap, "Unexpected delay " + m_sleeps.get(x));
+    }
+  }
+
+
+  @Test
+  void testGiveUp() {
+
+    m_failures = 10;
+    RequestScheduler scheduler = newScheduler();
+    scheduler.setMaxRetries(2);
+    HttpResponseException ex = assertThrows(HttpResponseException.class, () -> get(scheduler));
+    assertEquals(429, ex.getStatusCode());
+    assertEquals(3, m_requests.get());
+  }
+
+
+  @Test
+  void testNotRetryable() {
+
+    m_failures = 1;
+    m_failureCode = 404;
+    assertThrows(HttpResponseException.class, () -> get(newScheduler()));
+    assertEquals(1, m_requests.get());
+    assertTrue(m_sleeps.isEmpty());
+  }
+
+
+  @Test
+  void testExecute() throws Exception {
+
+    RequestScheduler scheduler = newScheduler();
+    AtomicInteger calls = new AtomicInteger();
+    String rez = scheduler.execute(() -> {
+      if (calls.incrementAndGet() < 3) {
+        throw new RateLimitExceededException("slow down");
+      }
+      return "ok";
+    });
+    assertEquals("ok", rez);
+    assertEquals(3, calls.get());
+    assertEquals(2, m_sleeps.size());
+
+    calls.set(0);
+    assertThrows(ResourceNotFoundException.class, () -> scheduler.execute(() -> {
+      calls.incrementAndGet();
+      throw new ResourceNotFoundException("missing");
+    }));
+    assertEquals(1, calls.get());
+  }
+
+
+  @Test
+  void testExecuteIOException() throws Exception {
+
+    RequestScheduler scheduler = newScheduler();
+    AtomicInteger calls = new AtomicInteger();
+    String rez = scheduler.execute(() -> {
+      int call = calls.incrementAndGet();
+      if (call == 1) {
+        throw new SocketException("Connection reset");
+      } else if (call == 2) {
+        throw new SocketTimeoutException("Read timed out");
+      }
+      return "ok";
+    });
+    assertEquals("ok", rez);
+    assertEquals(3, calls.get());
+    assertEquals(2, m_sleeps.size());
+
+    calls.set(0);
+    assertThrows(InterruptedIOException.class, () -> scheduler.execute(() -> {
+      calls.incrementAndGet();
+      throw new InterruptedIOException();
+    }));
+    assertEquals(1, calls.get());
+
+    calls.set(0);
+    scheduler.setMaxRetries(2);
+    assertThrows(SocketException.class, () -> scheduler.execute(() -> {
+      calls.incrementAndGet();
+      throw new SocketException("Connection reset");
+    }));
+    assertEquals(3, calls.get());
+  }
+
+
+  @Test
+  void testParseRetryAfter() {
+
+    assertEquals(-1, RequestScheduler.parseRetryAfter(null));
+    assertEquals(-1, RequestScheduler.parseRetryAfter(" "));
+    assertEquals(-1, RequestScheduler.parseRetryAfter("soon"));
+    assertEquals(120_000, RequestScheduler.parseRetryAfter("120"));
+    assertEquals(0, RequestScheduler.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+  }
+}
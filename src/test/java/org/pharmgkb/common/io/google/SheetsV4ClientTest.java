@@ -0,0 +1,127 @@
+package org.pharmgkb.common.io.google;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * This is a JUnit test for {@link SheetsV4Client}.
+ *
+ * @author Mark Woon
+ */
+class SheetsV4ClientTest {
+  private static final String NL = System.lineSeparator();
+  private static final String sf_metadata = "{\"sheets\": [" +
+      "{\"properties\": {\"title\": \"Genes\", \"gridProperties\": {\"rowCount\": 1000, \"columnCount\": 3}}}," +
+      "{\"properties\": {\"title\": \"Drug's\", \"index\": 1, \"gridProperties\": {\"rowCount\": 10, \"columnCount\": 2}}}," +
+      "{\"properties\": {\"title\": \"Empty\", \"index\": 2, \"gridProperties\": {\"rowCount\": 10, \"columnCount\": 2}}}" +
+      "]}";
+  private static final String sf_values = "{\"valueRanges\": [" +
+      "{\"values\": [[\"gene\", \"symbol\"], [], [\"1\", \"\", \"x\\ty\"]]}," +
+      "{\"values\": [[\"drug\"]]}," +
+      "{}" +
+      "]}";
+  private HttpServer m_server;
+  private final List<String> m_requests = new ArrayList<>();
+
+
+  @BeforeEach
+  void startServer() throws IOException {
+
+    m_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    m_server.createContext("/v4/spreadsheets/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      m_requests.add(path + "?" + URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8"));
+      if (path.equals("/v4/spreadsheets/abc")) {
+        respond(exchange, sf_metadata);
+      } else if (path.equals("/v4/spreadsheets/abc/values:batchGet")) {
+        respond(exchange, sf_values);
+      } else {
+        exchange.sendResponseHeaders(404, -1);
+        exchange.close();
+      }
+    });
+    m_server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    m_server.stop(0);
+  }
+
+  private static void respond(HttpExchange exchange, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private SheetsV4Client newClient() {
+    return new SheetsV4Client(new NetHttpTransport(), GsonFactory.getDefaultInstance(), null,
+        "http://localhost:" + m_server.getAddress().getPort() + "/v4/spreadsheets");
+  }
+
+
+  @Test
+  void testGetSheets() throws IOException {
+
+    List<SheetsV4Client.SheetInfo> sheets = newClient().getSheets("abc");
+    assertEquals(3, sheets.size());
+    assertEquals("Genes", sheets.get(0).getTitle());
+    assertEquals(0, sheets.get(0).getIndex());
+    assertEquals(1000, sheets.get(0).getRowCount());
+    assertEquals(3, sheets.get(0).getColumnCount());
+    assertEquals("'Drug''s'", sheets.get(1).getRange());
+    assertEquals(1, sheets.get(1).getIndex());
+  }
+
+
+  @Test
+  void testExport(@TempDir Path tempDir) throws IOException {
+
+    SheetsV4Client client = newClient();
+    List<SheetsV4Client.SheetInfo> sheets = client.getSheets("abc");
+    Map<SheetsV4Client.SheetInfo, Path> exports = new LinkedHashMap<>();
+    for (SheetsV4Client.SheetInfo sheet : sheets) {
+      exports.put(sheet, tempDir.resolve(sheet.getIndex() + ".tsv"));
+    }
+    m_requests.clear();
+    client.exportToTsv("abc", exports);
+
+    // all sheets in one request
+    assertEquals(1, m_requests.size());
+    String request = m_requests.get(0);
+    assertTrue(request.startsWith("/v4/spreadsheets/abc/values:batchGet?"), request);
+    assertTrue(request.contains("ranges='Genes'&ranges='Drug''s'&ranges='Empty'"), request);
+
+    assertEquals("gene\tsymbol\t" + NL + "\t\t" + NL + "1\t\tx\ty" + NL,
+        new String(Files.readAllBytes(tempDir.resolve("0.tsv")), StandardCharsets.UTF_8));
+    assertEquals("drug\t" + NL,
+        new String(Files.readAllBytes(tempDir.resolve("1.tsv")), StandardCharsets.UTF_8));
+    assertEquals("\t" + NL,
+        new String(Files.readAllBytes(tempDir.resolve("2.tsv")), StandardCharsets.UTF_8));
+  }
+}
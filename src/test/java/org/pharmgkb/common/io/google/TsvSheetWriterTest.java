@@ -0,0 +1,52 @@
+package org.pharmgkb.common.io.google;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * This is a JUnit test for {@link TsvSheetWriter}.
+ *
+ * @author Mark Woon
+ */
+class TsvSheetWriterTest {
+  private static final String NL = System.lineSeparator();
+
+
+  @Test
+  void testWrite() throws IOException {
+
+    StringWriter writer = new StringWriter();
+    try (TsvSheetWriter tsvWriter = new TsvSheetWriter(writer, 3)) {
+      tsvWriter.setCell(2, 1, "a");
+      tsvWriter.setCell(2, 3, "c");
+      tsvWriter.setCell(4, 2, "e");
+      // sheet grew after the column count was read
+      tsvWriter.setCell(5, 4, "f");
+    }
+    assertEquals("\t\t" + NL + "a\t\tc" + NL + "\t\t" + NL + "\te\t" + NL + "\t\t\tf" + NL, writer.toString());
+  }
+
+
+  @Test
+  void testEmpty() throws IOException {
+
+    StringWriter writer = new StringWriter();
+    new TsvSheetWriter(writer, 2).close();
+    assertEquals("\t" + NL, writer.toString());
+  }
+
+
+  @Test
+  void testOutOfOrder() throws IOException {
+
+    try (TsvSheetWriter tsvWriter = new TsvSheetWriter(new StringWriter(), 2)) {
+      tsvWriter.setCell(2, 1, "a");
+      assertThrows(IOException.class, () -> tsvWriter.setCell(1, 1, "b"));
+    }
+  }
+}
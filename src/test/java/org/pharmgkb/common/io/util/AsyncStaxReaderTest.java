@@ -0,0 +1,99 @@
+package org.pharmgkb.common.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamConstants;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * This is a JUnit test for {@link AsyncStaxReader}.
+ *
+ * @author Mark Woon
+ */
+class AsyncStaxReaderTest {
+  private static final String sf_xml = "<?xml version=\"1.0\"?>\n" +
+      "<root>\n" +
+      "  <gene symbol=\"CYP2D6\" id=\"PA128\">cytochrome</gene>\n" +
+      "  <gene Symbol=\"TPMT\"/>\n" +
+      "</root>\n";
+
+
+  @Test
+  void feedInSmallChunks() throws Exception {
+
+    byte[] bytes = sf_xml.getBytes(StandardCharsets.UTF_8);
+    List<String> elements = new ArrayList<>();
+    List<String> symbols = new ArrayList<>();
+    try (AsyncStaxReader reader = new AsyncStaxReader()) {
+      for (int x = 0; x < bytes.length; x += 3) {
+        assertTrue(reader.needsMoreInput());
+        reader.feed(ByteBuffer.wrap(bytes, x, Math.min(3, bytes.length - x)));
+        int event;
+        while ((event = reader.next()) != AsyncStaxReader.INCOMPLETE) {
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            elements.add(reader.getLocalName());
+            if (reader.getLocalName().equals("gene")) {
+              symbols.add(reader.getAttributeValue("symbol"));
+            }
+          }
+        }
+      }
+      reader.endOfInput();
+      while (reader.hasNext()) {
+        reader.next();
+      }
+      assertEquals(XMLStreamConstants.END_DOCUMENT, reader.getEventType());
+    }
+    assertEquals(3, elements.size());
+    assertEquals("root", elements.get(0));
+    assertEquals("CYP2D6", symbols.get(0));
+    assertEquals("TPMT", symbols.get(1));
+  }
+
+
+  @Test
+  void parseFile(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("test.xml");
+    Files.write(file, sf_xml.getBytes(StandardCharsets.UTF_8));
+
+    StringBuilder text = new StringBuilder();
+    List<String> elements = new ArrayList<>();
+    AsyncStaxReader.parse(file, (reader, event) -> {
+      switch (event) {
+        case XMLStreamConstants.START_ELEMENT:
+          elements.add(reader.getLocalName());
+          break;
+        case XMLStreamConstants.CHARACTERS:
+          text.append(reader.getText().trim());
+          break;
+      }
+    }).get(10, TimeUnit.SECONDS);
+
+    assertEquals(3, elements.size());
+    assertEquals("cytochrome", text.toString());
+  }
+
+
+  @Test
+  void parseMalformed(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("bad.xml");
+    Files.write(file, "<root><gene></root>".getBytes(StandardCharsets.UTF_8));
+
+    boolean failed = AsyncStaxReader.parse(file, (reader, event) -> { })
+        .handle((ignored, ex) -> ex != null)
+        .get(10, TimeUnit.SECONDS);
+    assertTrue(failed);
+  }
+}
@@ -0,0 +1,184 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * JUnit test for {@link CliDaemon} and {@link CliDaemonClient}.
+ *
+ * @author Mark Woon
+ */
+class CliDaemonTest {
+  private static final String sf_token = "secret";
+
+
+  private static Thread startServer(CliHelper template, ServerSocket serverSocket, Function<CliHelper, Integer> fn,
+      int handshakeTimeoutMillis) {
+
+    Thread server = new Thread(() -> {
+      try {
+        CliDaemon.serve(template, serverSocket, sf_token, fn, handshakeTimeoutMillis);
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  private static void stopServer(ServerSocket serverSocket, Thread server) throws Exception {
+    serverSocket.close();
+    server.join(5000);
+    assertFalse(server.isAlive());
+  }
+
+
+  @Test
+  void testInvocations(@TempDir Path tempDir) throws Exception {
+
+    Files.write(tempDir.resolve("a.txt"), "hello".getBytes(StandardCharsets.UTF_8));
+
+    CliHelper template = new CliHelper(CliDaemonTest.class);
+    template.addOption("f", "file", "file", false, "file");
+    template.addOption("e", "echo", "echo stdin");
+    Function<CliHelper, Integer> fn = cli -> {
+      try {
+        if (cli.hasOption("e")) {
+          try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+              System.out.println("echo: " + line);
+            }
+          }
+          return 0;
+        }
+        Path file = cli.getValidFile("f", true);
+        System.out.println(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        return 0;
+      } catch (IOException | IllegalArgumentException ex) {
+        System.err.println("error: " + ex.getMessage());
+        return 2;
+      }
+    };
+
+    ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    int port = serverSocket.getLocalPort();
+    Thread server = startServer(template, serverSocket, fn, 10_000);
+    try {
+      // relative path resolved against client's working directory
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ByteArrayOutputStream err = new ByteArrayOutputStream();
+      assertEquals(0, CliDaemonClient.invoke(port, sf_token, new String[] { "-f", "a.txt" }, tempDir,
+          new ByteArrayInputStream(new byte[0]), out, err));
+      assertEquals("hello" + System.lineSeparator(), out.toString("UTF-8"));
+      assertEquals("", err.toString("UTF-8"));
+
+      // stdin
+      out.reset();
+      assertEquals(0, CliDaemonClient.invoke(port, sf_token, new String[] { "-e" }, tempDir,
+          new ByteArrayInputStream("one\ntwo\n".getBytes(StandardCharsets.UTF_8)), out, err));
+      assertEquals("echo: one" + System.lineSeparator() + "echo: two" + System.lineSeparator(),
+          out.toString("UTF-8"));
+
+      // exit code and stderr
+      out.reset();
+      assertEquals(2, CliDaemonClient.invoke(port, sf_token, new String[] { "-f", "missing.txt" }, tempDir,
+          new ByteArrayInputStream(new byte[0]), out, err));
+      assertTrue(err.toString("UTF-8").startsWith("error: "));
+
+      // bad arguments
+      err.reset();
+      assertEquals(1, CliDaemonClient.invoke(port, sf_token, new String[] { "--bogus" }, tempDir,
+          new ByteArrayInputStream(new byte[0]), out, err));
+
+      // bad token
+      assertThrows(IOException.class, () -> CliDaemonClient.invoke(port, "wrong", new String[0], tempDir,
+          new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+    } finally {
+      stopServer(serverSocket, server);
+    }
+  }
+
+
+  @Test
+  void testPoolOutlivesInvocation(@TempDir Path tempDir) throws Exception {
+
+    // a shared pool whose thread is started by the first invocation
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    CliHelper template = new CliHelper(CliDaemonTest.class);
+    Function<CliHelper, Integer> fn = cli -> {
+      try {
+        pool.submit(() -> System.out.println("from pool")).get();
+      } catch (Exception ex) {
+        return 2;
+      }
+      System.out.println("from invocation");
+      return 0;
+    };
+
+    PrintStream origOut = System.out;
+    ByteArrayOutputStream daemonOut = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(daemonOut, true));
+    ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    int port = serverSocket.getLocalPort();
+    Thread server = startServer(template, serverSocket, fn, 10_000);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      assertEquals(0, CliDaemonClient.invoke(port, sf_token, new String[0], tempDir,
+          new ByteArrayInputStream(new byte[0]), out, new ByteArrayOutputStream()));
+      assertEquals("from pool" + System.lineSeparator() + "from invocation" + System.lineSeparator(),
+          out.toString("UTF-8"));
+
+      // the pool thread no longer writes to the first invocation's client, or to the second one's
+      out.reset();
+      assertEquals(0, CliDaemonClient.invoke(port, sf_token, new String[0], tempDir,
+          new ByteArrayInputStream(new byte[0]), out, new ByteArrayOutputStream()));
+      assertEquals("from invocation" + System.lineSeparator(), out.toString("UTF-8"));
+    } finally {
+      stopServer(serverSocket, server);
+      System.setOut(origOut);
+      pool.shutdownNow();
+    }
+    assertEquals("from pool" + System.lineSeparator(), daemonOut.toString("UTF-8"));
+  }
+
+
+  @Test
+  void testHandshakeTimeout(@TempDir Path tempDir) throws Exception {
+
+    CliHelper template = new CliHelper(CliDaemonTest.class);
+    ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    int port = serverSocket.getLocalPort();
+    Thread server = startServer(template, serverSocket, cli -> 0, 200);
+    try (Socket silent = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      // daemon hangs up on a client that never sends anything
+      silent.setSoTimeout((int)TimeUnit.SECONDS.toMillis(5));
+      assertEquals(-1, silent.getInputStream().read());
+
+      // and still serves everyone else
+      assertEquals(0, CliDaemonClient.invoke(port, sf_token, new String[0], tempDir,
+          new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+    } finally {
+      stopServer(serverSocket, server);
+    }
+  }
+}
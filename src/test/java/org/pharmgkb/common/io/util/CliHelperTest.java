@@ -1,6 +1,20 @@
 package org.pharmgkb.common.io.util;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.commons.cli.Option;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -84,4 +98,283 @@ void testRequiredParam() {
     assertTrue(ch.hasError());
     assertEquals("Missing argument for option: d", ch.getError());
   }
+
+
+  @Test
+  void testInputs(@TempDir Path tempDir) throws Exception {
+
+    Path subDir = tempDir.resolve("sub");
+    Files.createDirectories(subDir);
+    writeFile(tempDir.resolve("a.tsv"), "a");
+    writeFile(tempDir.resolve("b.tsv.gz"), "b");
+    writeFile(subDir.resolve("c.tsv"), "c");
+    writeFile(subDir.resolve("d.txt"), "d");
+
+    CliHelper ch = new CliHelper(CliHelperTest.class);
+    ch.addOption("i", "input", "input", true, "file")
+        .addThreadsOption();
+
+    assertTrue(ch.parse(new String[] { "-i", tempDir.toString(), "--threads", "3" }));
+    assertEquals(3, ch.getThreads());
+    assertEquals(4, ch.getInputs("i").count());
+
+    assertTrue(ch.parse(new String[] { "-i", tempDir.resolve("*.tsv*").toString(), "-i",
+        tempDir.resolve("**.tsv").toString() }));
+    List<String> names = ch.getInputs("i")
+        .map(input -> input.getPath().getFileName().toString())
+        .collect(Collectors.toList());
+    assertEquals(4, names.size());
+    assertEquals("a.tsv", names.get(0));
+    assertEquals("b.tsv.gz", names.get(1));
+    assertEquals("a.tsv", names.get(2));
+    assertEquals("c.tsv", names.get(3));
+
+    assertTrue(ch.parse(new String[] { "-i", "-", "-i", tempDir.resolve("a.tsv").toString() }));
+    List<CliInput> inputs = ch.getInputs("i").collect(Collectors.toList());
+    assertTrue(inputs.get(0).isStdin());
+    assertFalse(inputs.get(1).isStdin());
+
+    assertTrue(ch.parse(new String[] { "-i", tempDir.resolve("missing.tsv").toString() }));
+    assertThrows(IllegalArgumentException.class, () -> ch.getInputs("i").count());
+  }
+
+
+  @Test
+  void testProcessInputs(@TempDir Path tempDir) throws Exception {
+
+    for (int x = 0; x < 50; x++) {
+      writeFile(tempDir.resolve(String.format("%02d.txt.gz", x)), Integer.toString(x));
+    }
+
+    CliHelper ch = new CliHelper(CliHelperTest.class);
+    ch.addOption("i", "input", "input", true, "file")
+        .addThreadsOption();
+    assertTrue(ch.parse(new String[] { "-i", tempDir.toString(), "--threads", "4" }));
+
+    List<Integer> results = ch.processInputs("i", input -> {
+      try (BufferedReader reader = input.openReader()) {
+        return Integer.parseInt(reader.readLine());
+      }
+    }, true);
+    assertEquals(50, results.size());
+    for (int x = 0; x < 50; x++) {
+      assertEquals(x, (int)results.get(x));
+    }
+
+    results = ch.processInputs("i", input -> 1, false);
+    assertEquals(50, results.size());
+
+    IOException ex = assertThrows(IOException.class, () -> ch.processInputs("i", input -> {
+      throw new IllegalStateException("bad input");
+    }, false));
+    assertTrue(ex.getCause() instanceof IllegalStateException);
+  }
+
+
+  @Test
+  void testIncremental(@TempDir Path tempDir) throws Exception {
+
+    Path inputDir = tempDir.resolve("in");
+    Files.createDirectories(inputDir);
+    writeFile(inputDir.resolve("a.tsv"), "a");
+    writeFile(inputDir.resolve("b.tsv.gz"), "b");
+    writeFile(inputDir.resolve("c.tsv"), "c");
+    Path output = tempDir.resolve("out.tsv");
+    Path manifest = tempDir.resolve("out.manifest");
+    String[] args = new String[] { "-i", inputDir.toString(), "-o", output.toString(), "-n", "1",
+        "--incremental", manifest.toString() };
+
+    List<String> processed = new ArrayList<>();
+    List<Boolean> incremental = new ArrayList<>();
+    Function<CliHelper, Integer> tool = ch -> {
+      incremental.add(ch.isIncremental());
+      try (Writer writer = StreamUtils.openWriter(ch.getPath("o"))) {
+        for (CliInput input : ch.getChangedInputs("i").collect(Collectors.toList())) {
+          processed.add(input.getPath().getFileName().toString());
+          try (BufferedReader reader = input.openReader()) {
+            writer.write(reader.lines().collect(Collectors.joining("\n")));
+          }
+        }
+      } catch (IOException ex) {
+        return 1;
+      }
+      return 0;
+    };
+
+    // first run does everything
+    assertEquals(0, newIncrementalHelper().run(args, tool));
+    assertEquals(Arrays.asList("a.tsv", "b.tsv.gz", "c.tsv"), processed);
+    assertEquals(Collections.singletonList(false), incremental);
+    assertTrue(Files.exists(manifest));
+
+    // nothing changed
+    processed.clear();
+    incremental.clear();
+    assertEquals(0, newIncrementalHelper().run(args, tool));
+    assertTrue(incremental.isEmpty());
+
+    // touched without changing
+    Files.setLastModifiedTime(inputDir.resolve("a.tsv"), FileTime.fromMillis(1_000_000));
+    assertEquals(0, newIncrementalHelper().run(args, tool));
+    assertTrue(incremental.isEmpty());
+
+    // changed, and a new input
+    writeFile(inputDir.resolve("c.tsv"), "C");
+    Files.setLastModifiedTime(inputDir.resolve("c.tsv"), FileTime.fromMillis(2_000_000));
+    writeFile(inputDir.resolve("d.tsv"), "d");
+    assertEquals(0, newIncrementalHelper().run(args, tool));
+    assertEquals(Collections.singletonList(true), incremental);
+    assertEquals(Arrays.asList("c.tsv", "d.tsv"), processed);
+
+    // removed input
+    processed.clear();
+    incremental.clear();
+    Files.delete(inputDir.resolve("d.tsv"));
+    CliHelper helper = newIncrementalHelper();
+    assertEquals(0, helper.run(args, ch -> {
+      assertTrue(ch.isIncremental());
+      assertEquals(0, ch.getChangedInputs("i").count());
+      assertEquals(Collections.singletonList(inputDir.resolve("d.tsv").toAbsolutePath()), ch.getRemovedInputs());
+      return 0;
+    }));
+
+    // different option values
+    args[5] = "2";
+    assertEquals(0, newIncrementalHelper().run(args, tool));
+    assertEquals(Collections.singletonList(false), incremental);
+    assertEquals(3, processed.size());
+
+    // output was changed by something else
+    processed.clear();
+    incremental.clear();
+    writeFile(output, "oops");
+    assertEquals(0, newIncrementalHelper().run(args, tool));
+    assertEquals(Collections.singletonList(false), incremental);
+    assertEquals(3, processed.size());
+
+    // failed runs aren't recorded
+    processed.clear();
+    incremental.clear();
+    Files.delete(manifest);
+    assertEquals(1, newIncrementalHelper().run(args, ch -> 1));
+    assertFalse(Files.exists(manifest));
+  }
+
+  @Test
+  void testIncrementalIgnoresVerbose(@TempDir Path tempDir) throws Exception {
+
+    Path input = tempDir.resolve("a.tsv");
+    writeFile(input, "a");
+    Path output = tempDir.resolve("out.tsv");
+    Path manifest = tempDir.resolve("out.manifest");
+    List<String> args = new ArrayList<>(Arrays.asList("-i", input.toString(), "-o", output.toString(), "-n", "1",
+        "--incremental", manifest.toString()));
+
+    List<Boolean> incremental = new ArrayList<>();
+    Function<CliHelper, Integer> tool = ch -> {
+      incremental.add(ch.isIncremental());
+      try {
+        writeFile(ch.getPath("o"), "out");
+      } catch (IOException ex) {
+        return 1;
+      }
+      return 0;
+    };
+    assertEquals(0, newIncrementalHelper().run(args.toArray(new String[0]), tool));
+    assertEquals(Collections.singletonList(false), incremental);
+
+    // turning on verbose output isn't a change
+    incremental.clear();
+    args.add("-v");
+    assertEquals(0, newIncrementalHelper().run(args.toArray(new String[0]), tool));
+    assertTrue(incremental.isEmpty());
+
+    writeFile(input, "A");
+    Files.setLastModifiedTime(input, FileTime.fromMillis(1_000_000));
+    assertEquals(0, newIncrementalHelper().run(args.toArray(new String[0]), tool));
+    assertEquals(Collections.singletonList(true), incremental);
+  }
+
+
+  @Test
+  void testProfile(@TempDir Path tempDir) throws Exception {
+
+    Path data = tempDir.resolve("data.tsv");
+    writeFile(data, "data");
+    Path report = tempDir.resolve("report.json");
+
+    // --profile must not take the next argument as the report file
+    List<String> arguments = new ArrayList<>();
+    Function<CliHelper, Integer> tool = ch -> {
+      for (Object arg : ch.getArguments()) {
+        arguments.add((String)arg);
+      }
+      return 0;
+    };
+    assertEquals(0, new CliHelper(CliHelperTest.class)
+        .run(new String[] { "--profile", "--profile-out", report.toString(), data.toString() }, tool));
+    assertEquals(Collections.singletonList(data.toString()), arguments);
+    assertEquals(Collections.singletonList("data"), Files.readAllLines(data));
+    assertTrue(Files.readAllLines(report).get(0).startsWith("{"));
+
+    // --profile-out implies --profile
+    Files.delete(report);
+    arguments.clear();
+    assertEquals(0, new CliHelper(CliHelperTest.class)
+        .run(new String[] { data.toString(), "--profile-out", report.toString() }, tool));
+    assertEquals(Collections.singletonList(data.toString()), arguments);
+    assertTrue(Files.exists(report));
+  }
+
+
+  @Test
+  void testReservedOptions() {
+
+    CliHelper ch = new CliHelper(CliHelperTest.class)
+        .addThreadsOption()
+        .addIncrementalOption()
+        .addDaemonOption();
+    assertThrows(IllegalArgumentException.class, () -> ch.addOption("h", "hello", "hello"));
+    for (String name : new String[] { "help", "verbose", "threads", "profile", "profile-out", "profile-jfr", "daemon",
+        "incremental" }) {
+      assertThrows(IllegalArgumentException.class, () -> ch.addOption("x", name, "x"), name);
+      assertThrows(IllegalArgumentException.class, () -> ch.addOption("x", name, "x", false, "arg"), name);
+      assertThrows(IllegalArgumentException.class,
+          () -> ch.addOption(Option.builder("x").longOpt(name).build()), name);
+    }
+    ch.addOption(Option.builder("x").longOpt("extra").build());
+
+    // only standard options that have been added are reserved
+    CliHelper custom = new CliHelper(CliHelperTest.class)
+        .addOption("t", "threads", "custom threads")
+        .addOption("i", "incremental", "custom incremental")
+        .addOption("d", "daemon", "custom daemon");
+    assertThrows(IllegalArgumentException.class, custom::addThreadsOption);
+    List<Boolean> flags = new ArrayList<>();
+    assertEquals(0, custom.run(new String[] { "--threads", "--incremental", "--daemon" }, cli -> {
+      flags.add(cli.hasOption("t") && cli.hasOption("i") && cli.hasOption("d"));
+      return 0;
+    }));
+    assertEquals(Collections.singletonList(true), flags);
+    assertEquals(Runtime.getRuntime().availableProcessors(), custom.getThreads());
+  }
+
+
+  private static CliHelper newIncrementalHelper() {
+    return new CliHelper(CliHelperTest.class)
+        .addOption("i", "input", "input", true, "file")
+        .addOption("o", "output", "output", true, "file")
+        .addOption("n", "num", "number", true, "num")
+        .addIncrementalOption()
+        .declareInputs("i")
+        .declareOutputs("o");
+  }
+
+
+  private static void writeFile(Path file, String content) throws IOException {
+    try (Writer writer = StreamUtils.openWriter(file)) {
+      writer.write(content);
+      writer.write("\n");
+    }
+  }
 }
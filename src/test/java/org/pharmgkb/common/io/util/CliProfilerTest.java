@@ -0,0 +1,62 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import com.google.api.client.json.gson.GsonFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * This is a JUnit test for {@link CliProfiler}.
+ *
+ * @author Mark Woon
+ */
+class CliProfilerTest {
+
+
+  @Test
+  void profile(@TempDir Path tempDir) throws Exception {
+
+    Path dataFile = tempDir.resolve("data.txt.gz");
+    Path reportFile = tempDir.resolve("profile.json");
+
+    CliProfiler profiler = new CliProfiler("test", null);
+    profiler.start();
+    try (Writer writer = StreamUtils.openWriter(dataFile)) {
+      for (int x = 0; x < 1000; x++) {
+        writer.write("line " + x + "\n");
+      }
+    }
+    try (BufferedReader reader = StreamUtils.openReader(dataFile)) {
+      while (reader.readLine() != null) {
+        // just reading
+      }
+    }
+    Map<String, Object> report = profiler.stop(0);
+    assertSame(IoMetricsListener.NOOP, StreamUtils.getMetricsListener());
+
+    CliProfiler.writeReport(report, reportFile);
+    @SuppressWarnings("unchecked")
+    Map<String, Object> json = GsonFactory.getDefaultInstance()
+        .fromString(new String(Files.readAllBytes(reportFile), "UTF-8"), Map.class);
+    assertEquals("test", json.get("name"));
+    assertNotNull(json.get("wallTimeMs"));
+    assertNotNull(json.get("gc"));
+    @SuppressWarnings("unchecked")
+    Map<String, Object> io = (Map<String, Object>)json.get("io");
+    assertEquals("1", io.get("filesRead").toString());
+    assertEquals("1", io.get("filesWritten").toString());
+    assertEquals(Long.toString(Files.size(dataFile)), io.get("rawBytesRead").toString());
+    assertEquals(io.get("bytesWritten").toString(), io.get("bytesRead").toString());
+    assertTrue(Long.parseLong(io.get("bytesRead").toString()) > Files.size(dataFile));
+  }
+}
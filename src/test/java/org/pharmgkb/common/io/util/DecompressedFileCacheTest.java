@@ -0,0 +1,165 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * This is a JUnit test for {@link DecompressedFileCache}.
+ *
+ * @author Mark Woon
+ */
+class DecompressedFileCacheTest {
+
+
+  private static String makeText(String prefix, int numLines) {
+    StringBuilder builder = new StringBuilder();
+    for (int x = 0; x < numLines; x += 1) {
+      builder.append(prefix).append('\t').append(x).append('\n');
+    }
+    return builder.toString();
+  }
+
+  private static Path write(Path file, String text) throws IOException {
+    try (BufferedWriter writer = StreamUtils.openWriter(file)) {
+      writer.write(text);
+    }
+    return file;
+  }
+
+  private static String read(InputStream in) throws IOException {
+    try (InputStream is = in) {
+      return IOUtils.toString(is, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static List<Path> listEntries(Path cacheDir) throws IOException {
+    try (Stream<Path> files = Files.list(cacheDir)) {
+      return files.filter(f -> f.toString().endsWith(".data")).collect(Collectors.toList());
+    }
+  }
+
+
+  @Test
+  void missThenHit(@TempDir Path tempDir) throws IOException {
+
+    String text = makeText("gz", 10000);
+    Path file = write(tempDir.resolve("data.tsv.gz"), text);
+    Path cacheDir = tempDir.resolve("cache");
+    DecompressedFileCache cache = new DecompressedFileCache(cacheDir, 10_000_000);
+
+    assertEquals(text, read(cache.openInputStream(file)));
+    List<Path> entries = listEntries(cacheDir);
+    assertEquals(1, entries.size());
+    assertEquals(text, new String(Files.readAllBytes(entries.get(0)), StandardCharsets.UTF_8));
+
+    // hit
+    assertEquals(text, read(cache.openInputStream(file)));
+    assertEquals(entries.get(0), cache.getFile(file));
+
+    // changing the file changes the key
+    String newText = makeText("new", 100);
+    write(file, newText);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000));
+    assertEquals(newText, read(cache.openInputStream(file)));
+    assertEquals(2, listEntries(cacheDir).size());
+  }
+
+  @Test
+  void partialRead(@TempDir Path tempDir) throws IOException {
+
+    Path file = write(tempDir.resolve("data.tsv.gz"), makeText("gz", 10000));
+    Path cacheDir = tempDir.resolve("cache");
+    DecompressedFileCache cache = new DecompressedFileCache(cacheDir, 10_000_000);
+
+    try (InputStream in = cache.openInputStream(file)) {
+      assertTrue(in.read(new byte[100]) > 0);
+    }
+    try (Stream<Path> files = Files.list(cacheDir)) {
+      assertFalse(files.anyMatch(f -> f.toString().endsWith(".data") || f.toString().endsWith(".tmp")));
+    }
+  }
+
+  @Test
+  void concurrentMiss(@TempDir Path tempDir) throws IOException {
+
+    String text = makeText("zip", 10000);
+    Path file = write(tempDir.resolve("data.tsv.zip"), text);
+    Path cacheDir = tempDir.resolve("cache");
+    DecompressedFileCache cache = new DecompressedFileCache(cacheDir, 10_000_000);
+
+    try (InputStream first = cache.openInputStream(file)) {
+      assertTrue(first.read(new byte[100]) > 0);
+      // first stream is filling the cache, so this one reads from the source
+      assertEquals(text, read(cache.openInputStream(file)));
+      assertEquals(0, listEntries(cacheDir).size());
+      IOUtils.toByteArray(first);
+    }
+    assertEquals(1, listEntries(cacheDir).size());
+  }
+
+  @Test
+  void evict(@TempDir Path tempDir) throws IOException {
+
+    String textA = makeText("a", 1000);
+    String textB = makeText("b", 1000);
+    String textC = makeText("c", 1000);
+    Path fileA = write(tempDir.resolve("a.tsv.gz"), textA);
+    Path fileB = write(tempDir.resolve("b.tsv.gz"), textB);
+    Path fileC = write(tempDir.resolve("c.tsv.gz"), textC);
+    DecompressedFileCache cache = new DecompressedFileCache(tempDir.resolve("cache"),
+        textA.length() + textB.length() + textC.length() / 2);
+
+    Path dataA = cache.getFile(fileA);
+    Path dataB = cache.getFile(fileB);
+    Files.setLastModifiedTime(dataA, FileTime.fromMillis(1000));
+    Files.setLastModifiedTime(dataB, FileTime.fromMillis(2000));
+    // using A makes B the least recently used
+    assertEquals(textA, read(cache.openInputStream(fileA)));
+    Path dataC = cache.getFile(fileC);
+
+    assertTrue(Files.exists(dataA));
+    assertFalse(Files.exists(dataB));
+    assertTrue(Files.exists(dataC));
+    // B gets decompressed again
+    assertEquals(textB, read(cache.openInputStream(fileB)));
+  }
+
+  @Test
+  void streamUtils(@TempDir Path tempDir) throws IOException {
+
+    String text = makeText("zip", 100);
+    Path file = write(tempDir.resolve("data.tsv.zip"), text);
+    Path cacheDir = tempDir.resolve("cache");
+    StreamUtils.setDecompressedFileCache(new DecompressedFileCache(cacheDir, 10_000_000));
+    try {
+      for (int x = 0; x < 2; x += 1) {
+        try (BufferedReader reader = StreamUtils.openReader(file)) {
+          assertEquals("zip\t0", reader.readLine());
+          reader.lines().forEach(l -> { });
+          assertNull(reader.readLine());
+        }
+      }
+      assertEquals(1, listEntries(cacheDir).size());
+    } finally {
+      StreamUtils.setDecompressedFileCache(null);
+    }
+  }
+}
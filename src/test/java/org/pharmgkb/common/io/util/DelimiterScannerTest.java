@@ -0,0 +1,107 @@
+package org.pharmgkb.common.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * This is a JUnit test for {@link DelimiterScanner}.
+ *
+ * @author Mark Woon
+ */
+class DelimiterScannerTest {
+
+
+  @Test
+  void fields() {
+
+    ByteBuffer buffer = ByteBuffer.wrap("a\tb\n\"c\"\td\n".getBytes(StandardCharsets.UTF_8));
+    assertEquals(Arrays.asList(1, 3, 4, 6, 7, 9), scan(DelimiterScanner.forFields(), buffer));
+    assertEquals(Arrays.asList(3, 9), scan(DelimiterScanner.forLines(), buffer));
+    // buffer is untouched
+    assertEquals(0, buffer.position());
+    assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+  }
+
+  @Test
+  void empty() {
+    assertEquals(0, scan(DelimiterScanner.forLines(), ByteBuffer.allocate(0)).size());
+  }
+
+  @Test
+  void badDelimiters() {
+    assertThrows(IllegalArgumentException.class, DelimiterScanner::new);
+    assertThrows(IllegalArgumentException.class, () -> new DelimiterScanner((byte)1, (byte)2, (byte)3, (byte)4));
+    assertThrows(IllegalStateException.class, () -> DelimiterScanner.forLines().next());
+  }
+
+  @Test
+  void matchesScalar() {
+
+    Random random = new Random(42);
+    // includes bytes with the high bit set and 0, which are the tricky cases for SWAR
+    byte[] alphabet = new byte[] { '\t', '\n', '"', 'a', 'Z', 0, (byte)0x80, (byte)0x89, (byte)0x8a, (byte)0xff };
+    for (int length : new int[] { 1, 7, 8, 63, 64, 65, 200, 4099 }) {
+      byte[] bytes = new byte[length + 10];
+      for (int x = 0; x < bytes.length; x += 1) {
+        bytes[x] = alphabet[random.nextInt(alphabet.length)];
+      }
+      for (int offset : new int[] { 0, 3 }) {
+        ByteBuffer heap = ByteBuffer.wrap(bytes, offset, length);
+        // slice so that arrayOffset isn't 0
+        ByteBuffer slice = ByteBuffer.wrap(bytes, offset, length).slice();
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).position(offset).limit(offset + length);
+
+        for (byte[] delimiters : new byte[][] { {'\n'}, {'\t', '\n'}, {'\t', '\n', '"'}, {(byte)0x80, 0} }) {
+          List<Integer> expected = scalarScan(bytes, offset, offset + length, delimiters);
+          assertEquals(expected, scan(new DelimiterScanner(delimiters), heap));
+          assertEquals(expected, scan(new DelimiterScanner(delimiters), direct));
+          List<Integer> sliceExpected = new ArrayList<>();
+          expected.forEach(idx -> sliceExpected.add(idx - offset));
+          assertEquals(sliceExpected, scan(new DelimiterScanner(delimiters), slice));
+        }
+      }
+    }
+  }
+
+  @Test
+  void reuse() {
+
+    DelimiterScanner scanner = DelimiterScanner.forLines();
+    assertEquals(Arrays.asList(1, 3), scan(scanner, ByteBuffer.wrap("a\nb\n".getBytes(StandardCharsets.UTF_8))));
+    assertEquals(Arrays.asList(0), scan(scanner, ByteBuffer.wrap("\nb".getBytes(StandardCharsets.UTF_8))));
+  }
+
+
+  private static List<Integer> scan(DelimiterScanner scanner, ByteBuffer buffer) {
+    scanner.reset(buffer);
+    List<Integer> indexes = new ArrayList<>();
+    for (int idx = scanner.next(); idx != -1; idx = scanner.next()) {
+      indexes.add(idx);
+    }
+    return indexes;
+  }
+
+  private static List<Integer> scalarScan(byte[] bytes, int from, int to, byte[] delimiters) {
+    List<Integer> indexes = new ArrayList<>();
+    for (int x = from; x < to; x += 1) {
+      for (byte d : delimiters) {
+        if (bytes[x] == d) {
+          indexes.add(x);
+          break;
+        }
+      }
+    }
+    return indexes;
+  }
+}
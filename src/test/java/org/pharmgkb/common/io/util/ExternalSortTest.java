@@ -0,0 +1,141 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * This is a JUnit test for {@link ExternalSort}.
+ *
+ * @author Mark Woon
+ */
+class ExternalSortTest {
+
+
+  private static List<String> makeLines(int numLines) {
+    Random random = new Random(numLines);
+    List<String> lines = new ArrayList<>();
+    for (int x = 0; x < numLines; x += 1) {
+      // few distinct keys so that stability matters
+      lines.add("gene" + random.nextInt(100) + "\t" + random.nextInt(1000) + "\trow" + x);
+    }
+    return lines;
+  }
+
+  private static void write(Path file, List<String> lines) throws IOException {
+    try (BufferedWriter writer = StreamUtils.openWriter(file)) {
+      for (String line : lines) {
+        writer.write(line);
+        writer.write('\n');
+      }
+    }
+  }
+
+  private static List<String> read(Path file) throws IOException {
+    try (BufferedReader reader = StreamUtils.openReader(file)) {
+      return reader.lines().collect(Collectors.toList());
+    }
+  }
+
+
+  @Test
+  void inMemory(@TempDir Path tempDir) throws IOException {
+
+    List<String> lines = makeLines(1000);
+    Path input = tempDir.resolve("input.tsv");
+    Path output = tempDir.resolve("output.tsv");
+    write(input, lines);
+
+    new ExternalSort(Comparator.naturalOrder()).sort(input, output);
+    lines.sort(null);
+    assertEquals(lines, read(output));
+  }
+
+  @Test
+  void spillAndMerge(@TempDir Path tempDir) throws IOException {
+
+    List<String> lines = makeLines(20000);
+    List<String> header = new ArrayList<>();
+    header.add("symbol\tcount\tid");
+    header.addAll(lines);
+    Path input = tempDir.resolve("input.tsv.gz");
+    Path output = tempDir.resolve("output.tsv.zip");
+    write(input, header);
+
+    ExternalSort sort = ExternalSort.byColumn(1, Comparator.comparingInt(Integer::parseInt));
+    sort.setHeaderLines(1);
+    sort.setThreads(3);
+    // small enough for more than MERGE_WIDTH runs, so there's an intermediate merge pass
+    sort.setMemoryBudget(100_000);
+    sort.setTempDir(tempDir);
+    sort.sort(input, output);
+
+    List<String> expected = new ArrayList<>(lines);
+    // stable
+    expected.sort(Comparator.comparingInt(l -> Integer.parseInt(l.split("\t")[1])));
+    expected.add(0, header.get(0));
+    assertEquals(expected, read(output));
+    // runs are cleaned up
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertEquals(2, files.count());
+    }
+  }
+
+  @Test
+  void missingColumn(@TempDir Path tempDir) throws IOException {
+
+    List<String> lines = new ArrayList<>();
+    lines.add("b\t2");
+    lines.add("c");
+    lines.add("a\t1");
+    Path input = tempDir.resolve("input.tsv");
+    Path output = tempDir.resolve("output.tsv");
+    write(input, lines);
+
+    ExternalSort.byColumn(1, Comparator.naturalOrder()).sort(input, output);
+    List<String> expected = new ArrayList<>();
+    expected.add("c");
+    expected.add("a\t1");
+    expected.add("b\t2");
+    assertEquals(expected, read(output));
+  }
+
+  @Test
+  void emptyInput(@TempDir Path tempDir) throws IOException {
+
+    Path input = tempDir.resolve("input.tsv");
+    Path output = tempDir.resolve("output.tsv.gz");
+    write(input, new ArrayList<>());
+    ExternalSort sort = new ExternalSort(Comparator.naturalOrder());
+    sort.setHeaderLines(1);
+    sort.sort(input, output);
+    assertEquals(0, read(output).size());
+  }
+
+  @Test
+  void comparatorFailure(@TempDir Path tempDir) throws IOException {
+
+    List<String> lines = makeLines(5000);
+    lines.add(2500, "bad\tnot-a-number");
+    Path input = tempDir.resolve("input.tsv");
+    write(input, lines);
+
+    ExternalSort sort = ExternalSort.byColumn(1, Comparator.comparingInt(Integer::parseInt));
+    sort.setMemoryBudget(50_000);
+    assertThrows(NumberFormatException.class, () -> sort.sort(input, tempDir.resolve("output.tsv")));
+  }
+}
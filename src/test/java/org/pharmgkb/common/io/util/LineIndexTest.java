@@ -0,0 +1,247 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * This is a JUnit test for {@link LineIndex}.
+ *
+ * @author Mark Woon
+ */
+class LineIndexTest {
+  private static final int NUM_LINES = 1000;
+
+
+  private static String makeText(int numLines, boolean trailingNewline) {
+    StringBuilder builder = new StringBuilder();
+    for (int x = 0; x < numLines; x += 1) {
+      if (x > 0) {
+        builder.append('\n');
+      }
+      builder.append("line ").append(x);
+      // vary line lengths
+      for (int y = 0; y < x % 13; y += 1) {
+        builder.append("\tcol");
+      }
+    }
+    if (trailingNewline) {
+      builder.append('\n');
+    }
+    return builder.toString();
+  }
+
+  private static String getLine(String text, int line) {
+    return text.split("\n")[line];
+  }
+
+
+  @Test
+  void plainFile(@TempDir Path tempDir) throws IOException {
+
+    String text = makeText(NUM_LINES, true);
+    Path file = tempDir.resolve("data.tsv");
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    checkIndex(LineIndex.forFile(file, 7), text, NUM_LINES);
+  }
+
+  @Test
+  void noTrailingNewline(@TempDir Path tempDir) throws IOException {
+
+    String text = makeText(NUM_LINES, false);
+    Path file = tempDir.resolve("data.tsv");
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    checkIndex(LineIndex.forFile(file, 10), text, NUM_LINES);
+  }
+
+  @Test
+  void emptyFile(@TempDir Path tempDir) throws IOException {
+
+    Path file = tempDir.resolve("data.tsv");
+    Files.createFile(file);
+    LineIndex index = LineIndex.forFile(file);
+    assertEquals(0, index.getLineCount());
+    try (BufferedReader reader = index.seekToLine(0)) {
+      assertNull(reader.readLine());
+    }
+  }
+
+  @Test
+  void bgzfFile(@TempDir Path tempDir) throws IOException {
+
+    String text = makeText(NUM_LINES, true);
+    Path file = tempDir.resolve("data.tsv.gz");
+    // small blocks so that lines span blocks
+    writeBgzf(file, text.getBytes(StandardCharsets.UTF_8), 1000);
+    // readable like any other gzipped file
+    try (InputStream in = StreamUtils.openInputStream(file)) {
+      assertEquals(text, IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+    checkIndex(LineIndex.forFile(file, 7), text, NUM_LINES);
+  }
+
+  @Test
+  void bgzfBlocksEndOnNewlines(@TempDir Path tempDir) throws IOException {
+
+    // "line 0\n" is 7 bytes, so every block ends with a newline
+    StringBuilder builder = new StringBuilder();
+    for (int x = 0; x < 10; x += 1) {
+      builder.append("line ").append(x).append('\n');
+    }
+    String text = builder.toString();
+    Path file = tempDir.resolve("data.tsv.gz");
+    writeBgzf(file, text.getBytes(StandardCharsets.UTF_8), 7);
+    checkIndex(LineIndex.forFile(file, 1), text, 10);
+  }
+
+  @Test
+  void concatenatedBgzf(@TempDir Path tempDir) throws IOException {
+
+    // like "cat a.gz b.gz", which leaves an EOF block in the middle
+    String text = makeText(NUM_LINES, true);
+    int split = text.indexOf('\n', text.length() / 2) + 1;
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    Path a = tempDir.resolve("a.tsv.gz");
+    writeBgzf(a, Arrays.copyOf(bytes, split), 1000);
+    Path b = tempDir.resolve("b.tsv.gz");
+    writeBgzf(b, Arrays.copyOfRange(bytes, split, bytes.length), 1000);
+    Path file = tempDir.resolve("data.tsv.gz");
+    try (OutputStream out = Files.newOutputStream(file)) {
+      Files.copy(a, out);
+      Files.copy(b, out);
+    }
+    checkIndex(LineIndex.forFile(file, 1), text, NUM_LINES);
+    checkIndex(LineIndex.forFile(file, 7), text, NUM_LINES);
+  }
+
+  @Test
+  void notBgzf(@TempDir Path tempDir) throws IOException {
+
+    Path file = tempDir.resolve("data.tsv.gz");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+      out.write(makeText(10, true).getBytes(StandardCharsets.UTF_8));
+    }
+    assertThrows(IllegalArgumentException.class, () -> LineIndex.forFile(file));
+  }
+
+
+  @Test
+  void sidecar(@TempDir Path tempDir) throws IOException {
+
+    String text = makeText(NUM_LINES, true);
+    Path file = tempDir.resolve("data.tsv");
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000));
+
+    LineIndex.forFile(file, 7);
+    Path indexFile = LineIndex.getIndexFile(file);
+    assertTrue(Files.exists(indexFile));
+    FileTime indexTime = FileTime.fromMillis(2_000_000);
+    Files.setLastModifiedTime(indexFile, indexTime);
+    // loaded, not rebuilt
+    checkIndex(LineIndex.forFile(file, 7), text, NUM_LINES);
+    assertEquals(indexTime, Files.getLastModifiedTime(indexFile));
+
+    // change the file, which should trigger a rebuild
+    String newText = makeText(NUM_LINES / 2, true);
+    Files.write(file, newText.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(3_000_000));
+    checkIndex(LineIndex.forFile(file, 7), newText, NUM_LINES / 2);
+  }
+
+  @Test
+  void staleIndex(@TempDir Path tempDir) throws IOException {
+
+    Path file = tempDir.resolve("data.tsv");
+    Files.write(file, makeText(NUM_LINES, true).getBytes(StandardCharsets.UTF_8));
+    LineIndex index = LineIndex.forFile(file, 7);
+    Files.write(file, makeText(10, true).getBytes(StandardCharsets.UTF_8));
+    assertThrows(IOException.class, () -> index.seekToLine(5));
+  }
+
+
+  private static void checkIndex(LineIndex index, String text, int numLines) throws IOException {
+
+    assertEquals(numLines, index.getLineCount());
+    for (int x = 0; x < numLines; x += 1) {
+      try (BufferedReader reader = index.seekToLine(x)) {
+        assertEquals(getLine(text, x), reader.readLine(), "Line " + x);
+      }
+    }
+    try (BufferedReader reader = index.seekToLine(numLines)) {
+      assertNull(reader.readLine());
+    }
+    assertThrows(IndexOutOfBoundsException.class, () -> index.seekToLine(numLines + 1));
+
+    // split between workers
+    int[] bounds = new int[] { 0, 3, numLines / 3, numLines / 3 + 1, numLines - 1, numLines };
+    StringBuilder builder = new StringBuilder();
+    for (int x = 1; x < bounds.length; x += 1) {
+      try (InputStream in = index.openLineRange(bounds[x - 1], bounds[x])) {
+        String chunk = IOUtils.toString(in, StandardCharsets.UTF_8);
+        assertEquals(bounds[x] - bounds[x - 1], chunk.isEmpty() ? 0 : chunk.split("\n").length);
+        builder.append(chunk);
+      }
+    }
+    assertEquals(text, builder.toString());
+  }
+
+
+  /**
+   * Writes a BGZF file, with an empty block at the end like bgzip does.
+   */
+  static void writeBgzf(Path file, byte[] data, int blockSize) throws IOException {
+    try (OutputStream out = Files.newOutputStream(file)) {
+      for (int x = 0; x < data.length; x += blockSize) {
+        writeBgzfBlock(out, data, x, Math.min(blockSize, data.length - x));
+      }
+      writeBgzfBlock(out, data, 0, 0);
+    }
+  }
+
+  private static void writeBgzfBlock(OutputStream out, byte[] data, int off, int len) throws IOException {
+
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(data, off, len);
+    deflater.finish();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    byte[] buffer = new byte[65536];
+    while (!deflater.finished()) {
+      compressed.write(buffer, 0, deflater.deflate(buffer));
+    }
+    deflater.end();
+    CRC32 crc = new CRC32();
+    crc.update(data, off, len);
+
+    ByteBuffer block = ByteBuffer.allocate(18 + compressed.size() + 8).order(ByteOrder.LITTLE_ENDIAN);
+    block.put(new byte[] { 0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff })
+        .putShort((short)6)
+        .put((byte)'B').put((byte)'C').putShort((short)2)
+        .putShort((short)(block.capacity() - 1))
+        .put(compressed.toByteArray())
+        .putInt((int)crc.getValue())
+        .putInt(len);
+    out.write(block.array());
+  }
+}
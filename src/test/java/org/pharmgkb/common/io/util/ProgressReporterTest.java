@@ -0,0 +1,84 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * JUnit test for {@link ProgressReporter}.
+ *
+ * @author Mark Woon
+ */
+class ProgressReporterTest {
+
+
+  @Test
+  void testTracking(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("data.txt.gz");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+      for (int x = 0; x < 10000; x += 1) {
+        out.write(("line " + x + "\n").getBytes());
+      }
+    }
+    long size = Files.size(file);
+
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    ProgressReporter progress = new ProgressReporter("test", new PrintStream(buffer, true), false, 60000);
+    progress.start();
+    assertNotSame(IoMetricsListener.NOOP, StreamUtils.getMetricsListener());
+    try (InputStream in = StreamUtils.openInputStream(file)) {
+      byte[] bytes = new byte[1024];
+      while (in.read(bytes) != -1) {
+        progress.incrementRecords();
+      }
+    }
+    progress.addRecords(10);
+    progress.stop();
+    assertSame(IoMetricsListener.NOOP, StreamUtils.getMetricsListener());
+
+    // progress is against compressed size
+    assertEquals(size, progress.getTotalBytes());
+    assertEquals(size, progress.getBytesRead());
+    assertTrue(progress.getRecordCount() > 10);
+
+    String output = buffer.toString();
+    assertTrue(output.startsWith("test: "), output);
+    assertTrue(output.contains("(100.0%)"), output);
+    assertTrue(output.contains(" records ("), output);
+    assertFalse(output.contains("ETA"), output);
+  }
+
+
+  @Test
+  void testStatus() {
+
+    ProgressReporter progress = new ProgressReporter("test", new PrintStream(new ByteArrayOutputStream()), true, 1000);
+    progress.addExpectedBytes(4096);
+    progress.addBytesRead(1024);
+    progress.addRecords(1500);
+    assertEquals("test: 1.0 KiB / 4.0 KiB (25.0%), 102 B/s, 1,500 records (150/s), elapsed 10s, ETA 30s",
+        progress.getStatus(10_000_000_000L));
+  }
+
+
+  @Test
+  void testFormat() {
+
+    assertEquals("512 B", ProgressReporter.formatBytes(512));
+    assertEquals("1.5 KiB", ProgressReporter.formatBytes(1536));
+    assertEquals("30.0 GiB", ProgressReporter.formatBytes(30L * 1024 * 1024 * 1024));
+    assertEquals("59s", ProgressReporter.formatDuration(59));
+    assertEquals("2m 5s", ProgressReporter.formatDuration(125));
+    assertEquals("1h 1m", ProgressReporter.formatDuration(3660));
+  }
+}
@@ -0,0 +1,121 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * This is a JUnit test for {@link ResumableLineReader}.
+ *
+ * @author Mark Woon
+ */
+class ResumableLineReaderTest {
+  private static final int NUM_LINES = 5000;
+
+
+  private static List<String> makeLines() {
+    List<String> lines = new ArrayList<>();
+    for (int x = 0; x < NUM_LINES; x += 1) {
+      // vary line lengths, with one line longer than the read buffer
+      lines.add(x == 3000 ? StringUtils.repeat('x', 100_000) : "line é " + x + StringUtils.repeat("\tcol", x % 13));
+    }
+    return lines;
+  }
+
+
+  @Test
+  void plainFile(@TempDir Path tempDir) throws IOException {
+
+    List<String> lines = makeLines();
+    Path file = tempDir.resolve("data.tsv");
+    Files.write(file, (String.join("\r\n", lines)).getBytes(StandardCharsets.UTF_8));
+    checkResume(file, tempDir.resolve("data.checkpoint"), lines);
+  }
+
+  @Test
+  void gzFile(@TempDir Path tempDir) throws IOException {
+
+    List<String> lines = makeLines();
+    Path file = tempDir.resolve("data.tsv.gz");
+    try (BufferedWriter writer = StreamUtils.openWriter(file)) {
+      writer.write(String.join("\n", lines));
+      writer.write('\n');
+    }
+    checkResume(file, tempDir.resolve("data.checkpoint"), lines);
+  }
+
+  @Test
+  void bgzfFile(@TempDir Path tempDir) throws IOException {
+
+    List<String> lines = makeLines();
+    Path file = tempDir.resolve("data.tsv.gz");
+    LineIndexTest.writeBgzf(file, (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8), 1000);
+    checkResume(file, tempDir.resolve("data.checkpoint"), lines);
+  }
+
+  @Test
+  void changedFile(@TempDir Path tempDir) throws IOException {
+
+    List<String> lines = makeLines();
+    Path file = tempDir.resolve("data.tsv");
+    Files.write(file, lines);
+    Path checkpointFile = tempDir.resolve("data.checkpoint");
+    try (ResumableLineReader reader = new ResumableLineReader(file, checkpointFile)) {
+      reader.setCheckpointInterval(0);
+      reader.readLine();
+      reader.markProcessed();
+    }
+    Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000));
+    try (ResumableLineReader reader = new ResumableLineReader(file, checkpointFile)) {
+      assertNull(reader.getResumedFrom());
+      assertEquals(lines.get(0), reader.readLine());
+    }
+  }
+
+
+  private static void checkResume(Path file, Path checkpointFile, List<String> lines) throws IOException {
+
+    // fail part way through, after a line that wasn't marked as processed
+    int failAt = 3500;
+    try (ResumableLineReader reader = new ResumableLineReader(file, checkpointFile)) {
+      assertNull(reader.getResumedFrom());
+      reader.setCheckpointInterval(0);
+      for (int x = 0; x < failAt; x += 1) {
+        assertEquals(lines.get(x), reader.readLine(), "Line " + x);
+        int count = x + 1;
+        reader.markProcessed(() -> "count=" + count);
+      }
+      assertEquals(lines.get(failAt), reader.readLine());
+    }
+
+    try (ResumableLineReader reader = new ResumableLineReader(file, checkpointFile)) {
+      Checkpoint checkpoint = reader.getResumedFrom();
+      assertNotNull(checkpoint);
+      assertEquals(failAt, checkpoint.getRecordCount());
+      assertEquals("count=" + failAt, checkpoint.getState());
+      reader.setCheckpointInterval(0);
+      for (int x = failAt; x < lines.size(); x += 1) {
+        assertEquals(lines.get(x), reader.readLine(), "Line " + x);
+        reader.markProcessed();
+      }
+      assertNull(reader.readLine());
+      assertEquals(lines.size(), reader.getRecordCount());
+      reader.deleteCheckpoint();
+    }
+    assertFalse(Files.exists(checkpointFile));
+  }
+}
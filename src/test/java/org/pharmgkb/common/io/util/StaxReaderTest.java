@@ -0,0 +1,154 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import javax.xml.stream.XMLStreamException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * This is a JUnit test for {@link StaxReader}.
+ *
+ * @author Mark Woon
+ */
+class StaxReaderTest {
+  private static final int NUM_RECORDS = 3000;
+
+
+  private static String makeXml() {
+    StringBuilder builder = new StringBuilder()
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<!DOCTYPE root>\n")
+        .append("<!-- records -->\n")
+        .append("<root xmlns=\"urn:test\" note=\"a &gt; b\">\n")
+        .append("  <records source=\"&amp;\">\n");
+    for (int x = 0; x < NUM_RECORDS; x += 1) {
+      builder.append("    <record id=\"").append(x).append("\"><name>é &amp; ").append(x)
+          .append("</name><empty/></record>\n");
+    }
+    return builder.append("  </records>\n")
+        .append("</root>\n")
+        .toString();
+  }
+
+
+  @Test
+  void plainFile(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("data.xml");
+    Files.write(file, makeXml().getBytes(StandardCharsets.UTF_8));
+    checkResume(file, tempDir.resolve("data.checkpoint"));
+  }
+
+  @Test
+  void gzFile(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("data.xml.gz");
+    try (BufferedWriter writer = StreamUtils.openWriter(file)) {
+      writer.write(makeXml());
+    }
+    checkResume(file, tempDir.resolve("data.checkpoint"));
+  }
+
+  @Test
+  void bgzfFile(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("data.xml.gz");
+    LineIndexTest.writeBgzf(file, makeXml().getBytes(StandardCharsets.UTF_8), 5000);
+    checkResume(file, tempDir.resolve("data.checkpoint"));
+  }
+
+  @Test
+  void changedFile(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("data.xml");
+    Files.write(file, makeXml().getBytes(StandardCharsets.UTF_8));
+    Path checkpointFile = tempDir.resolve("data.checkpoint");
+    try (StaxReader reader = StaxReader.openResumable(file, checkpointFile)) {
+      reader.setCheckpointInterval(0);
+      assertNotNull(reader.endElement("record"));
+      reader.markProcessed();
+    }
+    Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000));
+    try (StaxReader reader = StaxReader.openResumable(file, checkpointFile)) {
+      assertNull(reader.getResumedFrom());
+      assertNotNull(reader.startElement("record"));
+      assertEquals("0", reader.getAttributeValue("id"));
+    }
+  }
+
+  @Test
+  void nullMetricsListener(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("data.xml");
+    Files.write(file, makeXml().getBytes(StandardCharsets.UTF_8));
+    assertThrows(NullPointerException.class, () -> new StaxReader(file, null));
+  }
+
+  @Test
+  void notResumable(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("data.xml");
+    Files.write(file, makeXml().getBytes(StandardCharsets.UTF_8));
+    try (StaxReader reader = new StaxReader(file)) {
+      assertNull(reader.getResumedFrom());
+      assertThrows(IllegalStateException.class, reader::markProcessed);
+    }
+  }
+
+
+  private static void checkResume(Path file, Path checkpointFile) throws IOException, XMLStreamException {
+
+    // fail part way through, in a record that wasn't marked as processed
+    int failAt = 2000;
+    try (StaxReader reader = StaxReader.openResumable(file, checkpointFile)) {
+      assertNull(reader.getResumedFrom());
+      reader.setCheckpointInterval(0);
+      assertNotNull(reader.startElement("records"));
+      assertEquals("&", reader.getAttributeValue("source"));
+      for (int x = 0; x < failAt; x += 1) {
+        readRecord(reader, x);
+        int count = x + 1;
+        reader.markProcessed(() -> "count=" + count);
+      }
+      assertNotNull(reader.startElement("record", "records"));
+    }
+
+    try (StaxReader reader = StaxReader.openResumable(file, checkpointFile)) {
+      Checkpoint checkpoint = reader.getResumedFrom();
+      assertNotNull(checkpoint);
+      assertEquals(failAt, checkpoint.getRecordCount());
+      assertEquals("count=" + failAt, checkpoint.getState());
+      reader.setCheckpointInterval(0);
+      for (int x = failAt; x < NUM_RECORDS; x += 1) {
+        readRecord(reader, x);
+        reader.markProcessed();
+      }
+      assertNull(reader.startElement("record", "records"));
+      assertNotNull(reader.endElement("root"));
+      assertEquals(NUM_RECORDS, reader.getRecordCount());
+      reader.deleteCheckpoint();
+    }
+    assertFalse(Files.exists(checkpointFile));
+  }
+
+  private static void readRecord(StaxReader reader, int x) throws XMLStreamException {
+
+    assertNotNull(reader.startElement("record", "records"), "Record " + x);
+    assertEquals(Integer.toString(x), reader.getAttributeValue("id"));
+    assertNotNull(reader.startElement("name"));
+    assertEquals("é & " + x, reader.getTextTrimmedToNull());
+    assertNotNull(reader.endElement("record"));
+  }
+}
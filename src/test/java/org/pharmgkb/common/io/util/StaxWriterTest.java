@@ -0,0 +1,91 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * This is a JUnit test for {@link StaxWriter}.
+ *
+ * @author Mark Woon
+ */
+class StaxWriterTest {
+
+
+  @Test
+  void escaping() throws Exception {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (StaxWriter writer = new StaxWriter(out)) {
+      writer.startElement("root", "name", "a \"b\" & <c>\n", "skipped", null)
+          .element("text", "1 < 2 && 3 > 2 \"ok\"")
+          .emptyElement("empty", "id", "1")
+          .element("missing", null);
+    }
+    assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<root name=\"a &quot;b&quot; &amp; &lt;c&gt;&#10;\"><text>1 &lt; 2 &amp;&amp; 3 &gt; 2 \"ok\"</text>" +
+            "<empty id=\"1\"/></root>\n",
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+
+  @Test
+  void badUsage() throws Exception {
+
+    try (StaxWriter writer = new StaxWriter(new ByteArrayOutputStream())) {
+      writer.startElement("root").text("foo");
+      assertThrows(IllegalStateException.class, () -> writer.attribute("late", "value"));
+      assertThrows(IllegalArgumentException.class, () -> writer.text("bell\u0007"));
+      assertThrows(IllegalArgumentException.class, () -> writer.emptyElement("odd", "name"));
+    }
+  }
+
+
+  @Test
+  void roundTripGz(@TempDir Path tempDir) throws Exception {
+    roundTrip(tempDir.resolve("test.xml.gz"));
+  }
+
+  @Test
+  void roundTripZip(@TempDir Path tempDir) throws Exception {
+    roundTrip(tempDir.resolve("test.xml.zip"));
+  }
+
+  private void roundTrip(Path file) throws Exception {
+
+    // long enough to go through the buffer several times
+    StringBuilder longText = new StringBuilder();
+    for (int x = 0; x < 20000; x++) {
+      longText.append("row ").append(x).append(" & ");
+    }
+
+    try (StaxWriter writer = new StaxWriter(file)) {
+      writer.startElement("genes");
+      for (int x = 0; x < 1000; x++) {
+        writer.startElement("gene", "id", "PA" + x)
+            .element("symbol", "GENE<" + x + ">")
+            .endElement()
+            .newLine();
+      }
+      writer.element("note", longText.toString());
+    }
+
+    try (StaxReader reader = new StaxReader(file)) {
+      for (int x = 0; x < 1000; x++) {
+        assertNotNull(reader.startElement("gene"));
+        assertEquals("PA" + x, reader.getAttributeValue("id"));
+        assertNotNull(reader.startElement("symbol"));
+        assertEquals("GENE<" + x + ">", reader.getTextTrimmedToNull());
+      }
+      assertNull(reader.startElement("gene", "genes"));
+    }
+  }
+}
@@ -0,0 +1,336 @@
+package org.pharmgkb.common.io.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * This is a JUnit test for {@link StreamUtils}.
+ *
+ * @author Mark Woon
+ */
+class StreamUtilsTest {
+
+
+  @Test
+  void readWriteCompressed(@TempDir Path tempDir) throws Exception {
+
+    for (String name : new String[] { "test.txt", "test.txt.gz", "test.txt.zip" }) {
+      Path file = tempDir.resolve(name);
+      try (Writer writer = StreamUtils.openWriter(file)) {
+        writer.write("hello, world\nline 2\n");
+      }
+      try (BufferedReader reader = StreamUtils.openReader(file)) {
+        assertEquals("hello, world", reader.readLine());
+        assertEquals("line 2", reader.readLine());
+      }
+    }
+  }
+
+
+  @Test
+  void readGzip(@TempDir Path tempDir) throws Exception {
+
+    // big enough to need several buffer refills, and in two gzip members
+    byte[] data = new byte[300_000];
+    new Random(1).nextBytes(data);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (int x = 0; x < 2; x += 1) {
+      try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+        gzip.write(data);
+      }
+    }
+    Path file = tempDir.resolve("test.bin.gz");
+    Files.write(file, bytes.toByteArray());
+
+    try (InputStream in = StreamUtils.openInputStream(file)) {
+      byte[] rez = IOUtils.toByteArray(in);
+      assertEquals(data.length * 2, rez.length);
+      assertArrayEquals(data, Arrays.copyOf(rez, data.length));
+      assertArrayEquals(data, Arrays.copyOfRange(rez, data.length, rez.length));
+      assertEquals(-1, in.read());
+    }
+
+    // truncated
+    Files.write(file, Arrays.copyOf(bytes.toByteArray(), 1000));
+    try (InputStream in = StreamUtils.openInputStream(file)) {
+      assertThrows(IOException.class, () -> IOUtils.toByteArray(in));
+    }
+
+    // not gzipped
+    Files.write(file, "not gzipped".getBytes(StandardCharsets.UTF_8));
+    assertThrows(IOException.class, () -> StreamUtils.openInputStream(file).close());
+  }
+
+
+  @Test
+  void openChannel(@TempDir Path tempDir) throws Exception {
+
+    byte[] data = new byte[300_000];
+    new Random(2).nextBytes(data);
+    for (String name : new String[] { "test.bin", "test.bin.gz", "test.bin.zip" }) {
+      Path file = tempDir.resolve(name);
+      try (OutputStream out = StreamUtils.openOutputStream(file)) {
+        out.write(data);
+      }
+
+      try (ScatteringByteChannel channel = StreamUtils.openChannel(file)) {
+        if (name.equals("test.bin")) {
+          assertTrue(channel instanceof FileChannel);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length + 1);
+        while (channel.read(buffer) != -1) {
+          assertTrue(buffer.hasRemaining(), name);
+        }
+        buffer.flip();
+        byte[] rez = new byte[buffer.remaining()];
+        buffer.get(rez);
+        assertArrayEquals(data, rez, name);
+        assertEquals(0, channel.read(ByteBuffer.allocateDirect(0)));
+      }
+
+      try (ScatteringByteChannel channel = StreamUtils.openChannel(file)) {
+        ByteBuffer[] buffers = new ByteBuffer[] {
+            ByteBuffer.allocateDirect(1000),
+            ByteBuffer.allocate(data.length - 1000),
+            ByteBuffer.allocateDirect(10),
+        };
+        long total = 0;
+        long n;
+        while ((n = channel.read(buffers)) != -1) {
+          total += n;
+        }
+        assertEquals(data.length, total, name);
+        byte[] rez = new byte[data.length];
+        buffers[0].flip();
+        buffers[0].get(rez, 0, 1000);
+        buffers[1].flip();
+        buffers[1].get(rez, 1000, data.length - 1000);
+        assertArrayEquals(data, rez, name);
+        assertEquals(0, buffers[2].position());
+      }
+      assertThrows(IOException.class, () -> StreamUtils.openChannel(tempDir.resolve("missing-" + name)));
+    }
+  }
+
+
+  @Test
+  void copyUrlsToFiles(@TempDir Path tempDir) throws Exception {
+
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      byte[] body = ("content of " + path).getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(path.equals("/missing") ? 404 : 200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    try {
+      String baseUrl = "http://localhost:" + server.getAddress().getPort();
+      Map<String, Path> downloads = new LinkedHashMap<>();
+      for (int x = 0; x < 10; x += 1) {
+        downloads.put(baseUrl + "/file" + x, tempDir.resolve("file" + x));
+      }
+      // existing files are overwritten, even if they're longer
+      Files.write(tempDir.resolve("file0"), "much longer previous content".getBytes(StandardCharsets.UTF_8));
+      StreamUtils.copyUrlsToFiles(downloads, 3);
+      for (int x = 0; x < 10; x += 1) {
+        assertEquals("content of /file" + x,
+            new String(Files.readAllBytes(tempDir.resolve("file" + x)), StandardCharsets.UTF_8));
+      }
+
+      downloads.put(baseUrl + "/missing", tempDir.resolve("missing"));
+      IOException ex = assertThrows(IOException.class, () -> StreamUtils.copyUrlsToFiles(downloads, 3));
+      assertTrue(ex.getMessage().contains("/missing"), ex.getMessage());
+      // error is saved
+      assertEquals("content of /missing",
+          new String(Files.readAllBytes(tempDir.resolve("missing")), StandardCharsets.UTF_8));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+
+  @Test
+  void metrics(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("test.txt.gz");
+    StringBuilder builder = new StringBuilder();
+    for (int x = 0; x < 10000; x++) {
+      builder.append("line ").append(x).append('\n');
+    }
+    String content = builder.toString();
+
+    RecordingListener listener = new RecordingListener();
+    StreamUtils.setMetricsListener(listener);
+    try {
+      try (Writer writer = StreamUtils.openWriter(file)) {
+        writer.write(content);
+      }
+      assertEquals(content.length(), listener.written.get());
+      assertEquals(1, listener.closed.get());
+
+      try (InputStream in = StreamUtils.openInputStream(file)) {
+        assertTrue(in instanceof MeteredInputStream);
+        assertEquals(content, IOUtils.toString(in, "UTF-8"));
+        MeteredInputStream meteredIn = (MeteredInputStream)in;
+        assertEquals(content.length(), meteredIn.getByteCount());
+        assertEquals(Files.size(file), meteredIn.getRawByteCount());
+      }
+      assertEquals(Files.size(file), listener.opened.get());
+      assertEquals(Files.size(file), listener.rawRead.get());
+      assertEquals(content.length(), listener.read.get());
+      assertEquals(2, listener.closed.get());
+
+    } finally {
+      StreamUtils.setMetricsListener(null);
+    }
+
+    try (InputStream in = StreamUtils.openInputStream(file)) {
+      assertFalse(in instanceof MeteredInputStream);
+    }
+  }
+
+
+  @Test
+  void staxMetrics(@TempDir Path tempDir) throws Exception {
+
+    Path file = tempDir.resolve("test.xml.gz");
+    try (StaxWriter writer = new StaxWriter(file)) {
+      writer.startElement("root");
+      for (int x = 0; x < 10000; x++) {
+        writer.element("item", Integer.toString(x));
+      }
+    }
+
+    RecordingListener listener = new RecordingListener();
+    try (StaxReader reader = new StaxReader(file, listener)) {
+      int count = 0;
+      while (reader.startElement("item") != null) {
+        count += 1;
+      }
+      assertEquals(10000, count);
+      assertEquals(10001, reader.getElementCount());
+      assertTrue(reader.getEventCount() > reader.getElementCount());
+      assertEquals(Files.size(file), reader.getBytePosition());
+      assertTrue(listener.staxEvents.get() > 0);
+    }
+    assertEquals(10001, listener.staxElements.get());
+
+    try (StaxReader reader = new StaxReader(file)) {
+      assertEquals(-1, reader.getBytePosition());
+    }
+  }
+
+
+  @Test
+  void metricsScope() throws Exception {
+
+    IoMetricsListener listener = new IoMetricsListener() {};
+    AtomicReference<IoMetricsListener> inScope = new AtomicReference<>();
+    AtomicReference<IoMetricsListener> inChild = new AtomicReference<>();
+    Thread thread = new Thread(() -> {
+      StreamUtils.startMetricsScope();
+      StreamUtils.addScopedMetricsListener(listener);
+      inScope.set(StreamUtils.getMetricsListener());
+      Thread child = new Thread(() -> inChild.set(StreamUtils.getMetricsListener()));
+      child.start();
+      try {
+        child.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      StreamUtils.endMetricsScope();
+    });
+    thread.start();
+    thread.join();
+    assertSame(listener, inScope.get());
+    assertSame(listener, inChild.get());
+    // not visible outside the scope
+    assertSame(IoMetricsListener.NOOP, StreamUtils.getMetricsListener());
+
+    // without a scope, listeners apply everywhere, and can be removed in any order
+    IoMetricsListener other = new IoMetricsListener() {};
+    List<IoMetricsListener> listeners = StreamUtils.addScopedMetricsListener(listener);
+    StreamUtils.addScopedMetricsListener(other);
+    assertNotSame(IoMetricsListener.NOOP, StreamUtils.getMetricsListener());
+    listeners.remove(listener);
+    assertSame(other, StreamUtils.getMetricsListener());
+    listeners.remove(other);
+    assertSame(IoMetricsListener.NOOP, StreamUtils.getMetricsListener());
+  }
+
+
+  private static class RecordingListener implements IoMetricsListener {
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong rawRead = new AtomicLong();
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong staxEvents = new AtomicLong();
+    private final AtomicLong staxElements = new AtomicLong();
+
+    @Override
+    public void onOpen(Path path, long size) {
+      if (size > 0) {
+        opened.addAndGet(size);
+      }
+    }
+
+    @Override
+    public void onRead(Path path, long rawBytes, long bytes, long nanos) {
+      rawRead.addAndGet(rawBytes);
+      read.addAndGet(bytes);
+    }
+
+    @Override
+    public void onWrite(Path path, long bytes, long nanos) {
+      written.addAndGet(bytes);
+    }
+
+    @Override
+    public void onClose(Path path) {
+      closed.incrementAndGet();
+    }
+
+    @Override
+    public void onStaxProgress(Path path, long events, long elements, long bytePosition) {
+      staxEvents.set(events);
+      staxElements.set(elements);
+    }
+  }
+}